@@ -0,0 +1,154 @@
+package com.familytree.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+
+/**
+ * Configuration for background jobs (merge previews and other long-running tree operations)
+ * and the worker pools of the services that process media and trees in parallel.
+ * Every pool has a bounded queue; what happens when it is full is chosen per pool.
+ * Inject a worker pool with {@code @Qualifier} and its bean name.
+ */
+@Configuration
+@Slf4j
+public class AsyncConfig {
+
+    @Value("${jobs.executor.core-pool-size:2}")
+    private int corePoolSize;
+
+    @Value("${jobs.executor.max-pool-size:4}")
+    private int maxPoolSize;
+
+    @Value("${jobs.executor.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Bean(name = "taskExecutor")
+    @Primary
+    public ThreadPoolTaskExecutor taskExecutor() {
+        log.info("Initializing background job executor: core={}, max={}, queue={}",
+                corePoolSize, maxPoolSize, queueCapacity);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("job-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Server-side copies of avatars when a tree is created from an individual.
+     * A clone submits one copy per avatar, so a full queue makes the cloning thread copy the rest itself.
+     */
+    @Bean(name = "avatarCopyExecutor")
+    public ThreadPoolTaskExecutor avatarCopyExecutor(
+            @Value("${avatar.clone.parallelism:8}") int parallelism,
+            @Value("${avatar.clone.queue-capacity:500}") int queueCapacity) {
+        return workerPool("avatar-copy", parallelism, queueCapacity, callerRuns("avatar-copy"));
+    }
+
+    /**
+     * Resized copies of uploaded photos and avatars. Generations rejected by a full queue are skipped,
+     * missing copies are generated again when the image is requested.
+     */
+    @Bean(name = "imageDerivativeExecutor")
+    public ThreadPoolTaskExecutor imageDerivativeExecutor(
+            @Value("${media.derivatives.parallelism:2}") int parallelism,
+            @Value("${media.derivatives.queue-capacity:1000}") int queueCapacity) {
+        return workerPool("image-derivative", parallelism, queueCapacity, reject("image-derivative"));
+    }
+
+    /**
+     * Decoding and scaling of avatar atlas tiles. The requesting thread waits for all tiles,
+     * so a full queue makes it load the remaining tiles itself.
+     */
+    @Bean(name = "avatarAtlasExecutor")
+    public ThreadPoolTaskExecutor avatarAtlasExecutor(
+            @Value("${media.atlas.parallelism:4}") int parallelism,
+            @Value("${media.atlas.queue-capacity:1000}") int queueCapacity) {
+        return workerPool("avatar-atlas", parallelism, queueCapacity, callerRuns("avatar-atlas"));
+    }
+
+    /**
+     * Downloads ahead of the file being written to a media archive. Downloads rejected by a full queue
+     * are not made ahead, the archive streams those files through when their turn comes.
+     */
+    @Bean(name = "mediaArchiveExecutor")
+    public ThreadPoolTaskExecutor mediaArchiveExecutor(
+            @Value("${media.archive.parallelism:4}") int parallelism,
+            @Value("${media.archive.queue-capacity:100}") int queueCapacity) {
+        return workerPool("media-archive", parallelism, queueCapacity, reject("media-archive"));
+    }
+
+    /**
+     * Refreshes of materialized tree statistics. One thread, so refreshes of the same tree never overtake
+     * each other; a full queue skips the refresh until the tree changes again.
+     */
+    @Bean(name = "treeStatsExecutor")
+    public ThreadPoolTaskExecutor treeStatsExecutor(
+            @Value("${tree.stats.queue-capacity:10000}") int queueCapacity) {
+        return workerPool("tree-stats", 1, queueCapacity, reject("tree-stats"));
+    }
+
+    /**
+     * Data-quality scans of trees. One thread, so scans of the same tree never overlap; a full queue
+     * skips the scan until the tree changes again or its findings are opened.
+     */
+    @Bean(name = "treeQualityExecutor")
+    public ThreadPoolTaskExecutor treeQualityExecutor(
+            @Value("${tree.quality.queue-capacity:10000}") int queueCapacity) {
+        return workerPool("tree-quality", 1, queueCapacity, reject("tree-quality"));
+    }
+
+    /**
+     * Creates a fixed-size worker pool with a bounded queue
+     */
+    private static ThreadPoolTaskExecutor workerPool(String name, int threads, int queueCapacity,
+                                                     RejectedExecutionHandler rejectionHandler) {
+        log.info("Initializing {} pool: threads={}, queue={}", name, threads, queueCapacity);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(name + "-");
+        executor.setRejectedExecutionHandler(rejectionHandler);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * When the pool is saturated, run the task on the submitting thread. Used where the submitter waits
+     * for the results anyway, so a full queue only slows it down.
+     */
+    private static RejectedExecutionHandler callerRuns(String name) {
+        return (task, pool) -> {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("The " + name + " pool is shut down");
+            }
+            log.debug("The {} pool is saturated, running the task on the submitting thread", name);
+            task.run();
+        };
+    }
+
+    /**
+     * When the pool is saturated, reject the task. The submitter catches the TaskRejectedException
+     * and skips the work or leaves it for later.
+     */
+    private static RejectedExecutionHandler reject(String name) {
+        return (task, pool) -> {
+            log.warn("The {} pool is saturated ({} queued), rejecting a task", name, pool.getQueue().size());
+            throw new RejectedExecutionException("The " + name + " pool is saturated");
+        };
+    }
+}
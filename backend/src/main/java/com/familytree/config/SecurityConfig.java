@@ -88,7 +88,10 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                     .antMatchers("/actuator/health", "/actuator/info")
                         .permitAll()
                     // Allow public access to view avatars (GET only)
-                    .antMatchers(HttpMethod.GET, "/api/trees/*/individuals/*/avatar")
+                    .antMatchers(HttpMethod.GET, "/api/trees/*/individuals/*/avatar", "/api/trees/*/individuals/*/avatar/*")
+                        .permitAll()
+                    // Avatar atlas sheets are public like the avatars they contain
+                    .antMatchers(HttpMethod.GET, "/api/trees/*/avatar-atlas/*/*")
                         .permitAll()
                     .anyRequest()
                         .authenticated();
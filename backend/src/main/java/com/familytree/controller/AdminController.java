@@ -2,6 +2,7 @@ package com.familytree.controller;
 
 import com.familytree.dto.admin.AdminLinkUserRequest;
 import com.familytree.dto.admin.CreateUserRequest;
+import com.familytree.dto.admin.TreeDeletionJobResponse;
 import com.familytree.dto.admin.UpdateUserRequest;
 import com.familytree.dto.admin.UserWithProfileResponse;
 import com.familytree.dto.response.UserResponse;
@@ -177,4 +178,33 @@ public class AdminController {
         List<UserResponse> users = adminService.createUsersFromTree(treeId, authentication.getName());
         return ResponseEntity.status(HttpStatus.CREATED).body(users);
     }
+
+    // ==================== Tree Deletion Jobs ====================
+
+    /**
+     * Get background tree deletion jobs with their progress
+     * GET /api/admin/tree-deletions
+     */
+    @GetMapping("/tree-deletions")
+    public ResponseEntity<Page<TreeDeletionJobResponse>> getTreeDeletionJobs(
+            Authentication authentication,
+            @PageableDefault(size = 20) Pageable pageable) {
+
+        log.info("Admin '{}' fetching tree deletion jobs", authentication.getName());
+        Page<TreeDeletionJobResponse> jobs = adminService.getTreeDeletionJobs(authentication.getName(), pageable);
+        return ResponseEntity.ok(jobs);
+    }
+
+    /**
+     * Get the progress of a tree deletion job
+     * GET /api/admin/tree-deletions/{jobId}
+     */
+    @GetMapping("/tree-deletions/{jobId}")
+    public ResponseEntity<TreeDeletionJobResponse> getTreeDeletionJob(
+            @PathVariable UUID jobId,
+            Authentication authentication) {
+
+        TreeDeletionJobResponse job = adminService.getTreeDeletionJob(jobId, authentication.getName());
+        return ResponseEntity.ok(job);
+    }
 }
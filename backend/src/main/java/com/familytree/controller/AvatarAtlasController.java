@@ -0,0 +1,82 @@
+package com.familytree.controller;
+
+import com.familytree.dto.tree.AvatarAtlasResponse;
+import com.familytree.service.AvatarAtlasService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * REST controller for avatar atlases: the avatars of a tree packed into a few images
+ */
+@RestController
+@RequestMapping("/api/trees/{treeId}/avatar-atlas")
+@RequiredArgsConstructor
+@Slf4j
+public class AvatarAtlasController {
+
+    private final AvatarAtlasService avatarAtlasService;
+
+    /**
+     * Get the avatar atlas of a tree
+     * GET /api/trees/{treeId}/avatar-atlas?size=140&ids={id},{id}
+     *
+     * @param treeId The tree ID
+     * @param size   Tile edge in pixels (16 to 192)
+     * @param ids    Individuals to include (default: everyone with an avatar)
+     * @return the atlas index: sheet image URLs and the tile position of every individual
+     */
+    @GetMapping
+    public ResponseEntity<AvatarAtlasResponse> getAtlas(
+            @PathVariable UUID treeId,
+            @RequestParam(defaultValue = "96") int size,
+            @RequestParam(required = false) List<UUID> ids,
+            Authentication authentication) {
+
+        log.info("Fetching avatar atlas of tree {} (tile size {}) for user: {}", treeId, size, authentication.getName());
+        return ResponseEntity.ok(avatarAtlasService.getAtlas(treeId, size, ids, authentication.getName()));
+    }
+
+    /**
+     * Get the avatar atlas of a list of individuals (for lists too long for a query string)
+     * POST /api/trees/{treeId}/avatar-atlas?size=140
+     * Body: [individualId, ...]
+     */
+    @PostMapping
+    public ResponseEntity<AvatarAtlasResponse> getAtlasForIndividuals(
+            @PathVariable UUID treeId,
+            @RequestParam(defaultValue = "96") int size,
+            @RequestBody List<UUID> ids,
+            Authentication authentication) {
+
+        log.info("Fetching avatar atlas of {} individuals in tree {} for user: {}", ids.size(), treeId, authentication.getName());
+        return ResponseEntity.ok(avatarAtlasService.getAtlas(treeId, size, ids, authentication.getName()));
+    }
+
+    /**
+     * Get a sheet image of an atlas
+     * GET /api/trees/{treeId}/avatar-atlas/{version}-{atlasId}/{sheet}
+     * Note: This endpoint is public like the avatars themselves, so sheets load in HTML img tags.
+     * A sheet never changes (its key covers the tree version and contents), so browsers cache it for a year.
+     */
+    @GetMapping("/{atlasKey:[0-9a-f]{32}-[0-9a-f]{32}}/{sheet:\\d+}")
+    public ResponseEntity<InputStreamResource> getSheet(
+            @PathVariable UUID treeId,
+            @PathVariable String atlasKey,
+            @PathVariable int sheet) throws Exception {
+
+        InputStreamResource resource = new InputStreamResource(avatarAtlasService.openSheet(treeId, atlasKey, sheet));
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable")
+                .contentType(MediaType.IMAGE_JPEG)
+                .body(resource);
+    }
+}
@@ -1,5 +1,6 @@
 package com.familytree.controller;
 
+import com.familytree.dto.gedcom.GedcomImportMode;
 import com.familytree.dto.gedcom.GedcomImportResult;
 import com.familytree.security.UserPrincipal;
 import com.familytree.service.GedcomService;
@@ -35,6 +36,8 @@ public class GedcomController {
      *
      * @param treeId The ID of the tree to import into
      * @param file The GEDCOM file to import
+     * @param mode APPEND creates every record; DIFF applies only changes since the previous import
+     * @param dryRun When true the changes are computed and returned but not written
      * @param userPrincipal The authenticated user
      * @return Import result with statistics and messages
      */
@@ -42,16 +45,18 @@ public class GedcomController {
     public ResponseEntity<GedcomImportResult> importGedcom(
             @PathVariable String treeId,
             @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "mode", defaultValue = "APPEND") GedcomImportMode mode,
+            @RequestParam(value = "dryRun", defaultValue = "false") boolean dryRun,
             @AuthenticationPrincipal UserPrincipal userPrincipal) {
 
         try {
             UUID treeUuid = UUID.fromString(treeId);
             UUID userId = userPrincipal.getId();
 
-            log.info("GEDCOM import requested by user {} for tree {}", userId, treeId);
+            log.info("GEDCOM import requested by user {} for tree {} (mode={}, dryRun={})", userId, treeId, mode, dryRun);
             log.info("File: {}, size: {} bytes", file.getOriginalFilename(), file.getSize());
 
-            GedcomImportResult result = gedcomService.importGedcom(file, treeUuid, userId);
+            GedcomImportResult result = gedcomService.importGedcom(file, treeUuid, userId, mode, dryRun);
 
             if (result.isSuccess()) {
                 log.info("GEDCOM import successful: {} individuals, {} relationships",
@@ -1,8 +1,10 @@
 package com.familytree.controller;
 
+import com.familytree.dto.individual.AvatarObject;
 import com.familytree.dto.individual.CreateIndividualRequest;
 import com.familytree.dto.individual.IndividualResponse;
 import com.familytree.dto.individual.UpdateIndividualRequest;
+import com.familytree.service.AvatarCache;
 import com.familytree.service.IndividualService;
 import com.familytree.service.MinioService;
 import lombok.RequiredArgsConstructor;
@@ -17,13 +19,16 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.validation.Valid;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -38,6 +43,7 @@ public class IndividualController {
 
     private final IndividualService individualService;
     private final MinioService minioService;
+    private final AvatarCache avatarCache;
 
     /**
      * Create a new individual in a tree
@@ -205,49 +211,64 @@ public class IndividualController {
 
     /**
      * Get/stream profile picture/avatar for an individual
-     * GET /api/trees/{treeId}/individuals/{id}/avatar
+     * GET /api/trees/{treeId}/individuals/{id}/avatar/{version}?w={width}
      * Note: This endpoint is public to allow avatar images to load in HTML img tags
+     * version is the avatar hash from profilePictureUrl: a matching version is cached by browsers for a year,
+     * since a new upload gets a new URL. w selects the smallest resized copy at least w pixels wide.
      */
-    @GetMapping("/{id}/avatar")
+    @GetMapping({"/{id}/avatar", "/{id}/avatar/{version}"})
     public ResponseEntity<InputStreamResource> getAvatar(
             @PathVariable UUID treeId,
-            @PathVariable UUID id) {
+            @PathVariable UUID id,
+            @PathVariable(required = false) String version,
+            @RequestParam(value = "w", required = false) Integer width,
+            WebRequest webRequest) {
 
         try {
-            log.info("Fetching avatar for individual {}", id);
+            log.debug("Fetching avatar for individual {}", id);
 
-            // Find avatar file in MinIO directly (don't need to verify ownership for public view)
-            String prefix = "avatars/individuals/" + id + "/";
-            List<String> files = minioService.listFiles(prefix);
+            // Don't need to verify ownership for public view
+            AvatarObject avatar = individualService.findAvatarObject(id, width);
 
-            if (files.isEmpty()) {
+            if (avatar == null) {
                 log.warn("No avatar file found for individual {}", id);
                 return ResponseEntity.notFound().build();
             }
 
-            // Get the first file (should only be one avatar)
-            String objectName = files.get(0);
-            InputStream inputStream = minioService.downloadFile(objectName);
-            InputStreamResource resource = new InputStreamResource(inputStream);
-
-            // Determine content type from file extension
-            String contentType = "image/jpeg"; // default
-            if (objectName.endsWith(".png")) {
-                contentType = "image/png";
-            } else if (objectName.endsWith(".gif")) {
-                contentType = "image/gif";
-            } else if (objectName.endsWith(".webp")) {
-                contentType = "image/webp";
+            // Answers 304 (and sets the ETag header) when the browser already has this version
+            String eTag = "\"" + DigestUtils.md5DigestAsHex(
+                    (avatar.getHash() + avatar.getObjectName()).getBytes(StandardCharsets.UTF_8)) + "\"";
+            if (webRequest.checkNotModified(eTag)) {
+                return null;
+            }
+
+            String objectName = avatar.getObjectName();
+            byte[] bytes = avatarCache.get(objectName, avatar.getHash());
+            if (bytes == null && avatarCache.accepts(avatar.getSize())) {
+                try (InputStream inputStream = minioService.downloadFile(objectName)) {
+                    bytes = inputStream.readAllBytes();
+                }
+                avatarCache.put(objectName, avatar.getHash(), bytes);
             }
 
             HttpHeaders headers = new HttpHeaders();
             headers.add(HttpHeaders.CONTENT_DISPOSITION, "inline");
-            headers.add(HttpHeaders.CACHE_CONTROL, "max-age=3600");
+            // Unversioned or outdated URLs are revalidated on every use
+            headers.add(HttpHeaders.CACHE_CONTROL, avatar.getHash().equals(version)
+                    ? "public, max-age=31536000, immutable" : "no-cache");
 
-            return ResponseEntity.ok()
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
                     .headers(headers)
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .body(resource);
+                    .contentType(MediaType.parseMediaType(
+                            avatar.getContentType() != null ? avatar.getContentType() : "image/jpeg"));
+            if (bytes != null) {
+                return response.contentLength(bytes.length)
+                        .body(new InputStreamResource(new ByteArrayInputStream(bytes)));
+            }
+            if (avatar.getSize() != null) {
+                response.contentLength(avatar.getSize());
+            }
+            return response.body(new InputStreamResource(minioService.downloadFile(objectName)));
 
         } catch (Exception e) {
             log.error("Error fetching avatar for individual {}", id, e);
@@ -3,22 +3,34 @@ package com.familytree.controller;
 import com.familytree.dto.media.MediaResponse;
 import com.familytree.dto.media.UpdateMediaRequest;
 import com.familytree.model.Media;
+import com.familytree.service.MediaArchiveService;
 import com.familytree.service.MediaService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.util.List;
-import java.util.UUID;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * REST controller for media management
@@ -29,6 +41,7 @@ import java.util.UUID;
 public class MediaController {
 
     private final MediaService mediaService;
+    private final MediaArchiveService mediaArchiveService;
 
     /**
      * Upload media file for an individual
@@ -53,6 +66,34 @@ public class MediaController {
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    /**
+     * Upload media file for an individual as the raw request body.
+     * The file is streamed to storage as it arrives, which suits large files (up to media.upload.max-size).
+     * PUT /api/individuals/{individualId}/media/stream?filename={name}&caption={caption}
+     */
+    @PutMapping("/api/individuals/{individualId}/media/stream")
+    public ResponseEntity<MediaResponse> uploadMediaStream(
+            @PathVariable UUID individualId,
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "caption", required = false) String caption,
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+            InputStream body,
+            Authentication authentication) {
+
+        log.info("Streaming media upload {} for individual {} by user: {}", filename, individualId, authentication.getName());
+
+        MediaResponse response = mediaService.uploadMediaStream(
+                individualId,
+                body,
+                filename,
+                contentType,
+                caption,
+                authentication.getName()
+        );
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
     /**
      * List all media for an individual
      * GET /api/individuals/{individualId}/media
@@ -72,6 +113,30 @@ public class MediaController {
         return ResponseEntity.ok(mediaList);
     }
 
+    /**
+     * Download all media of a tree as a ZIP archive, one folder per individual, with a manifest.csv
+     * GET /api/trees/{treeId}/media/archive?rootIndividualId={id}
+     * With rootIndividualId, only the branch around that individual is included.
+     * The archive is streamed while it is built, so its size is not known in advance.
+     */
+    @GetMapping("/api/trees/{treeId}/media/archive")
+    public ResponseEntity<StreamingResponseBody> downloadMediaArchive(
+            @PathVariable UUID treeId,
+            @RequestParam(value = "rootIndividualId", required = false) UUID rootIndividualId,
+            Authentication authentication) {
+
+        log.info("Downloading media archive of tree {} by user: {}", treeId, authentication.getName());
+
+        MediaArchiveService.MediaArchive archive =
+                mediaArchiveService.prepareArchive(treeId, rootIndividualId, authentication.getName());
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(archive.getFileName(), StandardCharsets.UTF_8).build().toString())
+                .body(outputStream -> mediaArchiveService.writeArchive(archive, outputStream));
+    }
+
     /**
      * Get media by ID (metadata only)
      * GET /api/media/{id}
@@ -121,68 +186,56 @@ public class MediaController {
     /**
      * Download media file
      * GET /api/media/{id}/download
+     * Supports Range requests (to resume downloads) and conditional requests.
      */
     @GetMapping("/api/media/{id}/download")
     public ResponseEntity<InputStreamResource> downloadMedia(
             @PathVariable UUID id,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            WebRequest webRequest,
             Authentication authentication) {
 
         log.info("Downloading media {} by user: {}", id, authentication.getName());
 
-        // Get media metadata
         Media media = mediaService.getMediaEntity(id, authentication.getName());
-        
-        // Get file stream
-        InputStream inputStream = mediaService.downloadMedia(id, authentication.getName());
-        InputStreamResource resource = new InputStreamResource(inputStream);
-
-        // Set headers for file download
-        HttpHeaders headers = new HttpHeaders();
-        headers.add(HttpHeaders.CONTENT_DISPOSITION, 
-                "attachment; filename=\"" + media.getFilename() + "\"");
-        headers.add(HttpHeaders.CACHE_CONTROL, "max-age=3600");
-        
-        // Parse media type
-        MediaType mediaType = parseMediaType(media.getMimeType());
-
-        return ResponseEntity.ok()
-                .headers(headers)
-                .contentType(mediaType)
-                .contentLength(media.getFileSize() != null ? media.getFileSize() : -1)
-                .body(resource);
+        if (mediaService.isPresignedDelivery()) {
+            return redirectTo(mediaService.getPresignedMediaUrl(media, true));
+        }
+        return serveMedia(media, "attachment; filename=\"" + media.getFilename() + "\"", range, ifRange, webRequest);
     }
 
     /**
      * Stream media file (for inline viewing)
-     * GET /api/media/{id}/stream
+     * GET /api/media/{id}/stream?w={width}
+     * Supports Range requests (to seek in audio and video) and conditional requests.
+     * For images, w selects the smallest resized copy at least w pixels wide.
      */
     @GetMapping("/api/media/{id}/stream")
     public ResponseEntity<InputStreamResource> streamMedia(
             @PathVariable UUID id,
+            @RequestParam(value = "w", required = false) Integer width,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            WebRequest webRequest,
             Authentication authentication) {
 
         log.info("Streaming media {} by user: {}", id, authentication.getName());
 
-        // Get media metadata
         Media media = mediaService.getMediaEntity(id, authentication.getName());
-        
-        // Get file stream
-        InputStream inputStream = mediaService.downloadMedia(id, authentication.getName());
-        InputStreamResource resource = new InputStreamResource(inputStream);
 
-        // Set headers for inline viewing
-        HttpHeaders headers = new HttpHeaders();
-        headers.add(HttpHeaders.CONTENT_DISPOSITION, "inline");
-        headers.add(HttpHeaders.CACHE_CONTROL, "max-age=3600");
-        
-        // Parse media type
-        MediaType mediaType = parseMediaType(media.getMimeType());
+        String derivative = width != null ? mediaService.findDerivative(media, width) : null;
+        if (derivative != null) {
+            if (mediaService.isPresignedDelivery()) {
+                return redirectTo(mediaService.getPresignedDerivativeUrl(media, derivative));
+            }
+            return serveDerivative(media, derivative, webRequest);
+        }
 
-        return ResponseEntity.ok()
-                .headers(headers)
-                .contentType(mediaType)
-                .contentLength(media.getFileSize() != null ? media.getFileSize() : -1)
-                .body(resource);
+        if (mediaService.isPresignedDelivery()) {
+            return redirectTo(mediaService.getPresignedMediaUrl(media, false));
+        }
+        return serveMedia(media, "inline", range, ifRange, webRequest);
     }
 
     /**
@@ -197,6 +250,11 @@ public class MediaController {
         log.info("Downloading thumbnail for media {} by user: {}", id, authentication.getName());
 
         try {
+            if (mediaService.isPresignedDelivery()) {
+                Media media = mediaService.getMediaEntity(id, authentication.getName());
+                return redirectTo(mediaService.getPresignedThumbnailUrl(media));
+            }
+
             InputStream inputStream = mediaService.downloadThumbnail(id, authentication.getName());
             InputStreamResource resource = new InputStreamResource(inputStream);
 
@@ -217,6 +275,158 @@ public class MediaController {
 
     // ========== Private Helper Methods ==========
 
+    /**
+     * Serve a media file: 304 if the client's copy is current, otherwise the whole file (200),
+     * one byte range (206) or several byte ranges as multipart/byteranges (206).
+     * Only the requested ranges are read from storage.
+     */
+    private ResponseEntity<InputStreamResource> serveMedia(Media media, String contentDisposition,
+                                                           String range, String ifRange, WebRequest webRequest) {
+        // Stored files never change (a new upload gets a new storage path), so the path identifies the content
+        String eTag = "\"" + DigestUtils.md5DigestAsHex(media.getStoragePath().getBytes(StandardCharsets.UTF_8)) + "\"";
+        long lastModified = media.getUploadedAt() != null
+                ? media.getUploadedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : -1;
+
+        // Also adds the ETag and Last-Modified headers to the response
+        if (webRequest.checkNotModified(eTag, lastModified)) {
+            return null;
+        }
+
+        long size = mediaService.getMediaSize(media);
+        MediaType mediaType = parseMediaType(media.getMimeType());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        headers.add(HttpHeaders.CACHE_CONTROL, "max-age=3600");
+        headers.add(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        List<HttpRange> ranges = requestedRanges(range, ifRange, eTag);
+        if (ranges.isEmpty()) {
+            InputStream inputStream = mediaService.downloadMedia(media, 0, -1);
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .contentType(mediaType)
+                    .contentLength(size)
+                    .body(new InputStreamResource(inputStream));
+        }
+
+        // Resolve the ranges to [first byte, last byte] within the file. A range starting past the end is
+        // unsatisfiable, and (as in Spring's resource handling) so are ranges adding up to more than the file
+        List<long[]> regions = new ArrayList<>(ranges.size());
+        long requested = 0;
+        boolean satisfiable = true;
+        try {
+            for (HttpRange httpRange : ranges) {
+                long start = httpRange.getRangeStart(size);
+                long end = httpRange.getRangeEnd(size);
+                satisfiable &= start < size;
+                requested += end - start + 1;
+                regions.add(new long[] {start, end});
+            }
+        } catch (IllegalArgumentException e) {
+            satisfiable = false;
+        }
+        if (!satisfiable || requested > size) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                    .build();
+        }
+
+        if (regions.size() == 1) {
+            long start = regions.get(0)[0];
+            long end = regions.get(0)[1];
+            headers.add(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+
+            InputStream inputStream = mediaService.downloadMedia(media, start, end - start + 1);
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .headers(headers)
+                    .contentType(mediaType)
+                    .contentLength(end - start + 1)
+                    .body(new InputStreamResource(inputStream));
+        }
+
+        // Multiple ranges: each part is a header block followed by the range, read from storage when reached
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<Supplier<InputStream>> parts = new ArrayList<>();
+        long contentLength = 0;
+        for (long[] region : regions) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n" +
+                    HttpHeaders.CONTENT_TYPE + ": " + mediaType + "\r\n" +
+                    HttpHeaders.CONTENT_RANGE + ": bytes " + region[0] + "-" + region[1] + "/" + size + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            parts.add(() -> new ByteArrayInputStream(partHeader));
+            parts.add(() -> mediaService.downloadMedia(media, region[0], region[1] - region[0] + 1));
+            contentLength += partHeader.length + region[1] - region[0] + 1;
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        parts.add(() -> new ByteArrayInputStream(closing));
+        contentLength += closing.length;
+
+        Iterator<Supplier<InputStream>> partIterator = parts.iterator();
+        InputStream multipartStream = new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return partIterator.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return partIterator.next().get();
+            }
+        });
+
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .headers(headers)
+                .contentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary))
+                .contentLength(contentLength)
+                .body(new InputStreamResource(multipartStream));
+    }
+
+    /**
+     * Serve a resized copy of an image. Copies are small and stored under a key derived from the
+     * original, so they are served whole and validated by that key.
+     */
+    private ResponseEntity<InputStreamResource> serveDerivative(Media media, String objectName, WebRequest webRequest) {
+        String eTag = "\"" + DigestUtils.md5DigestAsHex(objectName.getBytes(StandardCharsets.UTF_8)) + "\"";
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
+        InputStream inputStream = mediaService.downloadDerivative(objectName);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "inline")
+                .header(HttpHeaders.CACHE_CONTROL, "max-age=3600")
+                .contentType(parseMediaType(mediaService.getDerivativeContentType(media)))
+                .body(new InputStreamResource(inputStream));
+    }
+
+    /**
+     * Redirect the client to a presigned storage URL, so the file is not streamed through the API
+     */
+    private ResponseEntity<InputStreamResource> redirectTo(String presignedUrl) {
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .location(URI.create(presignedUrl))
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .build();
+    }
+
+    /**
+     * Parse the Range header. Returns no ranges (serve the whole file) if there is none, if it is malformed,
+     * or if If-Range names another version than the current one (only ETags are accepted as If-Range validator).
+     */
+    private List<HttpRange> requestedRanges(String range, String ifRange, String eTag) {
+        if (range == null || (ifRange != null && !ifRange.equals(eTag))) {
+            return Collections.emptyList();
+        }
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring invalid Range header '{}': {}", range, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
     /**
      * Parse MIME type string to Spring MediaType
      */
@@ -0,0 +1,109 @@
+package com.familytree.controller;
+
+import com.familytree.dto.archive.TreeImportJobResponse;
+import com.familytree.service.TreeArchiveService;
+import com.familytree.service.TreeImportService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * REST controller for portable tree archives (tree data with media, for backups and moving trees
+ * between instances)
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+public class TreeArchiveController {
+
+    private final TreeArchiveService treeArchiveService;
+    private final TreeImportService treeImportService;
+
+    /**
+     * Export a tree as a tree archive, streamed while it is built
+     * GET /api/trees/{treeId}/archive
+     */
+    @GetMapping("/api/trees/{treeId}/archive")
+    public ResponseEntity<StreamingResponseBody> exportArchive(
+            @PathVariable UUID treeId,
+            Authentication authentication) {
+
+        log.info("Exporting archive of tree {} by user: {}", treeId, authentication.getName());
+
+        String fileName = treeArchiveService.prepareExport(treeId, authentication.getName());
+        String userEmail = authentication.getName();
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(fileName, StandardCharsets.UTF_8).build().toString())
+                .body(outputStream -> treeArchiveService.writeArchive(treeId, userEmail, outputStream));
+    }
+
+    /**
+     * Import a tree archive into a new tree, sent as the raw request body.
+     * The archive is stored and then loaded in the background; poll the returned job for progress.
+     * PUT /api/tree-imports?filename={name}
+     */
+    @PutMapping("/api/tree-imports")
+    public ResponseEntity<TreeImportJobResponse> importArchive(
+            @RequestParam(value = "filename", required = false) String filename,
+            InputStream body,
+            Authentication authentication) {
+
+        log.info("Importing tree archive {} by user: {}", filename, authentication.getName());
+        TreeImportJobResponse job = treeImportService.startImport(body, filename, authentication.getName());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    /**
+     * List the current user's tree imports, most recent first
+     * GET /api/tree-imports
+     */
+    @GetMapping("/api/tree-imports")
+    public ResponseEntity<Page<TreeImportJobResponse>> listImports(
+            @PageableDefault(size = 20) Pageable pageable,
+            Authentication authentication) {
+
+        return ResponseEntity.ok(treeImportService.getImportJobs(authentication.getName(), pageable));
+    }
+
+    /**
+     * Get the progress of a tree import
+     * GET /api/tree-imports/{jobId}
+     */
+    @GetMapping("/api/tree-imports/{jobId}")
+    public ResponseEntity<TreeImportJobResponse> getImport(
+            @PathVariable UUID jobId,
+            Authentication authentication) {
+
+        return ResponseEntity.ok(treeImportService.getImportJob(jobId, authentication.getName()));
+    }
+
+    /**
+     * Retry a failed tree import, continuing from its last checkpoint
+     * POST /api/tree-imports/{jobId}/retry
+     */
+    @PostMapping("/api/tree-imports/{jobId}/retry")
+    public ResponseEntity<TreeImportJobResponse> retryImport(
+            @PathVariable UUID jobId,
+            Authentication authentication) {
+
+        log.info("Retrying tree import {} by user: {}", jobId, authentication.getName());
+        return ResponseEntity.ok(treeImportService.retryImport(jobId, authentication.getName()));
+    }
+}
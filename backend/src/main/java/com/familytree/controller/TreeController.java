@@ -2,11 +2,14 @@ package com.familytree.controller;
 
 import com.familytree.dto.clone.IndividualCloneInfoResponse;
 import com.familytree.dto.clone.TreeCloneInfoResponse;
+import com.familytree.dto.tree.CloneBranchPreviewResponse;
 import com.familytree.dto.tree.CreateTreeFromIndividualRequest;
 import com.familytree.dto.tree.CreateTreeFromIndividualResponse;
 import com.familytree.dto.tree.CreateTreeRequest;
+import com.familytree.dto.tree.TreeAnalyticsResponse;
 import com.familytree.dto.tree.TreeResponse;
 import com.familytree.dto.tree.UpdateTreeRequest;
+import com.familytree.service.TreeAnalyticsService;
 import com.familytree.service.TreeCloneService;
 import com.familytree.service.TreeService;
 import lombok.RequiredArgsConstructor;
@@ -34,6 +37,7 @@ public class TreeController {
 
     private final TreeService treeService;
     private final TreeCloneService treeCloneService;
+    private final TreeAnalyticsService treeAnalyticsService;
 
     /**
      * Create a new family tree
@@ -124,6 +128,25 @@ public class TreeController {
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    /**
+     * Preview creating a new tree from an individual (counts of what would be copied)
+     * Only system admins can do this
+     * GET /api/trees/{treeId}/individuals/{individualId}/clone-preview
+     */
+    @GetMapping("/{treeId}/individuals/{individualId}/clone-preview")
+    public ResponseEntity<CloneBranchPreviewResponse> previewTreeFromIndividual(
+            @PathVariable UUID treeId,
+            @PathVariable UUID individualId,
+            Authentication authentication) {
+
+        log.info("Previewing new tree from individual {} in tree {}, requested by: {}",
+                individualId, treeId, authentication.getName());
+
+        CloneBranchPreviewResponse response = treeCloneService.previewTreeFromIndividual(
+                treeId, individualId, authentication.getName());
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Check if an individual has already been exported to a separate tree
      * GET /api/trees/{treeId}/individuals/{individualId}/is-exported
@@ -176,6 +199,20 @@ public class TreeController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Get the analytics of a tree: generations, lifespans, birth decades, common names, largest families,
+     * longest lineages, isolated individuals and connected groups
+     * GET /api/trees/{treeId}/analytics
+     */
+    @GetMapping("/{treeId}/analytics")
+    public ResponseEntity<TreeAnalyticsResponse> getTreeAnalytics(
+            @PathVariable UUID treeId,
+            Authentication authentication) {
+
+        log.info("Fetching analytics of tree {} for user: {}", treeId, authentication.getName());
+        return ResponseEntity.ok(treeAnalyticsService.getAnalytics(treeId, authentication.getName()));
+    }
+
     /**
      * Add a tree admin
      * Only the owner can add tree admins
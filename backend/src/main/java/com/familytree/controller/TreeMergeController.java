@@ -1,9 +1,11 @@
 package com.familytree.controller;
 
 import com.familytree.dto.merge.*;
+import com.familytree.service.MergePreviewJobService;
 import com.familytree.service.TreeMergeService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -22,6 +24,7 @@ import java.util.UUID;
 public class TreeMergeController {
 
     private final TreeMergeService mergeService;
+    private final MergePreviewJobService previewJobService;
 
     /**
      * Preview a merge operation without making changes
@@ -55,6 +58,55 @@ public class TreeMergeController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * Start a merge preview as a background job
+     * POST /api/trees/{targetTreeId}/merge/preview-jobs
+     */
+    @PostMapping("/preview-jobs")
+    public ResponseEntity<MergePreviewJobResponse> startPreviewJob(
+            @PathVariable UUID targetTreeId,
+            @Valid @RequestBody TreeMergeRequest request,
+            @AuthenticationPrincipal UserDetails userDetails) {
+
+        log.info("Preview merge job request: source={}, target={}, strategy={}",
+                request.getSourceTreeId(), targetTreeId, request.getStrategy());
+
+        MergePreviewJobResponse job = previewJobService.startPreview(targetTreeId, request, userDetails.getUsername());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    /**
+     * Poll a merge preview job (progress, and the preview once completed)
+     * GET /api/trees/{targetTreeId}/merge/preview-jobs/{previewId}
+     */
+    @GetMapping("/preview-jobs/{previewId}")
+    public ResponseEntity<MergePreviewJobResponse> getPreviewJob(
+            @PathVariable UUID targetTreeId,
+            @PathVariable UUID previewId,
+            @AuthenticationPrincipal UserDetails userDetails) {
+
+        MergePreviewJobResponse job = previewJobService.getPreview(targetTreeId, previewId, userDetails.getUsername());
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * Execute a stored merge preview (reuses its matches if neither tree changed)
+     * POST /api/trees/{targetTreeId}/merge/preview-jobs/{previewId}/execute
+     */
+    @PostMapping("/preview-jobs/{previewId}/execute")
+    public ResponseEntity<MergeResultResponse> executePreviewJob(
+            @PathVariable UUID targetTreeId,
+            @PathVariable UUID previewId,
+            @Valid @RequestBody(required = false) TreeMergeRequest request,
+            @AuthenticationPrincipal UserDetails userDetails) {
+
+        log.info("Execute merge preview {} on target {}", previewId, targetTreeId);
+
+        MergeResultResponse result = previewJobService.executePreview(
+                targetTreeId, previewId, request, userDetails.getUsername());
+        return ResponseEntity.ok(result);
+    }
+
     /**
      * Get available merge strategies
      */
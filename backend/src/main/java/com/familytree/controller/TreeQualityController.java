@@ -0,0 +1,56 @@
+package com.familytree.controller;
+
+import com.familytree.dto.quality.TreeQualityReportResponse;
+import com.familytree.model.QualityIssueType;
+import com.familytree.service.TreeQualityService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.UUID;
+
+/**
+ * REST controller for the data-quality findings of a tree (for tree editors)
+ */
+@RestController
+@RequestMapping("/api/trees/{treeId}/quality")
+@RequiredArgsConstructor
+@Slf4j
+public class TreeQualityController {
+
+    private final TreeQualityService treeQualityService;
+
+    /**
+     * Get the data-quality findings of a tree
+     * GET /api/trees/{treeId}/quality?type=POSSIBLE_DUPLICATE
+     *
+     * @param treeId The tree ID
+     * @param type   Only findings of this type (default: all)
+     * @return the findings and the state of the scan; if they are out of date a scan is queued
+     */
+    @GetMapping
+    public ResponseEntity<TreeQualityReportResponse> getReport(
+            @PathVariable UUID treeId,
+            @RequestParam(required = false) QualityIssueType type,
+            Authentication authentication) {
+
+        log.info("Fetching data-quality findings of tree {} for user: {}", treeId, authentication.getName());
+        return ResponseEntity.ok(treeQualityService.getReport(treeId, type, authentication.getName()));
+    }
+
+    /**
+     * Queue a full rescan of a tree
+     * POST /api/trees/{treeId}/quality/scan
+     */
+    @PostMapping("/scan")
+    public ResponseEntity<Void> requestScan(
+            @PathVariable UUID treeId,
+            Authentication authentication) {
+
+        log.info("Full data-quality scan of tree {} requested by user: {}", treeId, authentication.getName());
+        treeQualityService.requestFullScan(treeId, authentication.getName());
+        return ResponseEntity.accepted().build();
+    }
+}
@@ -0,0 +1,62 @@
+package com.familytree.dto.admin;
+
+import com.familytree.model.TreeDeletionJob;
+import com.familytree.model.TreeDeletionStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Response DTO for a background tree deletion job
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TreeDeletionJobResponse {
+
+    private UUID id;
+    private UUID treeId;
+    private String treeName;
+    private String requestedBy;
+    private TreeDeletionStatus status;
+
+    /**
+     * Current step of the purge
+     */
+    private String stage;
+
+    private int objectsTotal;
+    private int objectsDeleted;
+    private int objectsFailed;
+    private long rowsDeleted;
+    private int attempts;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime completedAt;
+
+    public static TreeDeletionJobResponse fromJob(TreeDeletionJob job) {
+        return TreeDeletionJobResponse.builder()
+                .id(job.getId())
+                .treeId(job.getTreeId())
+                .treeName(job.getTreeName())
+                .requestedBy(job.getRequestedBy())
+                .status(job.getStatus())
+                .stage(job.getStage())
+                .objectsTotal(job.getObjectsTotal())
+                .objectsDeleted(job.getObjectsDeleted())
+                .objectsFailed(job.getObjectsFailed())
+                .rowsDeleted(job.getRowsDeleted())
+                .attempts(job.getAttempts())
+                .errorMessage(job.getErrorMessage())
+                .createdAt(job.getCreatedAt())
+                .updatedAt(job.getUpdatedAt())
+                .completedAt(job.getCompletedAt())
+                .build();
+    }
+}
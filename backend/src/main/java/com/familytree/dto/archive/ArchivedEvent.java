@@ -0,0 +1,27 @@
+package com.familytree.dto.archive;
+
+import com.familytree.model.EventType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Line of events.ndjson in a tree archive
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ArchivedEvent {
+
+    private UUID id;
+    private UUID individualId;
+    private EventType type;
+    private LocalDate eventDate;
+    private String place;
+    private String description;
+}
@@ -0,0 +1,41 @@
+package com.familytree.dto.archive;
+
+import com.familytree.model.Gender;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Line of individuals.ndjson in a tree archive
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ArchivedIndividual {
+
+    private UUID id;
+    private String givenName;
+    private String middleName;
+    private String surname;
+    private String suffix;
+    private Gender gender;
+    private LocalDate birthDate;
+    private String birthPlace;
+    private LocalDate deathDate;
+    private String deathPlace;
+    private String biography;
+    private String notes;
+    private String facebookLink;
+    private String phoneNumber;
+
+    // Content type of the avatar stored under avatars/, if any
+    private String avatarContentType;
+
+    // Clone lineage the individual belongs to, if it was ever cloned
+    private UUID lineageId;
+}
@@ -0,0 +1,34 @@
+package com.familytree.dto.archive;
+
+import com.familytree.model.MediaType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Line of media.ndjson in a tree archive
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ArchivedMedia {
+
+    private UUID id;
+    private UUID individualId;
+    private MediaType type;
+    private String filename;
+    private String caption;
+    private Long fileSize;
+    private String mimeType;
+    private String checksum;
+    private LocalDateTime uploadedAt;
+
+    // Key of the content under files/: the checksum, or an ID derived from the storage path for
+    // files stored before checksums were recorded. Records with the same content share one file.
+    private String file;
+}
@@ -0,0 +1,22 @@
+package com.familytree.dto.archive;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * Line of profiles.ndjson in a tree archive: a user linked to an individual of the tree.
+ * Users are identified by email, the link is restored if the user exists where the archive is imported.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ArchivedProfile {
+
+    private String userEmail;
+    private UUID individualId;
+}
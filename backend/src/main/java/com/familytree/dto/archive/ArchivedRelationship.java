@@ -0,0 +1,27 @@
+package com.familytree.dto.archive;
+
+import com.familytree.model.RelationshipType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Line of relationships.ndjson in a tree archive
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ArchivedRelationship {
+
+    private UUID id;
+    private UUID individual1Id;
+    private UUID individual2Id;
+    private RelationshipType type;
+    private LocalDate startDate;
+    private LocalDate endDate;
+}
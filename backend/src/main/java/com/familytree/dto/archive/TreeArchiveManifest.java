@@ -0,0 +1,58 @@
+package com.familytree.dto.archive;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * manifest.json of a tree archive, always its first entry.
+ *
+ * Archive layout (format version 1), entries in this order:
+ * <pre>
+ * manifest.json
+ * individuals.ndjson     one ArchivedIndividual per line
+ * avatars/{id}{ext}      avatar image of an individual
+ * relationships.ndjson   one ArchivedRelationship per line
+ * events.ndjson          one ArchivedEvent per line
+ * profiles.ndjson        one ArchivedProfile per line
+ * media.ndjson           one ArchivedMedia per line
+ * files/{key}            content of the media files, once per distinct file
+ * </pre>
+ * IDs are those of the exported tree; an import gives every record a new ID.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TreeArchiveManifest {
+
+    public static final String FORMAT = "familytree-archive";
+    public static final int VERSION = 1;
+
+    private String format;
+    private int version;
+    private LocalDateTime exportedAt;
+    private String exportedBy;
+
+    private UUID treeId;
+    private String name;
+    private String description;
+    private UUID rootIndividualId;
+    private LocalDateTime createdAt;
+
+    // Clone tracking of the exported tree
+    private UUID sourceTreeId;
+    private UUID sourceIndividualId;
+    private LocalDateTime clonedAt;
+    private UUID lineageId;
+
+    // Record counts, for progress reporting
+    private long individuals;
+    private long relationships;
+    private long events;
+    private long media;
+}
@@ -0,0 +1,62 @@
+package com.familytree.dto.archive;
+
+import com.familytree.model.TreeImportJob;
+import com.familytree.model.TreeImportStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Response DTO for a tree archive import job
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TreeImportJobResponse {
+
+    private UUID id;
+    private String fileName;
+    private Long archiveSize;
+    private String requestedBy;
+    private UUID treeId;
+    private String treeName;
+    private TreeImportStatus status;
+
+    /**
+     * Current step of the import
+     */
+    private String stage;
+
+    private long recordsTotal;
+    private long recordsImported;
+    private int filesImported;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime completedAt;
+
+    public static TreeImportJobResponse fromJob(TreeImportJob job) {
+        return TreeImportJobResponse.builder()
+                .id(job.getId())
+                .fileName(job.getFileName())
+                .archiveSize(job.getArchiveSize())
+                .requestedBy(job.getRequestedBy())
+                .treeId(job.getTreeId())
+                .treeName(job.getTreeName())
+                .status(job.getStatus())
+                .stage(job.getStage())
+                .recordsTotal(job.getRecordsTotal())
+                .recordsImported(job.getRecordsImported())
+                .filesImported(job.getFilesImported())
+                .errorMessage(job.getErrorMessage())
+                .createdAt(job.getCreatedAt())
+                .updatedAt(job.getUpdatedAt())
+                .completedAt(job.getCompletedAt())
+                .build();
+    }
+}
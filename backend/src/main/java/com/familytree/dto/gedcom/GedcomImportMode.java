@@ -0,0 +1,17 @@
+package com.familytree.dto.gedcom;
+
+/**
+ * How a GEDCOM file is applied to a tree
+ */
+public enum GedcomImportMode {
+    /**
+     * Every record in the file is created as a new individual
+     */
+    APPEND,
+
+    /**
+     * Records are matched to the previous import by XREF and only the
+     * inserted, updated and deleted records are applied
+     */
+    DIFF
+}
@@ -27,6 +27,47 @@ public class GedcomImportResult {
      */
     private int relationshipsImported;
 
+    /**
+     * Number of previously imported individuals updated from the file (diff mode)
+     */
+    private int individualsUpdated;
+
+    /**
+     * Number of previously imported individuals removed because their record is gone (diff mode)
+     */
+    private int individualsDeleted;
+
+    /**
+     * Number of previously imported individuals whose record did not change (diff mode)
+     */
+    private int individualsUnchanged;
+
+    /**
+     * Number of imported relationships whose marriage or divorce date changed in the file (diff mode)
+     */
+    private int relationshipsUpdated;
+
+    /**
+     * Number of imported relationships removed because their family link is gone (diff mode)
+     */
+    private int relationshipsDeleted;
+
+    /**
+     * Mode the file was applied with
+     */
+    private GedcomImportMode mode;
+
+    /**
+     * Whether the changes were only previewed and not written
+     */
+    private boolean dryRun;
+
+    /**
+     * Per-record changes computed in diff mode
+     */
+    @Builder.Default
+    private List<GedcomRecordChange> changes = new ArrayList<>();
+
     /**
      * Warning messages (non-fatal issues)
      */
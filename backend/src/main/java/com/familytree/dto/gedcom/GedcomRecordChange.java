@@ -0,0 +1,42 @@
+package com.familytree.dto.gedcom;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A single record change computed by a GEDCOM diff import
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class GedcomRecordChange {
+
+    public enum ChangeType {
+        INSERTED,
+        UPDATED,
+        DELETED
+    }
+
+    /**
+     * GEDCOM record identifier
+     */
+    private String xref;
+
+    /**
+     * Kind of change
+     */
+    private ChangeType changeType;
+
+    /**
+     * Display name of the individual
+     */
+    private String name;
+
+    /**
+     * ID of the existing individual (null for inserted records)
+     */
+    private String individualId;
+}
@@ -0,0 +1,26 @@
+package com.familytree.dto.individual;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stored avatar image (or resized copy) to serve for an individual
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AvatarObject {
+
+    private String objectName;
+
+    // Version of the avatar (SHA-256 of its bytes), part of the avatar URL
+    private String hash;
+
+    private String contentType;
+
+    // Size in bytes, null when not known without reading the object
+    private Long size;
+}
@@ -33,6 +33,8 @@ public class MediaResponse {
 
     private String mimeType;
 
+    private String checksum;
+
     private String downloadUrl;
 
     private String thumbnailUrl;
@@ -0,0 +1,59 @@
+package com.familytree.dto.merge;
+
+import com.familytree.model.MergePreviewStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Response DTO for a background merge preview job
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MergePreviewJobResponse {
+
+    /**
+     * Preview ID, used to poll the job and to execute the stored preview
+     */
+    private UUID previewId;
+
+    private UUID targetTreeId;
+
+    private UUID sourceTreeId;
+
+    private MergePreviewStatus status;
+
+    /**
+     * Completion in percent (0-100)
+     */
+    private int progress;
+
+    /**
+     * Current step of the job
+     */
+    private String stage;
+
+    /**
+     * Tree versions the preview was computed against
+     */
+    private String sourceTreeVersion;
+
+    private String targetTreeVersion;
+
+    private String errorMessage;
+
+    /**
+     * The computed preview (only when the job has completed)
+     */
+    private MergePreviewResponse preview;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,52 @@
+package com.familytree.dto.quality;
+
+import com.familytree.model.QualityIssueType;
+import com.familytree.model.TreeQualityFinding;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Response DTO for a data-quality finding
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TreeQualityFindingResponse {
+
+    private UUID id;
+    private QualityIssueType type;
+    private UUID individualId;
+    private String individualName;
+
+    /**
+     * Other individual involved (the parent, or the possible duplicate), if any
+     */
+    private UUID relatedIndividualId;
+    private String relatedIndividualName;
+
+    private String message;
+    private String treeVersion;
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime detectedAt;
+
+    public static TreeQualityFindingResponse fromFinding(TreeQualityFinding finding) {
+        return TreeQualityFindingResponse.builder()
+                .id(finding.getId())
+                .type(finding.getType())
+                .individualId(finding.getIndividualId())
+                .individualName(finding.getIndividualName())
+                .relatedIndividualId(finding.getRelatedIndividualId())
+                .relatedIndividualName(finding.getRelatedIndividualName())
+                .message(finding.getMessage())
+                .treeVersion(finding.getTreeVersion())
+                .detectedAt(finding.getDetectedAt())
+                .build();
+    }
+}
@@ -0,0 +1,46 @@
+package com.familytree.dto.quality;
+
+import com.familytree.model.TreeQualityScanStatus;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Response DTO for the data-quality findings of a tree
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TreeQualityReportResponse {
+
+    private UUID treeId;
+    private String currentVersion;
+
+    /**
+     * Tree version the findings describe (null before the first scan)
+     */
+    private String scannedVersion;
+
+    /**
+     * Whether the findings describe the current tree version; if not, a scan has been queued
+     */
+    private boolean upToDate;
+
+    private TreeQualityScanStatus status;
+    private boolean incremental;
+    private int individualsScanned;
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime scannedAt;
+    private String errorMessage;
+
+    @Builder.Default
+    private List<TreeQualityFindingResponse> findings = new ArrayList<>();
+}
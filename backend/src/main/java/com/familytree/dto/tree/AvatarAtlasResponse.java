@@ -0,0 +1,52 @@
+package com.familytree.dto.tree;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * DTO for an avatar atlas: square avatar tiles packed into a few sheet images,
+ * with the position of every individual's tile
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AvatarAtlasResponse {
+
+    private String treeVersion;
+    private String atlasId;
+    private int tileSize;
+
+    @Builder.Default
+    private List<Sheet> sheets = new ArrayList<>();
+
+    // Individual ID to its tile; individuals without a tile are loaded through their profilePictureUrl
+    @Builder.Default
+    private Map<UUID, Tile> tiles = new LinkedHashMap<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Sheet {
+        private String url;
+        private int width;
+        private int height;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Tile {
+        private int sheet;
+        private int x;
+        private int y;
+    }
+}
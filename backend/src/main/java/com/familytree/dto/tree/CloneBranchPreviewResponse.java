@@ -0,0 +1,28 @@
+package com.familytree.dto.tree;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * Response DTO previewing what creating a new tree from an individual would copy
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CloneBranchPreviewResponse {
+
+    private UUID sourceTreeId;
+    private UUID rootIndividualId;
+    private String rootIndividualName;
+
+    private int totalIndividuals;
+    private int totalRelationships;
+    private int totalMediaFiles;
+
+    private boolean alreadyExported;
+}
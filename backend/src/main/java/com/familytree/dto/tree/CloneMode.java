@@ -0,0 +1,17 @@
+package com.familytree.dto.tree;
+
+/**
+ * How a new tree created from an individual stores its copy of the source individuals
+ */
+public enum CloneMode {
+    /**
+     * Every individual is copied with all its details
+     */
+    FULL_COPY,
+
+    /**
+     * Individuals are copied without their biography and notes, which are read from the source
+     * individual until the individual is edited in either tree (see IndividualOverlay)
+     */
+    COPY_ON_WRITE
+}
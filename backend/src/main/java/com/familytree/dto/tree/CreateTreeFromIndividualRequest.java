@@ -35,4 +35,11 @@ public class CreateTreeFromIndividualRequest {
 
     @Builder.Default
     private boolean includeMedia = true;
+
+    @Builder.Default
+    private CloneMode cloneMode = CloneMode.FULL_COPY;
+
+    // Copy avatars after the new tree is created, so the tree is usable immediately
+    @Builder.Default
+    private boolean cloneAvatarsInBackground = false;
 }
@@ -24,6 +24,7 @@ public class CreateTreeFromIndividualResponse {
     private int totalIndividuals;
     private int totalRelationships;
     private int totalMediaFiles;
+    private boolean avatarCloneInProgress;  // Avatars are still being copied in the background
 
     private UUID sourceTreeId;
     private UUID sourceIndividualId;  // Original ID from source tree
@@ -0,0 +1,121 @@
+package com.familytree.dto.tree;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * DTO for the analytics of a family tree, computed from one snapshot of its individuals and relationships
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TreeAnalyticsResponse {
+
+    private UUID treeId;
+    private String treeVersion;
+    private int individualsCount;
+    private int relationshipsCount;
+
+    // Generation 1 holds the individuals without parents; each child is one generation below its lowest parent
+    @Builder.Default
+    private List<GenerationStats> generations = new ArrayList<>();
+
+    // Individuals on a parent-child cycle (invalid data) have no generation
+    private int individualsWithoutGeneration;
+
+    @Builder.Default
+    private List<DecadeCount> birthDecades = new ArrayList<>();
+
+    @Builder.Default
+    private List<NameCount> topGivenNames = new ArrayList<>();
+
+    @Builder.Default
+    private List<NameCount> topSurnames = new ArrayList<>();
+
+    @Builder.Default
+    private List<Family> largestFamilies = new ArrayList<>();
+
+    @Builder.Default
+    private List<Lineage> longestLineages = new ArrayList<>();
+
+    // Individuals without any relationship (the list is capped, the count is not)
+    private int isolatedCount;
+
+    @Builder.Default
+    private List<PersonRef> isolatedIndividuals = new ArrayList<>();
+
+    // Groups of individuals linked by any relationship, isolated individuals included
+    private int componentsCount;
+
+    @Builder.Default
+    private List<Integer> largestComponentSizes = new ArrayList<>();
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime computedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class GenerationStats {
+        private int generation;
+        private int count;
+        // Average age at death of the individuals with both dates, null if there are none
+        private Double averageLifespan;
+        private int lifespanSamples;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DecadeCount {
+        private int decade;
+        private int count;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class NameCount {
+        private String name;
+        private int count;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PersonRef {
+        private UUID id;
+        private String name;
+    }
+
+    /**
+     * Children sharing the same parents (one or two)
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Family {
+        private List<PersonRef> parents;
+        private int childrenCount;
+    }
+
+    /**
+     * Parent-to-child line, the earliest ancestor first
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Lineage {
+        private int generations;
+        private List<PersonRef> individuals;
+    }
+}
@@ -34,6 +34,19 @@ public class TreeResponse {
     private int individualsCount;
     private int relationshipsCount;
 
+    // Statistics maintained in the background (see TreeStatsService)
+    private int livingCount;
+    private int deceasedCount;
+    private int generations;
+    private int mediaCount;
+    private long mediaBytes;
+
+    @Builder.Default
+    private List<SurnameCount> topSurnames = new ArrayList<>();
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime lastActivityAt;
+
     // Root individual for default perspective when viewing
     private UUID rootIndividualId;
     private String rootIndividualName;
@@ -56,4 +69,16 @@ public class TreeResponse {
         private String name;
         private String email;
     }
+
+    /**
+     * Nested DTO for the number of individuals with a surname
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class SurnameCount {
+        private String surname;
+        private long count;
+    }
 }
@@ -94,6 +94,10 @@ public class FamilyTree {
     @Column(name = "root_individual_id")
     private UUID rootIndividualId;
 
+    // Set when the tree is deleted; its data is then purged in the background
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+
     // Relationships
     @OneToMany(mappedBy = "tree", cascade = CascadeType.ALL, orphanRemoval = true)
     @Builder.Default
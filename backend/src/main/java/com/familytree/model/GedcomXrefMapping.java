@@ -0,0 +1,67 @@
+package com.familytree.model;
+
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Entity to store mapping between a GEDCOM record (XREF) and the individual it was imported as
+ * This enables re-importing an updated GEDCOM file as a diff instead of appending duplicates
+ */
+@Entity
+@Table(name = "gedcom_xref_mappings",
+        indexes = {
+                @Index(name = "idx_gedcom_xref_tree", columnList = "tree_id"),
+                @Index(name = "idx_gedcom_xref_individual", columnList = "individual_id")
+        },
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_gedcom_xref_tree_xref", columnNames = {"tree_id", "xref"})
+        })
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class GedcomXrefMapping {
+
+    @Id
+    @GeneratedValue(generator = "UUID")
+    @GenericGenerator(name = "UUID", strategy = "org.hibernate.id.UUIDGenerator")
+    @Column(name = "id", updatable = false, nullable = false)
+    private UUID id;
+
+    /**
+     * The tree the GEDCOM file was imported into
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "tree_id", nullable = false)
+    private FamilyTree tree;
+
+    /**
+     * The GEDCOM record identifier, e.g. "@I12@"
+     */
+    @Column(name = "xref", nullable = false, length = 100)
+    private String xref;
+
+    /**
+     * The individual created from this GEDCOM record
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "individual_id", nullable = false)
+    private Individual individual;
+
+    /**
+     * Hash of the imported field values, used to detect changed records on re-import
+     */
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+
+    /**
+     * When the record was last imported or updated from a GEDCOM file
+     */
+    @Column(name = "last_imported_at", nullable = false)
+    private LocalDateTime lastImportedAt;
+}
@@ -91,6 +91,27 @@ public class Individual {
     @Column(name = "profile_picture_url")
     private String profilePictureUrl;
 
+    // Resized copies of the avatar (see Media.derivativeFormat / derivativeWidths)
+    @Column(name = "avatar_derivative_format", length = 10)
+    private String avatarDerivativeFormat;
+
+    @Column(name = "avatar_derivative_widths", length = 100)
+    private String avatarDerivativeWidths;
+
+    // Stored avatar object, recorded at upload so serving it needs no storage listing
+    @Column(name = "avatar_object_key", length = 500)
+    private String avatarObjectKey;
+
+    // SHA-256 of the avatar bytes, used as the version in the avatar URL and as its ETag
+    @Column(name = "avatar_hash", length = 64)
+    private String avatarHash;
+
+    @Column(name = "avatar_content_type", length = 100)
+    private String avatarContentType;
+
+    @Column(name = "avatar_size")
+    private Long avatarSize;
+
     @Size(max = 500)
     @Column(name = "facebook_link")
     private String facebookLink;
@@ -0,0 +1,38 @@
+package com.familytree.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.util.UUID;
+
+/**
+ * Clone lineage of an individual.
+ * Every copy of the same person (the original, its clones, clones of clones and individuals
+ * merged from them) shares one lineage ID, so all trees containing a person are found with
+ * a single indexed lookup instead of walking clone mappings.
+ */
+@Entity
+@Table(name = "individual_lineages", indexes = {
+    @Index(name = "idx_individual_lineage_lineage", columnList = "lineage_id"),
+    @Index(name = "idx_individual_lineage_tree", columnList = "tree_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IndividualLineage {
+
+    @Id
+    @Column(name = "individual_id", columnDefinition = "UUID")
+    private UUID individualId;
+
+    /**
+     * ID of the original individual of the lineage
+     */
+    @Column(name = "lineage_id", nullable = false, columnDefinition = "UUID")
+    private UUID lineageId;
+
+    @Column(name = "tree_id", nullable = false, columnDefinition = "UUID")
+    private UUID treeId;
+}
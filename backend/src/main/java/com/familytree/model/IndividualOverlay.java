@@ -0,0 +1,38 @@
+package com.familytree.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.util.UUID;
+
+/**
+ * Overlay entry of an individual in a copy-on-write clone.
+ * The cloned row keeps its own names, dates and links, but its biography and notes are left empty
+ * and read from the source individual. The entry is removed, and the content copied into the cloned
+ * row, as soon as either individual is edited or deleted.
+ */
+@Entity
+@Table(name = "individual_overlays", indexes = {
+    @Index(name = "idx_individual_overlay_source", columnList = "source_individual_id"),
+    @Index(name = "idx_individual_overlay_tree", columnList = "tree_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IndividualOverlay {
+
+    @Id
+    @Column(name = "individual_id", columnDefinition = "UUID")
+    private UUID individualId;
+
+    /**
+     * ID of the individual holding the content (never an overlaid individual itself)
+     */
+    @Column(name = "source_individual_id", nullable = false, columnDefinition = "UUID")
+    private UUID sourceIndividualId;
+
+    @Column(name = "tree_id", nullable = false, columnDefinition = "UUID")
+    private UUID treeId;
+}
@@ -22,7 +22,8 @@ import java.util.UUID;
 @Table(name = "media", indexes = {
     @Index(name = "idx_media_individual", columnList = "individual_id"),
     @Index(name = "idx_media_type", columnList = "type"),
-    @Index(name = "idx_media_uploaded", columnList = "uploaded_at")
+    @Index(name = "idx_media_uploaded", columnList = "uploaded_at"),
+    @Index(name = "idx_media_storage_path", columnList = "storage_path")
 })
 @EntityListeners(AuditingEntityListener.class)
 @Data
@@ -66,6 +67,24 @@ public class Media {
     @Column(name = "mime_type")
     private String mimeType;
 
+    /**
+     * SHA-256 of the file content (hex), computed while uploading; null for files uploaded before
+     */
+    @Column(name = "checksum", length = 64)
+    private String checksum;
+
+    /**
+     * Image format of the resized copies (jpg or webp), null until they have been generated
+     */
+    @Column(name = "derivative_format", length = 10)
+    private String derivativeFormat;
+
+    /**
+     * Comma-separated widths of the resized copies, empty if the image is too small to need any
+     */
+    @Column(name = "derivative_widths", length = 100)
+    private String derivativeWidths;
+
     @CreatedDate
     @Column(name = "uploaded_at", nullable = false, updatable = false)
     private LocalDateTime uploadedAt;
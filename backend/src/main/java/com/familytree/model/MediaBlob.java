@@ -0,0 +1,60 @@
+package com.familytree.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A stored media file, shared by every media record with the same content.
+ * Uploads are looked up by their SHA-256, so a file uploaded again (to another individual or tree)
+ * references the existing blob instead of being stored twice, and cloned or merged media records
+ * only add references. The file and its thumbnail and resized copies are removed once the
+ * reference count drops to zero.
+ */
+@Entity
+@Table(name = "media_blobs", indexes = {
+    @Index(name = "idx_media_blob_checksum", columnList = "checksum"),
+    @Index(name = "idx_media_blob_ref_count", columnList = "ref_count")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MediaBlob {
+
+    @Id
+    @Column(name = "storage_path", length = 1000)
+    private String storagePath;
+
+    /**
+     * SHA-256 of the content (hex), null for files uploaded before checksums were computed
+     */
+    @Column(name = "checksum", length = 64)
+    private String checksum;
+
+    @Column(name = "file_size")
+    private Long fileSize;
+
+    @Column(name = "mime_type", length = 100)
+    private String mimeType;
+
+    /**
+     * Image format of the resized copies, null until they have been generated
+     */
+    @Column(name = "derivative_format", length = 10)
+    private String derivativeFormat;
+
+    @Column(name = "derivative_widths", length = 100)
+    private String derivativeWidths;
+
+    /**
+     * Number of media records referencing the file
+     */
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
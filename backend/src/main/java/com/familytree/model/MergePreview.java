@@ -0,0 +1,87 @@
+package com.familytree.model;
+
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Persisted merge preview snapshot.
+ * Stores the preview response and match set together with the versions of both trees,
+ * so executing the preview can reuse the matches while neither tree has changed.
+ */
+@Entity
+@Table(name = "merge_previews", indexes = {
+    @Index(name = "idx_merge_preview_target", columnList = "target_tree_id"),
+    @Index(name = "idx_merge_preview_source", columnList = "source_tree_id")
+})
+@EntityListeners(AuditingEntityListener.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MergePreview {
+
+    @Id
+    @GeneratedValue(generator = "uuid2")
+    @GenericGenerator(name = "uuid2", strategy = "uuid2")
+    @Column(columnDefinition = "UUID")
+    private UUID id;
+
+    @Column(name = "target_tree_id", nullable = false)
+    private UUID targetTreeId;
+
+    @Column(name = "source_tree_id", nullable = false)
+    private UUID sourceTreeId;
+
+    @Column(name = "requested_by", nullable = false)
+    private String requestedBy;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private MergePreviewStatus status;
+
+    @Column(name = "source_tree_version", length = 64)
+    private String sourceTreeVersion;
+
+    @Column(name = "target_tree_version", length = 64)
+    private String targetTreeVersion;
+
+    /**
+     * The TreeMergeRequest the preview was computed for (JSON)
+     */
+    @Column(name = "request_json", columnDefinition = "TEXT")
+    private String requestJson;
+
+    /**
+     * The computed MergePreviewResponse (JSON)
+     */
+    @Column(name = "response_json", columnDefinition = "TEXT")
+    private String responseJson;
+
+    /**
+     * The computed IndividualMatch list (JSON)
+     */
+    @Column(name = "matches_json", columnDefinition = "TEXT")
+    private String matchesJson;
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+
+    @CreatedDate
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @LastModifiedDate
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,12 @@
+package com.familytree.model;
+
+/**
+ * Status of a background merge preview job
+ */
+public enum MergePreviewStatus {
+    PENDING,    // Queued, not started yet
+    RUNNING,    // Matching and conflict detection in progress
+    COMPLETED,  // Preview snapshot is stored and can be executed
+    FAILED,     // Preview could not be computed
+    EXECUTED    // Snapshot has been used to execute the merge
+}
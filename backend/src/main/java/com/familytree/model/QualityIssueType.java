@@ -0,0 +1,14 @@
+package com.familytree.model;
+
+/**
+ * Kind of data-quality problem found in a family tree
+ */
+public enum QualityIssueType {
+    PARENT_CHILD_CYCLE,             // Individual is (or descends through) their own ancestor
+    CHILD_BORN_BEFORE_PARENT,       // Child's birth date is not after the parent's
+    CHILD_BORN_AFTER_PARENT_DEATH,  // Born after the mother's death, or more than ten months after the father's
+    MULTIPLE_BIOLOGICAL_FATHERS,    // More than one biological father
+    MULTIPLE_BIOLOGICAL_MOTHERS,    // More than one biological mother
+    IMPOSSIBLE_AGE,                 // Death before birth, dates in the future, or an implausible age
+    POSSIBLE_DUPLICATE              // Same name and compatible dates as another unrelated individual
+}
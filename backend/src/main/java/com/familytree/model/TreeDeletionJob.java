@@ -0,0 +1,92 @@
+package com.familytree.model;
+
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Background purge of a deleted tree.
+ * The tree is hidden as soon as it is marked deleted; this job then removes its files and rows
+ * and records its progress so admins can follow it.
+ */
+@Entity
+@Table(name = "tree_deletion_jobs", indexes = {
+    @Index(name = "idx_tree_deletion_tree", columnList = "tree_id"),
+    @Index(name = "idx_tree_deletion_status", columnList = "status")
+})
+@EntityListeners(AuditingEntityListener.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TreeDeletionJob {
+
+    @Id
+    @GeneratedValue(generator = "uuid2")
+    @GenericGenerator(name = "uuid2", strategy = "uuid2")
+    @Column(columnDefinition = "UUID")
+    private UUID id;
+
+    @Column(name = "tree_id", nullable = false)
+    private UUID treeId;
+
+    @Column(name = "tree_name")
+    private String treeName;
+
+    @Column(name = "requested_by", nullable = false)
+    private String requestedBy;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private TreeDeletionStatus status;
+
+    /**
+     * Current step of the purge
+     */
+    @Column(length = 100)
+    private String stage;
+
+    @Column(name = "objects_total")
+    @Builder.Default
+    private int objectsTotal = 0;
+
+    @Column(name = "objects_deleted")
+    @Builder.Default
+    private int objectsDeleted = 0;
+
+    @Column(name = "objects_failed")
+    @Builder.Default
+    private int objectsFailed = 0;
+
+    @Column(name = "rows_deleted")
+    @Builder.Default
+    private long rowsDeleted = 0;
+
+    /**
+     * Number of times the purge has been started; failed jobs are retried on startup up to a limit
+     */
+    @Column(nullable = false, columnDefinition = "integer default 0")
+    @Builder.Default
+    private int attempts = 0;
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+
+    @CreatedDate
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @LastModifiedDate
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+}
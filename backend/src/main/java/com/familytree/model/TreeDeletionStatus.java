@@ -0,0 +1,11 @@
+package com.familytree.model;
+
+/**
+ * Status of a background tree deletion job
+ */
+public enum TreeDeletionStatus {
+    PENDING,    // Tree is marked deleted, purge not started yet
+    RUNNING,    // Files and rows are being purged
+    COMPLETED,  // All data of the tree has been removed
+    FAILED      // Purge stopped with an error (resumed on the next start)
+}
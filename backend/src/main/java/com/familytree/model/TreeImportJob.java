@@ -0,0 +1,108 @@
+package com.familytree.model;
+
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Background import of a tree archive into a new tree.
+ * The uploaded archive is kept in storage while it is loaded chunk by chunk; the checkpoint
+ * (entry and record reached) is committed with each chunk, so an interrupted import continues
+ * where it stopped.
+ */
+@Entity
+@Table(name = "tree_import_jobs", indexes = {
+    @Index(name = "idx_tree_import_status", columnList = "status"),
+    @Index(name = "idx_tree_import_requested_by", columnList = "requested_by")
+})
+@EntityListeners(AuditingEntityListener.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TreeImportJob {
+
+    @Id
+    @GeneratedValue(generator = "uuid2")
+    @GenericGenerator(name = "uuid2", strategy = "uuid2")
+    @Column(columnDefinition = "UUID")
+    private UUID id;
+
+    @Column(name = "file_name", length = 500)
+    private String fileName;
+
+    /**
+     * Object key of the uploaded archive
+     */
+    @Column(name = "archive_object", length = 500)
+    private String archiveObject;
+
+    @Column(name = "archive_size")
+    private Long archiveSize;
+
+    @Column(name = "requested_by", nullable = false)
+    private String requestedBy;
+
+    /**
+     * The tree created by the import, set once the manifest has been read
+     */
+    @Column(name = "tree_id")
+    private UUID treeId;
+
+    @Column(name = "tree_name")
+    private String treeName;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private TreeImportStatus status;
+
+    /**
+     * Current step of the import
+     */
+    @Column(length = 100)
+    private String stage;
+
+    /**
+     * Checkpoint: index of the archive entry being loaded and number of its records already loaded
+     */
+    @Column(name = "entry_index")
+    @Builder.Default
+    private int entryIndex = 0;
+
+    @Column(name = "entry_records")
+    @Builder.Default
+    private long entryRecords = 0;
+
+    @Column(name = "records_total")
+    @Builder.Default
+    private long recordsTotal = 0;
+
+    @Column(name = "records_imported")
+    @Builder.Default
+    private long recordsImported = 0;
+
+    @Column(name = "files_imported")
+    @Builder.Default
+    private int filesImported = 0;
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+
+    @CreatedDate
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @LastModifiedDate
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,12 @@
+package com.familytree.model;
+
+/**
+ * Status of a tree archive import job
+ */
+public enum TreeImportStatus {
+    UPLOADING,  // Archive is being stored
+    PENDING,    // Archive is stored, loading not started yet
+    RUNNING,    // Records and files are being loaded
+    COMPLETED,  // The tree has been fully imported
+    FAILED      // Loading stopped with an error (can be retried, it continues from its checkpoint)
+}
@@ -0,0 +1,32 @@
+package com.familytree.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.util.UUID;
+
+/**
+ * Clone lineage of a family tree.
+ * A tree and every tree cloned from it (directly or through other clones) share one lineage ID.
+ */
+@Entity
+@Table(name = "tree_lineages", indexes = {
+    @Index(name = "idx_tree_lineage_lineage", columnList = "lineage_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TreeLineage {
+
+    @Id
+    @Column(name = "tree_id", columnDefinition = "UUID")
+    private UUID treeId;
+
+    /**
+     * ID of the original tree of the lineage
+     */
+    @Column(name = "lineage_id", nullable = false, columnDefinition = "UUID")
+    private UUID lineageId;
+}
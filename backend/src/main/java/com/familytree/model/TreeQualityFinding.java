@@ -0,0 +1,66 @@
+package com.familytree.model;
+
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Data-quality problem found by the background scan of a tree (see TreeQualityService).
+ * Findings are replaced whenever the individuals they concern are rescanned.
+ */
+@Entity
+@Table(name = "tree_quality_findings", indexes = {
+    @Index(name = "idx_quality_finding_tree", columnList = "tree_id"),
+    @Index(name = "idx_quality_finding_individual", columnList = "individual_id"),
+    @Index(name = "idx_quality_finding_related", columnList = "related_individual_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TreeQualityFinding {
+
+    @Id
+    @GeneratedValue(generator = "uuid2")
+    @GenericGenerator(name = "uuid2", strategy = "uuid2")
+    @Column(columnDefinition = "UUID")
+    private UUID id;
+
+    @Column(name = "tree_id", nullable = false)
+    private UUID treeId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 40)
+    private QualityIssueType type;
+
+    @Column(name = "individual_id", nullable = false)
+    private UUID individualId;
+
+    @Column(name = "individual_name")
+    private String individualName;
+
+    /**
+     * Other individual involved (the parent, or the possible duplicate), if any
+     */
+    @Column(name = "related_individual_id")
+    private UUID relatedIndividualId;
+
+    @Column(name = "related_individual_name")
+    private String relatedIndividualName;
+
+    @Column(columnDefinition = "TEXT")
+    private String message;
+
+    /**
+     * Tree version the finding was detected in
+     */
+    @Column(name = "tree_version", nullable = false, length = 32)
+    private String treeVersion;
+
+    @Column(name = "detected_at", nullable = false)
+    private LocalDateTime detectedAt;
+}
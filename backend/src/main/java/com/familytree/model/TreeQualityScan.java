@@ -0,0 +1,55 @@
+package com.familytree.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Latest data-quality scan of a tree: which tree version its findings describe and how it went
+ */
+@Entity
+@Table(name = "tree_quality_scans")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TreeQualityScan {
+
+    @Id
+    @Column(name = "tree_id", columnDefinition = "UUID")
+    private UUID treeId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private TreeQualityScanStatus status;
+
+    /**
+     * Tree version of the last completed scan (the stored findings describe this version)
+     */
+    @Column(name = "tree_version", length = 32)
+    private String treeVersion;
+
+    /**
+     * Whether the last scan only rechecked the neighbourhood of changed individuals
+     */
+    @Column(name = "incremental")
+    private boolean incremental;
+
+    @Column(name = "individuals_scanned")
+    private int individualsScanned;
+
+    @Column(name = "findings_count")
+    private int findingsCount;
+
+    @Column(name = "duration_ms")
+    private long durationMs;
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+
+    @Column(name = "scanned_at")
+    private LocalDateTime scannedAt;
+}
@@ -0,0 +1,11 @@
+package com.familytree.model;
+
+/**
+ * Status of the data-quality scan of a tree
+ */
+public enum TreeQualityScanStatus {
+    PENDING,    // Scan queued
+    RUNNING,    // Tree snapshot is being checked
+    COMPLETED,  // Findings are stored for the scanned tree version
+    FAILED      // Scan stopped with an error (the next change or request queues a new one)
+}
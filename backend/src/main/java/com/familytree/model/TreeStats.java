@@ -0,0 +1,59 @@
+package com.familytree.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Materialized statistics of a family tree.
+ * Refreshed in the background after every change to the tree's individuals, relationships or media,
+ * so listing trees reads one row per tree instead of counting.
+ */
+@Entity
+@Table(name = "tree_stats")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TreeStats {
+
+    @Id
+    @Column(name = "tree_id", columnDefinition = "UUID")
+    private UUID treeId;
+
+    @Column(name = "individuals_count", nullable = false)
+    private int individualsCount;
+
+    @Column(name = "relationships_count", nullable = false)
+    private int relationshipsCount;
+
+    // Individuals without a death date
+    @Column(name = "living_count", nullable = false)
+    private int livingCount;
+
+    @Column(name = "deceased_count", nullable = false)
+    private int deceasedCount;
+
+    // Number of generations on the longest parent-to-child line
+    @Column(name = "generations", nullable = false)
+    private int generations;
+
+    @Column(name = "media_count", nullable = false)
+    private int mediaCount;
+
+    @Column(name = "media_bytes", nullable = false)
+    private long mediaBytes;
+
+    // Most common surnames as a JSON array of {surname, count}
+    @Column(name = "top_surnames_json", columnDefinition = "TEXT")
+    private String topSurnamesJson;
+
+    @Column(name = "last_activity_at")
+    private LocalDateTime lastActivityAt;
+
+    @Column(name = "computed_at", nullable = false)
+    private LocalDateTime computedAt;
+}
@@ -7,12 +7,16 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
 import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 /**
  * Repository interface for Event entity
@@ -88,4 +92,23 @@ public interface EventRepository extends JpaRepository<Event, UUID> {
     @Query("SELECT e FROM Event e WHERE e.individual.tree.id = :treeId AND e.type = :type " +
            "ORDER BY e.eventDate DESC")
     List<Event> findByTreeIdAndType(@Param("treeId") UUID treeId, @Param("type") EventType type);
+
+    /**
+     * Count the events of the individuals of a tree
+     * @param treeId the tree ID
+     * @return event count
+     */
+    @Query("SELECT COUNT(e) FROM Event e WHERE e.individual.tree.id = :treeId")
+    long countByTreeId(@Param("treeId") UUID treeId);
+
+    /**
+     * Stream the events of a tree for a tree archive, read with a database cursor
+     * (must be consumed and closed within a transaction)
+     * @param treeId the tree ID
+     * @return stream of [ID, individual ID, type, date, place, description]
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT e.id, e.individual.id, e.type, e.eventDate, e.place, e.description " +
+           "FROM Event e WHERE e.individual.tree.id = :treeId")
+    Stream<Object[]> streamArchiveRowsByTreeId(@Param("treeId") UUID treeId);
 }
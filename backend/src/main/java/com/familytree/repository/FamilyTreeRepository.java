@@ -9,29 +9,47 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 /**
- * Repository interface for FamilyTree entity
+ * Repository interface for FamilyTree entity.
+ * Trees marked for deletion (deletedAt set) are hidden while they are purged: the lookups and lists below
+ * only return trees that are not deleted, use them instead of findById and existsById.
  */
 @Repository
 public interface FamilyTreeRepository extends JpaRepository<FamilyTree, UUID> {
 
+    /**
+     * Find a tree unless it is marked for deletion
+     * @param id the tree ID
+     * @return the tree, or empty if it does not exist or is being deleted
+     */
+    Optional<FamilyTree> findByIdAndDeletedAtIsNull(UUID id);
+
+    /**
+     * Check if a tree exists and is not marked for deletion
+     * @param id the tree ID
+     * @return true if the tree exists and is not being deleted
+     */
+    boolean existsByIdAndDeletedAtIsNull(UUID id);
+
     /**
      * Find all trees owned by a specific user
      * @param owner the owner user
      * @param pageable pagination information
      * @return page of family trees
      */
-    Page<FamilyTree> findByOwner(User owner, Pageable pageable);
+    Page<FamilyTree> findByOwnerAndDeletedAtIsNull(User owner, Pageable pageable);
 
     /**
      * Find all trees owned by a specific user (list version)
      * @param owner the owner user
      * @return list of family trees
      */
-    List<FamilyTree> findByOwner(User owner);
+    List<FamilyTree> findByOwnerAndDeletedAtIsNull(User owner);
 
     /**
      * Find all trees where user has permission (owner, shared, or linked via UserTreeProfile)
@@ -42,7 +60,7 @@ public interface FamilyTreeRepository extends JpaRepository<FamilyTree, UUID> {
     @Query("SELECT DISTINCT t FROM FamilyTree t " +
            "LEFT JOIN t.permissions p " +
            "LEFT JOIN UserTreeProfile utp ON utp.tree.id = t.id AND utp.user.id = :userId " +
-           "WHERE t.owner.id = :userId OR p.user.id = :userId OR utp.id IS NOT NULL " +
+           "WHERE t.deletedAt IS NULL AND (t.owner.id = :userId OR p.user.id = :userId OR utp.id IS NOT NULL) " +
            "ORDER BY t.updatedAt DESC")
     Page<FamilyTree> findTreesAccessibleByUser(@Param("userId") UUID userId, Pageable pageable);
 
@@ -51,15 +69,56 @@ public interface FamilyTreeRepository extends JpaRepository<FamilyTree, UUID> {
      * @param pageable pagination information
      * @return page of all family trees
      */
-    @Query("SELECT t FROM FamilyTree t ORDER BY t.updatedAt DESC")
+    @Query("SELECT t FROM FamilyTree t WHERE t.deletedAt IS NULL ORDER BY t.updatedAt DESC")
     Page<FamilyTree> findAllTrees(Pageable pageable);
 
+    /**
+     * Find all trees with their statistics and root individual name (for admin users)
+     * @param pageable pagination information
+     * @return page of [tree (owner fetched), statistics or null, root surname, root given name]
+     */
+    @Query(value = "SELECT t, s, r.surname, r.givenName FROM FamilyTree t JOIN FETCH t.owner " +
+                   "LEFT JOIN TreeStats s ON s.treeId = t.id " +
+                   "LEFT JOIN Individual r ON r.id = t.rootIndividualId " +
+                   "WHERE t.deletedAt IS NULL " +
+                   "ORDER BY t.updatedAt DESC",
+           countQuery = "SELECT COUNT(t) FROM FamilyTree t WHERE t.deletedAt IS NULL")
+    Page<Object[]> findAllTreesWithStats(Pageable pageable);
+
+    /**
+     * Find the trees accessible by a user with their statistics and root individual name
+     * (same access rules as findTreesAccessibleByUser)
+     * @param userId the user ID
+     * @param pageable pagination information
+     * @return page of [tree (owner fetched), statistics or null, root surname, root given name]
+     */
+    @Query(value = "SELECT DISTINCT t, s, r.surname, r.givenName FROM FamilyTree t JOIN FETCH t.owner " +
+                   "LEFT JOIN t.permissions p " +
+                   "LEFT JOIN UserTreeProfile utp ON utp.tree.id = t.id AND utp.user.id = :userId " +
+                   "LEFT JOIN TreeStats s ON s.treeId = t.id " +
+                   "LEFT JOIN Individual r ON r.id = t.rootIndividualId " +
+                   "WHERE t.deletedAt IS NULL AND (t.owner.id = :userId OR p.user.id = :userId OR utp.id IS NOT NULL) " +
+                   "ORDER BY t.updatedAt DESC",
+           countQuery = "SELECT COUNT(DISTINCT t) FROM FamilyTree t " +
+                        "LEFT JOIN t.permissions p " +
+                        "LEFT JOIN UserTreeProfile utp ON utp.tree.id = t.id AND utp.user.id = :userId " +
+                        "WHERE t.deletedAt IS NULL AND (t.owner.id = :userId OR p.user.id = :userId OR utp.id IS NOT NULL)")
+    Page<Object[]> findTreesAccessibleByUserWithStats(@Param("userId") UUID userId, Pageable pageable);
+
+    /**
+     * Find the tree admins of several trees at once
+     * @param treeIds the tree IDs
+     * @return list of [tree ID, admin user]
+     */
+    @Query("SELECT t.id, a FROM FamilyTree t JOIN t.admins a WHERE t.id IN :treeIds")
+    List<Object[]> findAdminsByTreeIds(@Param("treeIds") Collection<UUID> treeIds);
+
     /**
      * Count trees owned by a user
      * @param owner the owner user
      * @return count of trees
      */
-    long countByOwner(User owner);
+    long countByOwnerAndDeletedAtIsNull(User owner);
 
     /**
      * Check if a tree was already created from a specific individual
@@ -67,12 +126,19 @@ public interface FamilyTreeRepository extends JpaRepository<FamilyTree, UUID> {
      * @param sourceIndividualId the source individual ID
      * @return true if a tree already exists with this source individual
      */
-    boolean existsBySourceIndividualId(UUID sourceIndividualId);
+    boolean existsBySourceIndividualIdAndDeletedAtIsNull(UUID sourceIndividualId);
 
     /**
      * Find trees that were cloned from a specific source tree
      * @param sourceTreeId the source tree ID
      * @return list of cloned trees
      */
-    List<FamilyTree> findBySourceTreeId(UUID sourceTreeId);
+    List<FamilyTree> findBySourceTreeIdAndDeletedAtIsNull(UUID sourceTreeId);
+
+    /**
+     * Get all tree clone links as ID rows (used to build clone lineages)
+     * @return list of [tree ID, source tree ID]
+     */
+    @Query("SELECT t.id, t.sourceTreeId FROM FamilyTree t WHERE t.sourceTreeId IS NOT NULL AND t.deletedAt IS NULL")
+    List<Object[]> findCloneLinks();
 }
@@ -0,0 +1,47 @@
+package com.familytree.repository;
+
+import com.familytree.model.GedcomXrefMapping;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository for GedcomXrefMapping entity
+ */
+@Repository
+public interface GedcomXrefMappingRepository extends JpaRepository<GedcomXrefMapping, UUID> {
+
+    /**
+     * Find all XREF mappings of a tree with their individuals eagerly loaded
+     * @param treeId the tree ID
+     * @return list of XREF mappings
+     */
+    @Query("SELECT m FROM GedcomXrefMapping m JOIN FETCH m.individual WHERE m.tree.id = :treeId")
+    List<GedcomXrefMapping> findByTreeIdWithIndividual(@Param("treeId") UUID treeId);
+
+    /**
+     * Check if a tree has XREF mappings, i.e. was imported since mappings are kept
+     * @param treeId the tree ID
+     */
+    boolean existsByTreeId(UUID treeId);
+
+    /**
+     * Delete all XREF mappings for a tree (when tree is deleted)
+     * @param treeId the tree ID
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("DELETE FROM GedcomXrefMapping m WHERE m.tree.id = :treeId")
+    void deleteByTreeId(@Param("treeId") UUID treeId);
+
+    /**
+     * Delete the XREF mapping of an individual (when individual is deleted)
+     * @param individualId the individual ID
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("DELETE FROM GedcomXrefMapping m WHERE m.individual.id = :individualId")
+    void deleteByIndividualId(@Param("individualId") UUID individualId);
+}
@@ -23,6 +23,40 @@ public interface IndividualCloneMappingRepository extends JpaRepository<Individu
      */
     List<IndividualCloneMapping> findBySourceIndividualId(UUID sourceIndividualId);
 
+    /**
+     * Find all clones of a source individual with cloned tree and individual eagerly loaded
+     * @param sourceIndividualId the source individual ID
+     * @return list of clone mappings
+     */
+    @Query("SELECT m FROM IndividualCloneMapping m JOIN FETCH m.clonedTree JOIN FETCH m.clonedIndividual " +
+           "WHERE m.sourceIndividual.id = :sourceIndividualId")
+    List<IndividualCloneMapping> findBySourceIndividualIdWithDetails(@Param("sourceIndividualId") UUID sourceIndividualId);
+
+    /**
+     * Find the source mapping for a cloned individual with source tree and individual eagerly loaded
+     * @param clonedIndividualId the cloned individual ID
+     * @return optional clone mapping
+     */
+    @Query("SELECT m FROM IndividualCloneMapping m JOIN FETCH m.sourceTree JOIN FETCH m.sourceIndividual " +
+           "WHERE m.clonedIndividual.id = :clonedIndividualId")
+    Optional<IndividualCloneMapping> findByClonedIndividualIdWithDetails(@Param("clonedIndividualId") UUID clonedIndividualId);
+
+    /**
+     * Find the root mappings of all trees cloned from a source tree, with the cloned root individual eagerly loaded
+     * @param sourceTreeId the source tree ID
+     * @return list of root clone mappings
+     */
+    @Query("SELECT m FROM IndividualCloneMapping m JOIN FETCH m.clonedIndividual " +
+           "WHERE m.sourceTree.id = :sourceTreeId AND m.rootIndividual = true")
+    List<IndividualCloneMapping> findRootMappingsBySourceTreeId(@Param("sourceTreeId") UUID sourceTreeId);
+
+    /**
+     * Get all clone links as ID rows (used to build clone lineages)
+     * @return list of [source individual ID, cloned individual ID, source tree ID, cloned tree ID]
+     */
+    @Query("SELECT m.sourceIndividual.id, m.clonedIndividual.id, m.sourceTree.id, m.clonedTree.id FROM IndividualCloneMapping m")
+    List<Object[]> findAllLinks();
+
     /**
      * Find the source mapping for a cloned individual
      * @param clonedIndividualId the cloned individual ID
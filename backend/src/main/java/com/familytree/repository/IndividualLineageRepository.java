@@ -0,0 +1,60 @@
+package com.familytree.repository;
+
+import com.familytree.model.IndividualLineage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository for IndividualLineage entity
+ */
+@Repository
+public interface IndividualLineageRepository extends JpaRepository<IndividualLineage, UUID> {
+
+    /**
+     * Find every copy of an individual's person across trees (including the individual itself)
+     * @param individualId the individual ID
+     * @return list of [individual ID, tree ID, tree name]
+     */
+    @Query("SELECT l2.individualId, l2.treeId, t.name FROM IndividualLineage l1, IndividualLineage l2, FamilyTree t " +
+           "WHERE l1.individualId = :individualId AND l2.lineageId = l1.lineageId AND t.id = l2.treeId AND t.deletedAt IS NULL")
+    List<Object[]> findLocationsByIndividualId(@Param("individualId") UUID individualId);
+
+    /**
+     * Find lineage entries of the given individuals
+     * @param individualIds the individual IDs
+     * @return list of lineage entries
+     */
+    List<IndividualLineage> findByIndividualIdIn(Collection<UUID> individualIds);
+
+    /**
+     * Move all individuals of some lineages into another lineage (when copies of one person are merged)
+     * @param lineageId the lineage to keep
+     * @param mergedLineageIds the lineages to fold into it
+     * @return number of entries updated
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("UPDATE IndividualLineage l SET l.lineageId = :lineageId WHERE l.lineageId IN :mergedLineageIds")
+    int relabel(@Param("lineageId") UUID lineageId, @Param("mergedLineageIds") Collection<UUID> mergedLineageIds);
+
+    /**
+     * Delete the lineage entry of an individual
+     * @param individualId the individual ID
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("DELETE FROM IndividualLineage l WHERE l.individualId = :individualId")
+    void deleteByIndividualId(@Param("individualId") UUID individualId);
+
+    /**
+     * Delete the lineage entries of all individuals in a tree
+     * @param treeId the tree ID
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("DELETE FROM IndividualLineage l WHERE l.treeId = :treeId")
+    void deleteByTreeId(@Param("treeId") UUID treeId);
+}
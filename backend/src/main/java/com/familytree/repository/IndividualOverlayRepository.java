@@ -0,0 +1,42 @@
+package com.familytree.repository;
+
+import com.familytree.model.IndividualOverlay;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository for IndividualOverlay entity
+ */
+@Repository
+public interface IndividualOverlayRepository extends JpaRepository<IndividualOverlay, UUID> {
+
+    /**
+     * Find the overlay entries of the copy-on-write clones of an individual
+     * @param sourceIndividualId the source individual ID
+     * @return list of overlay entries
+     */
+    List<IndividualOverlay> findBySourceIndividualId(UUID sourceIndividualId);
+
+    /**
+     * Find the shared content of an overlaid individual
+     * @param individualId the individual ID
+     * @return single row of [biography, notes], empty if the individual has its own content
+     */
+    @Query("SELECT s.biography, s.notes FROM IndividualOverlay o, Individual s " +
+           "WHERE o.individualId = :individualId AND s.id = o.sourceIndividualId")
+    List<Object[]> findSharedContent(@Param("individualId") UUID individualId);
+
+    /**
+     * Find the shared content of the overlaid individuals in a tree
+     * @param treeId the tree ID
+     * @return list of [individual ID, biography, notes]
+     */
+    @Query("SELECT o.individualId, s.biography, s.notes FROM IndividualOverlay o, Individual s " +
+           "WHERE o.treeId = :treeId AND s.id = o.sourceIndividualId")
+    List<Object[]> findSharedContentByTreeId(@Param("treeId") UUID treeId);
+}
@@ -6,11 +6,15 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 /**
  * Repository interface for Individual entity
@@ -56,6 +60,55 @@ public interface IndividualRepository extends JpaRepository<Individual, UUID> {
      */
     long countByTreeId(UUID treeId);
 
+    /**
+     * Get the individual count and latest modification time of a tree (used for tree versioning)
+     * @param treeId the tree ID
+     * @return single row of [count, max updatedAt]
+     */
+    @Query("SELECT COUNT(i), MAX(i.updatedAt) FROM Individual i WHERE i.tree.id = :treeId")
+    List<Object[]> findChangeMarker(@Param("treeId") UUID treeId);
+
+    /**
+     * Get the individual statistics of a tree
+     * @param treeId the tree ID
+     * @return single row of [count, living count (no death date), max updatedAt]
+     */
+    @Query("SELECT COUNT(i), SUM(CASE WHEN i.deathDate IS NULL THEN 1 ELSE 0 END), MAX(i.updatedAt) " +
+           "FROM Individual i WHERE i.tree.id = :treeId")
+    List<Object[]> findStatsByTreeId(@Param("treeId") UUID treeId);
+
+    /**
+     * Find the names, dates and genders of the individuals in a tree, without loading entities
+     * (used for tree analytics and data-quality scans)
+     * @param treeId the tree ID
+     * @return list of [ID, given name, surname, birth date, death date, gender]
+     */
+    @Query("SELECT i.id, i.givenName, i.surname, i.birthDate, i.deathDate, i.gender " +
+           "FROM Individual i WHERE i.tree.id = :treeId")
+    List<Object[]> findSnapshotRowsByTreeId(@Param("treeId") UUID treeId);
+
+    /**
+     * Count the individuals of a tree per surname, most common first
+     * @param treeId the tree ID
+     * @param pageable limit of surnames returned
+     * @return list of [surname, count]
+     */
+    @Query("SELECT i.surname, COUNT(i) FROM Individual i WHERE i.tree.id = :treeId " +
+           "AND i.surname IS NOT NULL AND i.surname <> '' " +
+           "GROUP BY i.surname ORDER BY COUNT(i) DESC, i.surname")
+    List<Object[]> countSurnamesByTreeId(@Param("treeId") UUID treeId, Pageable pageable);
+
+    /**
+     * Find the stored avatars of the individuals in a tree
+     * @param treeId the tree ID
+     * @return list of [individual ID, object key, hash, content type, size, derivative format, derivative widths];
+     *         the object key and hash are null for avatars uploaded before they were recorded
+     */
+    @Query("SELECT i.id, i.avatarObjectKey, i.avatarHash, i.avatarContentType, i.avatarSize, " +
+           "i.avatarDerivativeFormat, i.avatarDerivativeWidths " +
+           "FROM Individual i WHERE i.tree.id = :treeId AND i.profilePictureUrl IS NOT NULL")
+    List<Object[]> findAvatarsByTreeId(@Param("treeId") UUID treeId);
+
     /**
      * Search individuals by name within a tree
      * Searches in givenName, surname, and suffix fields
@@ -102,9 +155,58 @@ public interface IndividualRepository extends JpaRepository<Individual, UUID> {
     @Query("SELECT i FROM Individual i JOIN FETCH i.tree WHERE i.id = :individualId")
     java.util.Optional<Individual> findByIdWithTree(@Param("individualId") UUID individualId);
 
+    /**
+     * Record the resized copies of an individual's avatar
+     * @param individualId the individual ID
+     * @param format the derivative format
+     * @param widths comma-separated derivative widths
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("UPDATE Individual i SET i.avatarDerivativeFormat = :format, i.avatarDerivativeWidths = :widths " +
+           "WHERE i.id = :individualId")
+    void updateAvatarDerivatives(@Param("individualId") UUID individualId,
+                                 @Param("format") String format,
+                                 @Param("widths") String widths);
+
+    /**
+     * Record the stored object of an avatar uploaded before object keys and hashes were kept
+     * @param individualId the individual ID
+     * @param url the versioned avatar URL
+     * @param objectKey the object key
+     * @param hash the avatar version hash
+     * @param contentType the content type
+     * @param size the size in bytes
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("UPDATE Individual i SET i.profilePictureUrl = :url, i.avatarObjectKey = :objectKey, i.avatarHash = :hash, " +
+           "i.avatarContentType = :contentType, i.avatarSize = :size WHERE i.id = :individualId")
+    void updateAvatarObject(@Param("individualId") UUID individualId,
+                            @Param("url") String url,
+                            @Param("objectKey") String objectKey,
+                            @Param("hash") String hash,
+                            @Param("contentType") String contentType,
+                            @Param("size") Long size);
+
     /**
      * Delete all individuals in a tree
      * @param treeId the tree ID
      */
     void deleteByTreeId(UUID treeId);
+
+    /**
+     * Stream the individuals of a tree for a tree archive, read with a database cursor
+     * (must be consumed and closed within a transaction).
+     * Individuals of a copy-on-write clone get the biography and notes of their source individual.
+     * @param treeId the tree ID
+     * @return stream of [ID, given name, middle name, surname, suffix, gender, birth date, birth place, death date,
+     *         death place, biography, notes, facebook link, phone number, avatar content type, lineage ID]
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT i.id, i.givenName, i.middleName, i.surname, i.suffix, i.gender, i.birthDate, i.birthPlace, " +
+           "i.deathDate, i.deathPlace, COALESCE(i.biography, s.biography), COALESCE(i.notes, s.notes), " +
+           "i.facebookLink, i.phoneNumber, i.avatarContentType, l.lineageId " +
+           "FROM Individual i LEFT JOIN IndividualLineage l ON l.individualId = i.id " +
+           "LEFT JOIN IndividualOverlay o ON o.individualId = i.id LEFT JOIN Individual s ON s.id = o.sourceIndividualId " +
+           "WHERE i.tree.id = :treeId")
+    Stream<Object[]> streamArchiveRowsByTreeId(@Param("treeId") UUID treeId);
 }
@@ -0,0 +1,114 @@
+package com.familytree.repository;
+
+import com.familytree.model.MediaBlob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository for MediaBlob entity.
+ * Reference counts are changed with single UPDATE statements, and a blob whose count reached zero is never
+ * referenced again (every increment requires a positive count), so it can be removed without further locking.
+ */
+@Repository
+public interface MediaBlobRepository extends JpaRepository<MediaBlob, String> {
+
+    /**
+     * Find the stored files with the given content that are still referenced
+     * @param checksum the SHA-256 of the content
+     * @return list of storage paths
+     */
+    @Query("SELECT b.storagePath FROM MediaBlob b WHERE b.checksum = :checksum AND b.refCount > 0")
+    List<String> findReferencedPathsByChecksum(@Param("checksum") String checksum);
+
+    /**
+     * Add references to a stored file, unless it is no longer referenced (and about to be removed)
+     * @return 1 if the references were added, 0 otherwise
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("UPDATE MediaBlob b SET b.refCount = b.refCount + :count WHERE b.storagePath = :storagePath AND b.refCount > 0")
+    int addReferences(@Param("storagePath") String storagePath, @Param("count") int count);
+
+    /**
+     * Remove a reference to a stored file
+     * @return 1 if a reference was removed, 0 if the file is unknown
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("UPDATE MediaBlob b SET b.refCount = b.refCount - 1 WHERE b.storagePath = :storagePath AND b.refCount > 0")
+    int removeReference(@Param("storagePath") String storagePath);
+
+    /**
+     * Find stored files no media record references anymore
+     */
+    @Query("SELECT b FROM MediaBlob b WHERE b.refCount <= 0")
+    List<MediaBlob> findUnreferenced(Pageable pageable);
+
+    /**
+     * Find the given stored files if no media record references them anymore
+     */
+    @Query("SELECT b FROM MediaBlob b WHERE b.storagePath IN :storagePaths AND b.refCount <= 0")
+    List<MediaBlob> findUnreferenced(@Param("storagePaths") Collection<String> storagePaths);
+
+    /**
+     * Delete the rows of removed files
+     * @return number of rows deleted
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("DELETE FROM MediaBlob b WHERE b.storagePath IN :storagePaths AND b.refCount <= 0")
+    int deleteUnreferenced(@Param("storagePaths") Collection<String> storagePaths);
+
+    /**
+     * Record the resized copies generated for a stored file
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("UPDATE MediaBlob b SET b.derivativeFormat = :format, b.derivativeWidths = :widths " +
+           "WHERE b.storagePath = :storagePath")
+    int updateDerivatives(@Param("storagePath") String storagePath, @Param("format") String format,
+                          @Param("widths") String widths);
+
+    /**
+     * Record the verified content of a file stored by a tree archive import (which makes it available for
+     * sharing by content)
+     * @return 1 if the blob exists, 0 otherwise
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("UPDATE MediaBlob b SET b.checksum = :checksum, b.fileSize = :fileSize WHERE b.storagePath = :storagePath")
+    int updateContent(@Param("storagePath") String storagePath, @Param("checksum") String checksum,
+                      @Param("fileSize") Long fileSize);
+
+    /**
+     * Create the missing blobs of stored files, counting the media records referencing each: files stored
+     * before blobs existed (files shared by cloned trees get one blob with several references)
+     * @return number of blobs created
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query(value = "INSERT INTO media_blobs (storage_path, checksum, file_size, mime_type, derivative_format, " +
+           "derivative_widths, ref_count, created_at) " +
+           "SELECT m.storage_path, MAX(m.checksum), MAX(m.file_size), MAX(m.mime_type), MAX(m.derivative_format), " +
+           "MAX(m.derivative_widths), COUNT(*), :now FROM media m " +
+           "WHERE NOT EXISTS (SELECT 1 FROM media_blobs b WHERE b.storage_path = m.storage_path) " +
+           "GROUP BY m.storage_path " +
+           "ON CONFLICT (storage_path) DO NOTHING",
+           nativeQuery = true)
+    int backfill(@Param("now") LocalDateTime now);
+
+    /**
+     * Create the blob of one stored file if it is missing, counting the media records referencing it
+     * @return 1 if the blob was created, 0 if it exists or no media record references the file
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query(value = "INSERT INTO media_blobs (storage_path, checksum, file_size, mime_type, derivative_format, " +
+           "derivative_widths, ref_count, created_at) " +
+           "SELECT m.storage_path, MAX(m.checksum), MAX(m.file_size), MAX(m.mime_type), MAX(m.derivative_format), " +
+           "MAX(m.derivative_widths), COUNT(*), :now FROM media m WHERE m.storage_path = :storagePath " +
+           "GROUP BY m.storage_path " +
+           "ON CONFLICT (storage_path) DO NOTHING",
+           nativeQuery = true)
+    int backfill(@Param("storagePath") String storagePath, @Param("now") LocalDateTime now);
+}
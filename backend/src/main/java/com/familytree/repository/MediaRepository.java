@@ -7,11 +7,16 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 /**
  * Repository interface for Media entity
@@ -41,6 +46,13 @@ public interface MediaRepository extends JpaRepository<Media, UUID> {
      */
     List<Media> findByIndividualId(UUID individualId);
 
+    /**
+     * Find media of several individuals
+     * @param individualIds the individual IDs
+     * @return list of media
+     */
+    List<Media> findByIndividualIdIn(Collection<UUID> individualIds);
+
     /**
      * Find media by individual ID with eager loading of individual and tree
      * @param individualId the individual ID
@@ -80,6 +92,24 @@ public interface MediaRepository extends JpaRepository<Media, UUID> {
      */
     long countByIndividualId(UUID individualId);
 
+    /**
+     * Count media files per individual in a tree
+     * @param treeId the tree ID
+     * @return list of [individual ID, media count]
+     */
+    @Query("SELECT m.individual.id, COUNT(m) FROM Media m WHERE m.individual.tree.id = :treeId GROUP BY m.individual.id")
+    List<Object[]> countByTreeIdGroupByIndividual(@Param("treeId") UUID treeId);
+
+    /**
+     * Record the resized copies of a stored file on every media record referencing it
+     * @return number of media records updated
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("UPDATE Media m SET m.derivativeFormat = :format, m.derivativeWidths = :widths " +
+           "WHERE m.storagePath = :storagePath")
+    int updateDerivatives(@Param("storagePath") String storagePath, @Param("format") String format,
+                          @Param("widths") String widths);
+
     /**
      * Calculate total storage used by a tree
      * @param treeId the tree ID
@@ -88,6 +118,17 @@ public interface MediaRepository extends JpaRepository<Media, UUID> {
     @Query("SELECT COALESCE(SUM(m.fileSize), 0) FROM Media m WHERE m.individual.tree.id = :treeId")
     Long calculateTreeStorageSize(@Param("treeId") UUID treeId);
 
+    /**
+     * Find the media of a tree with their individuals' names, grouped by individual (for archives)
+     * @param treeId the tree ID
+     * @return list of [media ID, individual ID, given name, middle name, surname, filename, storage path,
+     *         MIME type, file size, checksum, caption, uploaded at, media type]
+     */
+    @Query("SELECT m.id, i.id, i.givenName, i.middleName, i.surname, m.filename, m.storagePath, m.mimeType, " +
+           "m.fileSize, m.checksum, m.caption, m.uploadedAt, m.type FROM Media m JOIN m.individual i " +
+           "WHERE i.tree.id = :treeId ORDER BY i.surname, i.givenName, i.id, m.uploadedAt")
+    List<Object[]> findArchiveEntriesByTreeId(@Param("treeId") UUID treeId);
+
     /**
      * Find all media files in a tree (for deletion)
      * @param treeId the tree ID
@@ -101,4 +142,44 @@ public interface MediaRepository extends JpaRepository<Media, UUID> {
      * @param individualId the individual ID
      */
     void deleteByIndividualId(UUID individualId);
+
+    /**
+     * Count the media of the individuals of a tree
+     * @param treeId the tree ID
+     * @return media count
+     */
+    @Query("SELECT COUNT(m) FROM Media m WHERE m.individual.tree.id = :treeId")
+    long countByTreeId(@Param("treeId") UUID treeId);
+
+    /**
+     * Get the media statistics of a tree
+     * @param treeId the tree ID
+     * @return single row of [count, total file size, max uploadedAt]
+     */
+    @Query("SELECT COUNT(m), COALESCE(SUM(m.fileSize), 0), MAX(m.uploadedAt) " +
+           "FROM Media m WHERE m.individual.tree.id = :treeId")
+    List<Object[]> findStatsByTreeId(@Param("treeId") UUID treeId);
+
+    /**
+     * Stream the media records of a tree for a tree archive, read with a database cursor
+     * (must be consumed and closed within a transaction)
+     * @param treeId the tree ID
+     * @return stream of [ID, individual ID, type, filename, storage path, checksum, caption, file size,
+     *         MIME type, uploaded at]
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT m.id, m.individual.id, m.type, m.filename, m.storagePath, m.checksum, m.caption, m.fileSize, " +
+           "m.mimeType, m.uploadedAt FROM Media m WHERE m.individual.tree.id = :treeId")
+    Stream<Object[]> streamArchiveRowsByTreeId(@Param("treeId") UUID treeId);
+
+    /**
+     * Stream the distinct stored files of a tree for a tree archive, files with the same checksum
+     * one after the other (must be consumed and closed within a transaction)
+     * @param treeId the tree ID
+     * @return stream of [storage path, checksum]
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT m.storagePath, m.checksum FROM Media m WHERE m.individual.tree.id = :treeId " +
+           "GROUP BY m.storagePath, m.checksum ORDER BY m.checksum, m.storagePath")
+    Stream<Object[]> streamArchiveFilesByTreeId(@Param("treeId") UUID treeId);
 }
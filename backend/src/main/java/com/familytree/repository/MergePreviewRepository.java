@@ -0,0 +1,34 @@
+package com.familytree.repository;
+
+import com.familytree.model.MergePreview;
+import com.familytree.model.MergePreviewStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository for MergePreview entity
+ */
+@Repository
+public interface MergePreviewRepository extends JpaRepository<MergePreview, UUID> {
+
+    /**
+     * Find previews by status
+     * @param statuses the statuses
+     * @return list of previews
+     */
+    List<MergePreview> findByStatusIn(Collection<MergePreviewStatus> statuses);
+
+    /**
+     * Delete all previews involving a tree (as source or target)
+     * @param treeId the tree ID
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("DELETE FROM MergePreview p WHERE p.targetTreeId = :treeId OR p.sourceTreeId = :treeId")
+    void deleteByTreeId(@Param("treeId") UUID treeId);
+}
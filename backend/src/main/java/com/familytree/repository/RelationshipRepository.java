@@ -5,11 +5,15 @@ import com.familytree.model.Relationship;
 import com.familytree.model.RelationshipType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 /**
  * Repository interface for Relationship entity
@@ -43,6 +47,14 @@ public interface RelationshipRepository extends JpaRepository<Relationship, UUID
            "WHERE r.tree.id = :treeId")
     List<Relationship> findByTreeIdWithIndividuals(@Param("treeId") UUID treeId);
 
+    /**
+     * Find the structure of a tree as edge rows, without loading relationship or individual entities
+     * @param treeId the tree ID
+     * @return list of [individual1 ID, individual2 ID, type]
+     */
+    @Query("SELECT r.individual1.id, r.individual2.id, r.type FROM Relationship r WHERE r.tree.id = :treeId")
+    List<Object[]> findEdgesByTreeId(@Param("treeId") UUID treeId);
+
     /**
      * Count relationships in a tree
      * @param treeId the tree ID
@@ -50,6 +62,14 @@ public interface RelationshipRepository extends JpaRepository<Relationship, UUID
      */
     long countByTreeId(UUID treeId);
 
+    /**
+     * Get the relationship count and latest creation/modification times of a tree (used for tree versioning)
+     * @param treeId the tree ID
+     * @return single row of [count, max createdAt, max updatedAt]
+     */
+    @Query("SELECT COUNT(r), MAX(r.createdAt), MAX(r.updatedAt) FROM Relationship r WHERE r.tree.id = :treeId")
+    List<Object[]> findChangeMarker(@Param("treeId") UUID treeId);
+
     /**
      * Find relationships of a specific type for an individual
      * @param individualId the individual ID
@@ -135,4 +155,15 @@ public interface RelationshipRepository extends JpaRepository<Relationship, UUID
                                                   @Param("ind1Id") UUID ind1Id,
                                                   @Param("ind2Id") UUID ind2Id,
                                                   @Param("type") RelationshipType type);
+
+    /**
+     * Stream the relationships of a tree for a tree archive, read with a database cursor
+     * (must be consumed and closed within a transaction)
+     * @param treeId the tree ID
+     * @return stream of [ID, individual1 ID, individual2 ID, type, start date, end date]
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT r.id, r.individual1.id, r.individual2.id, r.type, r.startDate, r.endDate " +
+           "FROM Relationship r WHERE r.tree.id = :treeId")
+    Stream<Object[]> streamArchiveRowsByTreeId(@Param("treeId") UUID treeId);
 }
@@ -0,0 +1,33 @@
+package com.familytree.repository;
+
+import com.familytree.model.TreeDeletionJob;
+import com.familytree.model.TreeDeletionStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository for TreeDeletionJob entity
+ */
+@Repository
+public interface TreeDeletionJobRepository extends JpaRepository<TreeDeletionJob, UUID> {
+
+    /**
+     * Find all deletion jobs, most recent first
+     * @param pageable pagination information
+     * @return page of jobs
+     */
+    Page<TreeDeletionJob> findAllByOrderByCreatedAtDesc(Pageable pageable);
+
+    /**
+     * Find deletion jobs by status
+     * @param statuses the statuses
+     * @return list of jobs
+     */
+    List<TreeDeletionJob> findByStatusIn(Collection<TreeDeletionStatus> statuses);
+}
@@ -0,0 +1,34 @@
+package com.familytree.repository;
+
+import com.familytree.model.TreeImportJob;
+import com.familytree.model.TreeImportStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository for TreeImportJob entity
+ */
+@Repository
+public interface TreeImportJobRepository extends JpaRepository<TreeImportJob, UUID> {
+
+    /**
+     * Find the import jobs of a user, most recent first
+     * @param requestedBy the user's email
+     * @param pageable pagination information
+     * @return page of jobs
+     */
+    Page<TreeImportJob> findByRequestedByOrderByCreatedAtDesc(String requestedBy, Pageable pageable);
+
+    /**
+     * Find import jobs by status
+     * @param statuses the statuses
+     * @return list of jobs
+     */
+    List<TreeImportJob> findByStatusIn(Collection<TreeImportStatus> statuses);
+}
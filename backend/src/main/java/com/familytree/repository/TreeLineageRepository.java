@@ -0,0 +1,35 @@
+package com.familytree.repository;
+
+import com.familytree.model.FamilyTree;
+import com.familytree.model.TreeLineage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository for TreeLineage entity
+ */
+@Repository
+public interface TreeLineageRepository extends JpaRepository<TreeLineage, UUID> {
+
+    /**
+     * Find all trees in the clone lineage of a tree (including the tree itself)
+     * @param treeId the tree ID
+     * @return list of trees
+     */
+    @Query("SELECT t FROM TreeLineage l1, TreeLineage l2, FamilyTree t " +
+           "WHERE l1.treeId = :treeId AND l2.lineageId = l1.lineageId AND t.id = l2.treeId AND t.deletedAt IS NULL")
+    List<FamilyTree> findRelatedTrees(@Param("treeId") UUID treeId);
+
+    /**
+     * Delete the lineage entry of a tree
+     * @param treeId the tree ID
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("DELETE FROM TreeLineage l WHERE l.treeId = :treeId")
+    void deleteByTreeId(@Param("treeId") UUID treeId);
+}
@@ -0,0 +1,69 @@
+package com.familytree.repository;
+
+import com.familytree.model.QualityIssueType;
+import com.familytree.model.TreeQualityFinding;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository for TreeQualityFinding entity
+ */
+@Repository
+public interface TreeQualityFindingRepository extends JpaRepository<TreeQualityFinding, UUID> {
+
+    /**
+     * Find the findings of a tree, grouped by type
+     * @param treeId the tree ID
+     * @return list of findings
+     */
+    List<TreeQualityFinding> findByTreeIdOrderByTypeAscIndividualNameAsc(UUID treeId);
+
+    /**
+     * Find the findings of a tree of one type
+     * @param treeId the tree ID
+     * @param type the issue type
+     * @return list of findings
+     */
+    List<TreeQualityFinding> findByTreeIdAndTypeOrderByIndividualNameAsc(UUID treeId, QualityIssueType type);
+
+    /**
+     * Count the findings of a tree
+     * @param treeId the tree ID
+     * @return count of findings
+     */
+    long countByTreeId(UUID treeId);
+
+    /**
+     * Delete all findings of a tree
+     * @param treeId the tree ID
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("DELETE FROM TreeQualityFinding f WHERE f.treeId = :treeId")
+    void deleteByTreeId(@Param("treeId") UUID treeId);
+
+    /**
+     * Delete the findings of a tree of one type
+     * @param treeId the tree ID
+     * @param type the issue type
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("DELETE FROM TreeQualityFinding f WHERE f.treeId = :treeId AND f.type = :type")
+    void deleteByTreeIdAndType(@Param("treeId") UUID treeId, @Param("type") QualityIssueType type);
+
+    /**
+     * Delete the findings of a tree involving any of the given individuals
+     * @param treeId the tree ID
+     * @param individualIds the individual IDs
+     */
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("DELETE FROM TreeQualityFinding f WHERE f.treeId = :treeId " +
+           "AND (f.individualId IN :individualIds OR f.relatedIndividualId IN :individualIds)")
+    void deleteByTreeIdAndIndividualIds(@Param("treeId") UUID treeId,
+                                        @Param("individualIds") Collection<UUID> individualIds);
+}
@@ -0,0 +1,14 @@
+package com.familytree.repository;
+
+import com.familytree.model.TreeQualityScan;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+/**
+ * Repository for TreeQualityScan entity
+ */
+@Repository
+public interface TreeQualityScanRepository extends JpaRepository<TreeQualityScan, UUID> {
+}
@@ -0,0 +1,24 @@
+package com.familytree.repository;
+
+import com.familytree.model.TreeStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository for TreeStats entity
+ */
+@Repository
+public interface TreeStatsRepository extends JpaRepository<TreeStats, UUID> {
+
+    /**
+     * Find the trees whose statistics have not been computed yet
+     * @return list of [tree ID, last modification time of the tree]
+     */
+    @Query("SELECT t.id, COALESCE(t.updatedAt, t.createdAt) FROM FamilyTree t " +
+           "WHERE t.deletedAt IS NULL AND NOT EXISTS (SELECT s.treeId FROM TreeStats s WHERE s.treeId = t.id)")
+    List<Object[]> findTreesWithoutStats();
+}
@@ -68,4 +68,12 @@ public interface UserTreeProfileRepository extends JpaRepository<UserTreeProfile
     @org.springframework.data.jpa.repository.Modifying
     @Query("DELETE FROM UserTreeProfile utp WHERE utp.tree.id = :treeId")
     void deleteByTreeId(@Param("treeId") UUID treeId);
+
+    /**
+     * Find the users linked to individuals of a tree, for a tree archive
+     * @param treeId the tree ID
+     * @return list of [user email, individual ID]
+     */
+    @Query("SELECT p.user.email, p.individual.id FROM UserTreeProfile p WHERE p.tree.id = :treeId")
+    List<Object[]> findArchiveRowsByTreeId(@Param("treeId") UUID treeId);
 }
@@ -1,6 +1,7 @@
 package com.familytree.service;
 
 import com.familytree.dto.admin.CreateUserRequest;
+import com.familytree.dto.admin.TreeDeletionJobResponse;
 import com.familytree.dto.admin.UpdateUserRequest;
 import com.familytree.dto.admin.UserWithProfileResponse;
 import com.familytree.dto.response.UserResponse;
@@ -14,6 +15,7 @@ import com.familytree.model.User;
 import com.familytree.model.UserTreeProfile;
 import com.familytree.repository.FamilyTreeRepository;
 import com.familytree.repository.IndividualRepository;
+import com.familytree.repository.TreeDeletionJobRepository;
 import com.familytree.repository.UserRepository;
 import com.familytree.repository.UserTreeProfileRepository;
 import lombok.RequiredArgsConstructor;
@@ -44,6 +46,7 @@ public class AdminService {
     private final UserTreeProfileRepository userTreeProfileRepository;
     private final FamilyTreeRepository treeRepository;
     private final IndividualRepository individualRepository;
+    private final TreeDeletionJobRepository treeDeletionJobRepository;
     private final PasswordEncoder passwordEncoder;
 
     /**
@@ -83,7 +86,7 @@ public class AdminService {
     public List<UserWithProfileResponse> getUsersWithProfiles(UUID treeId, String adminEmail) {
         verifyAdmin(adminEmail);
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found"));
 
         List<User> allUsers = userRepository.findAll();
@@ -222,7 +225,7 @@ public class AdminService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found with ID: " + userId));
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         Individual individual = individualRepository.findById(individualId)
@@ -315,7 +318,7 @@ public class AdminService {
         verifyAdmin(adminEmail);
         log.info("Admin '{}' creating user from individual '{}' in tree '{}'", adminEmail, individualId, treeId);
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         Individual individual = individualRepository.findById(individualId)
@@ -372,7 +375,7 @@ public class AdminService {
         verifyAdmin(adminEmail);
         log.info("Admin '{}' bulk creating users from tree '{}'", adminEmail, treeId);
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Get all individuals in the tree
@@ -430,6 +433,28 @@ public class AdminService {
                 .collect(Collectors.toList());
     }
 
+    // ==================== Tree Deletion Jobs ====================
+
+    /**
+     * Get background tree deletion jobs, most recent first
+     */
+    @Transactional(readOnly = true)
+    public Page<TreeDeletionJobResponse> getTreeDeletionJobs(String adminEmail, Pageable pageable) {
+        verifyAdmin(adminEmail);
+        return treeDeletionJobRepository.findAllByOrderByCreatedAtDesc(pageable).map(TreeDeletionJobResponse::fromJob);
+    }
+
+    /**
+     * Get the status and progress of a tree deletion job
+     */
+    @Transactional(readOnly = true)
+    public TreeDeletionJobResponse getTreeDeletionJob(UUID jobId, String adminEmail) {
+        verifyAdmin(adminEmail);
+        return treeDeletionJobRepository.findById(jobId)
+                .map(TreeDeletionJobResponse::fromJob)
+                .orElseThrow(() -> new ResourceNotFoundException("Tree deletion job not found: " + jobId));
+    }
+
     /**
      * Generate username from full name
      * - Remove Vietnamese accents
@@ -198,7 +198,7 @@ public class AncestorTreeService {
 
         // If this is a cloned tree, check if user has access to the source tree
         if (tree.getSourceTreeId() != null) {
-            FamilyTree sourceTree = treeRepository.findById(tree.getSourceTreeId()).orElse(null);
+            FamilyTree sourceTree = treeRepository.findByIdAndDeletedAtIsNull(tree.getSourceTreeId()).orElse(null);
             if (sourceTree != null) {
                 if (userTreeProfileRepository.existsByUserIdAndTreeId(user.getId(), sourceTree.getId())) {
                     return true;
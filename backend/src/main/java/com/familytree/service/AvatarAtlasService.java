@@ -0,0 +1,410 @@
+package com.familytree.service;
+
+import com.familytree.dto.tree.AvatarAtlasResponse;
+import com.familytree.exception.BadRequestException;
+import com.familytree.exception.ResourceNotFoundException;
+import com.familytree.exception.UnauthorizedException;
+import com.familytree.model.FamilyTree;
+import com.familytree.model.User;
+import com.familytree.repository.FamilyTreeRepository;
+import com.familytree.repository.IndividualRepository;
+import com.familytree.repository.UserRepository;
+import com.familytree.repository.UserTreeProfileRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.minio.errors.ErrorResponseException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.coobird.thumbnailator.Thumbnails;
+import net.coobird.thumbnailator.geometry.Positions;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service packing the avatars of a tree into a few sheet images (an atlas), so a tree view loads
+ * one index and a handful of images instead of one request per person.
+ *
+ * Every avatar becomes a square, center-cropped tile of the requested size, read from the smallest
+ * resized copy that is large enough. Atlases are generated on first request and stored in MinIO under
+ * atlases/trees/{treeId}/{treeVersion}-{atlasId}-*, where the atlas ID covers the tile size and the
+ * avatars included. Atlases of older tree versions are removed when a new one is stored.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AvatarAtlasService {
+
+    private static final int MIN_TILE_SIZE = 16;
+    private static final int MAX_TILE_SIZE = 192;
+
+    // Sheets hold up to 16 x 16 tiles
+    private static final int SHEET_COLUMNS = 16;
+    private static final int TILES_PER_SHEET = SHEET_COLUMNS * SHEET_COLUMNS;
+
+    private static final float QUALITY = 0.85f;
+
+    private final IndividualRepository individualRepository;
+    private final FamilyTreeRepository treeRepository;
+    private final UserRepository userRepository;
+    private final UserTreeProfileRepository userTreeProfileRepository;
+    private final TreeVersionService treeVersionService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final MinioService minioService;
+    private final MediaUrlService mediaUrlService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Qualifier("avatarAtlasExecutor")
+    private final TaskExecutor avatarAtlasExecutor;
+
+    // Atlases being generated, so concurrent requests for the same atlas share one generation
+    private final Map<String, Object> generationLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Get the avatar atlas of a tree, generating it if the current tree version has none yet
+     * @param treeId the tree ID
+     * @param tileSize the tile edge in pixels
+     * @param individualIds the individuals to include, or null for every individual with an avatar
+     * @param userEmail the requesting user
+     * @return the atlas index with sheet URLs
+     */
+    public AvatarAtlasResponse getAtlas(UUID treeId, int tileSize, Collection<UUID> individualIds, String userEmail) {
+        if (tileSize < MIN_TILE_SIZE || tileSize > MAX_TILE_SIZE) {
+            throw new BadRequestException("Tile size must be between " + MIN_TILE_SIZE + " and " + MAX_TILE_SIZE);
+        }
+
+        // Short transaction for the checks and lookups, the generation itself needs no database access
+        String version = transactionTemplate.execute(status -> {
+            FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
+            if (!hasAccess(tree, userEmail)) {
+                throw new UnauthorizedException("You do not have access to this tree");
+            }
+            return treeVersionService.getVersion(treeId);
+        });
+        List<AvatarSource> avatars = findAvatars(treeId, tileSize, individualIds);
+
+        if (avatars.isEmpty()) {
+            return AvatarAtlasResponse.builder().treeVersion(version).tileSize(tileSize).build();
+        }
+
+        String atlasId = atlasId(tileSize, avatars);
+        String atlasKey = version + "-" + atlasId;
+
+        AvatarAtlasResponse atlas = readIndex(treeId, atlasKey);
+        if (atlas == null) {
+            Object lock = generationLocks.computeIfAbsent(atlasKey, key -> new Object());
+            synchronized (lock) {
+                try {
+                    atlas = readIndex(treeId, atlasKey);
+                    if (atlas == null) {
+                        atlas = generate(treeId, version, atlasId, tileSize, avatars);
+                    }
+                } finally {
+                    generationLocks.remove(atlasKey);
+                }
+            }
+        }
+
+        // Sheet URLs are not stored, presigned ones expire
+        for (int i = 0; i < atlas.getSheets().size(); i++) {
+            atlas.getSheets().get(i).setUrl(sheetUrl(treeId, atlasKey, i));
+        }
+        return atlas;
+    }
+
+    /**
+     * Open a stored sheet image
+     * @param treeId the tree ID
+     * @param atlasKey the tree version and atlas ID ({version}-{atlasId})
+     * @param sheet the sheet index
+     * @return the image stream
+     */
+    public InputStream openSheet(UUID treeId, String atlasKey, int sheet) throws Exception {
+        try {
+            return minioService.downloadFile(sheetObjectName(treeId, atlasKey, sheet));
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                throw new ResourceNotFoundException("Avatar atlas sheet not found");
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Find the avatars to pack, in a stable order, with the stored image each tile is read from.
+     * Avatars whose object key has not been recorded yet are left out (clients load them by URL).
+     */
+    private List<AvatarSource> findAvatars(UUID treeId, int tileSize, Collection<UUID> individualIds) {
+        Set<UUID> wanted = individualIds != null ? new HashSet<>(individualIds) : null;
+        List<AvatarSource> avatars = new ArrayList<>();
+        for (Object[] row : individualRepository.findAvatarsByTreeId(treeId)) {
+            UUID individualId = (UUID) row[0];
+            String objectKey = (String) row[1];
+            if (objectKey == null || row[2] == null || (wanted != null && !wanted.contains(individualId))) {
+                continue;
+            }
+            String source = imageDerivativeService.pickDerivative(objectKey, (String) row[5], (String) row[6], tileSize);
+            avatars.add(new AvatarSource(individualId, (String) row[2], source));
+        }
+        avatars.sort(Comparator.comparing(avatar -> avatar.individualId));
+        return avatars;
+    }
+
+    /**
+     * Identify an atlas by its tile size and the exact avatar versions it contains
+     */
+    private String atlasId(int tileSize, List<AvatarSource> avatars) {
+        StringBuilder content = new StringBuilder().append(tileSize);
+        for (AvatarSource avatar : avatars) {
+            content.append('|').append(avatar.individualId).append(':').append(avatar.hash);
+        }
+        return DigestUtils.md5DigestAsHex(content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private AvatarAtlasResponse generate(UUID treeId, String version, String atlasId, int tileSize,
+                                         List<AvatarSource> avatars) {
+        String atlasKey = version + "-" + atlasId;
+        long start = System.currentTimeMillis();
+
+        // Tiles are decoded and scaled concurrently, and drawn in order as they complete
+        List<CompletableFuture<BufferedImage>> tiles = new ArrayList<>(avatars.size());
+        for (AvatarSource avatar : avatars) {
+            tiles.add(CompletableFuture.supplyAsync(() -> loadTile(avatar.objectName, tileSize), avatarAtlasExecutor));
+        }
+
+        AvatarAtlasResponse atlas = AvatarAtlasResponse.builder()
+                .treeVersion(version)
+                .atlasId(atlasId)
+                .tileSize(tileSize)
+                .build();
+
+        try {
+            BufferedImage sheet = null;
+            Graphics2D graphics = null;
+            int placed = 0;
+            for (int i = 0; i < avatars.size(); i++) {
+                BufferedImage tile = tiles.get(i).join();
+                if (tile == null) {
+                    continue;
+                }
+
+                int slot = placed % TILES_PER_SHEET;
+                if (slot == 0) {
+                    if (sheet != null) {
+                        graphics.dispose();
+                        storeSheet(treeId, atlasKey, atlas, sheet);
+                    }
+                    // Sized for the remaining avatars; tiles that fail to load leave a blank at the end
+                    int count = Math.min(TILES_PER_SHEET, avatars.size() - i);
+                    int columns = Math.min(SHEET_COLUMNS, count);
+                    int rows = (count + columns - 1) / columns;
+                    sheet = new BufferedImage(columns * tileSize, rows * tileSize, BufferedImage.TYPE_INT_RGB);
+                    graphics = sheet.createGraphics();
+                    graphics.setColor(Color.WHITE);
+                    graphics.fillRect(0, 0, sheet.getWidth(), sheet.getHeight());
+                }
+
+                int x = (slot % SHEET_COLUMNS) * tileSize;
+                int y = (slot / SHEET_COLUMNS) * tileSize;
+                graphics.drawImage(tile, x, y, Color.WHITE, null);
+                atlas.getTiles().put(avatars.get(i).individualId,
+                        new AvatarAtlasResponse.Tile(atlas.getSheets().size(), x, y));
+                placed++;
+            }
+            if (sheet != null) {
+                graphics.dispose();
+                storeSheet(treeId, atlasKey, atlas, sheet);
+            }
+
+            // The index is stored last: its presence marks the atlas as complete
+            byte[] index = objectMapper.writeValueAsBytes(atlas);
+            minioService.uploadFile(new ByteArrayInputStream(index), indexObjectName(treeId, atlasKey),
+                    "application/json", index.length);
+        } catch (Exception e) {
+            log.error("Failed to generate avatar atlas {} for tree {}", atlasKey, treeId, e);
+            throw new RuntimeException("Failed to generate avatar atlas: " + e.getMessage(), e);
+        }
+
+        log.info("Generated avatar atlas {} for tree {}: {} tiles on {} sheets in {} ms", atlasId, treeId,
+                atlas.getTiles().size(), atlas.getSheets().size(), System.currentTimeMillis() - start);
+        removeOutdatedAtlases(treeId, version);
+        return atlas;
+    }
+
+    /**
+     * Read and crop an avatar to a square tile
+     * @return the tile, or null if the image could not be read
+     */
+    private BufferedImage loadTile(String objectName, int tileSize) {
+        try (InputStream inputStream = minioService.downloadFile(objectName)) {
+            BufferedImage image = ImageIO.read(inputStream);
+            if (image == null) {
+                log.warn("Unsupported avatar image format: {}", objectName);
+                return null;
+            }
+            return Thumbnails.of(image)
+                    .size(tileSize, tileSize)
+                    .crop(Positions.CENTER)
+                    .asBufferedImage();
+        } catch (Exception e) {
+            log.warn("Could not read avatar {} for atlas: {}", objectName, e.getMessage());
+            return null;
+        }
+    }
+
+    private void storeSheet(UUID treeId, String atlasKey, AvatarAtlasResponse atlas, BufferedImage sheet)
+            throws Exception {
+        int sheetIndex = atlas.getSheets().size();
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            Thumbnails.of(sheet)
+                    .scale(1.0)
+                    .outputFormat("jpg")
+                    .outputQuality(QUALITY)
+                    .toOutputStream(outputStream);
+
+            byte[] bytes = outputStream.toByteArray();
+            minioService.uploadFile(new ByteArrayInputStream(bytes), sheetObjectName(treeId, atlasKey, sheetIndex),
+                    "image/jpeg", bytes.length);
+        }
+        atlas.getSheets().add(new AvatarAtlasResponse.Sheet(null, sheet.getWidth(), sheet.getHeight()));
+    }
+
+    /**
+     * Read a stored atlas index
+     * @return the index, or null if the atlas has not been generated
+     */
+    private AvatarAtlasResponse readIndex(UUID treeId, String atlasKey) {
+        try (InputStream inputStream = minioService.downloadFile(indexObjectName(treeId, atlasKey))) {
+            return objectMapper.readValue(inputStream, AvatarAtlasResponse.class);
+        } catch (ErrorResponseException e) {
+            if (!"NoSuchKey".equals(e.errorResponse().code())) {
+                log.warn("Could not read avatar atlas {}: {}", atlasKey, e.getMessage());
+            }
+            return null;
+        } catch (Exception e) {
+            log.warn("Could not read avatar atlas {}: {}", atlasKey, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Delete the atlases of earlier versions of a tree
+     */
+    private void removeOutdatedAtlases(UUID treeId, String version) {
+        String prefix = atlasPrefix(treeId);
+        try {
+            List<String> outdated = new ArrayList<>();
+            for (String objectName : minioService.listFiles(prefix)) {
+                if (!objectName.startsWith(prefix + version + "-")) {
+                    outdated.add(objectName);
+                }
+            }
+            if (!outdated.isEmpty()) {
+                minioService.deleteFiles(outdated);
+            }
+        } catch (Exception e) {
+            log.warn("Could not remove outdated avatar atlases of tree {}: {}", treeId, e.getMessage());
+        }
+    }
+
+    private String sheetUrl(UUID treeId, String atlasKey, int sheet) {
+        if (mediaUrlService.isPresigned()) {
+            return mediaUrlService.getPresignedUrl(sheetObjectName(treeId, atlasKey, sheet), null, "image/jpeg");
+        }
+        return "/api/trees/" + treeId + "/avatar-atlas/" + atlasKey + "/" + sheet;
+    }
+
+    /**
+     * Get the storage prefix of the atlases of a tree
+     */
+    static String atlasPrefix(UUID treeId) {
+        return "atlases/trees/" + treeId + "/";
+    }
+
+    private String indexObjectName(UUID treeId, String atlasKey) {
+        return atlasPrefix(treeId) + atlasKey + "-index.json";
+    }
+
+    private String sheetObjectName(UUID treeId, String atlasKey, int sheet) {
+        return atlasPrefix(treeId) + atlasKey + "-sheet-" + sheet + ".jpg";
+    }
+
+    /**
+     * Check if user has access to the tree (owner, has permission, admin, or linked via UserTreeProfile)
+     */
+    private boolean hasAccess(FamilyTree tree, String userEmail) {
+        User user = userRepository.findByEmail(userEmail).orElse(null);
+        if (user == null) {
+            return false;
+        }
+
+        // Admin users have access to all trees
+        if (user.isAdmin()) {
+            return true;
+        }
+
+        // Owner has access
+        if (tree.getOwner().getEmail().equals(userEmail)) {
+            return true;
+        }
+
+        // User with permission has access
+        boolean hasPermission = tree.getPermissions().stream()
+                .anyMatch(p -> p.getUser().getEmail().equals(userEmail));
+        if (hasPermission) {
+            return true;
+        }
+
+        // User linked via UserTreeProfile has access
+        if (userTreeProfileRepository.existsByUserIdAndTreeId(user.getId(), tree.getId())) {
+            return true;
+        }
+
+        // If this is a cloned tree, check if user has access to the source tree
+        if (tree.getSourceTreeId() != null) {
+            FamilyTree sourceTree = treeRepository.findByIdAndDeletedAtIsNull(tree.getSourceTreeId()).orElse(null);
+            if (sourceTree != null) {
+                if (userTreeProfileRepository.existsByUserIdAndTreeId(user.getId(), sourceTree.getId())) {
+                    return true;
+                }
+                if (sourceTree.getOwner().getEmail().equals(userEmail)) {
+                    return true;
+                }
+                boolean hasSourcePermission = sourceTree.getPermissions().stream()
+                        .anyMatch(p -> p.getUser().getEmail().equals(userEmail));
+                if (hasSourcePermission) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static class AvatarSource {
+        final UUID individualId;
+        final String hash;
+        final String objectName;
+
+        AvatarSource(UUID individualId, String hash, String objectName) {
+            this.individualId = individualId;
+            this.hash = hash;
+            this.objectName = objectName;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.familytree.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small in-memory LRU cache of avatar bytes, so the most requested avatars are served without
+ * a round trip to MinIO. Entries are keyed by object name and avatar hash, so a re-uploaded avatar
+ * never hits a stale entry and old entries simply age out.
+ * Setting media.avatar.cache.max-bytes to 0 disables the cache.
+ */
+@Component
+public class AvatarCache {
+
+    @Value("${media.avatar.cache.max-bytes:16777216}")
+    private long maxBytes;
+
+    // Larger avatars (typically originals) are streamed instead of cached
+    @Value("${media.avatar.cache.max-entry-bytes:262144}")
+    private long maxEntryBytes;
+
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long totalBytes;
+
+    /**
+     * Get cached avatar bytes
+     * @param objectName the object name
+     * @param hash the avatar hash
+     * @return the bytes, or null if not cached
+     */
+    public synchronized byte[] get(String objectName, String hash) {
+        return entries.get(key(objectName, hash));
+    }
+
+    /**
+     * Check if an object of the given size should be read into the cache
+     * @param size the object size, or null if unknown (resized copies, which are small)
+     */
+    public boolean accepts(Long size) {
+        return maxBytes > 0 && (size == null || size <= maxEntryBytes);
+    }
+
+    /**
+     * Cache avatar bytes, evicting the least recently used entries beyond the size limit
+     */
+    public synchronized void put(String objectName, String hash, byte[] bytes) {
+        if (maxBytes <= 0 || bytes.length > maxEntryBytes) {
+            return;
+        }
+        byte[] previous = entries.put(key(objectName, hash), bytes);
+        totalBytes += bytes.length - (previous != null ? previous.length : 0);
+
+        Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    private String key(String objectName, String hash) {
+        return hash + ':' + objectName;
+    }
+}
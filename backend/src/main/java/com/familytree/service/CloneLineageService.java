@@ -0,0 +1,235 @@
+package com.familytree.service;
+
+import com.familytree.model.FamilyTree;
+import com.familytree.model.IndividualLineage;
+import com.familytree.model.TreeLineage;
+import com.familytree.repository.FamilyTreeRepository;
+import com.familytree.repository.IndividualCloneMappingRepository;
+import com.familytree.repository.IndividualLineageRepository;
+import com.familytree.repository.TreeLineageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * Service maintaining the clone lineage index of trees and individuals.
+ * Copies of the same person (or tree) share a lineage ID; lineages are extended when a tree
+ * is cloned, joined when copies are merged, and entries are removed with their individual or tree.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CloneLineageService {
+
+    private static final int ID_BATCH_SIZE = 1000;
+
+    private final IndividualLineageRepository individualLineageRepository;
+    private final TreeLineageRepository treeLineageRepository;
+    private final IndividualCloneMappingRepository cloneMappingRepository;
+    private final FamilyTreeRepository treeRepository;
+
+    /**
+     * Find every copy of an individual across trees, including the individual itself
+     * @return list of [individual ID, tree ID, tree name], empty if the individual was never cloned
+     */
+    @Transactional(readOnly = true)
+    public List<Object[]> findLocations(UUID individualId) {
+        return individualLineageRepository.findLocationsByIndividualId(individualId);
+    }
+
+    /**
+     * Find all trees in the clone lineage of a tree, including the tree itself
+     * @return list of trees, empty if the tree was never cloned
+     */
+    @Transactional(readOnly = true)
+    public List<FamilyTree> findRelatedTrees(UUID treeId) {
+        return treeLineageRepository.findRelatedTrees(treeId);
+    }
+
+    /**
+     * Record the individuals added and matched by a merge.
+     * Added individuals join the lineage of the source individual they were copied from; matched
+     * individuals join each other's lineage, and two different lineages of a matched pair become one.
+     * @param sourceTreeId the merge source tree ID
+     * @param targetTreeId the merge target tree ID
+     * @param addedIndividuals source individual ID to the individual created in the target tree
+     * @param matchedIndividuals source individual ID to the matched target individual ID
+     */
+    @Transactional
+    public void recordMerge(UUID sourceTreeId, UUID targetTreeId,
+                            Map<UUID, UUID> addedIndividuals, Map<UUID, UUID> matchedIndividuals) {
+        Set<UUID> ids = new HashSet<>(addedIndividuals.keySet());
+        ids.addAll(matchedIndividuals.keySet());
+        ids.addAll(matchedIndividuals.values());
+
+        Map<UUID, IndividualLineage> existing = new HashMap<>();
+        List<UUID> idList = new ArrayList<>(ids);
+        for (int from = 0; from < idList.size(); from += ID_BATCH_SIZE) {
+            List<UUID> batch = idList.subList(from, Math.min(from + ID_BATCH_SIZE, idList.size()));
+            for (IndividualLineage lineage : individualLineageRepository.findByIndividualIdIn(batch)) {
+                existing.put(lineage.getIndividualId(), lineage);
+            }
+        }
+        if (existing.isEmpty()) {
+            return;
+        }
+
+        LineageGroups groups = new LineageGroups();
+        List<IndividualLineage> newEntries = new ArrayList<>();
+
+        for (Map.Entry<UUID, UUID> entry : matchedIndividuals.entrySet()) {
+            IndividualLineage sourceLineage = existing.get(entry.getKey());
+            IndividualLineage targetLineage = existing.get(entry.getValue());
+
+            if (sourceLineage != null && targetLineage != null) {
+                // The target's lineage is kept, the source's is folded into it
+                groups.union(targetLineage.getLineageId(), sourceLineage.getLineageId());
+            } else if (sourceLineage != null) {
+                newEntries.add(entry(entry.getValue(), sourceLineage.getLineageId(), targetTreeId));
+            } else if (targetLineage != null) {
+                newEntries.add(entry(entry.getKey(), targetLineage.getLineageId(), sourceTreeId));
+            }
+        }
+
+        for (Map.Entry<UUID, UUID> entry : addedIndividuals.entrySet()) {
+            IndividualLineage sourceLineage = existing.get(entry.getKey());
+            if (sourceLineage != null) {
+                newEntries.add(entry(entry.getValue(), sourceLineage.getLineageId(), targetTreeId));
+            }
+        }
+
+        Map<UUID, Set<UUID>> folded = groups.foldedLineages();
+        folded.forEach(individualLineageRepository::relabel);
+
+        for (IndividualLineage newEntry : newEntries) {
+            newEntry.setLineageId(groups.find(newEntry.getLineageId()));
+        }
+        individualLineageRepository.saveAll(newEntries);
+
+        log.info("Recorded merge lineage: {} new entries, {} lineages joined", newEntries.size(), folded.size());
+    }
+
+    /**
+     * Remove an individual from its lineage
+     */
+    @Transactional
+    public void removeIndividual(UUID individualId) {
+        individualLineageRepository.deleteByIndividualId(individualId);
+    }
+
+    /**
+     * Remove a tree and all its individuals from their lineages
+     */
+    @Transactional
+    public void removeTree(UUID treeId) {
+        individualLineageRepository.deleteByTreeId(treeId);
+        treeLineageRepository.deleteByTreeId(treeId);
+    }
+
+    /**
+     * Build the lineage index from existing clone mappings and cloned trees the first time the application
+     * starts with it (afterwards it is maintained incrementally)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfill() {
+        if (treeLineageRepository.count() > 0 || individualLineageRepository.count() > 0) {
+            return;
+        }
+
+        List<Object[]> treeLinks = treeRepository.findCloneLinks();
+        List<Object[]> individualLinks = cloneMappingRepository.findAllLinks();
+        if (treeLinks.isEmpty() && individualLinks.isEmpty()) {
+            return;
+        }
+
+        LineageGroups treeGroups = new LineageGroups();
+        for (Object[] link : treeLinks) {
+            treeGroups.union((UUID) link[1], (UUID) link[0]);
+        }
+        List<TreeLineage> treeLineages = new ArrayList<>();
+        for (UUID treeId : treeGroups.members()) {
+            treeLineages.add(TreeLineage.builder().treeId(treeId).lineageId(treeGroups.find(treeId)).build());
+        }
+
+        LineageGroups individualGroups = new LineageGroups();
+        Map<UUID, UUID> treeOfIndividual = new HashMap<>();
+        for (Object[] link : individualLinks) {
+            individualGroups.union((UUID) link[0], (UUID) link[1]);
+            treeOfIndividual.put((UUID) link[0], (UUID) link[2]);
+            treeOfIndividual.put((UUID) link[1], (UUID) link[3]);
+        }
+        List<IndividualLineage> individualLineages = new ArrayList<>();
+        for (UUID individualId : individualGroups.members()) {
+            individualLineages.add(entry(individualId, individualGroups.find(individualId), treeOfIndividual.get(individualId)));
+        }
+
+        treeLineageRepository.saveAll(treeLineages);
+        individualLineageRepository.saveAll(individualLineages);
+        log.info("Built clone lineage index: {} trees, {} individuals", treeLineages.size(), individualLineages.size());
+    }
+
+    private IndividualLineage entry(UUID individualId, UUID lineageId, UUID treeId) {
+        return IndividualLineage.builder()
+                .individualId(individualId)
+                .lineageId(lineageId)
+                .treeId(treeId)
+                .build();
+    }
+
+    /**
+     * Union-find over IDs. The first argument of union() stays the root, so a lineage keeps
+     * the ID of its original.
+     */
+    private static class LineageGroups {
+        private final Map<UUID, UUID> parent = new LinkedHashMap<>();
+
+        UUID find(UUID id) {
+            UUID root = id;
+            while (parent.containsKey(root) && !parent.get(root).equals(root)) {
+                root = parent.get(root);
+            }
+            // Path compression
+            UUID current = id;
+            while (!current.equals(root)) {
+                UUID next = parent.get(current);
+                parent.put(current, root);
+                current = next;
+            }
+            return root;
+        }
+
+        void union(UUID keep, UUID other) {
+            parent.putIfAbsent(keep, keep);
+            parent.putIfAbsent(other, other);
+            UUID keepRoot = find(keep);
+            UUID otherRoot = find(other);
+            if (!keepRoot.equals(otherRoot)) {
+                parent.put(otherRoot, keepRoot);
+            }
+        }
+
+        Set<UUID> members() {
+            return new LinkedHashSet<>(parent.keySet());
+        }
+
+        /**
+         * Roots mapped to the other IDs folded into them
+         */
+        Map<UUID, Set<UUID>> foldedLineages() {
+            Map<UUID, Set<UUID>> folded = new HashMap<>();
+            for (UUID id : members()) {
+                UUID root = find(id);
+                if (!root.equals(id)) {
+                    folded.computeIfAbsent(root, k -> new HashSet<>()).add(id);
+                }
+            }
+            return folded;
+        }
+    }
+}
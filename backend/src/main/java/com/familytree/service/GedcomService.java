@@ -1,8 +1,11 @@
 package com.familytree.service;
 
+import com.familytree.dto.gedcom.GedcomImportMode;
 import com.familytree.dto.gedcom.GedcomImportResult;
+import com.familytree.dto.gedcom.GedcomRecordChange;
 import com.familytree.model.*;
 import com.familytree.repository.FamilyTreeRepository;
+import com.familytree.repository.GedcomXrefMappingRepository;
 import com.familytree.repository.IndividualRepository;
 import com.familytree.repository.RelationshipRepository;
 import lombok.RequiredArgsConstructor;
@@ -22,9 +25,15 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
 import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
 import java.util.*;
 
 /**
@@ -39,11 +48,17 @@ public class GedcomService {
     private final IndividualRepository individualRepository;
     private final RelationshipRepository relationshipRepository;
     private final PermissionService permissionService;
+    private final GedcomXrefMappingRepository xrefMappingRepository;
+    private final IndividualService individualService;
+    private final TreeStatsService treeStatsService;
 
     private static final int MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB
+    // GEDCOM months are upper case ("10 OCT 1963"); a date without a day is taken as the first of the month
     private static final DateTimeFormatter[] DATE_FORMATTERS = {
-            DateTimeFormatter.ofPattern("d MMM yyyy", Locale.ENGLISH),
-            DateTimeFormatter.ofPattern("MMM yyyy", Locale.ENGLISH),
+            new DateTimeFormatterBuilder().parseCaseInsensitive()
+                    .appendPattern("d MMM yyyy").toFormatter(Locale.ENGLISH),
+            new DateTimeFormatterBuilder().parseCaseInsensitive()
+                    .appendPattern("MMM yyyy").parseDefaulting(ChronoField.DAY_OF_MONTH, 1).toFormatter(Locale.ENGLISH),
             DateTimeFormatter.ofPattern("yyyy")
     };
 
@@ -52,10 +67,23 @@ public class GedcomService {
      */
     @Transactional
     public GedcomImportResult importGedcom(MultipartFile file, UUID treeId, UUID userId) {
+        return importGedcom(file, treeId, userId, GedcomImportMode.APPEND, false);
+    }
+
+    /**
+     * Import a GEDCOM file into a family tree
+     * In DIFF mode records are matched to the previous import by XREF and only the delta is applied.
+     * With dryRun the changes are computed and reported but nothing is written.
+     */
+    @Transactional
+    public GedcomImportResult importGedcom(MultipartFile file, UUID treeId, UUID userId,
+                                           GedcomImportMode mode, boolean dryRun) {
         long startTime = System.currentTimeMillis();
 
         GedcomImportResult result = GedcomImportResult.builder()
                 .treeId(treeId.toString())
+                .mode(mode)
+                .dryRun(dryRun)
                 .build();
 
         try {
@@ -80,7 +108,7 @@ public class GedcomService {
             }
 
             // Verify tree ownership
-            FamilyTree tree = treeRepository.findById(treeId)
+            FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                     .orElseThrow(() -> new RuntimeException("Tree not found"));
 
             if (!permissionService.canModifyTree(userId, treeId)) {
@@ -117,6 +145,23 @@ public class GedcomService {
                 return result;
             }
 
+            if (mode == GedcomImportMode.DIFF) {
+                // Without XREF mappings every record would be inserted again next to the individuals already
+                // in the tree (trees imported before mappings were kept, or filled in by hand)
+                if (!xrefMappingRepository.existsByTreeId(treeId) && individualRepository.countByTreeId(treeId) > 0) {
+                    result.addError("This tree has no record of a previous GEDCOM import to compare the file with. " +
+                            "Import the file in APPEND mode into an empty tree instead");
+                    result.setSuccess(false);
+                    return result;
+                }
+                applyDiff(gedcom, tree, dryRun, result);
+                result.setSuccess(true);
+                log.info("GEDCOM diff import completed (dryRun={}): {} inserted, {} updated, {} deleted, {} unchanged",
+                        dryRun, result.getIndividualsImported(), result.getIndividualsUpdated(),
+                        result.getIndividualsDeleted(), result.getIndividualsUnchanged());
+                return result;
+            }
+
             // Process individuals
             Map<String, org.gedcom4j.model.Individual> gedcomIndividuals = gedcom.getIndividuals();
             log.info("Processing {} individuals", gedcomIndividuals.size());
@@ -129,9 +174,16 @@ public class GedcomService {
             List<Relationship> relationships = processFamilies(gedcomFamilies, individualMap, tree, result);
             result.setRelationshipsImported(relationships.size());
 
+            if (!dryRun) {
+                individualRepository.saveAll(individualMap.values());
+                relationshipRepository.saveAll(relationships);
+                saveXrefMappings(tree, individualMap);
+                treeStatsService.markChanged(treeId);
+            }
+
             result.setSuccess(true);
-            log.info("GEDCOM import completed: {} individuals, {} relationships",
-                    individualMap.size(), relationships.size());
+            log.info("GEDCOM import completed (dryRun={}): {} individuals, {} relationships",
+                    dryRun, individualMap.size(), relationships.size());
 
         } catch (IOException e) {
             log.error("IO error reading GEDCOM file", e);
@@ -149,7 +201,7 @@ public class GedcomService {
     }
 
     /**
-     * Process GEDCOM individuals and save to database
+     * Process GEDCOM individuals into (unsaved) individuals keyed by XREF
      */
     private Map<String, com.familytree.model.Individual> processIndividuals(
             Map<String, org.gedcom4j.model.Individual> gedcomIndividuals,
@@ -252,8 +304,6 @@ public class GedcomService {
                     }
                 }
 
-                // Save individual
-                individual = individualRepository.save(individual);
                 individualMap.put(xref, individual);
 
             } catch (Exception e) {
@@ -266,7 +316,7 @@ public class GedcomService {
     }
 
     /**
-     * Process GEDCOM families and create relationships
+     * Process GEDCOM families into (unsaved) relationships
      */
     private List<Relationship> processFamilies(
             Map<String, Family> gedcomFamilies,
@@ -303,21 +353,20 @@ public class GedcomService {
                             .type(RelationshipType.SPOUSE)
                             .build();
 
-                    // Extract marriage event
+                    // Extract marriage and divorce events
                     List<FamilyEvent> familyEvents = family.getEvents();
                     if (familyEvents != null) {
                         for (FamilyEvent event : familyEvents) {
+                            StringWithCustomFacts date = event.getDate();
+                            if (date == null || date.getValue() == null) continue;
                             if (event.getType() == FamilyEventType.MARRIAGE) {
-                                StringWithCustomFacts date = event.getDate();
-                                if (date != null && date.getValue() != null) {
-                                    LocalDate marriageDate = parseGedcomDate(date.getValue());
-                                    spouseRel.setStartDate(marriageDate);
-                                }
+                                spouseRel.setStartDate(parseGedcomDate(date.getValue()));
+                            } else if (event.getType() == FamilyEventType.DIVORCE) {
+                                spouseRel.setEndDate(parseGedcomDate(date.getValue()));
                             }
                         }
                     }
 
-                    spouseRel = relationshipRepository.save(spouseRel);
                     relationships.add(spouseRel);
                 }
 
@@ -336,7 +385,6 @@ public class GedcomService {
                                         .individual2(child)
                                         .type(RelationshipType.PARENT_CHILD)
                                         .build();
-                                fatherRel = relationshipRepository.save(fatherRel);
                                 relationships.add(fatherRel);
                             }
 
@@ -348,7 +396,6 @@ public class GedcomService {
                                         .individual2(child)
                                         .type(RelationshipType.PARENT_CHILD)
                                         .build();
-                                motherRel = relationshipRepository.save(motherRel);
                                 relationships.add(motherRel);
                             }
                         }
@@ -364,13 +411,281 @@ public class GedcomService {
         return relationships;
     }
 
+    /**
+     * Apply a GEDCOM file as a diff against the previous import of the same tree.
+     * Records are matched by XREF; unchanged records (same content hash) are left untouched,
+     * so edits made in the app to records that did not change in the file are preserved.
+     */
+    private void applyDiff(Gedcom gedcom, FamilyTree tree, boolean dryRun, GedcomImportResult result) {
+        UUID treeId = tree.getId();
+
+        Map<String, com.familytree.model.Individual> parsed = processIndividuals(gedcom.getIndividuals(), tree, result);
+
+        Map<String, GedcomXrefMapping> existingMappings = new HashMap<>();
+        for (GedcomXrefMapping mapping : xrefMappingRepository.findByTreeIdWithIndividual(treeId)) {
+            existingMappings.put(mapping.getXref(), mapping);
+        }
+        log.info("Diffing {} GEDCOM individuals against {} previously imported records",
+                parsed.size(), existingMappings.size());
+
+        // XREF -> individual the family links should point to (existing row or new row)
+        Map<String, com.familytree.model.Individual> individualMap = new HashMap<>();
+        Map<String, com.familytree.model.Individual> inserted = new LinkedHashMap<>();
+        Map<GedcomXrefMapping, com.familytree.model.Individual> updated = new LinkedHashMap<>();
+        Map<String, String> updatedHashes = new HashMap<>();
+
+        for (Map.Entry<String, com.familytree.model.Individual> entry : parsed.entrySet()) {
+            String xref = entry.getKey();
+            com.familytree.model.Individual incoming = entry.getValue();
+            GedcomXrefMapping mapping = existingMappings.get(xref);
+
+            if (mapping == null) {
+                inserted.put(xref, incoming);
+                individualMap.put(xref, incoming);
+                result.getChanges().add(GedcomRecordChange.builder()
+                        .xref(xref)
+                        .changeType(GedcomRecordChange.ChangeType.INSERTED)
+                        .name(buildDisplayName(incoming))
+                        .build());
+                continue;
+            }
+
+            com.familytree.model.Individual current = mapping.getIndividual();
+            individualMap.put(xref, current);
+
+            String hash = computeContentHash(incoming);
+            if (hash.equals(mapping.getContentHash())) {
+                result.setIndividualsUnchanged(result.getIndividualsUnchanged() + 1);
+            } else {
+                updated.put(mapping, incoming);
+                updatedHashes.put(xref, hash);
+                result.getChanges().add(GedcomRecordChange.builder()
+                        .xref(xref)
+                        .changeType(GedcomRecordChange.ChangeType.UPDATED)
+                        .name(buildDisplayName(incoming))
+                        .individualId(current.getId().toString())
+                        .build());
+            }
+        }
+
+        List<GedcomXrefMapping> deleted = new ArrayList<>();
+        Set<UUID> deletedIds = new HashSet<>();
+        for (GedcomXrefMapping mapping : existingMappings.values()) {
+            if (!parsed.containsKey(mapping.getXref())) {
+                deleted.add(mapping);
+                deletedIds.add(mapping.getIndividual().getId());
+                result.getChanges().add(GedcomRecordChange.builder()
+                        .xref(mapping.getXref())
+                        .changeType(GedcomRecordChange.ChangeType.DELETED)
+                        .name(buildDisplayName(mapping.getIndividual()))
+                        .individualId(mapping.getIndividual().getId().toString())
+                        .build());
+            }
+        }
+
+        // Relationships: compare the family links in the file with the links between imported individuals
+        List<Relationship> desired = processFamilies(gedcom.getFamilies(), individualMap, tree, result);
+        Set<UUID> importedIds = new HashSet<>();
+        for (GedcomXrefMapping mapping : existingMappings.values()) {
+            importedIds.add(mapping.getIndividual().getId());
+        }
+
+        Set<String> existingKeys = new HashSet<>();
+        List<Relationship> importedRelationships = new ArrayList<>();
+        Map<String, Relationship> importedByKey = new HashMap<>();
+        for (Relationship rel : relationshipRepository.findByTreeIdWithIndividuals(treeId)) {
+            existingKeys.add(relationshipKey(rel));
+            if ((rel.getType() == RelationshipType.SPOUSE || rel.getType() == RelationshipType.PARENT_CHILD)
+                    && importedIds.contains(rel.getIndividual1().getId())
+                    && importedIds.contains(rel.getIndividual2().getId())) {
+                importedRelationships.add(rel);
+                importedByKey.putIfAbsent(relationshipKey(rel), rel);
+            }
+        }
+
+        Set<String> desiredKeys = new HashSet<>();
+        List<Relationship> newRelationships = new ArrayList<>();
+        // Existing links whose dates changed in the file (e.g. a corrected MARR date), with the dates to set
+        Map<Relationship, Relationship> updatedRelationships = new LinkedHashMap<>();
+        for (Relationship rel : desired) {
+            // Links to newly inserted individuals have no key yet and are always new
+            boolean persisted = rel.getIndividual1().getId() != null && rel.getIndividual2().getId() != null;
+            if (!persisted) {
+                newRelationships.add(rel);
+                continue;
+            }
+            String key = relationshipKey(rel);
+            if (!desiredKeys.add(key)) {
+                continue;
+            }
+            Relationship existing = importedByKey.get(key);
+            if (existing != null) {
+                if (!Objects.equals(existing.getStartDate(), rel.getStartDate())
+                        || !Objects.equals(existing.getEndDate(), rel.getEndDate())) {
+                    updatedRelationships.put(existing, rel);
+                }
+            } else if (!existingKeys.contains(key)) {
+                newRelationships.add(rel);
+            }
+        }
+
+        List<Relationship> staleRelationships = new ArrayList<>();
+        for (Relationship rel : importedRelationships) {
+            boolean touchesDeleted = deletedIds.contains(rel.getIndividual1().getId())
+                    || deletedIds.contains(rel.getIndividual2().getId());
+            if (!touchesDeleted && !desiredKeys.contains(relationshipKey(rel))) {
+                staleRelationships.add(rel);
+            }
+        }
+
+        result.setIndividualsImported(inserted.size());
+        result.setIndividualsUpdated(updated.size());
+        result.setIndividualsDeleted(deleted.size());
+        result.setRelationshipsImported(newRelationships.size());
+        result.setRelationshipsUpdated(updatedRelationships.size());
+        result.setRelationshipsDeleted(staleRelationships.size());
+
+        if (dryRun) {
+            return;
+        }
+
+        // Apply only the delta
+        individualRepository.saveAll(inserted.values());
+        saveXrefMappings(tree, inserted);
+
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<GedcomXrefMapping, com.familytree.model.Individual> entry : updated.entrySet()) {
+            GedcomXrefMapping mapping = entry.getKey();
+            copyImportedFields(entry.getValue(), mapping.getIndividual());
+            mapping.setContentHash(updatedHashes.get(mapping.getXref()));
+            mapping.setLastImportedAt(now);
+        }
+        // Updated individuals are managed entities and are flushed on commit
+        xrefMappingRepository.saveAll(updated.keySet());
+
+        for (Map.Entry<Relationship, Relationship> entry : updatedRelationships.entrySet()) {
+            entry.getKey().setStartDate(entry.getValue().getStartDate());
+            entry.getKey().setEndDate(entry.getValue().getEndDate());
+        }
+        relationshipRepository.saveAll(updatedRelationships.keySet());
+
+        relationshipRepository.deleteAll(staleRelationships);
+        relationshipRepository.saveAll(newRelationships);
+
+        // Same deletion as removing the individuals in the app (stored files go once the import commits)
+        for (GedcomXrefMapping mapping : deleted) {
+            individualService.removeIndividual(mapping.getIndividual());
+        }
+        log.info("Updated dates of {} relationships, deleted {} individuals removed from the GEDCOM file",
+                updatedRelationships.size(), deleted.size());
+        treeStatsService.markChanged(tree.getId());
+    }
+
+    /**
+     * Record which individual each XREF was imported as
+     */
+    private void saveXrefMappings(FamilyTree tree, Map<String, com.familytree.model.Individual> individualMap) {
+        if (individualMap.isEmpty()) {
+            return;
+        }
+
+        Map<String, GedcomXrefMapping> existing = new HashMap<>();
+        for (GedcomXrefMapping mapping : xrefMappingRepository.findByTreeIdWithIndividual(tree.getId())) {
+            existing.put(mapping.getXref(), mapping);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<GedcomXrefMapping> mappings = new ArrayList<>();
+        for (Map.Entry<String, com.familytree.model.Individual> entry : individualMap.entrySet()) {
+            GedcomXrefMapping mapping = existing.get(entry.getKey());
+            if (mapping == null) {
+                mapping = GedcomXrefMapping.builder()
+                        .tree(tree)
+                        .xref(entry.getKey())
+                        .build();
+            }
+            mapping.setIndividual(entry.getValue());
+            mapping.setContentHash(computeContentHash(entry.getValue()));
+            mapping.setLastImportedAt(now);
+            mappings.add(mapping);
+        }
+        xrefMappingRepository.saveAll(mappings);
+    }
+
+    /**
+     * Copy the fields a GEDCOM import sets from a parsed individual onto an existing one
+     */
+    private void copyImportedFields(com.familytree.model.Individual from, com.familytree.model.Individual to) {
+        to.setGivenName(from.getGivenName());
+        to.setMiddleName(from.getMiddleName());
+        to.setSurname(from.getSurname());
+        to.setGender(from.getGender());
+        to.setBirthDate(from.getBirthDate());
+        to.setBirthPlace(from.getBirthPlace());
+        to.setDeathDate(from.getDeathDate());
+        to.setDeathPlace(from.getDeathPlace());
+    }
+
+    /**
+     * Hash of the fields a GEDCOM import sets, used to detect changed records
+     */
+    private String computeContentHash(com.familytree.model.Individual individual) {
+        String content = String.join("|",
+                String.valueOf(individual.getGivenName()),
+                String.valueOf(individual.getMiddleName()),
+                String.valueOf(individual.getSurname()),
+                String.valueOf(individual.getGender()),
+                String.valueOf(individual.getBirthDate()),
+                String.valueOf(individual.getBirthPlace()),
+                String.valueOf(individual.getDeathDate()),
+                String.valueOf(individual.getDeathPlace()));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Key identifying a relationship by its endpoints and type (spouse links are undirected)
+     */
+    private String relationshipKey(Relationship rel) {
+        UUID id1 = rel.getIndividual1().getId();
+        UUID id2 = rel.getIndividual2().getId();
+        if (rel.getType() == RelationshipType.SPOUSE && id1.compareTo(id2) > 0) {
+            UUID tmp = id1;
+            id1 = id2;
+            id2 = tmp;
+        }
+        return rel.getType() + ":" + id1 + ":" + id2;
+    }
+
+    /**
+     * Display name for change previews
+     */
+    private String buildDisplayName(com.familytree.model.Individual individual) {
+        StringBuilder name = new StringBuilder();
+        for (String part : new String[]{individual.getSurname(), individual.getMiddleName(), individual.getGivenName()}) {
+            if (part != null && !part.isEmpty()) {
+                if (name.length() > 0) name.append(" ");
+                name.append(part);
+            }
+        }
+        return name.toString();
+    }
+
     /**
      * Export a family tree to GEDCOM format
      */
     @Transactional(readOnly = true)
     public byte[] exportGedcom(UUID treeId, UUID userId) throws IOException, GedcomWriterException, WriterCancelledException {
         // Verify tree access
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new RuntimeException("Tree not found"));
 
         if (!permissionService.canViewTree(userId, treeId)) {
@@ -605,6 +920,14 @@ public class GedcomService {
                     marriage.setDate(new StringWithCustomFacts(formatGedcomDate(rel.getStartDate())));
                     family.getEvents(true).add(marriage);
                 }
+
+                // Divorce event, so a re-import of the export keeps the end date
+                if (rel.getEndDate() != null) {
+                    FamilyEvent divorce = new FamilyEvent();
+                    divorce.setType(FamilyEventType.DIVORCE);
+                    divorce.setDate(new StringWithCustomFacts(formatGedcomDate(rel.getEndDate())));
+                    family.getEvents(true).add(divorce);
+                }
                 
                 familyMap.put(familyId, family);
                 familyChildrenSet.put(familyId, new HashSet<>());
@@ -0,0 +1,360 @@
+package com.familytree.service;
+
+import com.familytree.model.Media;
+import com.familytree.repository.IndividualRepository;
+import com.familytree.repository.MediaBlobRepository;
+import com.familytree.repository.MediaRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.coobird.thumbnailator.Thumbnails;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Service generating resized copies (derivatives) of photos and avatars, and the thumbnails of photos.
+ *
+ * After an upload, the image derivative pool (see AsyncConfig) decodes the image once and stores a copy for every configured
+ * width smaller than the original under a deterministic key (see MinioService.generateDerivativeName).
+ * Large images are subsampled while decoding, so a full-resolution scan never has to fit in the heap.
+ * The generated widths are recorded on the media or individual, and serving endpoints use
+ * pickDerivative() to answer ?w= requests with the smallest copy that is wide enough.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ImageDerivativeService {
+
+    private static final float QUALITY = 0.8f;
+    private static final int THUMBNAIL_SIZE = 200;
+
+    private final MediaRepository mediaRepository;
+    private final MediaBlobRepository blobRepository;
+    private final IndividualRepository individualRepository;
+    private final MinioService minioService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Qualifier("imageDerivativeExecutor")
+    private final TaskExecutor imageDerivativeExecutor;
+
+    @Value("${media.derivatives.widths:160,320,640,1280}")
+    private List<Integer> mediaWidths;
+
+    @Value("${media.derivatives.avatar-widths:48,96,192}")
+    private List<Integer> avatarWidths;
+
+    // jpg, or webp when an ImageIO WebP writer is installed
+    @Value("${media.derivatives.format:jpg}")
+    private String preferredFormat;
+
+    private String format;
+
+    // Media and individual IDs with a generation queued or running
+    private final Set<UUID> inProgress = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        format = ImageIO.getImageWritersByFormatName(preferredFormat).hasNext() ? preferredFormat : "jpg";
+        if (!format.equals(preferredFormat)) {
+            log.warn("No ImageIO writer for image derivative format '{}', using jpg", preferredFormat);
+        }
+    }
+
+    /**
+     * Generate the thumbnail and derivatives of a newly uploaded media image once the current transaction commits
+     * @param mediaId the media ID
+     */
+    public void generateForMedia(UUID mediaId) {
+        schedule(null, () -> runForMedia(mediaId, true));
+    }
+
+    /**
+     * Generate the derivatives of a newly uploaded avatar once the current transaction commits
+     * @param individualId the individual ID
+     * @param objectName the avatar object name
+     */
+    public void generateForAvatar(UUID individualId, String objectName) {
+        schedule(null, () -> runForAvatar(individualId, objectName));
+    }
+
+    /**
+     * Generate the missing derivatives (and thumbnail, if missing) of an existing media image
+     * uploaded before derivatives existed, unless a generation is already queued
+     */
+    public void ensureForMedia(UUID mediaId) {
+        schedule(mediaId, () -> runForMedia(mediaId, false));
+    }
+
+    /**
+     * Generate the missing derivatives of an existing avatar, unless a generation is already queued
+     */
+    public void ensureForAvatar(UUID individualId, String objectName) {
+        schedule(individualId, () -> runForAvatar(individualId, objectName));
+    }
+
+    /**
+     * Pick the object to serve for a requested width: the smallest derivative at least as wide,
+     * or the original if there is none
+     * @param originalObjectName the original object name
+     * @param format the recorded derivative format
+     * @param widths the recorded derivative widths
+     * @param requestedWidth the requested width
+     * @return the object name of the best fitting derivative, or the original object name
+     */
+    public String pickDerivative(String originalObjectName, String format, String widths, int requestedWidth) {
+        for (int width : parseWidths(widths)) {
+            if (width >= requestedWidth) {
+                return minioService.generateDerivativeName(originalObjectName, width, format);
+            }
+        }
+        return originalObjectName;
+    }
+
+    /**
+     * Get the object names of all recorded derivatives of an image (for deletion)
+     */
+    public List<String> derivativeNames(String originalObjectName, String format, String widths) {
+        return parseWidths(widths).stream()
+                .map(width -> minioService.generateDerivativeName(originalObjectName, width, format))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Get the content type of a derivative format
+     */
+    public String contentType(String format) {
+        return "webp".equals(format) ? "image/webp" : "image/jpeg";
+    }
+
+    /**
+     * Run a generation on the worker pool after commit
+     * @param dedupeId ID to skip the task for while another task with the same ID is queued or running, or null
+     */
+    private void schedule(UUID dedupeId, Runnable task) {
+        if (dedupeId != null && !inProgress.add(dedupeId)) {
+            return;
+        }
+        Runnable guarded = () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Image derivative generation failed", e);
+            } finally {
+                if (dedupeId != null) {
+                    inProgress.remove(dedupeId);
+                }
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // The uploaded media or avatar must be committed before its derivatives are recorded
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    execute(dedupeId, guarded);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED && dedupeId != null) {
+                        inProgress.remove(dedupeId);
+                    }
+                }
+            });
+        } else {
+            execute(dedupeId, guarded);
+        }
+    }
+
+    private void execute(UUID dedupeId, Runnable guarded) {
+        try {
+            imageDerivativeExecutor.execute(guarded);
+        } catch (TaskRejectedException e) {
+            // The missing copies are generated when the image is requested (see ensureForMedia)
+            log.warn("Skipped an image derivative generation: {}", e.getMessage());
+            if (dedupeId != null) {
+                inProgress.remove(dedupeId);
+            }
+        }
+    }
+
+    /**
+     * @param newUpload whether the media was just uploaded (and has no thumbnail yet)
+     */
+    private void runForMedia(UUID mediaId, boolean newUpload) {
+        String storagePath = mediaRepository.findById(mediaId).map(Media::getStoragePath).orElse(null);
+        if (storagePath == null) {
+            return;
+        }
+
+        String thumbnailName = minioService.generateThumbnailName(storagePath);
+        boolean withThumbnail = newUpload || !minioService.fileExists(thumbnailName);
+        List<Integer> generated = generate(storagePath, mediaWidths, withThumbnail ? thumbnailName : null);
+        // The copies belong to the stored file, so every media record sharing it gets them
+        String widths = joinWidths(generated);
+        transactionTemplate.executeWithoutResult(status -> {
+            mediaRepository.updateDerivatives(storagePath, format, widths);
+            blobRepository.updateDerivatives(storagePath, format, widths);
+        });
+    }
+
+    private void runForAvatar(UUID individualId, String objectName) {
+        List<Integer> generated = generate(objectName, avatarWidths, null);
+        // Bulk update, so recording the derivatives does not count as a modification of the individual
+        transactionTemplate.executeWithoutResult(status ->
+                individualRepository.updateAvatarDerivatives(individualId, format, joinWidths(generated)));
+    }
+
+    /**
+     * Decode an image once and store a copy for every width smaller than the original
+     * @param thumbnailName object name to store a thumbnail under, or null for no thumbnail
+     * @return the widths stored (empty if the image could not be read or is smaller than all widths)
+     */
+    private List<Integer> generate(String objectName, List<Integer> widths, String thumbnailName) {
+        TreeSet<Integer> sortedWidths = new TreeSet<>(widths);
+        int[] originalSize = new int[2];
+        BufferedImage image;
+        try (InputStream inputStream = minioService.downloadFile(objectName)) {
+            image = decode(inputStream, sortedWidths.last(), thumbnailName != null, originalSize);
+        } catch (Exception e) {
+            log.warn("Could not read image {} for derivatives: {}", objectName, e.getMessage());
+            return Collections.emptyList();
+        }
+        if (image == null) {
+            log.warn("Unsupported image format for derivatives: {}", objectName);
+            return Collections.emptyList();
+        }
+        if (thumbnailName != null) {
+            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+                Thumbnails.of(flattenAlpha(image))
+                        .size(THUMBNAIL_SIZE, THUMBNAIL_SIZE)
+                        .keepAspectRatio(true)
+                        .outputFormat("jpg")
+                        .outputQuality(QUALITY)
+                        .toOutputStream(outputStream);
+
+                byte[] bytes = outputStream.toByteArray();
+                minioService.uploadFile(new ByteArrayInputStream(bytes), thumbnailName, "image/jpeg", bytes.length);
+            } catch (Exception e) {
+                log.warn("Failed to generate thumbnail {}: {}", thumbnailName, e.getMessage());
+            }
+        }
+        if ("jpg".equals(format)) {
+            image = flattenAlpha(image);
+        }
+
+        List<Integer> generated = new ArrayList<>();
+        for (int width : sortedWidths) {
+            // Compared with the original width, the decoded image may be subsampled
+            if (width >= originalSize[0]) {
+                break;
+            }
+            String derivativeName = minioService.generateDerivativeName(objectName, width, format);
+            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+                Thumbnails.of(image)
+                        .width(width)
+                        .outputFormat(format)
+                        .outputQuality(QUALITY)
+                        .toOutputStream(outputStream);
+
+                byte[] bytes = outputStream.toByteArray();
+                minioService.uploadFile(new ByteArrayInputStream(bytes), derivativeName, contentType(format), bytes.length);
+                generated.add(width);
+            } catch (Exception e) {
+                log.warn("Failed to generate derivative {}: {}", derivativeName, e.getMessage());
+            }
+        }
+
+        log.debug("Generated {} derivatives for {}", generated.size(), objectName);
+        return generated;
+    }
+
+    /**
+     * Decode an image, skipping pixels the largest output does not need: the image is subsampled
+     * so it stays at least twice the largest derivative width (and thumbnail edge), which keeps
+     * the resize quality while decoding a large scan takes a fraction of its full-resolution memory.
+     * @param originalSize receives the original width and height
+     * @return the decoded image, or null if the format is not supported
+     */
+    private BufferedImage decode(InputStream inputStream, int maxWidth, boolean withThumbnail,
+                                 int[] originalSize) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            if (imageInputStream == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                originalSize[0] = width;
+                originalSize[1] = height;
+
+                int subsampling = width / (2 * maxWidth);
+                if (withThumbnail) {
+                    subsampling = Math.min(subsampling, Math.min(width, height) / (2 * THUMBNAIL_SIZE));
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Draw an image with transparency on a white background (JPEG has no alpha channel)
+     */
+    private BufferedImage flattenAlpha(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        BufferedImage flattened = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = flattened.createGraphics();
+        graphics.drawImage(image, 0, 0, Color.WHITE, null);
+        graphics.dispose();
+        return flattened;
+    }
+
+    private List<Integer> parseWidths(String widths) {
+        if (widths == null || widths.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(widths.split(","))
+                .map(Integer::parseInt)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private String joinWidths(List<Integer> widths) {
+        return widths.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+}
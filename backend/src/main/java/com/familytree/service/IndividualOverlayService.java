@@ -0,0 +1,121 @@
+package com.familytree.service;
+
+import com.familytree.model.Individual;
+import com.familytree.model.IndividualOverlay;
+import com.familytree.repository.IndividualOverlayRepository;
+import com.familytree.repository.IndividualRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Service for the shared content of individuals in copy-on-write clones.
+ * An overlaid individual reads its biography and notes from its source individual (see IndividualOverlay).
+ * The content is copied into the cloned row when the clone is edited, or before the source's content
+ * changes or the source is deleted, so an edit in one tree never shows through in the other.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IndividualOverlayService {
+
+    private final IndividualOverlayRepository overlayRepository;
+    private final IndividualRepository individualRepository;
+
+    /**
+     * Find the shared content of an individual
+     * @return the content read from the source individual, or null if the individual has its own
+     */
+    @Transactional(readOnly = true)
+    public SharedContent findSharedContent(UUID individualId) {
+        List<Object[]> rows = overlayRepository.findSharedContent(individualId);
+        return rows.isEmpty() ? null : new SharedContent((String) rows.get(0)[0], (String) rows.get(0)[1]);
+    }
+
+    /**
+     * Find the shared content of the overlaid individuals in a tree
+     * @return individual ID to the content read from its source individual
+     */
+    @Transactional(readOnly = true)
+    public Map<UUID, SharedContent> findSharedContentByTreeId(UUID treeId) {
+        List<Object[]> rows = overlayRepository.findSharedContentByTreeId(treeId);
+        Map<UUID, SharedContent> content = new HashMap<>(rows.size() * 2);
+        for (Object[] row : rows) {
+            content.put((UUID) row[0], new SharedContent((String) row[1], (String) row[2]));
+        }
+        return content;
+    }
+
+    /**
+     * Give an overlaid individual its own copy of the shared content, before it is edited
+     * (no-op for an individual that has its own content)
+     */
+    @Transactional
+    public void materialize(Individual individual) {
+        overlayRepository.findById(individual.getId()).ifPresent(overlay -> {
+            individualRepository.findById(overlay.getSourceIndividualId()).ifPresent(source -> {
+                individual.setBiography(source.getBiography());
+                individual.setNotes(source.getNotes());
+            });
+            overlayRepository.delete(overlay);
+            log.debug("Materialized individual {} of tree {}", individual.getId(), overlay.getTreeId());
+        });
+    }
+
+    /**
+     * Give the copy-on-write clones of an individual their own copy of its current content,
+     * before that content changes
+     */
+    @Transactional
+    public void materializeClones(Individual source) {
+        List<IndividualOverlay> overlays = overlayRepository.findBySourceIndividualId(source.getId());
+        if (overlays.isEmpty()) {
+            return;
+        }
+
+        List<Individual> clones = individualRepository.findAllById(overlays.stream()
+                .map(IndividualOverlay::getIndividualId)
+                .collect(Collectors.toList()));
+        for (Individual clone : clones) {
+            clone.setBiography(source.getBiography());
+            clone.setNotes(source.getNotes());
+        }
+        individualRepository.saveAll(clones);
+        overlayRepository.deleteAll(overlays);
+        log.info("Materialized {} copy-on-write clones of individual {}", clones.size(), source.getId());
+    }
+
+    /**
+     * Remove an individual's overlay entry and materialize its clones (before the individual is deleted)
+     */
+    @Transactional
+    public void removeIndividual(Individual individual) {
+        overlayRepository.findById(individual.getId()).ifPresent(overlayRepository::delete);
+        materializeClones(individual);
+    }
+
+    /**
+     * Biography and notes of an overlaid individual, as read from its source individual
+     */
+    public static class SharedContent {
+        private final String biography;
+        private final String notes;
+
+        SharedContent(String biography, String notes) {
+            this.biography = biography;
+            this.notes = notes;
+        }
+
+        public String getBiography() {
+            return biography;
+        }
+
+        public String getNotes() {
+            return notes;
+        }
+    }
+}
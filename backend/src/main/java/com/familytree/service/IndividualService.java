@@ -1,5 +1,6 @@
 package com.familytree.service;
 
+import com.familytree.dto.individual.AvatarObject;
 import com.familytree.dto.individual.CreateIndividualRequest;
 import com.familytree.dto.individual.IndividualResponse;
 import com.familytree.dto.individual.UpdateIndividualRequest;
@@ -11,15 +12,23 @@ import com.familytree.model.User;
 import com.familytree.repository.FamilyTreeRepository;
 import com.familytree.repository.IndividualRepository;
 import com.familytree.repository.UserRepository;
+import io.minio.StatObjectResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 
 /**
@@ -39,7 +48,13 @@ public class IndividualService {
     private final com.familytree.repository.UserTreeProfileRepository userTreeProfileRepository;
     private final com.familytree.repository.RelationshipRepository relationshipRepository;
     private final com.familytree.repository.IndividualCloneMappingRepository cloneMappingRepository;
+    private final com.familytree.repository.GedcomXrefMappingRepository gedcomXrefMappingRepository;
+    private final CloneLineageService cloneLineageService;
+    private final IndividualOverlayService overlayService;
     private final MinioService minioService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final MediaBlobService mediaBlobService;
+    private final TreeStatsService treeStatsService;
 
     /**
      * Create a new individual in a tree
@@ -50,7 +65,7 @@ public class IndividualService {
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Check authorization
@@ -76,6 +91,7 @@ public class IndividualService {
                 .build();
 
         Individual savedIndividual = individualRepository.save(individual);
+        treeStatsService.markChanged(treeId);
         log.info("Individual created with ID: {}", savedIndividual.getId());
 
         return convertToResponse(savedIndividual);
@@ -107,7 +123,7 @@ public class IndividualService {
     public Page<IndividualResponse> listIndividuals(UUID treeId, String userEmail, Pageable pageable) {
         log.info("Listing individuals in tree {} for user '{}'", treeId, userEmail);
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Check authorization
@@ -128,7 +144,7 @@ public class IndividualService {
     public Page<IndividualResponse> searchIndividuals(UUID treeId, String searchTerm, String userEmail, Pageable pageable) {
         log.info("Searching individuals in tree {} with term '{}' for user '{}'", treeId, searchTerm, userEmail);
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Check authorization
@@ -155,6 +171,13 @@ public class IndividualService {
             throw new UnauthorizedException("Only the tree owner or admin can update individuals");
         }
 
+        // An edited copy-on-write clone gets its own content, and clones of this individual keep the current one
+        overlayService.materialize(individual);
+        if (!Objects.equals(individual.getBiography(), request.getBiography())
+                || !Objects.equals(individual.getNotes(), request.getNotes())) {
+            overlayService.materializeClones(individual);
+        }
+
         individual.setGivenName(request.getGivenName());
         individual.setMiddleName(request.getMiddleName());
         individual.setSurname(request.getSurname());
@@ -170,6 +193,7 @@ public class IndividualService {
         individual.setPhoneNumber(request.getPhoneNumber());
 
         Individual updatedIndividual = individualRepository.save(individual);
+        treeStatsService.markChanged(individual.getTree().getId());
         log.info("Individual {} updated successfully", individualId);
 
         return convertToResponse(updatedIndividual);
@@ -189,6 +213,19 @@ public class IndividualService {
             throw new UnauthorizedException("Only the tree owner or admin can delete individuals");
         }
 
+        removeIndividual(individual);
+        treeStatsService.markChanged(individual.getTree().getId());
+        log.info("Individual {} deleted successfully", individualId);
+    }
+
+    /**
+     * Delete an individual together with its relationships, mappings, profile links and media.
+     * Callers check permissions and mark the tree changed. The avatar files are removed from storage
+     * once the current transaction commits, so a rollback leaves no row pointing at a deleted file.
+     */
+    public void removeIndividual(Individual individual) {
+        UUID individualId = individual.getId();
+
         // Delete all relationships involving this individual
         relationshipRepository.deleteByIndividualId(individualId);
         log.info("Deleted relationships for individual {}", individualId);
@@ -196,27 +233,65 @@ public class IndividualService {
         // Delete clone mappings for this individual (both as source and cloned)
         cloneMappingRepository.deleteBySourceIndividualId(individualId);
         cloneMappingRepository.deleteByClonedIndividualId(individualId);
+        cloneLineageService.removeIndividual(individualId);
+        overlayService.removeIndividual(individual);
         log.info("Deleted clone mappings for individual {}", individualId);
 
         // Delete user tree profile for this individual
         userTreeProfileRepository.deleteByIndividualId(individualId);
         log.info("Deleted user tree profiles for individual {}", individualId);
 
-        // Delete avatar from MinIO if exists
+        // Delete GEDCOM XREF mapping so a later diff import re-inserts the record
+        gedcomXrefMappingRepository.deleteByIndividualId(individualId);
+
+        // Media records go with the individual, their stored files once no other media references them
+        for (com.familytree.model.Media media : mediaRepository.findByIndividualId(individualId)) {
+            mediaBlobService.release(media.getStoragePath());
+        }
+
+        // Avatar files to delete from MinIO, located while the individual still exists
+        List<String> avatarFiles = new ArrayList<>();
         if (individual.getProfilePictureUrl() != null && !individual.getProfilePictureUrl().isEmpty()) {
-            try {
-                String objectName = extractObjectNameFromUrl(individual.getProfilePictureUrl());
-                if (objectName != null) {
-                    minioService.deleteFile(objectName);
-                    log.info("Deleted avatar for individual {}", individualId);
-                }
-            } catch (Exception e) {
-                log.error("Failed to delete avatar for individual {}: {}", individualId, e.getMessage());
+            String objectName = findAvatarObjectName(individual);
+            if (objectName != null) {
+                avatarFiles.add(objectName);
+                avatarFiles.addAll(imageDerivativeService.derivativeNames(objectName,
+                        individual.getAvatarDerivativeFormat(), individual.getAvatarDerivativeWidths()));
             }
         }
 
         individualRepository.delete(individual);
-        log.info("Individual {} deleted successfully", individualId);
+
+        if (!avatarFiles.isEmpty()) {
+            afterCommit(() -> {
+                try {
+                    List<String> failed = minioService.deleteFiles(avatarFiles);
+                    if (failed.isEmpty()) {
+                        log.info("Deleted avatar for individual {}", individualId);
+                    } else {
+                        log.warn("Failed to delete avatar files {} of individual {}", failed, individualId);
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to delete avatar for individual {}: {}", individualId, e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Run an action once the current transaction commits (immediately without a transaction)
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
     }
 
     /**
@@ -237,9 +312,10 @@ public class IndividualService {
             // Delete old avatar if exists
             if (individual.getProfilePictureUrl() != null && !individual.getProfilePictureUrl().isEmpty()) {
                 try {
-                    String oldObjectName = extractObjectNameFromUrl(individual.getProfilePictureUrl());
+                    String oldObjectName = findAvatarObjectName(individual);
                     if (oldObjectName != null) {
                         minioService.deleteFile(oldObjectName);
+                        deleteAvatarDerivatives(individual, oldObjectName);
                         log.info("Deleted old avatar for individual {}", individualId);
                     }
                 } catch (Exception e) {
@@ -255,16 +331,28 @@ public class IndividualService {
             }
             String objectName = "avatars/individuals/" + individualId + "/avatar" + extension;
 
-            // Upload new avatar to MinIO
-            String storagePath = minioService.uploadFile(file, objectName);
+            // Upload new avatar to MinIO, hashing its bytes for the versioned URL
+            byte[] bytes = file.getBytes();
+            String hash = sha256Hex(bytes);
+            String storagePath = minioService.uploadFile(
+                    new ByteArrayInputStream(bytes), objectName, file.getContentType(), bytes.length);
 
-            // Generate URL: /api/trees/{treeId}/individuals/{id}/avatar
-            String avatarUrl = "/api/trees/" + individual.getTree().getId() + "/individuals/" + individualId + "/avatar";
+            // Generate URL: /api/trees/{treeId}/individuals/{id}/avatar/{hash}
+            String avatarUrl = avatarUrl(individual.getTree().getId(), individualId, hash);
 
-            // Update individual with new avatar URL
+            // Update individual with new avatar URL and stored object
             individual.setProfilePictureUrl(avatarUrl);
+            individual.setAvatarObjectKey(storagePath);
+            individual.setAvatarHash(hash);
+            individual.setAvatarContentType(file.getContentType());
+            individual.setAvatarSize((long) bytes.length);
+            individual.setAvatarDerivativeFormat(null);
+            individual.setAvatarDerivativeWidths(null);
             individualRepository.save(individual);
 
+            // Resized copies are generated in the background
+            imageDerivativeService.generateForAvatar(individualId, storagePath);
+
             log.info("Avatar uploaded successfully for individual {}: {}", individualId, avatarUrl);
             return avatarUrl;
 
@@ -291,9 +379,10 @@ public class IndividualService {
         // Delete avatar from MinIO if exists
         if (individual.getProfilePictureUrl() != null && !individual.getProfilePictureUrl().isEmpty()) {
             try {
-                String objectName = extractObjectNameFromUrl(individual.getProfilePictureUrl());
+                String objectName = findAvatarObjectName(individual);
                 if (objectName != null) {
                     minioService.deleteFile(objectName);
+                    deleteAvatarDerivatives(individual, objectName);
                     log.info("Deleted avatar from MinIO for individual {}", individualId);
                 }
             } catch (Exception e) {
@@ -304,46 +393,140 @@ public class IndividualService {
 
         // Update individual to remove avatar URL
         individual.setProfilePictureUrl(null);
+        individual.setAvatarObjectKey(null);
+        individual.setAvatarHash(null);
+        individual.setAvatarContentType(null);
+        individual.setAvatarSize(null);
+        individual.setAvatarDerivativeFormat(null);
+        individual.setAvatarDerivativeWidths(null);
         individualRepository.save(individual);
 
         log.info("Avatar deleted successfully for individual {}", individualId);
     }
 
     /**
-     * Extract object name from URL stored in profilePictureUrl
-     * For avatars, we store API endpoint: /api/trees/{treeId}/individuals/{id}/avatar
-     * And need to extract MinIO object name: avatars/individuals/{id}/avatar.{ext}
-     * We need to query the individual to get the actual storage path
+     * Find the stored avatar image to serve for an individual.
+     * Avatars uploaded before object keys and hashes were kept are located once and recorded.
+     * @param individualId the individual ID
+     * @param width requested display width, or null for the original image
+     * @return the avatar object, or null if the individual has no avatar
      */
-    private String extractObjectNameFromUrl(String url) {
-        if (url == null || url.isEmpty()) {
+    public AvatarObject findAvatarObject(UUID individualId, Integer width) {
+        Individual individual = individualRepository.findById(individualId).orElse(null);
+        if (individual == null || individual.getProfilePictureUrl() == null) {
             return null;
         }
 
-        // Extract individual ID from URL: /api/trees/{treeId}/individuals/{id}/avatar
-        String pattern = "/individuals/";
-        int individualIdStart = url.indexOf(pattern);
-        if (individualIdStart != -1) {
-            individualIdStart += pattern.length();
-            int individualIdEnd = url.indexOf("/", individualIdStart);
-            if (individualIdEnd != -1) {
-                String individualIdStr = url.substring(individualIdStart, individualIdEnd);
-                try {
-                    UUID individualId = UUID.fromString(individualIdStr);
-                    // List files in MinIO for this individual to find avatar
-                    String prefix = "avatars/individuals/" + individualId + "/";
-                    List<String> files = minioService.listFiles(prefix);
-                    if (!files.isEmpty()) {
-                        // Return the first file found (should only be one avatar)
-                        return files.get(0);
-                    }
-                } catch (Exception e) {
-                    log.error("Failed to extract individual ID from URL: {}", url, e);
-                }
-            }
+        AvatarObject avatar = individual.getAvatarHash() != null
+                ? AvatarObject.builder()
+                        .objectName(individual.getAvatarObjectKey())
+                        .hash(individual.getAvatarHash())
+                        .contentType(individual.getAvatarContentType())
+                        .size(individual.getAvatarSize())
+                        .build()
+                : recordLegacyAvatar(individual);
+        if (avatar == null || width == null) {
+            return avatar;
+        }
+
+        String objectName = avatar.getObjectName();
+        // Avatars uploaded before resized copies existed get them generated in the background
+        if (individual.getAvatarDerivativeFormat() == null) {
+            imageDerivativeService.ensureForAvatar(individualId, objectName);
+            return avatar;
+        }
+        String derivativeName = imageDerivativeService.pickDerivative(objectName,
+                individual.getAvatarDerivativeFormat(), individual.getAvatarDerivativeWidths(), width);
+        if (!derivativeName.equals(objectName)) {
+            avatar.setObjectName(derivativeName);
+            avatar.setContentType(imageDerivativeService.contentType(individual.getAvatarDerivativeFormat()));
+            avatar.setSize(null);
         }
+        return avatar;
+    }
+
+    /**
+     * Build the versioned avatar URL: /api/trees/{treeId}/individuals/{id}/avatar/{hash}
+     * (unversioned when the hash is not known yet)
+     */
+    static String avatarUrl(UUID treeId, UUID individualId, String hash) {
+        String url = "/api/trees/" + treeId + "/individuals/" + individualId + "/avatar";
+        return hash != null ? url + "/" + hash : url;
+    }
 
-        return null;
+    /**
+     * Delete the resized copies of an avatar
+     */
+    private void deleteAvatarDerivatives(Individual individual, String objectName) throws Exception {
+        List<String> derivatives = imageDerivativeService.derivativeNames(objectName,
+                individual.getAvatarDerivativeFormat(), individual.getAvatarDerivativeWidths());
+        if (!derivatives.isEmpty()) {
+            minioService.deleteFiles(derivatives);
+        }
+    }
+
+    /**
+     * Get the object name of an individual's avatar: the recorded key, or for avatars uploaded before keys
+     * were kept, the file found in the avatar directory (avatars/individuals/{id}/avatar.{ext})
+     */
+    private String findAvatarObjectName(Individual individual) {
+        if (individual.getAvatarObjectKey() != null) {
+            return individual.getAvatarObjectKey();
+        }
+        try {
+            List<String> files = minioService.listFiles("avatars/individuals/" + individual.getId() + "/");
+            // The avatar itself sorts before its resized copies
+            return files.isEmpty() ? null : files.get(0);
+        } catch (Exception e) {
+            log.error("Failed to locate avatar of individual {}", individual.getId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Record the object key, version and metadata of an avatar uploaded before they were kept.
+     * The storage ETag serves as the version, so the avatar does not have to be downloaded.
+     * @return the avatar object, or null if the avatar file does not exist
+     */
+    private AvatarObject recordLegacyAvatar(Individual individual) {
+        String objectName = findAvatarObjectName(individual);
+        if (objectName == null) {
+            return null;
+        }
+        try {
+            StatObjectResponse stat = minioService.getFileMetadata(objectName);
+            String hash = stat.etag().replace("\"", "");
+            String url = avatarUrl(individual.getTree().getId(), individual.getId(), hash);
+
+            // Bulk update, so recording the avatar does not count as a modification of the individual
+            individualRepository.updateAvatarObject(individual.getId(), url, objectName, hash,
+                    stat.contentType(), stat.size());
+            return AvatarObject.builder()
+                    .objectName(objectName)
+                    .hash(hash)
+                    .contentType(stat.contentType())
+                    .size(stat.size())
+                    .build();
+        } catch (Exception e) {
+            log.warn("Avatar file {} of individual {} not found: {}", objectName, individual.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Hex SHA-256 of avatar bytes
+     */
+    private String sha256Hex(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 
     /**
@@ -380,7 +563,7 @@ public class IndividualService {
         // If this is a cloned tree, check if user has access to the source tree
         // This allows relatives of the cloned person to view the cloned tree
         if (tree.getSourceTreeId() != null) {
-            FamilyTree sourceTree = treeRepository.findById(tree.getSourceTreeId()).orElse(null);
+            FamilyTree sourceTree = treeRepository.findByIdAndDeletedAtIsNull(tree.getSourceTreeId()).orElse(null);
             if (sourceTree != null) {
                 // Check if user has profile in source tree (they are a family member)
                 if (userTreeProfileRepository.existsByUserIdAndTreeId(user.getId(), sourceTree.getId())) {
@@ -446,6 +629,9 @@ public class IndividualService {
         long mediaCount = mediaRepository.countByIndividualId(individual.getId());
         long eventCount = eventRepository.countByIndividualId(individual.getId());
 
+        // Copy-on-write clones read their biography and notes from the source individual
+        IndividualOverlayService.SharedContent shared = overlayService.findSharedContent(individual.getId());
+
         return IndividualResponse.builder()
                 .id(individual.getId())
                 .treeId(individual.getTree().getId())
@@ -460,8 +646,8 @@ public class IndividualService {
                 .birthPlace(individual.getBirthPlace())
                 .deathDate(individual.getDeathDate())
                 .deathPlace(individual.getDeathPlace())
-                .biography(individual.getBiography())
-                .notes(individual.getNotes())
+                .biography(shared != null ? shared.getBiography() : individual.getBiography())
+                .notes(shared != null ? shared.getNotes() : individual.getNotes())
                 .profilePictureUrl(individual.getProfilePictureUrl())
                 .facebookLink(individual.getFacebookLink())
                 .phoneNumber(individual.getPhoneNumber())
@@ -41,7 +41,7 @@ public class InvitationService {
     @Transactional
     public InvitationResponse inviteCollaborator(UUID treeId, UUID inviterId, InviteCollaboratorRequest request) {
         // Verify tree exists and inviter has permission
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new RuntimeException("Tree not found"));
 
         User inviter = userRepository.findById(inviterId)
@@ -209,7 +209,7 @@ public class InvitationService {
     @Transactional(readOnly = true)
     public List<InvitationResponse> getTreeInvitations(UUID treeId, UUID userId) {
         // Verify user has permission to view invitations (must be owner)
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new RuntimeException("Tree not found"));
 
         if (!tree.getOwner().getId().equals(userId)) {
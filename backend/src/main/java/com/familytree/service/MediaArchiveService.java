@@ -0,0 +1,363 @@
+package com.familytree.service;
+
+import com.familytree.exception.ResourceNotFoundException;
+import com.familytree.exception.UnauthorizedException;
+import com.familytree.model.FamilyTree;
+import com.familytree.model.MediaType;
+import com.familytree.repository.FamilyTreeRepository;
+import com.familytree.repository.IndividualRepository;
+import com.familytree.repository.MediaRepository;
+import com.familytree.repository.RelationshipRepository;
+import io.minio.errors.ErrorResponseException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Service building ZIP archives of the media of a tree (or of the branch around one individual).
+ *
+ * The archive is written straight to the response while it is built: files are read from MinIO in
+ * order, with the next few small files downloaded ahead on the media archive pool (see AsyncConfig), and large files streamed
+ * through without buffering. Nothing is staged on disk. Each individual gets a folder, and a
+ * manifest.csv at the end maps every file to its individual and records files that were missing.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MediaArchiveService {
+
+    private static final String MANIFEST_NAME = "manifest.csv";
+    private static final String MANIFEST_HEADER = "path,status,media_id,individual_id,individual_name,type," +
+            "mime_type,file_size,checksum,caption,uploaded_at";
+
+    private final MediaRepository mediaRepository;
+    private final IndividualRepository individualRepository;
+    private final RelationshipRepository relationshipRepository;
+    private final FamilyTreeRepository treeRepository;
+    private final PermissionService permissionService;
+    private final MinioService minioService;
+
+    @Qualifier("mediaArchiveExecutor")
+    private final AsyncTaskExecutor mediaArchiveExecutor;
+
+    // Number of files downloaded ahead of the one being written
+    @Value("${media.archive.prefetch:4}")
+    private int prefetch;
+
+    // Larger files are streamed through when their turn comes instead of being downloaded ahead
+    @Value("${media.archive.prefetch-max-size:8MB}")
+    private DataSize prefetchMaxSize;
+
+    /**
+     * Check access and list the files of an archive
+     * @param treeId the tree ID
+     * @param rootIndividualId individual whose branch (ancestors, descendants and their spouses) to include,
+     *                         or null for the whole tree
+     * @param username the requesting user
+     * @return the archive to write
+     */
+    @Transactional(readOnly = true)
+    public MediaArchive prepareArchive(UUID treeId, UUID rootIndividualId, String username) {
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
+                .orElseThrow(() -> new ResourceNotFoundException("Tree not found with id: " + treeId));
+        if (!permissionService.hasViewPermission(treeId, username)) {
+            throw new UnauthorizedException("No permission to view media of this tree");
+        }
+
+        Set<UUID> branch = null;
+        if (rootIndividualId != null) {
+            individualRepository.findById(rootIndividualId)
+                    .filter(individual -> individual.getTree().getId().equals(treeId))
+                    .orElseThrow(() -> new ResourceNotFoundException("Individual not found with id: " + rootIndividualId));
+            branch = TreeGraph.fromEdges(relationshipRepository.findEdgesByTreeId(treeId)).collectBranch(rootIndividualId);
+        }
+
+        List<ArchiveEntry> entries = new ArrayList<>();
+        Set<String> usedPaths = new HashSet<>();
+        usedPaths.add(MANIFEST_NAME);
+        for (Object[] row : mediaRepository.findArchiveEntriesByTreeId(treeId)) {
+            UUID individualId = (UUID) row[1];
+            if (branch != null && !branch.contains(individualId)) {
+                continue;
+            }
+
+            ArchiveEntry entry = new ArchiveEntry();
+            entry.mediaId = (UUID) row[0];
+            entry.individualId = individualId;
+            entry.individualName = buildFullName((String) row[2], (String) row[3], (String) row[4]);
+            entry.storagePath = (String) row[6];
+            entry.mimeType = (String) row[7];
+            entry.fileSize = (Long) row[8];
+            entry.checksum = (String) row[9];
+            entry.caption = (String) row[10];
+            entry.uploadedAt = (LocalDateTime) row[11];
+            entry.type = (MediaType) row[12];
+
+            String folder = sanitize(entry.individualName.isEmpty() ? "Unnamed" : entry.individualName)
+                    + " (" + individualId.toString().substring(0, 8) + ")";
+            entry.path = uniquePath(folder + "/" + sanitize((String) row[5]), usedPaths);
+            entries.add(entry);
+        }
+
+        String fileName = sanitize(tree.getName()) + (branch != null ? " - branch" : "") + " - media.zip";
+        log.info("Prepared media archive of tree {} with {} files{}", treeId, entries.size(),
+                branch != null ? " (branch of " + rootIndividualId + ")" : "");
+        return new MediaArchive(fileName, entries);
+    }
+
+    /**
+     * Write an archive as it is built
+     * @param archive the archive prepared by prepareArchive
+     * @param outputStream the stream to write the ZIP to (not closed)
+     */
+    public void writeArchive(MediaArchive archive, OutputStream outputStream) throws IOException {
+        List<ArchiveEntry> entries = archive.entries;
+        Map<Integer, Future<byte[]>> downloads = new HashMap<>();
+        int scheduled = 0;
+        int written = 0;
+
+        ZipOutputStream zip = new ZipOutputStream(outputStream, StandardCharsets.UTF_8);
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                // Keep the next small files downloading while this one is written
+                for (; scheduled < entries.size() && scheduled <= i + prefetch; scheduled++) {
+                    ArchiveEntry next = entries.get(scheduled);
+                    if (next.fileSize != null && next.fileSize <= prefetchMaxSize.toBytes()) {
+                        try {
+                            downloads.put(scheduled, mediaArchiveExecutor.submit(() -> download(next)));
+                        } catch (TaskRejectedException e) {
+                            // Streamed through when its turn comes
+                            log.debug("Not downloading {} ahead: {}", next.storagePath, e.getMessage());
+                        }
+                    }
+                }
+
+                if (writeEntry(zip, entries.get(i), downloads.remove(i))) {
+                    written++;
+                }
+            }
+
+            zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+            zip.putNextEntry(new ZipEntry(MANIFEST_NAME));
+            zip.write(buildManifest(entries));
+            zip.closeEntry();
+            zip.finish();
+            zip.flush();
+        } finally {
+            // The client may have gone away, downloads ahead are no longer needed
+            downloads.values().forEach(download -> download.cancel(true));
+        }
+
+        log.info("Wrote media archive {}: {} of {} files", archive.fileName, written, entries.size());
+    }
+
+    /**
+     * Add one file to the archive, either from its prefetched bytes or streamed from storage
+     * @return false if the file is missing from storage or could not be read (recorded in the manifest)
+     */
+    private boolean writeEntry(ZipOutputStream zip, ArchiveEntry entry, Future<byte[]> download) throws IOException {
+        if (download != null) {
+            byte[] data;
+            try {
+                data = download.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing media archive", e);
+            } catch (ExecutionException e) {
+                log.warn("Could not read media file {} for archive: {}", entry.storagePath, e.getCause().getMessage());
+                entry.status = "failed";
+                return false;
+            }
+            if (data == null) {
+                entry.status = "missing";
+                return false;
+            }
+            putEntry(zip, entry);
+            zip.write(data);
+            zip.closeEntry();
+            entry.status = "ok";
+            return true;
+        }
+
+        InputStream inputStream;
+        try {
+            inputStream = minioService.downloadFile(entry.storagePath);
+        } catch (ErrorResponseException e) {
+            if (!"NoSuchKey".equals(e.errorResponse().code())) {
+                log.warn("Could not read media file {} for archive: {}", entry.storagePath, e.getMessage());
+            }
+            entry.status = "NoSuchKey".equals(e.errorResponse().code()) ? "missing" : "failed";
+            return false;
+        } catch (Exception e) {
+            log.warn("Could not read media file {} for archive: {}", entry.storagePath, e.getMessage());
+            entry.status = "failed";
+            return false;
+        }
+
+        // Once the entry is started a read failure cannot be skipped, it ends the archive
+        try (InputStream in = inputStream) {
+            putEntry(zip, entry);
+            in.transferTo(zip);
+            zip.closeEntry();
+        }
+        entry.status = "ok";
+        return true;
+    }
+
+    /**
+     * Download a small file completely
+     * @return the bytes, or null if the file is missing from storage
+     */
+    private byte[] download(ArchiveEntry entry) throws Exception {
+        try (InputStream inputStream = minioService.downloadFile(entry.storagePath)) {
+            return inputStream.readAllBytes();
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private void putEntry(ZipOutputStream zip, ArchiveEntry entry) throws IOException {
+        // Photos, video and audio are compressed already, deflating them again only costs time
+        zip.setLevel(isCompressed(entry.mimeType) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+        ZipEntry zipEntry = new ZipEntry(entry.path);
+        if (entry.uploadedAt != null) {
+            zipEntry.setTime(entry.uploadedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        zip.putNextEntry(zipEntry);
+    }
+
+    private boolean isCompressed(String mimeType) {
+        return mimeType != null && (mimeType.startsWith("image/") && !mimeType.equals("image/bmp")
+                || mimeType.startsWith("video/") || mimeType.startsWith("audio/") && !mimeType.equals("audio/wav"));
+    }
+
+    /**
+     * Build the manifest: one CSV row per media file, UTF-8 with a byte order mark so spreadsheet
+     * applications show Vietnamese names correctly
+     */
+    private byte[] buildManifest(List<ArchiveEntry> entries) {
+        StringBuilder csv = new StringBuilder("\uFEFF").append(MANIFEST_HEADER).append("\r\n");
+        for (ArchiveEntry entry : entries) {
+            csv.append(csvValue(entry.path)).append(',')
+                    .append(entry.status).append(',')
+                    .append(entry.mediaId).append(',')
+                    .append(entry.individualId).append(',')
+                    .append(csvValue(entry.individualName)).append(',')
+                    .append(entry.type != null ? entry.type : "").append(',')
+                    .append(csvValue(entry.mimeType)).append(',')
+                    .append(entry.fileSize != null ? entry.fileSize : "").append(',')
+                    .append(entry.checksum != null ? entry.checksum : "").append(',')
+                    .append(csvValue(entry.caption)).append(',')
+                    .append(entry.uploadedAt != null ? entry.uploadedAt : "")
+                    .append("\r\n");
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String csvValue(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    /**
+     * Make a name safe as a ZIP path segment on every operating system
+     */
+    private String sanitize(String name) {
+        String sanitized = name == null ? "" : name.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").trim();
+        // Windows drops trailing dots, and "." or ".." would change the folder
+        sanitized = sanitized.replaceAll("\\.+$", "");
+        return sanitized.isEmpty() ? "file" : sanitized;
+    }
+
+    /**
+     * Make a path unique within the archive: "photo.jpg", "photo (2).jpg", ...
+     */
+    private String uniquePath(String path, Set<String> usedPaths) {
+        if (usedPaths.add(path)) {
+            return path;
+        }
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        String base = dot > slash ? path.substring(0, dot) : path;
+        String extension = dot > slash ? path.substring(dot) : "";
+        for (int n = 2; ; n++) {
+            String candidate = base + " (" + n + ")" + extension;
+            if (usedPaths.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    private String buildFullName(String givenName, String middleName, String surname) {
+        StringJoiner name = new StringJoiner(" ");
+        for (String part : new String[]{surname, middleName, givenName}) {
+            if (part != null && !part.isBlank()) {
+                name.add(part.trim());
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * A media archive ready to be written: its file name and the files it contains
+     */
+    public static class MediaArchive {
+        private final String fileName;
+        private final List<ArchiveEntry> entries;
+
+        MediaArchive(String fileName, List<ArchiveEntry> entries) {
+            this.fileName = fileName;
+            this.entries = entries;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public int getFileCount() {
+            return entries.size();
+        }
+    }
+
+    private static class ArchiveEntry {
+        String path;
+        UUID mediaId;
+        UUID individualId;
+        String individualName;
+        String storagePath;
+        String mimeType;
+        Long fileSize;
+        String checksum;
+        String caption;
+        LocalDateTime uploadedAt;
+        MediaType type;
+        String status = "skipped";
+    }
+}
@@ -0,0 +1,284 @@
+package com.familytree.service;
+
+import com.familytree.model.Media;
+import com.familytree.model.MediaBlob;
+import com.familytree.repository.IndividualRepository;
+import com.familytree.repository.MediaBlobRepository;
+import com.familytree.repository.MediaRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Service managing the stored media files shared by media records (see MediaBlob).
+ *
+ * An upload whose SHA-256 matches a stored file references that file and its upload is discarded.
+ * Cloned and merged media records reference the source's files. Deleting a media record releases its
+ * reference, and files nothing references anymore are removed from storage together with their
+ * thumbnail and resized copies.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MediaBlobService {
+
+    private static final int GC_BATCH_SIZE = 500;
+
+    private final MediaBlobRepository blobRepository;
+    private final MediaRepository mediaRepository;
+    private final IndividualRepository individualRepository;
+    private final MinioService minioService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Reference a stored file with the given content, if there is one
+     * @param checksum the SHA-256 of the content
+     * @return the referenced blob, or null if no file with this content is stored
+     */
+    @Transactional
+    public MediaBlob acquire(String checksum) {
+        for (String storagePath : blobRepository.findReferencedPathsByChecksum(checksum)) {
+            // Fails if the last reference was released in the meantime
+            if (blobRepository.addReferences(storagePath, 1) > 0) {
+                return blobRepository.findById(storagePath).orElse(null);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Register a newly stored file with one reference
+     */
+    @Transactional
+    public void register(String storagePath, String checksum, Long fileSize, String mimeType) {
+        blobRepository.save(MediaBlob.builder()
+                .storagePath(storagePath)
+                .checksum(checksum)
+                .fileSize(fileSize)
+                .mimeType(mimeType)
+                .refCount(1)
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
+
+    /**
+     * Reference the stored file of a media record imported from a tree archive.
+     * The file is imported at the given path after the records referencing it: the first record registers it
+     * without checksum (so no upload shares it before its content is there), the next ones add references,
+     * unless a file with the same content is already stored, which is referenced instead.
+     * @param importPath where the import stores the file
+     * @param checksum the SHA-256 recorded in the archive, if any
+     * @return the referenced blob
+     */
+    @Transactional
+    public MediaBlob referenceImported(String importPath, String checksum, Long fileSize, String mimeType) {
+        if (blobRepository.addReferences(importPath, 1) > 0) {
+            return blobRepository.findById(importPath).orElse(null);
+        }
+        MediaBlob blob = checksum != null ? acquire(checksum) : null;
+        if (blob != null) {
+            return blob;
+        }
+        register(importPath, null, fileSize, mimeType);
+        return blobRepository.findById(importPath).orElse(null);
+    }
+
+    /**
+     * Whether a file must be imported at the given path, i.e. a record references it and its content
+     * has not been stored yet
+     */
+    @Transactional(readOnly = true)
+    public boolean isImportPending(String importPath) {
+        return blobRepository.findById(importPath)
+                .map(blob -> blob.getChecksum() == null)
+                .orElse(false);
+    }
+
+    /**
+     * Record the content of a file stored by an import, making it available for sharing by content
+     */
+    @Transactional
+    public void confirmImported(String importPath, String checksum, long fileSize) {
+        blobRepository.updateContent(importPath, checksum, fileSize);
+    }
+
+    /**
+     * Give individuals the media of other individuals (merged copies of the same people),
+     * as new media records referencing the same stored files
+     * @param individualIds source individual ID to the ID of the individual receiving its media
+     * @return number of media records created
+     */
+    @Transactional
+    public int shareMedia(Map<UUID, UUID> individualIds) {
+        if (individualIds.isEmpty()) {
+            return 0;
+        }
+
+        List<Media> originals = mediaRepository.findByIndividualIdIn(individualIds.keySet());
+        Map<String, Integer> references = new HashMap<>();
+        for (Media original : originals) {
+            references.merge(original.getStoragePath(), 1, Integer::sum);
+        }
+
+        // Files whose last reference was released are about to be removed, they cannot be shared anymore
+        Set<String> referenced = new HashSet<>();
+        references.forEach((storagePath, count) -> {
+            if (blobRepository.addReferences(storagePath, count) > 0) {
+                referenced.add(storagePath);
+            }
+        });
+
+        List<Media> shared = new ArrayList<>();
+        for (Media original : originals) {
+            if (!referenced.contains(original.getStoragePath())) {
+                log.warn("Not sharing media {}: its file {} is no longer stored", original.getId(), original.getStoragePath());
+                continue;
+            }
+            shared.add(Media.builder()
+                    .individual(individualRepository.getReferenceById(individualIds.get(original.getIndividual().getId())))
+                    .type(original.getType())
+                    .filename(original.getFilename())
+                    .storagePath(original.getStoragePath())
+                    .caption(original.getCaption())
+                    .fileSize(original.getFileSize())
+                    .mimeType(original.getMimeType())
+                    .checksum(original.getChecksum())
+                    .derivativeFormat(original.getDerivativeFormat())
+                    .derivativeWidths(original.getDerivativeWidths())
+                    .build());
+        }
+
+        mediaRepository.saveAll(shared);
+        return shared.size();
+    }
+
+    /**
+     * Release a media record's reference to its stored file. Once nothing references the file,
+     * it is removed from storage after the current transaction commits.
+     * Must be called before the media record is deleted.
+     * @param storagePath the storage path of the media record
+     */
+    @Transactional
+    public void release(String storagePath) {
+        if (blobRepository.removeReference(storagePath) == 0) {
+            // A file without blob is registered from the media records referencing it (this one included),
+            // so the release below removes the file with its last reference
+            if (blobRepository.backfill(storagePath, LocalDateTime.now()) == 0
+                    || blobRepository.removeReference(storagePath) == 0) {
+                log.warn("Released media file {} that is no longer referenced", storagePath);
+                return;
+            }
+            log.info("Registered media file {} on release", storagePath);
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    collect(Collections.singletonList(storagePath));
+                }
+            });
+        } else {
+            collect(Collections.singletonList(storagePath));
+        }
+    }
+
+    /**
+     * Remove all stored files nothing references anymore (e.g. after a tree has been purged).
+     * Files that could not be removed keep their blob and are retried by the next run.
+     * @return number of objects removed from storage
+     */
+    public int collectGarbage() {
+        int removed = 0;
+        while (true) {
+            List<MediaBlob> batch = blobRepository.findUnreferenced(PageRequest.of(0, GC_BATCH_SIZE));
+            if (batch.isEmpty()) {
+                return removed;
+            }
+            int[] result = remove(batch);
+            removed += result[0];
+            if (result[1] == 0) {
+                // Nothing in this batch could be removed, leave it to the next run
+                return removed;
+            }
+        }
+    }
+
+    /**
+     * Remove the given files if nothing references them anymore
+     */
+    private void collect(List<String> storagePaths) {
+        try {
+            List<MediaBlob> unreferenced = blobRepository.findUnreferenced(storagePaths);
+            if (!unreferenced.isEmpty()) {
+                remove(unreferenced);
+            }
+        } catch (Exception e) {
+            log.error("Failed to remove unreferenced media files {}", storagePaths, e);
+        }
+    }
+
+    /**
+     * Delete unreferenced files with their thumbnails and resized copies, then their blobs
+     * @return number of objects deleted and number of blobs deleted
+     */
+    private int[] remove(List<MediaBlob> blobs) {
+        Map<String, String> originalOf = new HashMap<>();
+        for (MediaBlob blob : blobs) {
+            originalOf.put(blob.getStoragePath(), blob.getStoragePath());
+            if (blob.getMimeType() != null && blob.getMimeType().startsWith("image/")) {
+                // Removing a missing thumbnail is not an error, so no existence check is needed
+                originalOf.put(minioService.generateThumbnailName(blob.getStoragePath()), blob.getStoragePath());
+                for (String derivative : imageDerivativeService.derivativeNames(blob.getStoragePath(),
+                        blob.getDerivativeFormat(), blob.getDerivativeWidths())) {
+                    originalOf.put(derivative, blob.getStoragePath());
+                }
+            }
+        }
+
+        List<String> failed;
+        try {
+            failed = minioService.deleteFiles(originalOf.keySet());
+        } catch (Exception e) {
+            log.error("Failed to remove {} unreferenced media files", blobs.size(), e);
+            return new int[]{0, 0};
+        }
+
+        // A blob is only dropped once all of its objects are gone
+        Set<String> incomplete = failed.stream().map(originalOf::get).collect(Collectors.toSet());
+        List<String> removed = blobs.stream()
+                .map(MediaBlob::getStoragePath)
+                .filter(storagePath -> !incomplete.contains(storagePath))
+                .collect(Collectors.toList());
+        int deleted = removed.isEmpty() ? 0
+                : transactionTemplate.execute(status -> blobRepository.deleteUnreferenced(removed));
+
+        log.info("Removed {} unreferenced media files ({} objects)", deleted, originalOf.size() - failed.size());
+        return new int[]{originalOf.size() - failed.size(), deleted};
+    }
+
+    /**
+     * Create the missing blobs of media files on startup: files stored before blobs existed, or whose blob
+     * is missing for any other reason (afterwards they are maintained incrementally)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfill() {
+        int created = blobRepository.backfill(LocalDateTime.now());
+        if (created > 0) {
+            log.info("Registered {} existing media files", created);
+        }
+    }
+}
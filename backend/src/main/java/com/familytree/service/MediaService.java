@@ -2,24 +2,29 @@ package com.familytree.service;
 
 import com.familytree.dto.media.MediaResponse;
 import com.familytree.dto.media.UpdateMediaRequest;
+import com.familytree.exception.BadRequestException;
 import com.familytree.exception.ResourceNotFoundException;
 import com.familytree.exception.UnauthorizedException;
 import com.familytree.model.Individual;
 import com.familytree.model.Media;
+import com.familytree.model.MediaBlob;
 import com.familytree.model.MediaType;
 import com.familytree.repository.IndividualRepository;
 import com.familytree.repository.MediaRepository;
+import io.minio.errors.ErrorResponseException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import net.coobird.thumbnailator.Thumbnails;
-import org.apache.commons.io.FilenameUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -35,6 +40,11 @@ public class MediaService {
     private final IndividualRepository individualRepository;
     private final MinioService minioService;
     private final PermissionService permissionService;
+    private final MediaUrlService mediaUrlService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final MediaBlobService mediaBlobService;
+    private final TreeStatsService treeStatsService;
+    private final TransactionTemplate transactionTemplate;
 
     // Allowed image MIME types
     private static final Set<String> IMAGE_MIME_TYPES = Set.of(
@@ -48,74 +58,156 @@ public class MediaService {
             "text/plain"
     );
 
-    // Maximum file size: 5MB
-    private static final long MAX_FILE_SIZE = 5 * 1024 * 1024;
+    private static final String DOCX_MIME_TYPE = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
 
-    // Thumbnail size
-    private static final int THUMBNAIL_WIDTH = 200;
-    private static final int THUMBNAIL_HEIGHT = 200;
+    // Originals up to this size are served in place of a thumbnail that has not been generated yet
+    private static final long THUMBNAIL_FALLBACK_MAX_SIZE = 10 * 1024 * 1024;
+
+    // Maximum upload size
+    @Value("${media.upload.max-size:500MB}")
+    private DataSize maxUploadSize;
 
     /**
-     * Upload media file for an individual
+     * Upload media file for an individual (multipart form upload)
      */
-    @Transactional
     public MediaResponse uploadMedia(
             UUID individualId,
             MultipartFile file,
             String caption,
             String username
     ) {
-        log.info("Uploading media for individual {} by user {}", individualId, username);
-
-        // Validate file
-        validateFile(file);
-
-        // Get individual with tree eagerly loaded and check permissions
-        Individual individual = individualRepository.findByIdWithTree(individualId)
-                .orElseThrow(() -> new ResourceNotFoundException("Individual not found with id: " + individualId));
-
-        UUID treeId = individual.getTree().getId();
-        if (!permissionService.hasEditPermission(treeId, username)) {
-            throw new UnauthorizedException("No permission to upload media to this tree");
+        if (file == null || file.isEmpty()) {
+            throw new BadRequestException("File is required");
         }
 
-        try {
-            // Determine media type
-            MediaType mediaType = determineMediaType(file.getContentType());
+        try (InputStream inputStream = file.getInputStream()) {
+            return storeMedia(individualId, inputStream, file.getOriginalFilename(), file.getContentType(),
+                    caption, username);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read uploaded file: " + e.getMessage(), e);
+        }
+    }
 
-            // Generate object name
-            String originalFilename = file.getOriginalFilename();
-            String objectName = minioService.generateObjectName(treeId, individualId, originalFilename);
+    /**
+     * Upload media file for an individual from a raw request body.
+     * The body is piped to storage as it arrives, so large files (scans, video) are never held
+     * in memory or written to a temporary file.
+     * @param body the request body
+     * @param filename the original file name
+     * @param contentType the declared content type (the stored type is detected from the content)
+     */
+    public MediaResponse uploadMediaStream(
+            UUID individualId,
+            InputStream body,
+            String filename,
+            String contentType,
+            String caption,
+            String username
+    ) {
+        if (filename == null || filename.isBlank()) {
+            throw new BadRequestException("File name is required");
+        }
+        return storeMedia(individualId, body, filename, contentType, caption, username);
+    }
 
-            // Upload original file
-            String storagePath = minioService.uploadFile(file, objectName);
+    /**
+     * Store an upload in a single pass: the type is detected from the first bytes, then the content is streamed
+     * to a MinIO multipart upload while its size and checksum are computed. The thumbnail and resized copies
+     * are generated in the background.
+     */
+    private MediaResponse storeMedia(UUID individualId, InputStream body, String filename, String declaredType,
+                                     String caption, String username) {
+        log.info("Uploading media for individual {} by user {}", individualId, username);
 
-            // Generate and upload thumbnail for images
-            String thumbnailPath = null;
-            if (isImage(file.getContentType())) {
-                thumbnailPath = generateAndUploadThumbnail(file, objectName);
+        // Short transaction for the permission check, the upload itself holds no database connection
+        UUID treeId = transactionTemplate.execute(status -> {
+            Individual individual = individualRepository.findByIdWithTree(individualId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Individual not found with id: " + individualId));
+            if (!permissionService.hasEditPermission(individual.getTree().getId(), username)) {
+                throw new UnauthorizedException("No permission to upload media to this tree");
             }
+            return individual.getTree().getId();
+        });
 
-            // Create media entity
-            Media media = Media.builder()
-                    .individual(individual)
-                    .type(mediaType)
-                    .filename(originalFilename)
-                    .storagePath(storagePath)
-                    .caption(caption)
-                    .fileSize(file.getSize())
-                    .mimeType(file.getContentType())
-                    .build();
-
-            Media savedMedia = mediaRepository.save(media);
-            log.info("Media uploaded successfully with id: {}", savedMedia.getId());
-
-            return mapToResponse(savedMedia, thumbnailPath);
+        MediaUploadStream upload = new MediaUploadStream(body, maxUploadSize.toBytes());
+        String mimeType;
+        try {
+            byte[] head = upload.peek();
+            if (head.length == 0) {
+                throw new BadRequestException("File is required");
+            }
+            mimeType = detectMimeType(head, declaredType);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read uploaded file: " + e.getMessage(), e);
+        }
+        if (mimeType == null) {
+            throw new BadRequestException("Unsupported file type. Allowed types: images (JPEG, PNG, GIF, WebP, BMP), " +
+                    "documents (PDF, DOC, DOCX, TXT), video (MP4, MOV, WebM) and audio (MP3, M4A, WAV, OGG)");
+        }
 
+        String objectName = minioService.generateObjectName(treeId, individualId, filename);
+        try {
+            minioService.uploadStream(upload, objectName, mimeType);
         } catch (Exception e) {
+            if (upload.isLimitExceeded()) {
+                throw new BadRequestException(String.format("File size exceeds maximum allowed size of %d MB",
+                        maxUploadSize.toMegabytes()));
+            }
             log.error("Error uploading media for individual {}", individualId, e);
             throw new RuntimeException("Failed to upload media: " + e.getMessage(), e);
         }
+
+        Media savedMedia;
+        try {
+            savedMedia = transactionTemplate.execute(status -> {
+                // A file with the same content is referenced instead of being stored twice
+                MediaBlob blob = mediaBlobService.acquire(upload.getChecksum());
+                if (blob == null) {
+                    mediaBlobService.register(objectName, upload.getChecksum(), upload.getSize(), mimeType);
+                }
+
+                Media media = mediaRepository.save(Media.builder()
+                        .individual(individualRepository.getReferenceById(individualId))
+                        .type(determineMediaType(mimeType))
+                        .filename(filename)
+                        .storagePath(blob != null ? blob.getStoragePath() : objectName)
+                        .caption(caption)
+                        .fileSize(upload.getSize())
+                        .mimeType(mimeType)
+                        .checksum(upload.getChecksum())
+                        .derivativeFormat(blob != null ? blob.getDerivativeFormat() : null)
+                        .derivativeWidths(blob != null ? blob.getDerivativeWidths() : null)
+                        .build());
+                treeStatsService.markChanged(treeId);
+
+                // Thumbnail and resized copies are generated in the background
+                if (isImage(mimeType) && media.getDerivativeFormat() == null) {
+                    imageDerivativeService.generateForMedia(media.getId());
+                }
+                return media;
+            });
+        } catch (RuntimeException e) {
+            try {
+                minioService.deleteFile(objectName);
+            } catch (Exception deleteError) {
+                log.warn("Failed to remove file {} of failed upload: {}", objectName, deleteError.getMessage());
+            }
+            throw e;
+        }
+
+        if (!savedMedia.getStoragePath().equals(objectName)) {
+            log.info("Uploaded file for individual {} is already stored as {}", individualId, savedMedia.getStoragePath());
+            try {
+                minioService.deleteFile(objectName);
+            } catch (Exception e) {
+                log.warn("Failed to remove duplicate upload {}: {}", objectName, e.getMessage());
+            }
+        }
+
+        log.info("Media uploaded successfully with id: {} ({} bytes)", savedMedia.getId(), savedMedia.getFileSize());
+        // Until the thumbnail exists, the thumbnail endpoint serves the original image
+        return mapToResponse(savedMedia, isImage(mimeType)
+                ? minioService.generateThumbnailName(savedMedia.getStoragePath()) : null);
     }
 
     /**
@@ -208,19 +300,12 @@ public class MediaService {
         }
 
         try {
-            // Delete from MinIO
-            minioService.deleteFile(media.getStoragePath());
-
-            // Delete thumbnail if it's an image
-            if (isImage(media.getMimeType())) {
-                String thumbnailPath = minioService.generateThumbnailName(media.getStoragePath());
-                if (minioService.fileExists(thumbnailPath)) {
-                    minioService.deleteFile(thumbnailPath);
-                }
-            }
+            // The stored file is shared by all media with the same content, it is removed with the last reference
+            mediaBlobService.release(media.getStoragePath());
 
             // Delete from database
             mediaRepository.delete(media);
+            treeStatsService.markChanged(treeId);
             log.info("Media deleted successfully: {}", mediaId);
 
         } catch (Exception e) {
@@ -230,26 +315,37 @@ public class MediaService {
     }
 
     /**
-     * Download media file
+     * Download a media file, or a byte range of it.
+     * The media must have been loaded with getMediaEntity, which checks the view permission.
+     * @param media the media
+     * @param offset the first byte to read
+     * @param length the number of bytes to read, or -1 to read the whole file
+     * @return the file input stream
      */
-    @Transactional(readOnly = true)
-    public InputStream downloadMedia(UUID mediaId, String username) {
-        log.info("Downloading media {} by user {}", mediaId, username);
-
-        Media media = mediaRepository.findById(mediaId)
-                .orElseThrow(() -> new ResourceNotFoundException("Media not found with id: " + mediaId));
-
-        // Access individual.tree within transaction
-        UUID treeId = media.getIndividual().getTree().getId();
-        if (!permissionService.hasViewPermission(treeId, username)) {
-            throw new UnauthorizedException("No permission to download this media");
+    public InputStream downloadMedia(Media media, long offset, long length) {
+        try {
+            if (length < 0) {
+                return minioService.downloadFile(media.getStoragePath());
+            }
+            return minioService.downloadFile(media.getStoragePath(), offset, length);
+        } catch (Exception e) {
+            log.error("Error downloading media {}", media.getId(), e);
+            throw new RuntimeException("Failed to download media: " + e.getMessage(), e);
         }
+    }
 
+    /**
+     * Get the size of a media file in bytes, from the media record or (for old records) from storage
+     */
+    public long getMediaSize(Media media) {
+        if (media.getFileSize() != null) {
+            return media.getFileSize();
+        }
         try {
-            return minioService.downloadFile(media.getStoragePath());
+            return minioService.getFileMetadata(media.getStoragePath()).size();
         } catch (Exception e) {
-            log.error("Error downloading media {}", mediaId, e);
-            throw new RuntimeException("Failed to download media: " + e.getMessage(), e);
+            log.error("Error reading size of media {}", media.getId(), e);
+            throw new RuntimeException("Failed to read media: " + e.getMessage(), e);
         }
     }
 
@@ -275,13 +371,105 @@ public class MediaService {
 
         try {
             String thumbnailPath = minioService.generateThumbnailName(media.getStoragePath());
-            return minioService.downloadFile(thumbnailPath);
+            try {
+                return minioService.downloadFile(thumbnailPath);
+            } catch (ErrorResponseException e) {
+                // Thumbnails are generated in the background, a small enough original stands in until then
+                if (!"NoSuchKey".equals(e.errorResponse().code())) {
+                    throw e;
+                }
+                if (media.getFileSize() == null || media.getFileSize() > THUMBNAIL_FALLBACK_MAX_SIZE) {
+                    imageDerivativeService.ensureForMedia(media.getId());
+                    throw new ResourceNotFoundException("Thumbnail not generated yet for media: " + mediaId);
+                }
+                return minioService.downloadFile(media.getStoragePath());
+            }
+        } catch (ResourceNotFoundException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error downloading thumbnail for media {}", mediaId, e);
             throw new RuntimeException("Failed to download thumbnail: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Find the resized copy of an image that best fits a display width.
+     * Images uploaded before resized copies existed get them generated in the background.
+     * @param media the media
+     * @param width the requested display width
+     * @return the object name of the resized copy, or null to serve the original
+     */
+    public String findDerivative(Media media, int width) {
+        if (!isImage(media.getMimeType())) {
+            return null;
+        }
+        if (media.getDerivativeFormat() == null) {
+            imageDerivativeService.ensureForMedia(media.getId());
+            return null;
+        }
+
+        String objectName = imageDerivativeService.pickDerivative(
+                media.getStoragePath(), media.getDerivativeFormat(), media.getDerivativeWidths(), width);
+        return objectName.equals(media.getStoragePath()) ? null : objectName;
+    }
+
+    /**
+     * Get the content type of the resized copies of an image
+     */
+    public String getDerivativeContentType(Media media) {
+        return imageDerivativeService.contentType(media.getDerivativeFormat());
+    }
+
+    /**
+     * Download a resized copy found with findDerivative
+     */
+    public InputStream downloadDerivative(String objectName) {
+        try {
+            return minioService.downloadFile(objectName);
+        } catch (Exception e) {
+            log.error("Error downloading image {}", objectName, e);
+            throw new RuntimeException("Failed to download media: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get a presigned URL to a resized copy found with findDerivative (presigned delivery mode only)
+     */
+    public String getPresignedDerivativeUrl(Media media, String objectName) {
+        return mediaUrlService.getPresignedUrl(objectName, "inline", getDerivativeContentType(media));
+    }
+
+    /**
+     * Check if media files are delivered through presigned storage URLs instead of the API
+     */
+    public boolean isPresignedDelivery() {
+        return mediaUrlService.isPresigned();
+    }
+
+    /**
+     * Get a presigned URL to a media file (presigned delivery mode only).
+     * The media must have been loaded with getMediaEntity, which checks the view permission.
+     * @param attachment true to have the browser download the file, false to view it inline
+     */
+    public String getPresignedMediaUrl(Media media, boolean attachment) {
+        String contentDisposition = attachment
+                ? ContentDisposition.attachment().filename(media.getFilename(), StandardCharsets.UTF_8).build().toString()
+                : "inline";
+        return mediaUrlService.getPresignedUrl(media.getStoragePath(), contentDisposition, media.getMimeType());
+    }
+
+    /**
+     * Get a presigned URL to the thumbnail of an image (presigned delivery mode only)
+     * The media must have been loaded with getMediaEntity, which checks the view permission.
+     */
+    public String getPresignedThumbnailUrl(Media media) {
+        if (!isImage(media.getMimeType())) {
+            throw new IllegalArgumentException("Thumbnails are only available for images");
+        }
+        return mediaUrlService.getPresignedUrl(minioService.generateThumbnailName(media.getStoragePath()),
+                "inline", "image/jpeg");
+    }
+
     /**
      * Get media metadata (for serving files)
      */
@@ -302,34 +490,71 @@ public class MediaService {
     // ========== Private Helper Methods ==========
 
     /**
-     * Validate uploaded file
+     * Detect the type of an upload from its first bytes. The declared type is only relied on for content
+     * without a distinctive signature: plain text, DOCX (a ZIP archive) and BMP.
+     * @param head the first bytes of the file
+     * @param declaredType the content type declared by the client
+     * @return the MIME type to store, or null if the content is not of an allowed type
      */
-    private void validateFile(MultipartFile file) {
-        if (file == null || file.isEmpty()) {
-            throw new IllegalArgumentException("File is required");
+    private String detectMimeType(byte[] head, String declaredType) {
+        String declared = declaredType != null ? declaredType.toLowerCase() : "";
+
+        if (startsWith(head, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        } else if (startsWith(head, 0x89, 'P', 'N', 'G')) {
+            return "image/png";
+        } else if (startsWith(head, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        } else if (startsWith(head, '%', 'P', 'D', 'F')) {
+            return "application/pdf";
+        } else if (startsWith(head, 0xD0, 0xCF, 0x11, 0xE0)) {
+            return "application/msword";
+        } else if (startsWith(head, 'P', 'K', 3, 4)) {
+            return DOCX_MIME_TYPE.equals(declared) ? DOCX_MIME_TYPE : null;
+        } else if (startsWith(head, 'R', 'I', 'F', 'F') && head.length >= 12) {
+            String format = new String(head, 8, 4, StandardCharsets.US_ASCII);
+            return "WEBP".equals(format) ? "image/webp" : "WAVE".equals(format) ? "audio/wav" : null;
+        } else if (head.length >= 12 && "ftyp".equals(new String(head, 4, 4, StandardCharsets.US_ASCII))) {
+            // ISO base media file: the major brand tells QuickTime and audio-only files apart
+            String brand = new String(head, 8, 4, StandardCharsets.US_ASCII);
+            return "qt  ".equals(brand) ? "video/quicktime" : "M4A ".equals(brand) ? "audio/mp4" : "video/mp4";
+        } else if (startsWith(head, 0x1A, 0x45, 0xDF, 0xA3)) {
+            return "video/webm";
+        } else if (startsWith(head, 'O', 'g', 'g', 'S')) {
+            return "audio/ogg";
+        } else if (startsWith(head, 'I', 'D', '3')
+                || (head.length >= 2 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xE0) == 0xE0)) {
+            return "audio/mpeg";
+        } else if (startsWith(head, 'B', 'M') && "image/bmp".equals(declared)) {
+            return "image/bmp";
+        } else if ("text/plain".equals(declared) && isText(head)) {
+            return "text/plain";
         }
+        return null;
+    }
 
-        if (file.getSize() > MAX_FILE_SIZE) {
-            throw new IllegalArgumentException(
-                    String.format("File size exceeds maximum allowed size of %d MB",
-                            MAX_FILE_SIZE / (1024 * 1024))
-            );
+    private boolean startsWith(byte[] head, int... signature) {
+        if (head.length < signature.length) {
+            return false;
         }
-
-        String contentType = file.getContentType();
-        if (contentType == null || !isAllowedMimeType(contentType)) {
-            throw new IllegalArgumentException(
-                    "Unsupported file type. Allowed types: images (JPEG, PNG, GIF, WebP) and documents (PDF, DOC, DOCX, TXT)"
-            );
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[i] & 0xFF) != signature[i]) {
+                return false;
+            }
         }
+        return true;
     }
 
     /**
-     * Check if MIME type is allowed
+     * Check that bytes contain no control characters other than whitespace
      */
-    private boolean isAllowedMimeType(String mimeType) {
-        return IMAGE_MIME_TYPES.contains(mimeType.toLowerCase()) ||
-                DOCUMENT_MIME_TYPES.contains(mimeType.toLowerCase());
+    private boolean isText(byte[] head) {
+        for (byte b : head) {
+            if (b >= 0 && b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -361,49 +586,18 @@ public class MediaService {
     }
 
     /**
-     * Generate and upload thumbnail for image
+     * Map Media entity to MediaResponse DTO
      */
-    private String generateAndUploadThumbnail(MultipartFile file, String originalObjectName) throws Exception {
-        log.debug("Generating thumbnail for {}", originalObjectName);
-
-        try (InputStream inputStream = file.getInputStream();
-             ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-
-            // Generate thumbnail
-            Thumbnails.of(inputStream)
-                    .size(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT)
-                    .keepAspectRatio(true)
-                    .outputFormat("jpg")
-                    .outputQuality(0.8)
-                    .toOutputStream(outputStream);
-
-            byte[] thumbnailBytes = outputStream.toByteArray();
-
-            // Upload thumbnail
-            String thumbnailObjectName = minioService.generateThumbnailName(originalObjectName);
-            try (ByteArrayInputStream thumbnailInputStream = new ByteArrayInputStream(thumbnailBytes)) {
-                minioService.uploadFile(
-                        thumbnailInputStream,
-                        thumbnailObjectName,
-                        "image/jpeg",
-                        thumbnailBytes.length
-                );
-            }
-
-            log.debug("Thumbnail generated and uploaded: {}", thumbnailObjectName);
-            return thumbnailObjectName;
+    private MediaResponse mapToResponse(Media media, String thumbnailPath) {
+        String downloadUrl = "/api/media/" + media.getId() + "/download";
+        String thumbnailUrl = thumbnailPath != null ? "/api/media/" + media.getId() + "/thumbnail" : null;
 
-        } catch (Exception e) {
-            log.warn("Failed to generate thumbnail for {}: {}", originalObjectName, e.getMessage());
-            // Don't fail the entire upload if thumbnail generation fails
-            return null;
+        // Callers have checked the view permission, so the files can be linked directly in storage
+        if (mediaUrlService.isPresigned()) {
+            downloadUrl = getPresignedMediaUrl(media, true);
+            thumbnailUrl = thumbnailPath != null ? mediaUrlService.getPresignedUrl(thumbnailPath, "inline", "image/jpeg") : null;
         }
-    }
 
-    /**
-     * Map Media entity to MediaResponse DTO
-     */
-    private MediaResponse mapToResponse(Media media, String thumbnailPath) {
         return MediaResponse.builder()
                 .id(media.getId())
                 .individualId(media.getIndividual().getId())
@@ -412,10 +606,10 @@ public class MediaService {
                 .caption(media.getCaption())
                 .fileSize(media.getFileSize())
                 .mimeType(media.getMimeType())
-                .downloadUrl("/api/media/" + media.getId() + "/download")
-                .thumbnailUrl(thumbnailPath != null ? "/api/media/" + media.getId() + "/thumbnail" : null)
+                .checksum(media.getChecksum())
+                .downloadUrl(downloadUrl)
+                .thumbnailUrl(thumbnailUrl)
                 .uploadedAt(media.getUploadedAt())
                 .build();
     }
 }
-
@@ -0,0 +1,118 @@
+package com.familytree.service;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Upload body read exactly once on its way to storage. While the bytes pass through it counts them,
+ * enforces the size limit and computes their SHA-256, and the first bytes can be peeked at beforehand
+ * to detect the file type, so no second pass over the file is needed.
+ */
+class MediaUploadStream extends FilterInputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PEEK_LENGTH = 16;
+
+    private final MessageDigest digest;
+    private final long maxSize;
+    private long size;
+    private boolean limitExceeded;
+    private String checksum;
+
+    MediaUploadStream(InputStream inputStream, long maxSize) {
+        super(new BufferedInputStream(inputStream, BUFFER_SIZE));
+        this.maxSize = maxSize;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Read the first bytes of the upload without consuming them
+     */
+    byte[] peek() throws IOException {
+        in.mark(PEEK_LENGTH);
+        byte[] head = in.readNBytes(PEEK_LENGTH);
+        in.reset();
+        return head;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            digest.update((byte) b);
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = in.read(buffer, offset, length);
+        if (read > 0) {
+            digest.update(buffer, offset, read);
+            count(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes must still be hashed and counted
+        byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(int bytes) throws IOException {
+        size += bytes;
+        if (size > maxSize) {
+            limitExceeded = true;
+            throw new IOException("Upload exceeds the maximum size of " + maxSize + " bytes");
+        }
+    }
+
+    /**
+     * Number of bytes read so far (the file size once the stream is exhausted)
+     */
+    long getSize() {
+        return size;
+    }
+
+    boolean isLimitExceeded() {
+        return limitExceeded;
+    }
+
+    /**
+     * Hex SHA-256 of the bytes read, valid once the stream is exhausted
+     */
+    String getChecksum() {
+        if (checksum == null) {
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            checksum = hex.toString();
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,139 @@
+package com.familytree.service;
+
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioClient;
+import io.minio.http.Method;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service deciding how media bytes reach the client.
+ *
+ * In PROXY mode (the default) files are streamed through the API. In PRESIGNED mode, after the permission
+ * check, clients get a short-lived presigned MinIO URL and download the file from MinIO directly.
+ * Presigned URLs are cached per object and reused while at least half of their lifetime remains,
+ * so repeated listings return the same URL and browsers can cache the file.
+ */
+@Service
+@Slf4j
+public class MediaUrlService {
+
+    public enum DeliveryMode {
+        PROXY,
+        PRESIGNED
+    }
+
+    // Cached URLs are pruned of expired entries once the cache grows past this size
+    private static final int MAX_CACHED_URLS = 10000;
+
+    @Value("${media.delivery.mode:proxy}")
+    private DeliveryMode deliveryMode;
+
+    @Value("${media.delivery.url-expiry-seconds:600}")
+    private int urlExpirySeconds;
+
+    // Endpoint as reachable by browsers (the presigned signature covers the host)
+    @Value("${media.delivery.public-endpoint:${minio.endpoint}}")
+    private String publicEndpoint;
+
+    @Value("${media.delivery.region:us-east-1}")
+    private String region;
+
+    @Value("${minio.access-key}")
+    private String accessKey;
+
+    @Value("${minio.secret-key}")
+    private String secretKey;
+
+    @Value("${minio.bucket-name}")
+    private String bucketName;
+
+    private MinioClient presignClient;
+
+    private final Map<String, CachedUrl> urlCache = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (deliveryMode == DeliveryMode.PRESIGNED) {
+            // With a fixed region, URLs are signed locally without a request to MinIO
+            presignClient = MinioClient.builder()
+                    .endpoint(publicEndpoint)
+                    .region(region)
+                    .credentials(accessKey, secretKey)
+                    .build();
+            log.info("Media delivery via presigned URLs at {} (valid {}s)", publicEndpoint, urlExpirySeconds);
+        }
+    }
+
+    /**
+     * Check if media is delivered through presigned URLs
+     */
+    public boolean isPresigned() {
+        return deliveryMode == DeliveryMode.PRESIGNED;
+    }
+
+    /**
+     * Get a presigned GET URL for an object
+     * @param objectName the object name
+     * @param contentDisposition Content-Disposition MinIO should answer with, or null
+     * @param contentType Content-Type MinIO should answer with, or null
+     * @return the presigned URL
+     */
+    public String getPresignedUrl(String objectName, String contentDisposition, String contentType) {
+        String key = objectName + '\n' + contentDisposition + '\n' + contentType;
+        long now = System.currentTimeMillis();
+
+        CachedUrl cached = urlCache.get(key);
+        if (cached != null && cached.reusableUntil > now) {
+            return cached.url;
+        }
+
+        String url = presign(objectName, contentDisposition, contentType);
+        if (urlCache.size() >= MAX_CACHED_URLS) {
+            urlCache.values().removeIf(entry -> entry.reusableUntil <= now);
+        }
+        urlCache.put(key, new CachedUrl(url, now + urlExpirySeconds * 500L));
+        return url;
+    }
+
+    private String presign(String objectName, String contentDisposition, String contentType) {
+        Map<String, String> responseHeaders = new HashMap<>();
+        if (contentDisposition != null) {
+            responseHeaders.put("response-content-disposition", contentDisposition);
+        }
+        if (contentType != null) {
+            responseHeaders.put("response-content-type", contentType);
+        }
+
+        try {
+            return presignClient.getPresignedObjectUrl(
+                    GetPresignedObjectUrlArgs.builder()
+                            .method(Method.GET)
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .expiry(urlExpirySeconds)
+                            .extraQueryParams(responseHeaders)
+                            .build()
+            );
+        } catch (Exception e) {
+            log.error("Error presigning URL for {}", objectName, e);
+            throw new RuntimeException("Failed to create media URL: " + e.getMessage(), e);
+        }
+    }
+
+    private static class CachedUrl {
+        final String url;
+        final long reusableUntil;
+
+        CachedUrl(String url, long reusableUntil) {
+            this.url = url;
+            this.reusableUntil = reusableUntil;
+        }
+    }
+}
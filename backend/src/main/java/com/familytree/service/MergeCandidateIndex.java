@@ -0,0 +1,107 @@
+package com.familytree.service;
+
+import com.familytree.model.Individual;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+
+/**
+ * Blocking index over target individuals used by merge matching.
+ *
+ * Individuals are bucketed by keys that every pair scoring at least the match threshold shares.
+ * With the scores of TreeMergeService.calculateMatchScore a pair only reaches the threshold with
+ * - an exact name (100),
+ * - an exact birth date (80) plus a fuzzy name or the same birth place, or
+ * - a fuzzy name (50), birth years at most one year apart (40) and the same birth place (30).
+ * The keys are therefore the normalized full name, the exact birth date, and the normalized birth place
+ * with the birth year (probed for the years on either side). Keep them in step with the scores.
+ * Only individuals sharing at least one key are scored, instead of every source against every target.
+ */
+class MergeCandidateIndex {
+
+    private final List<Individual> targets;
+    private final Map<String, List<Integer>> buckets = new HashMap<>();
+
+    MergeCandidateIndex(List<Individual> targets) {
+        this.targets = targets;
+        for (int i = 0; i < targets.size(); i++) {
+            for (String key : indexKeys(targets.get(i))) {
+                buckets.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+        }
+    }
+
+    /**
+     * Get the target individuals sharing a blocking key with the source, in original target order
+     */
+    List<Individual> candidatesFor(Individual source) {
+        SortedSet<Integer> positions = new TreeSet<>();
+        for (String key : probeKeys(source)) {
+            List<Integer> bucket = buckets.get(key);
+            if (bucket != null) {
+                positions.addAll(bucket);
+            }
+        }
+
+        List<Individual> candidates = new ArrayList<>(positions.size());
+        for (Integer position : positions) {
+            candidates.add(targets.get(position));
+        }
+        return candidates;
+    }
+
+    private List<String> indexKeys(Individual individual) {
+        List<String> keys = new ArrayList<>();
+        // Nameless individuals share the (empty) name key, as their empty names count as equal
+        keys.add("n:" + normalize(fullName(individual)));
+
+        if (individual.getBirthDate() != null) {
+            keys.add("d:" + individual.getBirthDate());
+
+            // Blank places are equal to each other too, so they share the empty place key
+            if (individual.getBirthPlace() != null) {
+                keys.add("y:" + normalize(individual.getBirthPlace()) + ":" + individual.getBirthDate().getYear());
+            }
+        }
+        return keys;
+    }
+
+    private List<String> probeKeys(Individual individual) {
+        List<String> keys = new ArrayList<>();
+        keys.add("n:" + normalize(fullName(individual)));
+
+        if (individual.getBirthDate() != null) {
+            keys.add("d:" + individual.getBirthDate());
+
+            // Without an exact name or birth date a pair needs the same place and birth years within one year
+            if (individual.getBirthPlace() != null) {
+                String place = normalize(individual.getBirthPlace());
+                int year = individual.getBirthDate().getYear();
+                for (int y = year - 1; y <= year + 1; y++) {
+                    keys.add("y:" + place + ":" + y);
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static String fullName(Individual individual) {
+        StringBuilder name = new StringBuilder();
+        if (individual.getSurname() != null) name.append(individual.getSurname());
+        if (individual.getGivenName() != null) {
+            if (name.length() > 0) name.append(" ");
+            name.append(individual.getGivenName());
+        }
+        return name.toString();
+    }
+
+    /**
+     * Lowercase, strip Vietnamese diacritics and collapse whitespace
+     */
+    static String normalize(String value) {
+        if (value == null) return "";
+        String stripped = StringUtils.stripAccents(value.trim().toLowerCase())
+                .replace('đ', 'd');
+        return stripped.replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,245 @@
+package com.familytree.service;
+
+import com.familytree.dto.merge.IndividualMatch;
+import com.familytree.dto.merge.MergePreviewJobResponse;
+import com.familytree.dto.merge.MergePreviewResponse;
+import com.familytree.dto.merge.MergeResultResponse;
+import com.familytree.dto.merge.TreeMergeRequest;
+import com.familytree.exception.BadRequestException;
+import com.familytree.exception.ResourceNotFoundException;
+import com.familytree.model.MergePreview;
+import com.familytree.model.MergePreviewStatus;
+import com.familytree.repository.MergePreviewRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service for running merge previews as background jobs.
+ * The computed preview and match set are stored with the versions of both trees;
+ * executing the preview reuses the stored matches if neither tree has changed since.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MergePreviewJobService {
+
+    private final MergePreviewRepository previewRepository;
+    private final TreeMergeService mergeService;
+    private final TreeVersionService treeVersionService;
+    private final ObjectMapper objectMapper;
+    private final TaskExecutor taskExecutor;
+
+    // Live progress of running jobs (the persisted status is the source of truth once finished)
+    private final Map<UUID, JobProgress> progressByPreviewId = new ConcurrentHashMap<>();
+
+    /**
+     * Queue a merge preview job
+     */
+    public MergePreviewJobResponse startPreview(UUID targetTreeId, TreeMergeRequest request, String userEmail) {
+        MergePreview preview = previewRepository.save(MergePreview.builder()
+                .targetTreeId(targetTreeId)
+                .sourceTreeId(request.getSourceTreeId())
+                .requestedBy(userEmail)
+                .status(MergePreviewStatus.PENDING)
+                .requestJson(toJson(request))
+                .build());
+
+        UUID previewId = preview.getId();
+        progressByPreviewId.put(previewId, new JobProgress(0, "Queued"));
+        try {
+            taskExecutor.execute(() -> runPreview(previewId, targetTreeId, request, userEmail));
+        } catch (TaskRejectedException e) {
+            // The job queue is full: the preview never runs, so it must not stay pending
+            log.warn("Merge preview {} rejected: {}", previewId, e.getMessage());
+            progressByPreviewId.remove(previewId);
+            preview.setStatus(MergePreviewStatus.FAILED);
+            preview.setErrorMessage("Too many background jobs are queued, please try again later");
+            preview.setCompletedAt(LocalDateTime.now());
+            return toResponse(previewRepository.save(preview), false);
+        }
+
+        log.info("Queued merge preview {} from tree {} to tree {} by user {}",
+                previewId, request.getSourceTreeId(), targetTreeId, userEmail);
+        return toResponse(preview, false);
+    }
+
+    /**
+     * Fail the previews that were queued or running when the application stopped.
+     * Their jobs and in-memory progress did not survive the restart, so they would otherwise stay pending.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void failInterruptedPreviews() {
+        List<MergePreview> interrupted = previewRepository.findByStatusIn(
+                EnumSet.of(MergePreviewStatus.PENDING, MergePreviewStatus.RUNNING));
+        if (interrupted.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (MergePreview preview : interrupted) {
+            preview.setStatus(MergePreviewStatus.FAILED);
+            preview.setErrorMessage("Interrupted by a server restart, please start the preview again");
+            preview.setCompletedAt(now);
+        }
+        previewRepository.saveAll(interrupted);
+        log.info("Marked {} interrupted merge previews as failed", interrupted.size());
+    }
+
+    /**
+     * Get status, progress and (when completed) the result of a preview job
+     */
+    public MergePreviewJobResponse getPreview(UUID targetTreeId, UUID previewId, String userEmail) {
+        MergePreview preview = findPreview(targetTreeId, previewId, userEmail);
+        return toResponse(preview, true);
+    }
+
+    /**
+     * Execute a stored preview. The stored matches are reused if both trees are unchanged,
+     * otherwise matching is recomputed as part of the execution.
+     * @param overrides request with the user's final selections, or null to use the previewed request
+     */
+    public MergeResultResponse executePreview(UUID targetTreeId, UUID previewId, TreeMergeRequest overrides,
+            String userEmail) {
+        MergePreview preview = findPreview(targetTreeId, previewId, userEmail);
+
+        if (preview.getStatus() != MergePreviewStatus.COMPLETED) {
+            throw new BadRequestException("Merge preview is not ready to execute (status: " + preview.getStatus() + ")");
+        }
+
+        TreeMergeRequest request = overrides != null
+                ? overrides
+                : fromJson(preview.getRequestJson(), new TypeReference<TreeMergeRequest>() { });
+        if (!preview.getSourceTreeId().equals(request.getSourceTreeId())) {
+            throw new BadRequestException("Source tree does not match the previewed merge");
+        }
+
+        boolean unchanged = preview.getSourceTreeVersion().equals(treeVersionService.getVersion(preview.getSourceTreeId()))
+                && preview.getTargetTreeVersion().equals(treeVersionService.getVersion(preview.getTargetTreeId()));
+
+        List<IndividualMatch> matches = null;
+        if (unchanged) {
+            matches = fromJson(preview.getMatchesJson(), new TypeReference<List<IndividualMatch>>() { });
+        } else {
+            log.info("Trees changed since merge preview {} was computed, recomputing matches", previewId);
+        }
+
+        MergeResultResponse result = mergeService.executeMerge(targetTreeId, request, userEmail, matches);
+
+        preview.setStatus(MergePreviewStatus.EXECUTED);
+        previewRepository.save(preview);
+        return result;
+    }
+
+    private void runPreview(UUID previewId, UUID targetTreeId, TreeMergeRequest request, String userEmail) {
+        try {
+            // Versions are read before matching so a concurrent edit invalidates the snapshot
+            String sourceVersion = treeVersionService.getVersion(request.getSourceTreeId());
+            String targetVersion = treeVersionService.getVersion(targetTreeId);
+
+            MergePreview preview = previewRepository.findById(previewId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Merge preview not found: " + previewId));
+            preview.setStatus(MergePreviewStatus.RUNNING);
+            preview = previewRepository.save(preview);
+
+            MergePreviewResponse response = mergeService.previewMerge(targetTreeId, request, userEmail,
+                    (percent, stage) -> progressByPreviewId.put(previewId, new JobProgress(percent, stage)));
+
+            preview.setSourceTreeVersion(sourceVersion);
+            preview.setTargetTreeVersion(targetVersion);
+            preview.setResponseJson(toJson(response));
+            preview.setMatchesJson(toJson(response.getMatchedIndividuals()));
+            preview.setStatus(MergePreviewStatus.COMPLETED);
+            preview.setCompletedAt(LocalDateTime.now());
+            previewRepository.save(preview);
+
+            log.info("Merge preview {} completed: {} matches", previewId,
+                    response.getMatchedIndividuals() != null ? response.getMatchedIndividuals().size() : 0);
+
+        } catch (Exception e) {
+            log.error("Merge preview {} failed", previewId, e);
+            previewRepository.findById(previewId).ifPresent(preview -> {
+                preview.setStatus(MergePreviewStatus.FAILED);
+                preview.setErrorMessage(e.getMessage());
+                preview.setCompletedAt(LocalDateTime.now());
+                previewRepository.save(preview);
+            });
+        } finally {
+            progressByPreviewId.remove(previewId);
+        }
+    }
+
+    private MergePreview findPreview(UUID targetTreeId, UUID previewId, String userEmail) {
+        MergePreview preview = previewRepository.findById(previewId)
+                .orElseThrow(() -> new ResourceNotFoundException("Merge preview not found: " + previewId));
+
+        // Previews are private to the user who requested them
+        if (!preview.getTargetTreeId().equals(targetTreeId) || !preview.getRequestedBy().equals(userEmail)) {
+            throw new ResourceNotFoundException("Merge preview not found: " + previewId);
+        }
+        return preview;
+    }
+
+    private MergePreviewJobResponse toResponse(MergePreview preview, boolean includeResult) {
+        JobProgress progress = progressByPreviewId.get(preview.getId());
+        boolean finished = preview.getStatus() == MergePreviewStatus.COMPLETED
+                || preview.getStatus() == MergePreviewStatus.EXECUTED;
+
+        MergePreviewJobResponse.MergePreviewJobResponseBuilder builder = MergePreviewJobResponse.builder()
+                .previewId(preview.getId())
+                .targetTreeId(preview.getTargetTreeId())
+                .sourceTreeId(preview.getSourceTreeId())
+                .status(preview.getStatus())
+                .progress(finished ? 100 : progress != null ? progress.percent : 0)
+                .stage(finished ? "Completed" : progress != null ? progress.stage : null)
+                .sourceTreeVersion(preview.getSourceTreeVersion())
+                .targetTreeVersion(preview.getTargetTreeVersion())
+                .errorMessage(preview.getErrorMessage())
+                .createdAt(preview.getCreatedAt())
+                .completedAt(preview.getCompletedAt());
+
+        if (includeResult && finished && preview.getResponseJson() != null) {
+            builder.preview(fromJson(preview.getResponseJson(), new TypeReference<MergePreviewResponse>() { }));
+        }
+        return builder.build();
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize merge preview", e);
+        }
+    }
+
+    private <T> T fromJson(String json, TypeReference<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to read stored merge preview", e);
+        }
+    }
+
+    private static class JobProgress {
+        final int percent;
+        final String stage;
+
+        JobProgress(int percent, String stage) {
+            this.percent = percent;
+            this.stage = stage;
+        }
+    }
+}
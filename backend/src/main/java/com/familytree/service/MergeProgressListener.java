@@ -0,0 +1,19 @@
+package com.familytree.service;
+
+/**
+ * Receives progress updates from long-running merge operations
+ */
+@FunctionalInterface
+public interface MergeProgressListener {
+
+    /**
+     * Listener that ignores progress updates
+     */
+    MergeProgressListener NONE = (percent, stage) -> { };
+
+    /**
+     * @param percent completion in percent (0-100)
+     * @param stage short description of the current step
+     */
+    void onProgress(int percent, String stage);
+}
@@ -0,0 +1,52 @@
+package com.familytree.service;
+
+import com.familytree.model.FamilyTree;
+import com.familytree.model.Individual;
+import com.familytree.model.Relationship;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Both trees of a merge loaded once (individuals and relationships, keyed by id) and shared by
+ * matching, conflict detection, preview building and execution, so no step re-reads the trees
+ * or looks individuals up one by one.
+ */
+@Getter
+class MergeWorkingSet {
+
+    private final FamilyTree sourceTree;
+    private final FamilyTree targetTree;
+    private final List<Relationship> sourceRelationships;
+    private final List<Relationship> targetRelationships;
+    private final TreeGraph sourceGraph;
+    private final TreeGraph targetGraph;
+
+    MergeWorkingSet(FamilyTree sourceTree, List<Individual> sourceIndividuals, List<Relationship> sourceRelationships,
+                    FamilyTree targetTree, List<Individual> targetIndividuals, List<Relationship> targetRelationships) {
+        this.sourceTree = sourceTree;
+        this.targetTree = targetTree;
+        this.sourceRelationships = sourceRelationships;
+        this.targetRelationships = targetRelationships;
+        this.sourceGraph = new TreeGraph(sourceIndividuals, sourceRelationships);
+        this.targetGraph = new TreeGraph(targetIndividuals, targetRelationships);
+    }
+
+    Individual getSourceIndividual(UUID id) {
+        return sourceGraph.getIndividual(id);
+    }
+
+    Individual getTargetIndividual(UUID id) {
+        return targetGraph.getIndividual(id);
+    }
+
+    Collection<Individual> getSourceIndividuals() {
+        return sourceGraph.getIndividuals();
+    }
+
+    Collection<Individual> getTargetIndividuals() {
+        return targetGraph.getIndividuals();
+    }
+}
@@ -2,6 +2,8 @@ package com.familytree.service;
 
 import io.minio.*;
 import io.minio.errors.*;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
 import io.minio.messages.Item;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -15,6 +17,7 @@ import java.io.InputStream;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -31,6 +34,10 @@ public class MinioService {
     @Value("${minio.bucket-name}")
     private String bucketName;
 
+    // Part size of streamed multipart uploads (MinIO requires at least 5 MB)
+    @Value("${minio.upload-part-size:16777216}")
+    private long uploadPartSize;
+
     /**
      * Initialize bucket on application startup
      */
@@ -108,6 +115,28 @@ public class MinioService {
         return objectName;
     }
 
+    /**
+     * Upload a stream of unknown length with a multipart upload: only one part is buffered at a time,
+     * so the file is never held in memory or on disk as a whole
+     * @param inputStream the input stream, read until its end
+     * @param objectName the object name
+     * @param contentType the content type
+     * @return the storage path
+     */
+    public String uploadStream(InputStream inputStream, String objectName, String contentType) throws Exception {
+        minioClient.putObject(
+                PutObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .stream(inputStream, -1, uploadPartSize)
+                        .contentType(contentType)
+                        .build()
+        );
+
+        log.info("Uploaded file to MinIO: {}", objectName);
+        return objectName;
+    }
+
     /**
      * Download file from MinIO
      * @param objectName the object name
@@ -122,6 +151,53 @@ public class MinioService {
         );
     }
 
+    /**
+     * Download a byte range of a file from MinIO
+     * @param objectName the object name
+     * @param offset the first byte to read
+     * @param length the number of bytes to read
+     * @return the input stream of the range
+     */
+    public InputStream downloadFile(String objectName, long offset, long length) throws Exception {
+        return minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .offset(offset)
+                        .length(length)
+                        .build()
+        );
+    }
+
+    /**
+     * Copy file within the bucket. The copy is done by MinIO, the content does not pass through the application.
+     * @param sourceObjectName the source object name
+     * @param targetObjectName the target object name
+     * @return false if the source object does not exist
+     */
+    public boolean copyFile(String sourceObjectName, String targetObjectName) throws Exception {
+        try {
+            minioClient.copyObject(
+                    CopyObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(targetObjectName)
+                            .source(CopySource.builder()
+                                    .bucket(bucketName)
+                                    .object(sourceObjectName)
+                                    .build())
+                            .build()
+            );
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return false;
+            }
+            throw e;
+        }
+
+        log.debug("Copied file in MinIO: {} -> {}", sourceObjectName, targetObjectName);
+        return true;
+    }
+
     /**
      * Delete file from MinIO
      * @param objectName the object name
@@ -137,6 +213,36 @@ public class MinioService {
         log.info("Deleted file from MinIO: {}", objectName);
     }
 
+    /**
+     * Delete many files with bulk delete requests (MinIO sends up to 1000 objects per request).
+     * Objects that do not exist are not reported as failures.
+     * @param objectNames the object names
+     * @return the object names that could not be deleted
+     */
+    public List<String> deleteFiles(Collection<String> objectNames) throws Exception {
+        List<DeleteObject> objects = new ArrayList<>(objectNames.size());
+        for (String objectName : objectNames) {
+            objects.add(new DeleteObject(objectName));
+        }
+
+        // The deletion is lazy: requests are only sent while the results are iterated
+        List<String> failed = new ArrayList<>();
+        Iterable<Result<DeleteError>> results = minioClient.removeObjects(
+                RemoveObjectsArgs.builder()
+                        .bucket(bucketName)
+                        .objects(objects)
+                        .build()
+        );
+        for (Result<DeleteError> result : results) {
+            DeleteError error = result.get();
+            log.warn("Failed to delete file from MinIO: {} ({})", error.objectName(), error.message());
+            failed.add(error.objectName());
+        }
+
+        log.info("Deleted {} of {} files from MinIO", objects.size() - failed.size(), objects.size());
+        return failed;
+    }
+
     /**
      * Get file metadata
      * @param objectName the object name
@@ -235,4 +341,17 @@ public class MinioService {
         }
         return originalObjectName + "_thumb";
     }
+
+    /**
+     * Generate the object name of a resized copy of an image
+     * @param originalObjectName the original object name
+     * @param width the width of the copy
+     * @param format the image format (file extension) of the copy
+     * @return the derivative object name
+     */
+    public String generateDerivativeName(String originalObjectName, int width, String format) {
+        int dotIndex = originalObjectName.lastIndexOf('.');
+        String baseName = dotIndex > originalObjectName.lastIndexOf('/') ? originalObjectName.substring(0, dotIndex) : originalObjectName;
+        return baseName + "_w" + width + "." + format;
+    }
 }
@@ -34,7 +34,7 @@ public class PermissionService {
      * Check if user has view permission (viewer, editor, admin, or owner)
      */
     public boolean hasViewPermission(UUID treeId, String userEmail) {
-        FamilyTree tree = treeRepository.findById(treeId).orElse(null);
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId).orElse(null);
         if (tree == null) {
             return false;
         }
@@ -59,7 +59,7 @@ public class PermissionService {
      * Check if user has edit permission (editor, admin, or owner)
      */
     public boolean hasEditPermission(UUID treeId, String userEmail) {
-        FamilyTree tree = treeRepository.findById(treeId).orElse(null);
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId).orElse(null);
         if (tree == null) {
             return false;
         }
@@ -85,7 +85,7 @@ public class PermissionService {
      * Check if user is the owner of the tree
      */
     public boolean isOwner(UUID treeId, String userEmail) {
-        FamilyTree tree = treeRepository.findById(treeId).orElse(null);
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId).orElse(null);
         if (tree == null) {
             return false;
         }
@@ -97,7 +97,7 @@ public class PermissionService {
      * Check if user is an admin of the tree
      */
     public boolean isTreeAdmin(UUID treeId, String userEmail) {
-        FamilyTree tree = treeRepository.findById(treeId).orElse(null);
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId).orElse(null);
         if (tree == null) {
             return false;
         }
@@ -110,7 +110,7 @@ public class PermissionService {
      * Check if user is an admin of the tree (by user ID)
      */
     public boolean isTreeAdmin(UUID treeId, UUID userId) {
-        FamilyTree tree = treeRepository.findById(treeId).orElse(null);
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId).orElse(null);
         if (tree == null) {
             return false;
         }
@@ -130,7 +130,7 @@ public class PermissionService {
      * Get the permission role for a user on a tree
      */
     public PermissionRole getPermissionRole(UUID treeId, String userEmail) {
-        FamilyTree tree = treeRepository.findById(treeId).orElse(null);
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId).orElse(null);
         if (tree == null) {
             return null;
         }
@@ -152,7 +152,7 @@ public class PermissionService {
      * Check if user can view a tree (by user ID)
      */
     public boolean canViewTree(UUID userId, UUID treeId) {
-        FamilyTree tree = treeRepository.findById(treeId).orElse(null);
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId).orElse(null);
         if (tree == null) {
             return false;
         }
@@ -177,7 +177,7 @@ public class PermissionService {
      * Check if user can modify a tree (by user ID)
      */
     public boolean canModifyTree(UUID userId, UUID treeId) {
-        FamilyTree tree = treeRepository.findById(treeId).orElse(null);
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId).orElse(null);
         if (tree == null) {
             return false;
         }
@@ -204,7 +204,7 @@ public class PermissionService {
      */
     @Transactional(readOnly = true)
     public List<PermissionResponse> getTreeCollaborators(UUID treeId, UUID userId) {
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new RuntimeException("Tree not found"));
 
         // Verify user has access to view collaborators
@@ -260,7 +260,7 @@ public class PermissionService {
      */
     @Transactional
     public void updateCollaboratorRole(UUID treeId, UUID userId, UUID collaboratorId, PermissionRole newRole) {
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new RuntimeException("Tree not found"));
 
         // Only owner can update roles
@@ -290,7 +290,7 @@ public class PermissionService {
      */
     @Transactional
     public void removeCollaborator(UUID treeId, UUID userId, UUID collaboratorId) {
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new RuntimeException("Tree not found"));
 
         // Only owner can remove collaborators
@@ -319,7 +319,7 @@ public class PermissionService {
      */
     @Transactional
     public void leaveTree(UUID treeId, UUID userId) {
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new RuntimeException("Tree not found"));
 
         // Cannot leave if you're the owner
@@ -35,6 +35,7 @@ public class RelationshipService {
     private final FamilyTreeRepository treeRepository;
     private final UserRepository userRepository;
     private final com.familytree.repository.UserTreeProfileRepository userTreeProfileRepository;
+    private final TreeStatsService treeStatsService;
 
     /**
      * Create a new relationship between two individuals
@@ -45,7 +46,7 @@ public class RelationshipService {
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Check authorization - owner or admin can create relationships
@@ -75,8 +76,13 @@ public class RelationshipService {
             throw new BadRequestException("This relationship already exists between these individuals");
         }
 
+        // Parent-child structure of the tree, loaded once for the cycle checks of this link and the links added with it
+        TreeGraph graph = isParentChildType(request.getType())
+                ? TreeGraph.fromEdges(relationshipRepository.findEdgesByTreeId(treeId))
+                : null;
+
         // Validate relationship type constraints
-        validateRelationshipConstraints(individual1, individual2, request.getType());
+        validateRelationshipConstraints(individual1, individual2, request.getType(), graph);
 
         Relationship relationship = Relationship.builder()
                 .tree(tree)
@@ -88,14 +94,16 @@ public class RelationshipService {
                 .build();
 
         Relationship savedRelationship = relationshipRepository.save(relationship);
+        treeStatsService.markChanged(treeId);
         log.info("Relationship created with ID: {}", savedRelationship.getId());
 
         // Auto-add sibling relationships when a parent-child relationship is created
         if (isParentChildType(request.getType())) {
+            graph.addParentLink(individual1.getId(), individual2.getId());
             autoAddSiblingRelationships(tree, individual1, individual2);
 
             // Auto-add parent-child relationship with spouse if exists
-            autoAddSpouseParentRelationship(tree, individual1, individual2, request.getType());
+            autoAddSpouseParentRelationship(tree, individual1, individual2, request.getType(), graph);
         }
 
         return convertToResponse(savedRelationship);
@@ -126,7 +134,7 @@ public class RelationshipService {
     public List<RelationshipResponse> listRelationships(UUID treeId, String userEmail) {
         log.info("Listing relationships in tree {} for user '{}'", treeId, userEmail);
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Check authorization
@@ -247,6 +255,7 @@ public class RelationshipService {
         relationship.setEndDate(request.getEndDate());
 
         Relationship updatedRelationship = relationshipRepository.save(relationship);
+        treeStatsService.markChanged(relationship.getTree().getId());
         log.info("Relationship {} updated successfully", relationshipId);
 
         return convertToResponse(updatedRelationship);
@@ -273,6 +282,7 @@ public class RelationshipService {
         RelationshipType type = relationship.getType();
 
         relationshipRepository.delete(relationship);
+        treeStatsService.markChanged(tree.getId());
         log.info("Relationship {} deleted successfully", relationshipId);
 
         // Auto-remove sibling relationships when a parent-child relationship is deleted
@@ -283,21 +293,20 @@ public class RelationshipService {
 
     /**
      * Validate relationship constraints based on type
+     * @param graph parent-child structure of the tree, required for parent-child types
      */
-    private void validateRelationshipConstraints(Individual ind1, Individual ind2, RelationshipType type) {
+    private void validateRelationshipConstraints(Individual ind1, Individual ind2, RelationshipType type,
+            TreeGraph graph) {
+        // Check if parent (ind1) is already a descendant of child (ind2)
+        if (isParentChildType(type) && graph.wouldCreateCycle(ind1.getId(), ind2.getId())) {
+            throw new BadRequestException("This would create a circular relationship");
+        }
+
         switch (type) {
             case PARENT_CHILD:
-                // Check if parent (ind1) is already a descendant of child (ind2)
-                if (isAncestor(ind1.getId(), ind2.getId())) {
-                    throw new BadRequestException("This would create a circular relationship");
-                }
                 break;
 
             case FATHER_CHILD:
-                // Check if parent (ind1) is already a descendant of child (ind2)
-                if (isAncestor(ind1.getId(), ind2.getId())) {
-                    throw new BadRequestException("This would create a circular relationship");
-                }
                 // Check if child already has a biological father
                 if (hasExistingBiologicalFather(ind2.getId())) {
                     throw new BadRequestException("Người này đã có cha ruột. Một người không thể có 2 cha ruột.");
@@ -305,10 +314,6 @@ public class RelationshipService {
                 break;
 
             case MOTHER_CHILD:
-                // Check if parent (ind1) is already a descendant of child (ind2)
-                if (isAncestor(ind1.getId(), ind2.getId())) {
-                    throw new BadRequestException("This would create a circular relationship");
-                }
                 // Check if child already has a biological mother
                 if (hasExistingBiologicalMother(ind2.getId())) {
                     throw new BadRequestException("Người này đã có mẹ ruột. Một người không thể có 2 mẹ ruột.");
@@ -317,10 +322,6 @@ public class RelationshipService {
 
             case ADOPTED_PARENT_CHILD:
             case STEP_PARENT_CHILD:
-                // Check if parent (ind1) is already a descendant of child (ind2)
-                if (isAncestor(ind1.getId(), ind2.getId())) {
-                    throw new BadRequestException("This would create a circular relationship");
-                }
                 // No restriction on number of adopted/step parents
                 break;
 
@@ -354,31 +355,6 @@ public class RelationshipService {
                 .anyMatch(rel -> rel.getType() == RelationshipType.MOTHER_CHILD);
     }
 
-    /**
-     * Check if potentialAncestor is an ancestor of individual
-     * This prevents circular relationships in the family tree
-     */
-    private boolean isAncestor(UUID individualId, UUID potentialAncestorId) {
-        // Get all parents of the individual
-        List<Relationship> parents = relationshipRepository.findParents(individualId);
-
-        for (Relationship parentRel : parents) {
-            UUID parentId = parentRel.getIndividual1().getId();
-
-            // If we found the potential ancestor as a parent, return true
-            if (parentId.equals(potentialAncestorId)) {
-                return true;
-            }
-
-            // Recursively check if the potential ancestor is an ancestor of this parent
-            if (isAncestor(parentId, potentialAncestorId)) {
-                return true;
-            }
-        }
-
-        return false;
-    }
-
     /**
      * Check if user has access to the tree (owner, has permission, admin, or linked via UserTreeProfile)
      */
@@ -412,7 +388,7 @@ public class RelationshipService {
 
         // If this is a cloned tree, check if user has access to the source tree
         if (tree.getSourceTreeId() != null) {
-            FamilyTree sourceTree = treeRepository.findById(tree.getSourceTreeId()).orElse(null);
+            FamilyTree sourceTree = treeRepository.findByIdAndDeletedAtIsNull(tree.getSourceTreeId()).orElse(null);
             if (sourceTree != null) {
                 if (userTreeProfileRepository.existsByUserIdAndTreeId(user.getId(), sourceTree.getId())) {
                     return true;
@@ -692,8 +668,10 @@ public class RelationshipService {
      * @param parent The parent individual (A)
      * @param child The child individual (C)
      * @param relationshipType The type of parent-child relationship
+     * @param graph Parent-child structure of the tree, including the new link
      */
-    private void autoAddSpouseParentRelationship(FamilyTree tree, Individual parent, Individual child, RelationshipType relationshipType) {
+    private void autoAddSpouseParentRelationship(FamilyTree tree, Individual parent, Individual child,
+            RelationshipType relationshipType, TreeGraph graph) {
         // Find all spouses of the parent
         List<Relationship> spouseRelationships = relationshipRepository.findSpouses(parent.getId());
 
@@ -712,7 +690,9 @@ public class RelationshipService {
                 // Also check for any other parent-child type relationship
                 boolean anyParentChildExists = hasAnyParentChildRelationship(spouse.getId(), child.getId());
 
-                if (!relationshipExists && !anyParentChildExists) {
+                // A spouse who descends from the child cannot become their parent
+                if (!relationshipExists && !anyParentChildExists
+                        && !graph.wouldCreateCycle(spouse.getId(), child.getId())) {
                     // Create the parent-child relationship between spouse and child
                     Relationship newRelationship = Relationship.builder()
                             .tree(tree)
@@ -722,6 +702,7 @@ public class RelationshipService {
                             .build();
 
                     relationshipRepository.save(newRelationship);
+                    graph.addParentLink(spouse.getId(), child.getId());
                     log.info("Auto-created {} relationship between spouse {} and child {}",
                             relationshipType, spouse.getId(), child.getId());
 
@@ -0,0 +1,403 @@
+package com.familytree.service;
+
+import com.familytree.dto.tree.TreeAnalyticsResponse;
+import com.familytree.exception.ResourceNotFoundException;
+import com.familytree.exception.UnauthorizedException;
+import com.familytree.model.RelationshipType;
+import com.familytree.repository.FamilyTreeRepository;
+import com.familytree.repository.IndividualRepository;
+import com.familytree.repository.RelationshipRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Service computing the analytics of a family tree.
+ *
+ * The tree is loaded as two projections (individual names and dates, relationship edges) and
+ * indexed into int arrays, so every metric is gathered in linear passes over primitive
+ * accumulators instead of one SQL query per metric. Results are cached in memory per tree and
+ * reused until the tree version changes (see TreeVersionService).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TreeAnalyticsService {
+
+    private static final int TOP_NAMES = 10;
+    private static final int TOP_FAMILIES = 10;
+    private static final int TOP_LINEAGES = 5;
+    private static final int TOP_COMPONENTS = 10;
+    private static final int MAX_ISOLATED = 100;
+    private static final int MAX_LIFESPAN = 130;
+
+    private final FamilyTreeRepository treeRepository;
+    private final IndividualRepository individualRepository;
+    private final RelationshipRepository relationshipRepository;
+    private final PermissionService permissionService;
+    private final TreeVersionService treeVersionService;
+
+    @Value("${tree.analytics.cache.max-entries:32}")
+    private int maxCacheEntries;
+
+    // Most recently used analytics per tree, each valid for one tree version
+    private final LinkedHashMap<UUID, TreeAnalyticsResponse> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Get the analytics of a tree, computing them if the current tree version has none cached
+     */
+    @Transactional(readOnly = true)
+    public TreeAnalyticsResponse getAnalytics(UUID treeId, String userEmail) {
+        if (!treeRepository.existsByIdAndDeletedAtIsNull(treeId)) {
+            throw new ResourceNotFoundException("Tree not found with ID: " + treeId);
+        }
+        if (!permissionService.hasViewPermission(treeId, userEmail)) {
+            throw new UnauthorizedException("You do not have access to this tree");
+        }
+
+        // Read before the snapshot, so a change made meanwhile can only make the cached entry look older
+        String version = treeVersionService.getVersion(treeId);
+        TreeAnalyticsResponse cached = getCached(treeId);
+        if (cached != null && version.equals(cached.getTreeVersion())) {
+            return cached;
+        }
+
+        long start = System.currentTimeMillis();
+        TreeAnalyticsResponse analytics = compute(treeId, version,
+                individualRepository.findSnapshotRowsByTreeId(treeId),
+                relationshipRepository.findEdgesByTreeId(treeId));
+        putCached(treeId, analytics);
+
+        log.info("Computed analytics of tree {} ({} individuals, {} relationships) in {} ms",
+                treeId, analytics.getIndividualsCount(), analytics.getRelationshipsCount(),
+                System.currentTimeMillis() - start);
+        return analytics;
+    }
+
+    private TreeAnalyticsResponse compute(UUID treeId, String version, List<Object[]> individualRows,
+                                          List<Object[]> edgeRows) {
+        int n = individualRows.size();
+        UUID[] ids = new UUID[n];
+        String[] givenNames = new String[n];
+        String[] surnames = new String[n];
+        LocalDate[] birthDates = new LocalDate[n];
+        LocalDate[] deathDates = new LocalDate[n];
+        Map<UUID, Integer> indexById = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            Object[] row = individualRows.get(i);
+            ids[i] = (UUID) row[0];
+            givenNames[i] = trimToNull((String) row[1]);
+            surnames[i] = trimToNull((String) row[2]);
+            birthDates[i] = (LocalDate) row[3];
+            deathDates[i] = (LocalDate) row[4];
+            indexById.put(ids[i], i);
+        }
+
+        // Pass over the edges: degrees, components (union-find) and parent links
+        int[] degree = new int[n];
+        int[] component = new int[n];
+        for (int i = 0; i < n; i++) {
+            component[i] = i;
+        }
+        int[] parentOf = new int[edgeRows.size()];
+        int[] childOf = new int[edgeRows.size()];
+        int parentLinks = 0;
+        int[] parentCount = new int[n];
+        int[] childCount = new int[n];
+        for (Object[] edge : edgeRows) {
+            Integer a = indexById.get((UUID) edge[0]);
+            Integer b = indexById.get((UUID) edge[1]);
+            if (a == null || b == null || a.intValue() == b.intValue()) {
+                continue;
+            }
+            degree[a]++;
+            degree[b]++;
+            union(component, a, b);
+            if (TreeGraph.isParentType((RelationshipType) edge[2])) {
+                parentOf[parentLinks] = a;
+                childOf[parentLinks] = b;
+                parentLinks++;
+                childCount[a]++;
+                parentCount[b]++;
+            }
+        }
+
+        // Adjacency as offset arrays: children[childStart[i] .. childStart[i + 1]) and likewise for parents
+        int[] childStart = offsets(childCount);
+        int[] parentStart = offsets(parentCount);
+        int[] children = new int[parentLinks];
+        int[] parents = new int[parentLinks];
+        int[] childFill = Arrays.copyOf(childStart, n);
+        int[] parentFill = Arrays.copyOf(parentStart, n);
+        for (int e = 0; e < parentLinks; e++) {
+            children[childFill[parentOf[e]]++] = childOf[e];
+            parents[parentFill[childOf[e]]++] = parentOf[e];
+        }
+
+        // Generations in topological order: a child is placed once all its parents are, one below the lowest.
+        // Individuals on a parent-child cycle are never placed (generation 0).
+        int[] generation = new int[n];
+        int[] deepestParent = new int[n];
+        int[] unplacedParents = Arrays.copyOf(parentCount, n);
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            deepestParent[i] = -1;
+            if (parentCount[i] == 0) {
+                generation[i] = 1;
+                queue[tail++] = i;
+            }
+        }
+        while (head < tail) {
+            int i = queue[head++];
+            for (int c = childStart[i]; c < childStart[i + 1]; c++) {
+                int child = children[c];
+                if (generation[i] + 1 > generation[child]) {
+                    generation[child] = generation[i] + 1;
+                    deepestParent[child] = i;
+                }
+                if (--unplacedParents[child] == 0) {
+                    queue[tail++] = child;
+                }
+            }
+        }
+        boolean[] placed = new boolean[n];
+        for (int q = 0; q < tail; q++) {
+            placed[queue[q]] = true;
+        }
+
+        int maxGeneration = 0;
+        for (int i = 0; i < n; i++) {
+            if (placed[i]) {
+                maxGeneration = Math.max(maxGeneration, generation[i]);
+            }
+        }
+
+        // Pass over the individuals: every per-person metric at once
+        int[] generationCount = new int[maxGeneration + 1];
+        long[] lifespanYears = new long[maxGeneration + 1];
+        int[] lifespanSamples = new int[maxGeneration + 1];
+        int[] componentSize = new int[n];
+        Map<Integer, int[]> decadeCounts = new TreeMap<>();
+        Map<String, int[]> givenNameCounts = new HashMap<>();
+        Map<String, int[]> surnameCounts = new HashMap<>();
+        List<TreeAnalyticsResponse.PersonRef> isolated = new ArrayList<>();
+        int isolatedCount = 0;
+        int withoutGeneration = 0;
+        for (int i = 0; i < n; i++) {
+            if (placed[i]) {
+                int g = generation[i];
+                generationCount[g]++;
+                if (birthDates[i] != null && deathDates[i] != null) {
+                    long years = ChronoUnit.YEARS.between(birthDates[i], deathDates[i]);
+                    if (years >= 0 && years <= MAX_LIFESPAN) {
+                        lifespanYears[g] += years;
+                        lifespanSamples[g]++;
+                    }
+                }
+            } else {
+                withoutGeneration++;
+            }
+
+            if (birthDates[i] != null) {
+                decadeCounts.computeIfAbsent(Math.floorDiv(birthDates[i].getYear(), 10) * 10, k -> new int[1])[0]++;
+            }
+            if (givenNames[i] != null) {
+                givenNameCounts.computeIfAbsent(givenNames[i], k -> new int[1])[0]++;
+            }
+            if (surnames[i] != null) {
+                surnameCounts.computeIfAbsent(surnames[i], k -> new int[1])[0]++;
+            }
+
+            componentSize[find(component, i)]++;
+
+            if (degree[i] == 0) {
+                isolatedCount++;
+                if (isolated.size() < MAX_ISOLATED) {
+                    isolated.add(person(i, ids, givenNames, surnames));
+                }
+            }
+        }
+
+        List<TreeAnalyticsResponse.GenerationStats> generations = new ArrayList<>();
+        for (int g = 1; g <= maxGeneration; g++) {
+            Double averageLifespan = lifespanSamples[g] > 0 ? (double) lifespanYears[g] / lifespanSamples[g] : null;
+            generations.add(new TreeAnalyticsResponse.GenerationStats(g, generationCount[g], averageLifespan,
+                    lifespanSamples[g]));
+        }
+
+        List<TreeAnalyticsResponse.DecadeCount> birthDecades = new ArrayList<>();
+        for (Map.Entry<Integer, int[]> entry : decadeCounts.entrySet()) {
+            birthDecades.add(new TreeAnalyticsResponse.DecadeCount(entry.getKey(), entry.getValue()[0]));
+        }
+
+        int componentsCount = 0;
+        List<Integer> componentSizes = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (componentSize[i] > 0) {
+                componentsCount++;
+                componentSizes.add(componentSize[i]);
+            }
+        }
+        componentSizes.sort(Comparator.reverseOrder());
+
+        return TreeAnalyticsResponse.builder()
+                .treeId(treeId)
+                .treeVersion(version)
+                .individualsCount(n)
+                .relationshipsCount(edgeRows.size())
+                .generations(generations)
+                .individualsWithoutGeneration(withoutGeneration)
+                .birthDecades(birthDecades)
+                .topGivenNames(topNames(givenNameCounts))
+                .topSurnames(topNames(surnameCounts))
+                .largestFamilies(largestFamilies(n, parentStart, parents, ids, givenNames, surnames))
+                .longestLineages(longestLineages(n, placed, generation, deepestParent, childCount,
+                        ids, givenNames, surnames))
+                .isolatedCount(isolatedCount)
+                .isolatedIndividuals(isolated)
+                .componentsCount(componentsCount)
+                .largestComponentSizes(new ArrayList<>(componentSizes.subList(0, Math.min(TOP_COMPONENTS, componentSizes.size()))))
+                .computedAt(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * Group children by their parents (the first two distinct ones) and return the largest groups
+     */
+    private List<TreeAnalyticsResponse.Family> largestFamilies(int n, int[] parentStart, int[] parents,
+                                                               UUID[] ids, String[] givenNames, String[] surnames) {
+        // Family key: the two parent indexes packed in a long (lower index first, -1 for a single parent)
+        Map<Long, int[]> childrenByFamily = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            int first = -1;
+            int second = -1;
+            for (int p = parentStart[i]; p < parentStart[i + 1]; p++) {
+                int parent = parents[p];
+                if (first == -1) {
+                    first = parent;
+                } else if (parent != first) {
+                    second = parent;
+                    break;
+                }
+            }
+            if (first == -1) {
+                continue;
+            }
+            int low = second == -1 ? first : Math.min(first, second);
+            int high = second == -1 ? -1 : Math.max(first, second);
+            childrenByFamily.computeIfAbsent(((long) low << 32) | (high & 0xFFFFFFFFL), k -> new int[1])[0]++;
+        }
+
+        List<Map.Entry<Long, int[]>> families = new ArrayList<>(childrenByFamily.entrySet());
+        families.sort((a, b) -> Integer.compare(b.getValue()[0], a.getValue()[0]));
+
+        List<TreeAnalyticsResponse.Family> largest = new ArrayList<>();
+        for (Map.Entry<Long, int[]> family : families.subList(0, Math.min(TOP_FAMILIES, families.size()))) {
+            int low = (int) (family.getKey() >> 32);
+            int high = (int) (long) family.getKey();
+            List<TreeAnalyticsResponse.PersonRef> familyParents = new ArrayList<>();
+            familyParents.add(person(low, ids, givenNames, surnames));
+            if (high != -1) {
+                familyParents.add(person(high, ids, givenNames, surnames));
+            }
+            largest.add(new TreeAnalyticsResponse.Family(familyParents, family.getValue()[0]));
+        }
+        return largest;
+    }
+
+    /**
+     * Follow the deepest parent up from the lowest-placed individuals without children
+     */
+    private List<TreeAnalyticsResponse.Lineage> longestLineages(int n, boolean[] placed, int[] generation,
+                                                                int[] deepestParent, int[] childCount,
+                                                                UUID[] ids, String[] givenNames, String[] surnames) {
+        List<Integer> ends = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (placed[i] && childCount[i] == 0 && generation[i] > 1) {
+                ends.add(i);
+            }
+        }
+        ends.sort((a, b) -> Integer.compare(generation[b], generation[a]));
+
+        List<TreeAnalyticsResponse.Lineage> lineages = new ArrayList<>();
+        for (int end : ends.subList(0, Math.min(TOP_LINEAGES, ends.size()))) {
+            LinkedList<TreeAnalyticsResponse.PersonRef> line = new LinkedList<>();
+            for (int i = end; i != -1; i = deepestParent[i]) {
+                line.addFirst(person(i, ids, givenNames, surnames));
+            }
+            lineages.add(new TreeAnalyticsResponse.Lineage(generation[end], new ArrayList<>(line)));
+        }
+        return lineages;
+    }
+
+    private List<TreeAnalyticsResponse.NameCount> topNames(Map<String, int[]> counts) {
+        List<TreeAnalyticsResponse.NameCount> names = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            names.add(new TreeAnalyticsResponse.NameCount(entry.getKey(), entry.getValue()[0]));
+        }
+        names.sort(Comparator.comparingInt(TreeAnalyticsResponse.NameCount::getCount).reversed()
+                .thenComparing(TreeAnalyticsResponse.NameCount::getName));
+        return new ArrayList<>(names.subList(0, Math.min(TOP_NAMES, names.size())));
+    }
+
+    private static TreeAnalyticsResponse.PersonRef person(int i, UUID[] ids, String[] givenNames, String[] surnames) {
+        // Surname first, as everywhere else in the application
+        String name = surnames[i] == null ? givenNames[i]
+                : givenNames[i] == null ? surnames[i] : surnames[i] + " " + givenNames[i];
+        return new TreeAnalyticsResponse.PersonRef(ids[i], name);
+    }
+
+    private static int[] offsets(int[] counts) {
+        int[] start = new int[counts.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            start[i + 1] = start[i] + counts[i];
+        }
+        return start;
+    }
+
+    private static int find(int[] component, int i) {
+        while (component[i] != i) {
+            component[i] = component[component[i]];
+            i = component[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] component, int a, int b) {
+        int rootA = find(component, a);
+        int rootB = find(component, b);
+        if (rootA != rootB) {
+            component[rootB] = rootA;
+        }
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private synchronized TreeAnalyticsResponse getCached(UUID treeId) {
+        return cache.get(treeId);
+    }
+
+    private synchronized void putCached(UUID treeId, TreeAnalyticsResponse analytics) {
+        cache.put(treeId, analytics);
+        Iterator<UUID> eldest = cache.keySet().iterator();
+        while (cache.size() > maxCacheEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+}
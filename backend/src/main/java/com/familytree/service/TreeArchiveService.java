@@ -0,0 +1,372 @@
+package com.familytree.service;
+
+import com.familytree.dto.archive.*;
+import com.familytree.exception.ResourceNotFoundException;
+import com.familytree.exception.UnauthorizedException;
+import com.familytree.model.EventType;
+import com.familytree.model.FamilyTree;
+import com.familytree.model.Gender;
+import com.familytree.model.MediaType;
+import com.familytree.model.RelationshipType;
+import com.familytree.model.TreeLineage;
+import com.familytree.model.User;
+import com.familytree.repository.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.minio.errors.ErrorResponseException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Service exporting a tree as a portable tree archive: a ZIP of NDJSON record files and the media
+ * and avatar files, described by a versioned manifest (see TreeArchiveManifest). Unlike GEDCOM it keeps
+ * media, events, clone lineage and user profile links, and it is imported back by TreeImportService.
+ *
+ * The archive is written to the response while it is read: records come from database cursors and files
+ * are streamed from MinIO, so the tree is never held in memory. The records are read in one read-only
+ * repeatable-read transaction, which gives a consistent snapshot of the tree. Only the keys of the avatar
+ * and media files are collected there; the files are streamed after the transaction ends, so a slow client
+ * does not hold a pooled connection and an old snapshot while the files are copied. Media files are stored
+ * by content and never change; an avatar replaced in the meantime is exported in its new version.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TreeArchiveService {
+
+    static final String MANIFEST_ENTRY = "manifest.json";
+    static final String INDIVIDUALS_ENTRY = "individuals.ndjson";
+    static final String AVATARS_DIR = "avatars/";
+    static final String RELATIONSHIPS_ENTRY = "relationships.ndjson";
+    static final String EVENTS_ENTRY = "events.ndjson";
+    static final String PROFILES_ENTRY = "profiles.ndjson";
+    static final String MEDIA_ENTRY = "media.ndjson";
+    static final String FILES_DIR = "files/";
+
+    private final FamilyTreeRepository treeRepository;
+    private final UserRepository userRepository;
+    private final IndividualRepository individualRepository;
+    private final RelationshipRepository relationshipRepository;
+    private final EventRepository eventRepository;
+    private final MediaRepository mediaRepository;
+    private final UserTreeProfileRepository userTreeProfileRepository;
+    private final TreeLineageRepository treeLineageRepository;
+    private final PermissionService permissionService;
+    private final MinioService minioService;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Check that a user may export a tree: its owner, one of its admins or a system administrator
+     * @return the archive file name
+     */
+    @Transactional(readOnly = true)
+    public String prepareExport(UUID treeId, String userEmail) {
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
+                .orElseThrow(() -> new ResourceNotFoundException("Tree not found with id: " + treeId));
+        boolean systemAdmin = userRepository.findByEmail(userEmail).map(User::isAdmin).orElse(false);
+        if (!systemAdmin && !permissionService.isOwner(treeId, userEmail)
+                && !permissionService.isTreeAdmin(treeId, userEmail)) {
+            throw new UnauthorizedException("Only the tree owner or admins can export the tree archive");
+        }
+
+        String name = tree.getName().replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").trim();
+        return (name.isEmpty() ? "family-tree" : name) + ".ftarchive.zip";
+    }
+
+    /**
+     * Write the archive of a tree
+     * @param treeId the tree ID
+     * @param userEmail the exporting user, recorded in the manifest
+     * @param outputStream the stream to write the ZIP to (not closed)
+     */
+    public void writeArchive(UUID treeId, String userEmail, OutputStream outputStream) throws IOException {
+        TransactionTemplate snapshot = new TransactionTemplate(transactionManager);
+        snapshot.setReadOnly(true);
+        snapshot.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+
+        ZipOutputStream zip = new ZipOutputStream(outputStream, StandardCharsets.UTF_8);
+        StoredFiles stored;
+        try {
+            stored = snapshot.execute(status -> {
+                try {
+                    return writeRecordEntries(treeId, userEmail, zip);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        int avatars = writeAvatars(zip, stored.avatars);
+        int files = writeFiles(zip, stored.files);
+        zip.finish();
+        zip.flush();
+
+        TreeArchiveManifest manifest = stored.manifest;
+        log.info("Exported tree {} archive: {} individuals, {} relationships, {} events, {} media ({} files), {} avatars",
+                treeId, manifest.getIndividuals(), manifest.getRelationships(), manifest.getEvents(),
+                manifest.getMedia(), files, avatars);
+    }
+
+    /**
+     * Write the manifest and the record entries, and collect the stored files to write after them
+     */
+    private StoredFiles writeRecordEntries(UUID treeId, String userEmail, ZipOutputStream zip) throws IOException {
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
+                .orElseThrow(() -> new ResourceNotFoundException("Tree not found with id: " + treeId));
+
+        TreeArchiveManifest manifest = TreeArchiveManifest.builder()
+                .format(TreeArchiveManifest.FORMAT)
+                .version(TreeArchiveManifest.VERSION)
+                .exportedAt(LocalDateTime.now())
+                .exportedBy(userEmail)
+                .treeId(tree.getId())
+                .name(tree.getName())
+                .description(tree.getDescription())
+                .rootIndividualId(tree.getRootIndividualId())
+                .createdAt(tree.getCreatedAt())
+                .sourceTreeId(tree.getSourceTreeId())
+                .sourceIndividualId(tree.getSourceIndividualId())
+                .clonedAt(tree.getClonedAt())
+                .lineageId(treeLineageRepository.findById(treeId).map(TreeLineage::getLineageId).orElse(null))
+                .individuals(individualRepository.countByTreeId(treeId))
+                .relationships(relationshipRepository.countByTreeId(treeId))
+                .events(eventRepository.countByTreeId(treeId))
+                .media(mediaRepository.countByTreeId(treeId))
+                .build();
+        startEntry(zip, MANIFEST_ENTRY, true);
+        zip.write(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+        zip.closeEntry();
+
+        try (Stream<Object[]> rows = individualRepository.streamArchiveRowsByTreeId(treeId)) {
+            writeRecords(zip, INDIVIDUALS_ENTRY, rows, row -> ArchivedIndividual.builder()
+                    .id((UUID) row[0])
+                    .givenName((String) row[1])
+                    .middleName((String) row[2])
+                    .surname((String) row[3])
+                    .suffix((String) row[4])
+                    .gender((Gender) row[5])
+                    .birthDate((LocalDate) row[6])
+                    .birthPlace((String) row[7])
+                    .deathDate((LocalDate) row[8])
+                    .deathPlace((String) row[9])
+                    .biography((String) row[10])
+                    .notes((String) row[11])
+                    .facebookLink((String) row[12])
+                    .phoneNumber((String) row[13])
+                    .avatarContentType((String) row[14])
+                    .lineageId((UUID) row[15])
+                    .build());
+        }
+
+        try (Stream<Object[]> rows = relationshipRepository.streamArchiveRowsByTreeId(treeId)) {
+            writeRecords(zip, RELATIONSHIPS_ENTRY, rows, row -> ArchivedRelationship.builder()
+                    .id((UUID) row[0])
+                    .individual1Id((UUID) row[1])
+                    .individual2Id((UUID) row[2])
+                    .type((RelationshipType) row[3])
+                    .startDate((LocalDate) row[4])
+                    .endDate((LocalDate) row[5])
+                    .build());
+        }
+
+        try (Stream<Object[]> rows = eventRepository.streamArchiveRowsByTreeId(treeId)) {
+            writeRecords(zip, EVENTS_ENTRY, rows, row -> ArchivedEvent.builder()
+                    .id((UUID) row[0])
+                    .individualId((UUID) row[1])
+                    .type((EventType) row[2])
+                    .eventDate((LocalDate) row[3])
+                    .place((String) row[4])
+                    .description((String) row[5])
+                    .build());
+        }
+
+        writeRecords(zip, PROFILES_ENTRY, userTreeProfileRepository.findArchiveRowsByTreeId(treeId).stream(),
+                row -> ArchivedProfile.builder()
+                        .userEmail((String) row[0])
+                        .individualId((UUID) row[1])
+                        .build());
+
+        try (Stream<Object[]> rows = mediaRepository.streamArchiveRowsByTreeId(treeId)) {
+            writeRecords(zip, MEDIA_ENTRY, rows, row -> ArchivedMedia.builder()
+                    .id((UUID) row[0])
+                    .individualId((UUID) row[1])
+                    .type((MediaType) row[2])
+                    .filename((String) row[3])
+                    .file(fileKey((String) row[4], (String) row[5]))
+                    .checksum((String) row[5])
+                    .caption((String) row[6])
+                    .fileSize((Long) row[7])
+                    .mimeType((String) row[8])
+                    .uploadedAt((LocalDateTime) row[9])
+                    .build());
+        }
+
+        StoredFiles stored = new StoredFiles(manifest);
+        for (Object[] avatar : individualRepository.findAvatarsByTreeId(treeId)) {
+            stored.avatars.add(new String[]{avatar[0].toString(), (String) avatar[1]});
+        }
+        try (Stream<Object[]> rows = mediaRepository.streamArchiveFilesByTreeId(treeId)) {
+            String previousChecksum = null;
+            for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                String storagePath = (String) row[0];
+                String checksum = (String) row[1];
+                // Rows are ordered by checksum, copies of the same content stored before sharing are written once
+                if (checksum != null && checksum.equals(previousChecksum)) {
+                    continue;
+                }
+                previousChecksum = checksum;
+                stored.files.add(new String[]{storagePath, fileKey(storagePath, checksum)});
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Write rows as an NDJSON entry, one JSON record per line
+     */
+    private void writeRecords(ZipOutputStream zip, String entryName, Stream<Object[]> rows,
+                              Function<Object[], Object> toRecord) throws IOException {
+        startEntry(zip, entryName, true);
+        for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+            zip.write(objectMapper.writeValueAsBytes(toRecord.apply(row)));
+            zip.write('\n');
+        }
+        zip.closeEntry();
+    }
+
+    /**
+     * Write the avatar images of the tree's individuals as avatars/{individual ID}{extension}
+     * @param avatars [individual ID, object key (null if not recorded)] of each avatar
+     * @return number of avatars written
+     */
+    private int writeAvatars(ZipOutputStream zip, List<String[]> avatars) throws IOException {
+        int written = 0;
+        for (String[] avatar : avatars) {
+            String individualId = avatar[0];
+            String objectKey = avatar[1];
+            try {
+                if (objectKey == null) {
+                    // Avatars uploaded before object keys were recorded are found in the avatar directory
+                    objectKey = minioService.listFiles("avatars/individuals/" + individualId + "/").stream()
+                            .filter(file -> file.contains("/avatar"))
+                            .findFirst()
+                            .orElse(null);
+                }
+                if (objectKey != null && copyObject(zip, objectKey, AVATARS_DIR + individualId + extension(objectKey))) {
+                    written++;
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                log.warn("Could not read avatar of individual {} for archive: {}", individualId, e.getMessage());
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Write the content of the tree's media files as files/{key}, once per distinct content
+     * @param files [storage path, archive key] of each distinct file
+     * @return number of files written
+     */
+    private int writeFiles(ZipOutputStream zip, List<String[]> files) throws IOException {
+        int written = 0;
+        for (String[] file : files) {
+            String storagePath = file[0];
+            try {
+                if (copyObject(zip, storagePath, FILES_DIR + file[1])) {
+                    written++;
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                log.warn("Could not read media file {} for archive: {}", storagePath, e.getMessage());
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Stream a stored object into an entry
+     * @return false if the object does not exist
+     */
+    private boolean copyObject(ZipOutputStream zip, String objectName, String entryName) throws Exception {
+        InputStream inputStream;
+        try {
+            inputStream = minioService.downloadFile(objectName);
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                log.warn("Stored file {} is missing, left out of the archive", objectName);
+                return false;
+            }
+            throw e;
+        }
+
+        // Once the entry is started a read failure cannot be skipped, it ends the archive
+        try (InputStream in = inputStream) {
+            startEntry(zip, entryName, false);
+            in.transferTo(zip);
+            zip.closeEntry();
+        }
+        return true;
+    }
+
+    private void startEntry(ZipOutputStream zip, String entryName, boolean compress) throws IOException {
+        // Photos and videos are compressed already, records compress well
+        zip.setLevel(compress ? Deflater.DEFAULT_COMPRESSION : Deflater.BEST_SPEED);
+        zip.putNextEntry(new ZipEntry(entryName));
+    }
+
+    /**
+     * Key of a stored file in the archive: its checksum, or for files stored before checksums were
+     * recorded an ID derived from the storage path
+     */
+    static String fileKey(String storagePath, String checksum) {
+        return checksum != null
+                ? checksum
+                : UUID.nameUUIDFromBytes(storagePath.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private String extension(String objectName) {
+        int slash = objectName.lastIndexOf('/');
+        int dot = objectName.lastIndexOf('.');
+        return dot > slash ? objectName.substring(dot).toLowerCase() : "";
+    }
+
+    /**
+     * Stored files referenced by the snapshot, copied into the archive once its transaction has ended
+     * (keys only, a few dozen bytes per file)
+     */
+    private static class StoredFiles {
+        final TreeArchiveManifest manifest;
+        final List<String[]> avatars = new ArrayList<>();
+        final List<String[]> files = new ArrayList<>();
+
+        StoredFiles(TreeArchiveManifest manifest) {
+            this.manifest = manifest;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.familytree.service;
+
+import com.familytree.model.Individual;
+import com.familytree.repository.IndividualRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service for copying the avatars of cloned individuals.
+ * Objects are copied server-side by MinIO on the avatar copy pool with retries, and the avatars are
+ * recorded once all copies have finished. The copy can run as part of the clone or in the
+ * background once the cloned tree has been committed.
+ * Media files are not copied: cloned media records reference the same stored files (see MediaBlobService).
+ * Avatars stay outside that reference counting because an avatar object is owned by its individual:
+ * it is stored under the individual's ID, overwritten in place on re-upload and deleted with the individual.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TreeAvatarCloneService {
+
+    private static final long RETRY_BACKOFF_MS = 200;
+
+    private final IndividualRepository individualRepository;
+    private final MinioService minioService;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskExecutor taskExecutor;
+
+    @Qualifier("avatarCopyExecutor")
+    private final TaskExecutor avatarCopyExecutor;
+
+    @Value("${avatar.clone.max-attempts:3}")
+    private int maxAttempts;
+
+    /**
+     * Clone the avatars of cloned individuals
+     * @param sourceTreeId the source tree ID
+     * @param newTreeId the cloned tree ID
+     * @param idMapping source individual ID to cloned individual ID
+     * @param inBackground copy after the current transaction commits instead of now
+     */
+    public void cloneAvatars(UUID sourceTreeId, UUID newTreeId, Map<UUID, UUID> idMapping, boolean inBackground) {
+        // Plan everything up front with one query, so the copy itself needs no database access
+        List<AvatarCopy> avatarCopies = new ArrayList<>();
+        for (Object[] avatar : individualRepository.findAvatarsByTreeId(sourceTreeId)) {
+            UUID newIndividualId = idMapping.get((UUID) avatar[0]);
+            if (newIndividualId != null) {
+                avatarCopies.add(new AvatarCopy((UUID) avatar[0], newIndividualId, (String) avatar[1],
+                        (String) avatar[2], (String) avatar[3], (Long) avatar[4]));
+            }
+        }
+
+        if (inBackground && TransactionSynchronizationManager.isSynchronizationActive()) {
+            // The cloned individuals must be committed before their avatars can be recorded
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    taskExecutor.execute(() -> runInBackground(newTreeId, avatarCopies));
+                }
+            });
+            log.info("Scheduled background cloning of {} avatars for tree {}", avatarCopies.size(), newTreeId);
+            return;
+        }
+
+        copyAll(newTreeId, avatarCopies);
+    }
+
+    private void runInBackground(UUID newTreeId, List<AvatarCopy> avatarCopies) {
+        try {
+            int cloned = copyAll(newTreeId, avatarCopies);
+            log.info("Background avatar cloning for tree {} finished: {} of {} avatars",
+                    newTreeId, cloned, avatarCopies.size());
+        } catch (Exception e) {
+            log.error("Background avatar cloning for tree {} failed", newTreeId, e);
+        }
+    }
+
+    /**
+     * Copy all avatars concurrently, then record them in one transaction
+     * @return number of avatars copied
+     */
+    private int copyAll(UUID newTreeId, List<AvatarCopy> avatarCopies) {
+        List<CompletableFuture<String>> avatarResults = new ArrayList<>(avatarCopies.size());
+        for (AvatarCopy copy : avatarCopies) {
+            avatarResults.add(CompletableFuture.supplyAsync(() -> copyAvatar(copy), avatarCopyExecutor));
+        }
+
+        // Cloned individual ID to the copy of its avatar, with the new object key
+        Map<UUID, AvatarCopy> copiedAvatars = new LinkedHashMap<>();
+        for (int i = 0; i < avatarCopies.size(); i++) {
+            String newKey = avatarResults.get(i).join();
+            if (newKey != null) {
+                AvatarCopy copy = avatarCopies.get(i);
+                copy.newKey = newKey;
+                copiedAvatars.put(copy.newIndividualId, copy);
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Individual individual : individualRepository.findAllById(copiedAvatars.keySet())) {
+                // Same bytes as the original, so the hash carries over
+                AvatarCopy copy = copiedAvatars.get(individual.getId());
+                individual.setProfilePictureUrl(IndividualService.avatarUrl(newTreeId, individual.getId(), copy.hash));
+                individual.setAvatarObjectKey(copy.newKey);
+                individual.setAvatarHash(copy.hash);
+                individual.setAvatarContentType(copy.contentType);
+                individual.setAvatarSize(copy.size);
+            }
+        });
+
+        log.info("Cloned {} avatars for tree {}", copiedAvatars.size(), newTreeId);
+        return copiedAvatars.size();
+    }
+
+    /**
+     * Copy the avatar image of an individual
+     * @return the object key of the copy, or null if the avatar could not be copied
+     */
+    private String copyAvatar(AvatarCopy copy) {
+        try {
+            // Avatars uploaded before object keys were recorded are found in the avatar directory
+            List<String> candidates = copy.originalKey != null
+                    ? Collections.singletonList(copy.originalKey)
+                    : minioService.listFiles("avatars/individuals/" + copy.originalId + "/");
+            for (String avatarFile : candidates) {
+                if (!avatarFile.contains("/avatar")) {
+                    continue;
+                }
+
+                String extension = "";
+                int dotIndex = avatarFile.lastIndexOf('.');
+                if (dotIndex > 0) {
+                    extension = avatarFile.substring(dotIndex);
+                }
+
+                String newAvatarPath = "avatars/individuals/" + copy.newIndividualId + "/avatar" + extension.toLowerCase();
+                if (copyWithRetry(avatarFile, newAvatarPath)) {
+                    log.debug("Cloned avatar for individual {} -> {} at path {}",
+                            copy.originalId, copy.newIndividualId, newAvatarPath);
+                    return newAvatarPath;
+                }
+            }
+            log.debug("No avatar file found for individual {}", copy.originalId);
+        } catch (Exception e) {
+            log.warn("Could not clone avatar for individual {}: {}", copy.originalId, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Copy an object, retrying transient failures with a linear backoff
+     * @return false if the source object does not exist
+     */
+    private boolean copyWithRetry(String sourcePath, String targetPath) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return minioService.copyFile(sourcePath, targetPath);
+            } catch (Exception e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.debug("Copy of {} failed (attempt {}/{}): {}", sourcePath, attempt, maxAttempts, e.getMessage());
+                Thread.sleep(RETRY_BACKOFF_MS * attempt);
+            }
+        }
+    }
+
+    private static class AvatarCopy {
+        final UUID originalId;
+        final UUID newIndividualId;
+        final String originalKey;
+        final String hash;
+        final String contentType;
+        final Long size;
+        String newKey;
+
+        AvatarCopy(UUID originalId, UUID newIndividualId, String originalKey, String hash, String contentType, Long size) {
+            this.originalId = originalId;
+            this.newIndividualId = newIndividualId;
+            this.originalKey = originalKey;
+            this.hash = hash;
+            this.contentType = contentType;
+            this.size = size;
+        }
+    }
+}
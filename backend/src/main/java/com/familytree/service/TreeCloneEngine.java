@@ -0,0 +1,241 @@
+package com.familytree.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Set-based copy of a branch of a tree into a new tree.
+ *
+ * The ids to clone are registered in a transaction-scoped temporary table (clone_id_map) that pairs every
+ * source individual with a freshly generated id. Individuals, relationships, clone mappings and user
+ * profile links are then copied with one INSERT ... SELECT each, joined through that table, instead of
+ * being loaded and saved entity by entity. A copy-on-write clone shares the biography and notes of its
+ * individuals with the source instead of copying them (see IndividualOverlay).
+ *
+ * All methods must run inside the caller's transaction, as the temporary table is dropped on commit. The methods
+ * are public so the MANDATORY propagation is enforced by the transactional proxy (calls without a transaction fail).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@Transactional(propagation = Propagation.MANDATORY)
+public class TreeCloneEngine {
+
+    private static final int ID_BATCH_SIZE = 1000;
+
+    private final EntityManager entityManager;
+
+    /**
+     * Create the id mapping for the individuals to clone
+     * @param individualIds source individual ids
+     * @return number of individuals registered
+     */
+    public int registerIndividuals(Collection<UUID> individualIds) {
+        // Pending entity changes (e.g. the new tree row) must be visible to the native statements
+        entityManager.flush();
+
+        entityManager.createNativeQuery(
+                "CREATE TEMP TABLE IF NOT EXISTS clone_id_map (" +
+                "old_id UUID PRIMARY KEY, new_id UUID NOT NULL UNIQUE) ON COMMIT DROP")
+                .executeUpdate();
+        entityManager.createNativeQuery("DELETE FROM clone_id_map").executeUpdate();
+
+        List<UUID> ids = new ArrayList<>(individualIds);
+        int registered = 0;
+        for (int from = 0; from < ids.size(); from += ID_BATCH_SIZE) {
+            List<UUID> batch = ids.subList(from, Math.min(from + ID_BATCH_SIZE, ids.size()));
+            registered += entityManager.createNativeQuery(
+                    "INSERT INTO clone_id_map (old_id, new_id) " +
+                    "SELECT i.id, gen_random_uuid() FROM individuals i WHERE i.id IN (:ids)")
+                    .setParameter("ids", batch)
+                    .executeUpdate();
+        }
+        return registered;
+    }
+
+    /**
+     * Copy the registered individuals into the new tree.
+     * Individuals of a copy-on-write clone get the content they read from their source individual.
+     * @return number of individuals copied
+     */
+    public int copyIndividuals(UUID newTreeId) {
+        // profile_picture_url is set when (and if) the avatar itself is cloned
+        return entityManager.createNativeQuery(
+                "INSERT INTO individuals (id, tree_id, given_name, middle_name, surname, suffix, gender, " +
+                "birth_date, birth_place, death_date, death_place, biography, notes, facebook_link, phone_number, " +
+                "created_at, updated_at) " +
+                "SELECT m.new_id, :treeId, i.given_name, i.middle_name, i.surname, i.suffix, i.gender, " +
+                "i.birth_date, i.birth_place, i.death_date, i.death_place, COALESCE(i.biography, s.biography), " +
+                "COALESCE(i.notes, s.notes), i.facebook_link, i.phone_number, :now, :now " +
+                "FROM clone_id_map m JOIN individuals i ON i.id = m.old_id " +
+                "LEFT JOIN individual_overlays o ON o.individual_id = i.id " +
+                "LEFT JOIN individuals s ON s.id = o.source_individual_id")
+                .setParameter("treeId", newTreeId)
+                .setParameter("now", LocalDateTime.now())
+                .executeUpdate();
+    }
+
+    /**
+     * Copy the registered individuals into the new tree without their biography and notes, which are
+     * read through an overlay entry from the individual holding them (the registered individual, or
+     * its own source if it is overlaid). Individuals without either get no overlay entry.
+     * @return number of individuals copied
+     */
+    public int shareIndividuals(UUID newTreeId) {
+        LocalDateTime now = LocalDateTime.now();
+        int copied = entityManager.createNativeQuery(
+                "INSERT INTO individuals (id, tree_id, given_name, middle_name, surname, suffix, gender, " +
+                "birth_date, birth_place, death_date, death_place, facebook_link, phone_number, " +
+                "created_at, updated_at) " +
+                "SELECT m.new_id, :treeId, i.given_name, i.middle_name, i.surname, i.suffix, i.gender, " +
+                "i.birth_date, i.birth_place, i.death_date, i.death_place, i.facebook_link, i.phone_number, " +
+                ":now, :now " +
+                "FROM clone_id_map m JOIN individuals i ON i.id = m.old_id")
+                .setParameter("treeId", newTreeId)
+                .setParameter("now", now)
+                .executeUpdate();
+
+        int overlaid = entityManager.createNativeQuery(
+                "INSERT INTO individual_overlays (individual_id, source_individual_id, tree_id) " +
+                "SELECT m.new_id, s.id, :treeId " +
+                "FROM clone_id_map m LEFT JOIN individual_overlays o ON o.individual_id = m.old_id " +
+                "JOIN individuals s ON s.id = COALESCE(o.source_individual_id, m.old_id) " +
+                "WHERE s.biography IS NOT NULL OR s.notes IS NOT NULL")
+                .setParameter("treeId", newTreeId)
+                .executeUpdate();
+        log.info("Shared the biography and notes of {} of {} individuals with the source tree", overlaid, copied);
+        return copied;
+    }
+
+    /**
+     * Copy relationships of the source tree whose both ends are registered.
+     * Duplicate relationships (same pair and type, in either direction) are copied once.
+     * @return number of relationships copied
+     */
+    public int copyRelationships(UUID sourceTreeId, UUID newTreeId) {
+        return entityManager.createNativeQuery(
+                "INSERT INTO relationships (id, tree_id, individual1_id, individual2_id, type, start_date, end_date, " +
+                "created_at, updated_at) " +
+                "SELECT gen_random_uuid(), :newTreeId, m1.new_id, m2.new_id, r.type, r.start_date, r.end_date, :now, :now " +
+                "FROM (SELECT DISTINCT ON (LEAST(individual1_id, individual2_id), GREATEST(individual1_id, individual2_id), type) * " +
+                "      FROM relationships WHERE tree_id = :sourceTreeId " +
+                "      ORDER BY LEAST(individual1_id, individual2_id), GREATEST(individual1_id, individual2_id), type, created_at) r " +
+                "JOIN clone_id_map m1 ON m1.old_id = r.individual1_id " +
+                "JOIN clone_id_map m2 ON m2.old_id = r.individual2_id")
+                .setParameter("newTreeId", newTreeId)
+                .setParameter("sourceTreeId", sourceTreeId)
+                .setParameter("now", LocalDateTime.now())
+                .executeUpdate();
+    }
+
+    /**
+     * Record a clone mapping for every registered individual
+     * @return number of mappings created
+     */
+    public int copyCloneMappings(UUID sourceTreeId, UUID newTreeId, UUID rootIndividualId) {
+        return entityManager.createNativeQuery(
+                "INSERT INTO individual_clone_mappings (id, source_individual_id, cloned_individual_id, " +
+                "source_tree_id, cloned_tree_id, is_root_individual, created_at) " +
+                "SELECT gen_random_uuid(), m.old_id, m.new_id, :sourceTreeId, :newTreeId, m.old_id = :rootId, :now " +
+                "FROM clone_id_map m")
+                .setParameter("sourceTreeId", sourceTreeId)
+                .setParameter("newTreeId", newTreeId)
+                .setParameter("rootId", rootIndividualId)
+                .setParameter("now", LocalDateTime.now())
+                .executeUpdate();
+    }
+
+    /**
+     * Extend the clone lineages of the source tree and its registered individuals to the new tree
+     * (a source not yet in a lineage starts one)
+     * @return number of individual lineage entries created for the new tree
+     */
+    public int copyLineage(UUID sourceTreeId, UUID newTreeId) {
+        entityManager.createNativeQuery(
+                "INSERT INTO tree_lineages (tree_id, lineage_id) VALUES (:sourceTreeId, :sourceTreeId) " +
+                "ON CONFLICT (tree_id) DO NOTHING")
+                .setParameter("sourceTreeId", sourceTreeId)
+                .executeUpdate();
+        entityManager.createNativeQuery(
+                "INSERT INTO tree_lineages (tree_id, lineage_id) " +
+                "SELECT :newTreeId, l.lineage_id FROM tree_lineages l WHERE l.tree_id = :sourceTreeId")
+                .setParameter("newTreeId", newTreeId)
+                .setParameter("sourceTreeId", sourceTreeId)
+                .executeUpdate();
+
+        entityManager.createNativeQuery(
+                "INSERT INTO individual_lineages (individual_id, lineage_id, tree_id) " +
+                "SELECT m.old_id, m.old_id, :sourceTreeId FROM clone_id_map m " +
+                "ON CONFLICT (individual_id) DO NOTHING")
+                .setParameter("sourceTreeId", sourceTreeId)
+                .executeUpdate();
+        return entityManager.createNativeQuery(
+                "INSERT INTO individual_lineages (individual_id, lineage_id, tree_id) " +
+                "SELECT m.new_id, l.lineage_id, :newTreeId " +
+                "FROM clone_id_map m JOIN individual_lineages l ON l.individual_id = m.old_id")
+                .setParameter("newTreeId", newTreeId)
+                .executeUpdate();
+    }
+
+    /**
+     * Link users of the source tree to their cloned individual in the new tree
+     * @return number of profile links created
+     */
+    public int copyUserProfiles(UUID sourceTreeId, UUID newTreeId) {
+        return entityManager.createNativeQuery(
+                "INSERT INTO user_tree_profiles (id, user_id, tree_id, individual_id, created_at) " +
+                "SELECT gen_random_uuid(), p.user_id, :newTreeId, m.new_id, :now " +
+                "FROM user_tree_profiles p JOIN clone_id_map m ON m.old_id = p.individual_id " +
+                "WHERE p.tree_id = :sourceTreeId " +
+                "ON CONFLICT (user_id, tree_id) DO NOTHING")
+                .setParameter("sourceTreeId", sourceTreeId)
+                .setParameter("newTreeId", newTreeId)
+                .setParameter("now", LocalDateTime.now())
+                .executeUpdate();
+    }
+
+    /**
+     * Create media records for the registered individuals that reference the source media's stored files
+     * and resized copies (no file is copied, each stored file gains a reference per record).
+     * Files whose last reference was released are about to be removed and are not shared: the references
+     * are added in the same statement that creates the records, only for files that are still referenced.
+     * @return number of media records created
+     */
+    public int copyMediaReferences() {
+        return entityManager.createNativeQuery(
+                "WITH refs AS (UPDATE media_blobs b SET ref_count = b.ref_count + c.n " +
+                "FROM (SELECT md.storage_path, COUNT(*) AS n " +
+                "FROM clone_id_map m JOIN media md ON md.individual_id = m.old_id GROUP BY md.storage_path) c " +
+                "WHERE b.storage_path = c.storage_path AND b.ref_count > 0 RETURNING b.storage_path) " +
+                "INSERT INTO media (id, individual_id, type, filename, storage_path, caption, file_size, mime_type, " +
+                "checksum, derivative_format, derivative_widths, uploaded_at) " +
+                "SELECT gen_random_uuid(), m.new_id, md.type, md.filename, md.storage_path, md.caption, md.file_size, " +
+                "md.mime_type, md.checksum, md.derivative_format, md.derivative_widths, :now " +
+                "FROM clone_id_map m JOIN media md ON md.individual_id = m.old_id " +
+                "JOIN refs r ON r.storage_path = md.storage_path")
+                .setParameter("now", LocalDateTime.now())
+                .executeUpdate();
+    }
+
+    /**
+     * Read back the id mapping (source individual id to cloned individual id)
+     */
+    @SuppressWarnings("unchecked")
+    public Map<UUID, UUID> getIdMapping() {
+        List<Object[]> rows = entityManager.createNativeQuery("SELECT old_id, new_id FROM clone_id_map")
+                .getResultList();
+
+        Map<UUID, UUID> mapping = new HashMap<>(rows.size() * 2);
+        for (Object[] row : rows) {
+            mapping.put((UUID) row[0], (UUID) row[1]);
+        }
+        return mapping;
+    }
+}
@@ -2,6 +2,8 @@ package com.familytree.service;
 
 import com.familytree.dto.clone.IndividualCloneInfoResponse;
 import com.familytree.dto.clone.TreeCloneInfoResponse;
+import com.familytree.dto.tree.CloneBranchPreviewResponse;
+import com.familytree.dto.tree.CloneMode;
 import com.familytree.dto.tree.CreateTreeFromIndividualRequest;
 import com.familytree.dto.tree.CreateTreeFromIndividualResponse;
 import com.familytree.exception.BadRequestException;
@@ -9,13 +11,11 @@ import com.familytree.exception.ResourceNotFoundException;
 import com.familytree.exception.UnauthorizedException;
 import com.familytree.model.*;
 import com.familytree.repository.*;
-import io.minio.StatObjectResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -36,7 +36,10 @@ public class TreeCloneService {
     private final UserRepository userRepository;
     private final UserTreeProfileRepository userTreeProfileRepository;
     private final IndividualCloneMappingRepository cloneMappingRepository;
-    private final MinioService minioService;
+    private final TreeAvatarCloneService avatarCloneService;
+    private final TreeCloneEngine cloneEngine;
+    private final CloneLineageService cloneLineageService;
+    private final TreeStatsService treeStatsService;
 
     /**
      * Create a new family tree from a selected individual
@@ -62,7 +65,7 @@ public class TreeCloneService {
         }
 
         // 2. Validate and get source tree
-        FamilyTree sourceTree = treeRepository.findById(request.getSourceTreeId())
+        FamilyTree sourceTree = treeRepository.findByIdAndDeletedAtIsNull(request.getSourceTreeId())
                 .orElseThrow(() -> new ResourceNotFoundException("Source tree not found"));
 
         // 3. Validate user has access to source tree
@@ -79,7 +82,7 @@ public class TreeCloneService {
         }
 
         // 5. Check if individual has already been exported
-        boolean alreadyExported = treeRepository.existsBySourceIndividualId(
+        boolean alreadyExported = treeRepository.existsBySourceIndividualIdAndDeletedAtIsNull(
                 request.getRootIndividualId());
         if (alreadyExported) {
             log.warn("Individual {} has already been exported to another tree", request.getRootIndividualId());
@@ -87,9 +90,17 @@ public class TreeCloneService {
         }
 
         // 6. Collect all individuals to clone (ancestors + descendants + spouses)
-        Set<UUID> individualsToClone = collectAllRelatedIndividuals(request.getRootIndividualId());
+        // The source tree structure is loaded once and walked in memory
+        List<Object[]> edges = relationshipRepository.findEdgesByTreeId(request.getSourceTreeId());
+        Set<UUID> individualsToClone = TreeGraph.fromEdges(edges).collectBranch(request.getRootIndividualId());
         log.info("Found {} individuals to clone", individualsToClone.size());
 
+        // A parent-child cycle in the source (invalid data) would be copied into the new tree
+        if (hasCircularLink(edges, individualsToClone)) {
+            throw new BadRequestException("The branch contains a circular parent-child relationship. " +
+                    "Fix it in the source tree before creating a new tree from it");
+        }
+
         // 7. Create new tree
         // The cloner becomes both owner and admin of the new tree
         FamilyTree newTree = FamilyTree.builder()
@@ -105,47 +116,117 @@ public class TreeCloneService {
         newTree = treeRepository.save(newTree);
         log.info("Created new tree with ID: {}, admin: {}", newTree.getId(), user.getEmail());
 
-        // 8. Clone individuals and create ID mapping
-        Map<UUID, Individual> idMapping = cloneIndividuals(individualsToClone, newTree);
-        log.info("Cloned {} individuals", idMapping.size());
+        // 8. Register the individuals to clone and clone them in one statement
+        // (a copy-on-write clone shares their biography and notes with the source tree)
+        cloneEngine.registerIndividuals(individualsToClone);
+        int clonedIndividuals = request.getCloneMode() == CloneMode.COPY_ON_WRITE
+                ? cloneEngine.shareIndividuals(newTree.getId())
+                : cloneEngine.copyIndividuals(newTree.getId());
+        log.info("Cloned {} individuals", clonedIndividuals);
 
         // 9. Clone relationships
-        List<Relationship> clonedRelationships = cloneRelationships(
-                individualsToClone, idMapping, newTree);
-        log.info("Cloned {} relationships", clonedRelationships.size());
+        int clonedRelationships = cloneEngine.copyRelationships(request.getSourceTreeId(), newTree.getId());
+        log.info("Cloned {} relationships", clonedRelationships);
+
+        // 10. Save clone mappings for navigation between trees
+        int savedMappings = cloneEngine.copyCloneMappings(
+                sourceTree.getId(), newTree.getId(), request.getRootIndividualId());
+        log.info("Saved {} clone mappings", savedMappings);
+        cloneEngine.copyLineage(sourceTree.getId(), newTree.getId());
+
+        // 11. Copy user profile links from source tree to cloned tree
+        int copiedProfiles = cloneEngine.copyUserProfiles(sourceTree.getId(), newTree.getId());
+        log.info("Copied {} user profile links", copiedProfiles);
+
+        Map<UUID, UUID> idMapping = cloneEngine.getIdMapping();
 
-        // 10. Clone media files if requested
+        // 12. Clone media if requested: media records reference the source's stored files,
+        // only the (small) avatars are copied, optionally in the background after the new tree is committed
         int totalMediaFiles = 0;
+        boolean avatarsInBackground = request.isIncludeMedia() && request.isCloneAvatarsInBackground();
         if (request.isIncludeMedia()) {
-            totalMediaFiles = cloneMedia(idMapping, newTree.getId());
-            log.info("Cloned {} media files", totalMediaFiles);
+            totalMediaFiles = cloneEngine.copyMediaReferences();
+            avatarCloneService.cloneAvatars(request.getSourceTreeId(), newTree.getId(), idMapping, avatarsInBackground);
+            log.info("Shared {} media files with the source tree", totalMediaFiles);
         }
 
-        // 11. Save clone mappings for navigation between trees
-        saveCloneMappings(idMapping, sourceTree, newTree, request.getRootIndividualId());
-        log.info("Saved {} clone mappings", idMapping.size());
-
-        // 12. Copy user profile links from source tree to cloned tree
-        int copiedProfiles = copyUserProfiles(idMapping, sourceTree, newTree);
-        log.info("Copied {} user profile links", copiedProfiles);
-
         // 13. Get new root individual ID and set it as tree's root individual
-        UUID newRootIndividualId = idMapping.get(request.getRootIndividualId()).getId();
+        UUID newRootIndividualId = idMapping.get(request.getRootIndividualId());
         newTree.setRootIndividualId(newRootIndividualId);
         treeRepository.save(newTree);
+        treeStatsService.markChanged(newTree.getId());
         log.info("Set root individual ID {} for cloned tree", newRootIndividualId);
 
         return CreateTreeFromIndividualResponse.builder()
                 .newTreeId(newTree.getId())
                 .newTreeName(newTree.getName())
                 .rootIndividualId(newRootIndividualId)
-                .totalIndividuals(idMapping.size())
-                .totalRelationships(clonedRelationships.size())
+                .totalIndividuals(clonedIndividuals)
+                .totalRelationships(clonedRelationships)
                 .totalMediaFiles(totalMediaFiles)
+                .avatarCloneInProgress(avatarsInBackground)
                 .sourceTreeId(request.getSourceTreeId())
                 .sourceIndividualId(request.getRootIndividualId())
                 .clonedAt(newTree.getClonedAt())
-                .message("Successfully created new tree with " + idMapping.size() + " individuals")
+                .message("Successfully created new tree with " + clonedIndividuals + " individuals")
+                .build();
+    }
+
+    /**
+     * Preview creating a new tree from an individual: how many individuals, relationships
+     * and media files would be shared
+     */
+    @Transactional(readOnly = true)
+    public CloneBranchPreviewResponse previewTreeFromIndividual(UUID sourceTreeId, UUID rootIndividualId,
+                                                                String userEmail) {
+        User user = userRepository.findByEmail(userEmail)
+                .orElseGet(() -> userRepository.findByUsername(userEmail)
+                        .orElseThrow(() -> new ResourceNotFoundException("User not found")));
+
+        if (!user.isAdmin()) {
+            throw new UnauthorizedException("Only system administrators can create new family trees from individuals");
+        }
+
+        FamilyTree sourceTree = treeRepository.findByIdAndDeletedAtIsNull(sourceTreeId)
+                .orElseThrow(() -> new ResourceNotFoundException("Source tree not found"));
+        if (!hasAccess(sourceTree, user)) {
+            throw new UnauthorizedException("You don't have access to this tree");
+        }
+
+        Individual rootIndividual = individualRepository.findById(rootIndividualId)
+                .orElseThrow(() -> new ResourceNotFoundException("Individual not found"));
+        if (!rootIndividual.getTree().getId().equals(sourceTreeId)) {
+            throw new BadRequestException("Individual does not belong to the source tree");
+        }
+
+        // One load of the tree structure serves both the branch walk and the relationship count
+        List<Object[]> edges = relationshipRepository.findEdgesByTreeId(sourceTreeId);
+        Set<UUID> branch = TreeGraph.fromEdges(edges).collectBranch(rootIndividualId);
+
+        Set<String> relationshipKeys = new HashSet<>();
+        for (Object[] edge : edges) {
+            UUID ind1Id = (UUID) edge[0];
+            UUID ind2Id = (UUID) edge[1];
+            if (branch.contains(ind1Id) && branch.contains(ind2Id)) {
+                relationshipKeys.add(createPairKey(ind1Id, ind2Id, (RelationshipType) edge[2]));
+            }
+        }
+
+        long mediaFiles = 0;
+        for (Object[] row : mediaRepository.countByTreeIdGroupByIndividual(sourceTreeId)) {
+            if (branch.contains((UUID) row[0])) {
+                mediaFiles += (Long) row[1];
+            }
+        }
+
+        return CloneBranchPreviewResponse.builder()
+                .sourceTreeId(sourceTreeId)
+                .rootIndividualId(rootIndividualId)
+                .rootIndividualName(buildFullName(rootIndividual))
+                .totalIndividuals(branch.size())
+                .totalRelationships(relationshipKeys.size())
+                .totalMediaFiles((int) mediaFiles)
+                .alreadyExported(treeRepository.existsBySourceIndividualIdAndDeletedAtIsNull(rootIndividualId))
                 .build();
     }
 
@@ -153,7 +234,7 @@ public class TreeCloneService {
      * Check if a tree has already been created from this individual
      */
     public boolean isIndividualAlreadyExported(UUID individualId) {
-        return treeRepository.existsBySourceIndividualId(individualId);
+        return treeRepository.existsBySourceIndividualIdAndDeletedAtIsNull(individualId);
     }
 
     /**
@@ -162,7 +243,7 @@ public class TreeCloneService {
      */
     @Transactional(readOnly = true)
     public TreeCloneInfoResponse getTreeCloneInfo(UUID treeId) {
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found"));
 
         boolean isClone = tree.getSourceTreeId() != null;
@@ -170,7 +251,7 @@ public class TreeCloneService {
 
         // If this tree is a clone, get source tree info
         if (isClone) {
-            FamilyTree sourceTree = treeRepository.findById(tree.getSourceTreeId()).orElse(null);
+            FamilyTree sourceTree = treeRepository.findByIdAndDeletedAtIsNull(tree.getSourceTreeId()).orElse(null);
             if (sourceTree != null) {
                 Individual sourceIndividual = tree.getSourceIndividualId() != null ?
                         individualRepository.findById(tree.getSourceIndividualId()).orElse(null) : null;
@@ -185,13 +266,15 @@ public class TreeCloneService {
             }
         }
 
-        // Find all trees that were cloned from this tree
-        List<FamilyTree> clonedFromThis = treeRepository.findBySourceTreeId(treeId);
+        // Find all trees that were cloned from this tree, with their root individuals in one query
+        List<FamilyTree> clonedFromThis = treeRepository.findBySourceTreeIdAndDeletedAtIsNull(treeId);
+        Map<UUID, Individual> clonedRoots = new HashMap<>();
+        for (IndividualCloneMapping mapping : cloneMappingRepository.findRootMappingsBySourceTreeId(treeId)) {
+            clonedRoots.put(mapping.getClonedTree().getId(), mapping.getClonedIndividual());
+        }
         List<TreeCloneInfoResponse.ClonedTreeInfo> clonedTrees = clonedFromThis.stream()
                 .map(clonedTree -> {
-                    Individual rootIndividual = clonedTree.getSourceIndividualId() != null ?
-                            // Find the cloned individual in the cloned tree
-                            findClonedIndividual(treeId, clonedTree.getId(), clonedTree.getSourceIndividualId()) : null;
+                    Individual rootIndividual = clonedRoots.get(clonedTree.getId());
 
                     return TreeCloneInfoResponse.ClonedTreeInfo.builder()
                             .clonedTreeId(clonedTree.getId())
@@ -204,7 +287,7 @@ public class TreeCloneService {
                 .collect(Collectors.toList());
 
         // Build list of all related trees
-        List<TreeCloneInfoResponse.RelatedTreeInfo> allRelatedTrees = buildAllRelatedTrees(tree, isClone, sourceInfo, clonedTrees);
+        List<TreeCloneInfoResponse.RelatedTreeInfo> allRelatedTrees = buildAllRelatedTrees(tree, isClone, clonedTrees);
 
         return TreeCloneInfoResponse.builder()
                 .treeId(treeId)
@@ -217,27 +300,13 @@ public class TreeCloneService {
                 .build();
     }
 
-    /**
-     * Find the cloned individual in a cloned tree based on the source individual
-     */
-    private Individual findClonedIndividual(UUID sourceTreeId, UUID clonedTreeId, UUID sourceIndividualId) {
-        // Use the clone mapping to find the corresponding individual
-        List<IndividualCloneMapping> mappings = cloneMappingRepository.findBySourceIndividualId(sourceIndividualId);
-        for (IndividualCloneMapping mapping : mappings) {
-            if (mapping.getClonedTree().getId().equals(clonedTreeId)) {
-                return mapping.getClonedIndividual();
-            }
-        }
-        return null;
-    }
-
     /**
      * Build list of all related trees for navigation
+     * All trees in the clone lineage (source, sibling clones, clones and clones of clones) come from one lookup
      */
     private List<TreeCloneInfoResponse.RelatedTreeInfo> buildAllRelatedTrees(
             FamilyTree currentTree,
             boolean isClone,
-            TreeCloneInfoResponse.SourceTreeInfo sourceInfo,
             List<TreeCloneInfoResponse.ClonedTreeInfo> clonedTrees) {
 
         List<TreeCloneInfoResponse.RelatedTreeInfo> result = new ArrayList<>();
@@ -251,39 +320,17 @@ public class TreeCloneService {
                 .clonedAt(currentTree.getClonedAt())
                 .build());
 
-        // Add source tree if this is a clone
-        if (isClone && sourceInfo != null) {
-            result.add(TreeCloneInfoResponse.RelatedTreeInfo.builder()
-                    .treeId(sourceInfo.getSourceTreeId())
-                    .treeName(sourceInfo.getSourceTreeName())
-                    .isCurrentTree(false)
-                    .isSourceTree(true)
-                    .clonedAt(sourceInfo.getClonedAt())
-                    .build());
-
-            // Also add sibling clones (other trees cloned from the same source)
-            List<FamilyTree> siblingClones = treeRepository.findBySourceTreeId(sourceInfo.getSourceTreeId());
-            for (FamilyTree sibling : siblingClones) {
-                if (!sibling.getId().equals(currentTree.getId())) {
-                    result.add(TreeCloneInfoResponse.RelatedTreeInfo.builder()
-                            .treeId(sibling.getId())
-                            .treeName(sibling.getName())
-                            .isCurrentTree(false)
-                            .isSourceTree(false)
-                            .clonedAt(sibling.getClonedAt())
-                            .build());
-                }
+        // Add every other tree of the lineage, marking the tree this one was cloned from
+        for (FamilyTree related : cloneLineageService.findRelatedTrees(currentTree.getId())) {
+            if (related.getId().equals(currentTree.getId())) {
+                continue;
             }
-        }
-
-        // Add cloned trees
-        for (TreeCloneInfoResponse.ClonedTreeInfo cloned : clonedTrees) {
             result.add(TreeCloneInfoResponse.RelatedTreeInfo.builder()
-                    .treeId(cloned.getClonedTreeId())
-                    .treeName(cloned.getClonedTreeName())
+                    .treeId(related.getId())
+                    .treeName(related.getName())
                     .isCurrentTree(false)
-                    .isSourceTree(false)
-                    .clonedAt(cloned.getClonedAt())
+                    .isSourceTree(isClone && related.getId().equals(currentTree.getSourceTreeId()))
+                    .clonedAt(related.getClonedAt())
                     .build());
         }
 
@@ -312,10 +359,12 @@ public class TreeCloneService {
         FamilyTree currentTree = individual.getTree();
 
         // Check if this individual has been cloned to other trees
-        List<IndividualCloneMapping> clonedToMappings = cloneMappingRepository.findBySourceIndividualId(individualId);
+        List<IndividualCloneMapping> clonedToMappings = cloneMappingRepository
+                .findBySourceIndividualIdWithDetails(individualId);
 
         // Check if this individual is a clone from another tree
-        Optional<IndividualCloneMapping> sourceMapping = cloneMappingRepository.findByClonedIndividualId(individualId);
+        Optional<IndividualCloneMapping> sourceMapping = cloneMappingRepository
+                .findByClonedIndividualIdWithDetails(individualId);
 
         List<IndividualCloneInfoResponse.ClonedTreeInfo> clonedToTrees = clonedToMappings.stream()
                 .map(mapping -> IndividualCloneInfoResponse.ClonedTreeInfo.builder()
@@ -362,6 +411,7 @@ public class TreeCloneService {
 
     /**
      * Build list of all tree locations where this person exists
+     * Every copy of the person across the clone lineage comes from one indexed lookup
      */
     private List<IndividualCloneInfoResponse.TreeLocation> buildAllTreeLocations(
             Individual currentIndividual,
@@ -372,45 +422,21 @@ public class TreeCloneService {
         List<IndividualCloneInfoResponse.TreeLocation> locations = new ArrayList<>();
         UUID currentTreeId = currentTree.getId();
         boolean isCurrentAClone = sourceMapping.isPresent();
+        UUID sourceIndividualId = sourceMapping.map(mapping -> mapping.getSourceIndividual().getId()).orElse(null);
 
-        // If current is a clone, add the source tree first
-        if (isCurrentAClone) {
-            IndividualCloneMapping source = sourceMapping.get();
+        for (Object[] location : cloneLineageService.findLocations(currentIndividual.getId())) {
+            UUID individualId = (UUID) location[0];
+            // Skip current individual (will be added below)
+            if (individualId.equals(currentIndividual.getId())) {
+                continue;
+            }
             locations.add(IndividualCloneInfoResponse.TreeLocation.builder()
-                    .treeId(source.getSourceTree().getId())
-                    .treeName(source.getSourceTree().getName())
-                    .individualId(source.getSourceIndividual().getId())
+                    .treeId((UUID) location[1])
+                    .treeName((String) location[2])
+                    .individualId(individualId)
                     .isCurrentTree(false)
-                    .isSourceTree(true)
+                    .isSourceTree(individualId.equals(sourceIndividualId))
                     .build());
-
-            // Also find all clones from that source (siblings of current individual)
-            List<IndividualCloneMapping> siblingClones = cloneMappingRepository
-                    .findBySourceIndividualId(source.getSourceIndividual().getId());
-            for (IndividualCloneMapping sibling : siblingClones) {
-                UUID siblingTreeId = sibling.getClonedTree().getId();
-                // Skip current tree (will be added below)
-                if (!siblingTreeId.equals(currentTreeId)) {
-                    locations.add(IndividualCloneInfoResponse.TreeLocation.builder()
-                            .treeId(siblingTreeId)
-                            .treeName(sibling.getClonedTree().getName())
-                            .individualId(sibling.getClonedIndividual().getId())
-                            .isCurrentTree(false)
-                            .isSourceTree(false)
-                            .build());
-                }
-            }
-        } else {
-            // Current is the source - add all cloned trees
-            for (IndividualCloneMapping mapping : clonedToMappings) {
-                locations.add(IndividualCloneInfoResponse.TreeLocation.builder()
-                        .treeId(mapping.getClonedTree().getId())
-                        .treeName(mapping.getClonedTree().getName())
-                        .individualId(mapping.getClonedIndividual().getId())
-                        .isCurrentTree(false)
-                        .isSourceTree(false)
-                        .build());
-            }
         }
 
         // Always add current tree
@@ -454,405 +480,25 @@ public class TreeCloneService {
     }
 
     /**
-     * Save clone mappings between original and cloned individuals
-     */
-    private void saveCloneMappings(Map<UUID, Individual> idMapping, FamilyTree sourceTree,
-                                   FamilyTree clonedTree, UUID rootIndividualId) {
-        List<IndividualCloneMapping> mappings = new ArrayList<>();
-
-        for (Map.Entry<UUID, Individual> entry : idMapping.entrySet()) {
-            UUID originalId = entry.getKey();
-            Individual clonedIndividual = entry.getValue();
-
-            Individual sourceIndividual = individualRepository.findById(originalId).orElse(null);
-            if (sourceIndividual == null) continue;
-
-            IndividualCloneMapping mapping = IndividualCloneMapping.builder()
-                    .sourceIndividual(sourceIndividual)
-                    .clonedIndividual(clonedIndividual)
-                    .sourceTree(sourceTree)
-                    .clonedTree(clonedTree)
-                    .rootIndividual(originalId.equals(rootIndividualId))
-                    .build();
-
-            mappings.add(mapping);
-        }
-
-        cloneMappingRepository.saveAll(mappings);
-    }
-
-    /**
-     * Copy user profile links from source tree to cloned tree
-     * If a source individual has a linked user account, link the same user to the cloned individual
-     */
-    private int copyUserProfiles(Map<UUID, Individual> idMapping, FamilyTree sourceTree, FamilyTree clonedTree) {
-        int copiedCount = 0;
-
-        // Get all user profiles for the source tree
-        List<UserTreeProfile> sourceProfiles = userTreeProfileRepository.findByTreeId(sourceTree.getId());
-
-        for (UserTreeProfile sourceProfile : sourceProfiles) {
-            UUID sourceIndividualId = sourceProfile.getIndividual().getId();
-
-            // Check if this individual was cloned
-            Individual clonedIndividual = idMapping.get(sourceIndividualId);
-            if (clonedIndividual != null) {
-                // Check if user already has a profile in the cloned tree
-                Optional<UserTreeProfile> existingProfile = userTreeProfileRepository
-                        .findByUserIdAndTreeId(sourceProfile.getUser().getId(), clonedTree.getId());
-
-                if (existingProfile.isEmpty()) {
-                    // Create new profile linking the same user to the cloned individual
-                    UserTreeProfile newProfile = UserTreeProfile.builder()
-                            .user(sourceProfile.getUser())
-                            .tree(clonedTree)
-                            .individual(clonedIndividual)
-                            .build();
-
-                    userTreeProfileRepository.save(newProfile);
-                    copiedCount++;
-                    log.debug("Copied user profile for user {} to cloned individual {} in tree {}",
-                            sourceProfile.getUser().getUsername(), clonedIndividual.getId(), clonedTree.getId());
-                }
-            }
-        }
-
-        return copiedCount;
-    }
-
-    /**
-     * Collect all related individuals: ancestors, descendants, and their spouses
-     */
-    private Set<UUID> collectAllRelatedIndividuals(UUID rootIndividualId) {
-        Set<UUID> visited = new HashSet<>();
-        visited.add(rootIndividualId);
-
-        // Collect ancestors (traverse up)
-        collectAncestors(rootIndividualId, visited);
-
-        // Collect descendants (traverse down)
-        collectDescendants(rootIndividualId, visited);
-
-        // Collect spouses of root individual
-        collectSpouses(rootIndividualId, visited);
-
-        return visited;
-    }
-
-    /**
-     * Recursively collect all ancestors
+     * Check if the parent-child links within a branch form a cycle.
+     * Links are added one by one, each checked against the links before it (same check as creating a relationship).
+     * @param edges rows of [individual1 id, individual2 id, relationship type]
      */
-    private void collectAncestors(UUID individualId, Set<UUID> visited) {
-        List<Relationship> parentRelationships = relationshipRepository.findParents(individualId);
-
-        for (Relationship rel : parentRelationships) {
-            UUID parentId = rel.getIndividual1().getId();
-            if (!visited.contains(parentId)) {
-                visited.add(parentId);
-                // Get spouses of this ancestor
-                collectSpouses(parentId, visited);
-                // Continue up the tree
-                collectAncestors(parentId, visited);
+    private boolean hasCircularLink(List<Object[]> edges, Set<UUID> branch) {
+        TreeGraph graph = TreeGraph.fromEdges(Collections.emptyList());
+        for (Object[] edge : edges) {
+            UUID parentId = (UUID) edge[0];
+            UUID childId = (UUID) edge[1];
+            if (!TreeGraph.isParentType((RelationshipType) edge[2])
+                    || !branch.contains(parentId) || !branch.contains(childId)) {
+                continue;
             }
-        }
-    }
-
-    /**
-     * Recursively collect all descendants
-     */
-    private void collectDescendants(UUID individualId, Set<UUID> visited) {
-        List<Relationship> childRelationships = relationshipRepository.findChildren(individualId);
-
-        for (Relationship rel : childRelationships) {
-            UUID childId = rel.getIndividual2().getId();
-            if (!visited.contains(childId)) {
-                visited.add(childId);
-                // Get spouses of this descendant
-                collectSpouses(childId, visited);
-                // Continue down the tree
-                collectDescendants(childId, visited);
+            if (graph.wouldCreateCycle(parentId, childId)) {
+                return true;
             }
+            graph.addParentLink(parentId, childId);
         }
-    }
-
-    /**
-     * Collect spouses/partners of an individual
-     */
-    private void collectSpouses(UUID individualId, Set<UUID> visited) {
-        List<Relationship> spouseRelationships = relationshipRepository.findSpouses(individualId);
-
-        for (Relationship rel : spouseRelationships) {
-            UUID spouseId = rel.getIndividual1().getId().equals(individualId)
-                    ? rel.getIndividual2().getId()
-                    : rel.getIndividual1().getId();
-
-            if (!visited.contains(spouseId)) {
-                visited.add(spouseId);
-                // Also get descendants of this spouse (children they have with root's family)
-                collectDescendants(spouseId, visited);
-            }
-        }
-    }
-
-    /**
-     * Clone individuals to the new tree
-     */
-    private Map<UUID, Individual> cloneIndividuals(Set<UUID> individualIds, FamilyTree newTree) {
-        Map<UUID, Individual> idMapping = new HashMap<>();
-
-        List<Individual> originals = individualRepository.findAllById(individualIds);
-
-        for (Individual original : originals) {
-            Individual cloned = Individual.builder()
-                    .tree(newTree)
-                    .givenName(original.getGivenName())
-                    .surname(original.getSurname())
-                    .suffix(original.getSuffix())
-                    .gender(original.getGender())
-                    .birthDate(original.getBirthDate())
-                    .birthPlace(original.getBirthPlace())
-                    .deathDate(original.getDeathDate())
-                    .deathPlace(original.getDeathPlace())
-                    .biography(original.getBiography())
-                    .notes(original.getNotes())
-                    .facebookLink(original.getFacebookLink())
-                    .phoneNumber(original.getPhoneNumber())
-                    // profilePictureUrl will be updated when cloning media
-                    .build();
-
-            cloned = individualRepository.save(cloned);
-            idMapping.put(original.getId(), cloned);
-        }
-
-        return idMapping;
-    }
-
-    /**
-     * Clone relationships between cloned individuals
-     */
-    private List<Relationship> cloneRelationships(
-            Set<UUID> originalIndividualIds,
-            Map<UUID, Individual> idMapping,
-            FamilyTree newTree) {
-
-        List<Relationship> clonedRelationships = new ArrayList<>();
-
-        // Get all relationships where both individuals are in our clone set
-        List<Relationship> allRelationships = relationshipRepository.findByTreeId(
-                newTree.getSourceTreeId());
-
-        Set<String> processedPairs = new HashSet<>();
-
-        for (Relationship original : allRelationships) {
-            UUID ind1Id = original.getIndividual1().getId();
-            UUID ind2Id = original.getIndividual2().getId();
-
-            // Only clone if both individuals are in our set
-            if (originalIndividualIds.contains(ind1Id) && originalIndividualIds.contains(ind2Id)) {
-                // Create a unique key for this relationship to avoid duplicates
-                String pairKey = createPairKey(ind1Id, ind2Id, original.getType());
-                if (processedPairs.contains(pairKey)) {
-                    continue;
-                }
-                processedPairs.add(pairKey);
-
-                Individual newInd1 = idMapping.get(ind1Id);
-                Individual newInd2 = idMapping.get(ind2Id);
-
-                if (newInd1 != null && newInd2 != null) {
-                    Relationship cloned = Relationship.builder()
-                            .tree(newTree)
-                            .individual1(newInd1)
-                            .individual2(newInd2)
-                            .type(original.getType())
-                            .startDate(original.getStartDate())
-                            .endDate(original.getEndDate())
-                            .build();
-
-                    cloned = relationshipRepository.save(cloned);
-                    clonedRelationships.add(cloned);
-                }
-            }
-        }
-
-        return clonedRelationships;
-    }
-
-    /**
-     * Clone media files from old individuals to new individuals
-     */
-    private int cloneMedia(Map<UUID, Individual> idMapping, UUID newTreeId) {
-        int totalCloned = 0;
-
-        for (Map.Entry<UUID, Individual> entry : idMapping.entrySet()) {
-            UUID originalId = entry.getKey();
-            Individual newIndividual = entry.getValue();
-
-            // Get all media for original individual
-            List<Media> originalMedia = mediaRepository.findByIndividualId(originalId);
-
-            for (Media original : originalMedia) {
-                try {
-                    // Download original file from MinIO
-                    InputStream fileStream = minioService.downloadFile(original.getStoragePath());
-
-                    // Generate new storage path
-                    String newPath = minioService.generateObjectName(
-                            newTreeId,
-                            newIndividual.getId(),
-                            original.getFilename()
-                    );
-
-                    // Upload to new location
-                    minioService.uploadFile(
-                            fileStream,
-                            newPath,
-                            original.getMimeType(),
-                            original.getFileSize()
-                    );
-
-                    // Clone thumbnail if it exists (for images)
-                    if (isImage(original.getMimeType())) {
-                        cloneThumbnail(original.getStoragePath(), newPath);
-                    }
-
-                    // Create new media record
-                    Media clonedMedia = Media.builder()
-                            .individual(newIndividual)
-                            .type(original.getType())
-                            .filename(original.getFilename())
-                            .storagePath(newPath)
-                            .caption(original.getCaption())
-                            .fileSize(original.getFileSize())
-                            .mimeType(original.getMimeType())
-                            .build();
-
-                    mediaRepository.save(clonedMedia);
-                    totalCloned++;
-
-                } catch (Exception e) {
-                    log.error("Failed to clone media file {} for individual {}",
-                            original.getFilename(), originalId, e);
-                    // Continue with other files
-                }
-            }
-
-            // Clone avatar separately
-            cloneAvatar(originalId, newIndividual, newTreeId);
-        }
-
-        return totalCloned;
-    }
-
-    /**
-     * Clone thumbnail for an image
-     */
-    private void cloneThumbnail(String originalPath, String newPath) {
-        try {
-            String originalThumbPath = minioService.generateThumbnailName(originalPath);
-            if (minioService.fileExists(originalThumbPath)) {
-                // Get file metadata FIRST
-                StatObjectResponse stat = minioService.getFileMetadata(originalThumbPath);
-                long fileSize = stat.size();
-                String contentType = stat.contentType();
-
-                // Then download
-                InputStream thumbStream = minioService.downloadFile(originalThumbPath);
-                String newThumbPath = minioService.generateThumbnailName(newPath);
-
-                // Upload with correct file size
-                minioService.uploadFile(thumbStream, newThumbPath, contentType != null ? contentType : "image/jpeg", fileSize);
-                log.debug("Cloned thumbnail from {} to {}", originalThumbPath, newThumbPath);
-            }
-        } catch (Exception e) {
-            log.warn("Could not clone thumbnail for {}: {}", originalPath, e.getMessage());
-        }
-    }
-
-    /**
-     * Check if MIME type is an image
-     */
-    private boolean isImage(String mimeType) {
-        if (mimeType == null) return false;
-        String lower = mimeType.toLowerCase();
-        return lower.startsWith("image/");
-    }
-
-    /**
-     * Clone avatar image for an individual
-     */
-    private void cloneAvatar(UUID originalId, Individual newIndividual, UUID newTreeId) {
-        try {
-            Individual original = individualRepository.findById(originalId).orElse(null);
-            if (original == null || original.getProfilePictureUrl() == null) {
-                log.debug("No avatar to clone for individual {}", originalId);
-                return;
-            }
-
-            // Skip if already has avatar (set in some other way)
-            if (newIndividual.getProfilePictureUrl() != null) {
-                log.debug("Individual {} already has avatar, skipping", newIndividual.getId());
-                return;
-            }
-
-            // List all files in avatar directory to find the actual avatar file
-            String avatarDir = "avatars/individuals/" + originalId + "/";
-            log.debug("Looking for avatar files in directory: {}", avatarDir);
-
-            List<String> avatarFiles = minioService.listFiles(avatarDir);
-            log.debug("Found {} files in avatar directory for individual {}", avatarFiles.size(), originalId);
-
-            for (String avatarFile : avatarFiles) {
-                // Skip if not an avatar file (e.g., might have other files)
-                if (!avatarFile.contains("/avatar.") && !avatarFile.contains("/avatar")) {
-                    continue;
-                }
-
-                log.debug("Found avatar file: {}", avatarFile);
-
-                try {
-                    // Get file metadata FIRST (before downloading)
-                    StatObjectResponse stat = minioService.getFileMetadata(avatarFile);
-                    long fileSize = stat.size();
-                    String contentType = stat.contentType();
-
-                    log.debug("Avatar metadata: size={}, type={}", fileSize, contentType);
-
-                    // Download original avatar
-                    InputStream avatarStream = minioService.downloadFile(avatarFile);
-
-                    // Extract extension from original file
-                    String extension = "";
-                    int dotIndex = avatarFile.lastIndexOf('.');
-                    if (dotIndex > 0) {
-                        extension = avatarFile.substring(dotIndex);
-                    }
-
-                    // Create new avatar path (convert to lowercase extension for consistency)
-                    String newAvatarPath = "avatars/individuals/" + newIndividual.getId() + "/avatar" + extension.toLowerCase();
-
-                    // Upload to new location
-                    minioService.uploadFile(avatarStream, newAvatarPath, contentType, fileSize);
-
-                    // Update new individual with avatar URL
-                    String avatarUrl = "/api/trees/" + newTreeId + "/individuals/" +
-                            newIndividual.getId() + "/avatar";
-                    newIndividual.setProfilePictureUrl(avatarUrl);
-                    individualRepository.save(newIndividual);
-
-                    log.info("Cloned avatar for individual {} -> {} at path {}",
-                            originalId, newIndividual.getId(), newAvatarPath);
-                    return; // Successfully cloned, exit
-                } catch (Exception e) {
-                    log.warn("Failed to clone avatar file {} for individual {}: {}",
-                            avatarFile, originalId, e.getMessage());
-                }
-            }
-
-            log.debug("No avatar file found for individual {} in directory {}", originalId, avatarDir);
-        } catch (Exception e) {
-            log.warn("Could not clone avatar for individual {}: {}", originalId, e.getMessage());
-        }
+        return false;
     }
 
     /**
@@ -892,7 +538,7 @@ public class TreeCloneService {
 
         // If this is a cloned tree, check if user has access to the source tree
         if (tree.getSourceTreeId() != null) {
-            FamilyTree sourceTree = treeRepository.findById(tree.getSourceTreeId()).orElse(null);
+            FamilyTree sourceTree = treeRepository.findByIdAndDeletedAtIsNull(tree.getSourceTreeId()).orElse(null);
             if (sourceTree != null) {
                 if (userTreeProfileRepository.existsByUserIdAndTreeId(user.getId(), sourceTree.getId())) {
                     log.debug("User has profile in source tree, granting access");
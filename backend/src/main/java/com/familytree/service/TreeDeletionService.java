@@ -0,0 +1,288 @@
+package com.familytree.service;
+
+import com.familytree.model.FamilyTree;
+import com.familytree.model.TreeDeletionJob;
+import com.familytree.model.TreeDeletionStatus;
+import com.familytree.repository.IndividualRepository;
+import com.familytree.repository.TreeDeletionJobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Service purging deleted trees in the background.
+ *
+ * Deleting a tree only marks it deleted, which hides it at once. A background job then removes
+ * its stored files with bulk MinIO deletes and its rows with chunked set-based DELETE statements,
+ * each chunk in its own short transaction. Every step is idempotent, so unfinished jobs are simply
+ * run again when the application starts, failed ones until they have been started max-attempts times.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TreeDeletionService {
+
+    /**
+     * Purge steps in foreign key order: label, DELETE statement for one chunk.
+     * Each statement takes the tree ID (:treeId); statements over many rows also take the chunk size (:limit).
+     */
+    private static final String[][] PURGE_STEPS = {
+        {"Clone mappings",
+            "DELETE FROM individual_clone_mappings WHERE id IN (SELECT id FROM individual_clone_mappings " +
+            "WHERE source_tree_id = :treeId OR cloned_tree_id = :treeId LIMIT :limit)"},
+        // Copy-on-write clones of the tree's individuals get their own biography and notes before these are deleted
+        {"Copy-on-write clones",
+            "WITH chunk AS (SELECT o.individual_id, o.source_individual_id FROM individual_overlays o " +
+            "JOIN individuals s ON s.id = o.source_individual_id WHERE s.tree_id = :treeId LIMIT :limit), " +
+            "copied AS (UPDATE individuals c SET biography = s.biography, notes = s.notes FROM chunk k " +
+            "JOIN individuals s ON s.id = k.source_individual_id WHERE c.id = k.individual_id) " +
+            "DELETE FROM individual_overlays WHERE individual_id IN (SELECT individual_id FROM chunk)"},
+        {"Overlays",
+            "DELETE FROM individual_overlays WHERE individual_id IN (SELECT individual_id FROM individual_overlays " +
+            "WHERE tree_id = :treeId LIMIT :limit)"},
+        {"Individual lineages",
+            "DELETE FROM individual_lineages WHERE individual_id IN (SELECT individual_id FROM individual_lineages " +
+            "WHERE tree_id = :treeId LIMIT :limit)"},
+        {"Tree lineage",
+            "DELETE FROM tree_lineages WHERE tree_id = :treeId"},
+        {"Tree statistics",
+            "DELETE FROM tree_stats WHERE tree_id = :treeId"},
+        {"Quality findings",
+            "DELETE FROM tree_quality_findings WHERE id IN (SELECT id FROM tree_quality_findings " +
+            "WHERE tree_id = :treeId LIMIT :limit)"},
+        {"Quality scan",
+            "DELETE FROM tree_quality_scans WHERE tree_id = :treeId"},
+        {"User profiles",
+            "DELETE FROM user_tree_profiles WHERE id IN (SELECT id FROM user_tree_profiles " +
+            "WHERE tree_id = :treeId LIMIT :limit)"},
+        {"Permissions",
+            "DELETE FROM tree_permissions WHERE id IN (SELECT id FROM tree_permissions " +
+            "WHERE tree_id = :treeId LIMIT :limit)"},
+        {"Invitations",
+            "DELETE FROM tree_invitations WHERE id IN (SELECT id FROM tree_invitations " +
+            "WHERE tree_id = :treeId LIMIT :limit)"},
+        {"Merge previews",
+            "DELETE FROM merge_previews WHERE id IN (SELECT id FROM merge_previews " +
+            "WHERE target_tree_id = :treeId OR source_tree_id = :treeId LIMIT :limit)"},
+        // Each chunk releases its references to the stored files in the same statement
+        {"Media",
+            "WITH chunk AS (SELECT m.id, m.storage_path FROM media m JOIN individuals i ON i.id = m.individual_id " +
+            "WHERE i.tree_id = :treeId LIMIT :limit), " +
+            "released AS (UPDATE media_blobs b SET ref_count = b.ref_count - c.n FROM (SELECT storage_path, " +
+            "COUNT(*) AS n FROM chunk GROUP BY storage_path) c WHERE b.storage_path = c.storage_path) " +
+            "DELETE FROM media WHERE id IN (SELECT id FROM chunk)"},
+        {"Events",
+            "DELETE FROM events WHERE id IN (SELECT e.id FROM events e JOIN individuals i ON i.id = e.individual_id " +
+            "WHERE i.tree_id = :treeId LIMIT :limit)"},
+        {"GEDCOM mappings",
+            "DELETE FROM gedcom_xref_mappings WHERE id IN (SELECT id FROM gedcom_xref_mappings " +
+            "WHERE tree_id = :treeId LIMIT :limit)"},
+        {"Relationships",
+            "DELETE FROM relationships WHERE id IN (SELECT id FROM relationships " +
+            "WHERE tree_id = :treeId LIMIT :limit)"},
+        {"Individuals",
+            "DELETE FROM individuals WHERE id IN (SELECT id FROM individuals " +
+            "WHERE tree_id = :treeId LIMIT :limit)"},
+        {"Tree admins",
+            "DELETE FROM tree_admins WHERE tree_id = :treeId"},
+        {"Tree",
+            "DELETE FROM family_trees WHERE id = :treeId"}
+    };
+
+    private final TreeDeletionJobRepository jobRepository;
+    private final MediaBlobService mediaBlobService;
+    private final IndividualRepository individualRepository;
+    private final MinioService minioService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskExecutor taskExecutor;
+
+    @Value("${tree.deletion.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${tree.deletion.max-attempts:3}")
+    private int maxAttempts;
+
+    /**
+     * Queue the purge of a tree that has been marked deleted.
+     * The job starts once the current transaction commits.
+     * @return the deletion job
+     */
+    public TreeDeletionJob scheduleDeletion(FamilyTree tree, String userEmail) {
+        TreeDeletionJob job = jobRepository.save(TreeDeletionJob.builder()
+                .treeId(tree.getId())
+                .treeName(tree.getName())
+                .requestedBy(userEmail)
+                .status(TreeDeletionStatus.PENDING)
+                .stage("Queued")
+                .build());
+
+        UUID jobId = job.getId();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // The deleted mark must be committed before rows are purged in other transactions
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    start(jobId);
+                }
+            });
+        } else {
+            start(jobId);
+        }
+
+        log.info("Queued deletion job {} for tree {} by user {}", jobId, tree.getId(), userEmail);
+        return job;
+    }
+
+    /**
+     * Resume deletion jobs that did not finish before the last shutdown. Jobs that have already been started
+     * max-attempts times are left (or marked) FAILED for an admin to look into.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        List<TreeDeletionJob> unfinished = jobRepository.findByStatusIn(EnumSet.of(
+                TreeDeletionStatus.PENDING, TreeDeletionStatus.RUNNING, TreeDeletionStatus.FAILED));
+        for (TreeDeletionJob job : unfinished) {
+            UUID jobId = job.getId();
+            if (job.getAttempts() >= maxAttempts) {
+                if (job.getStatus() != TreeDeletionStatus.FAILED) {
+                    // Interrupted on every attempt so far
+                    updateJob(jobId, j -> {
+                        j.setStatus(TreeDeletionStatus.FAILED);
+                        j.setErrorMessage("Interrupted by a server restart " + j.getAttempts() + " times");
+                    });
+                }
+                log.warn("Not resuming deletion job {} for tree {}: started {} times", jobId, job.getTreeId(),
+                        job.getAttempts());
+                continue;
+            }
+
+            log.info("Resuming deletion job {} for tree {} (attempt {} of {})", jobId, job.getTreeId(),
+                    job.getAttempts() + 1, maxAttempts);
+            start(jobId);
+        }
+    }
+
+    private void start(UUID jobId) {
+        try {
+            taskExecutor.execute(() -> runPurge(jobId));
+        } catch (TaskRejectedException e) {
+            // The tree stays hidden, the job is resumed on the next startup
+            log.warn("Could not start deletion job {} now: {}", jobId, e.getMessage());
+        }
+    }
+
+    private void runPurge(UUID jobId) {
+        TreeDeletionJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            log.warn("Deletion job {} not found", jobId);
+            return;
+        }
+        UUID treeId = job.getTreeId();
+
+        try {
+            updateJob(jobId, j -> {
+                j.setStatus(TreeDeletionStatus.RUNNING);
+                j.setStage("Removing files");
+                j.setErrorMessage(null);
+                j.setAttempts(j.getAttempts() + 1);
+            });
+
+            // Files go first: their paths are read from the rows that are purged afterwards
+            List<String> objects = collectObjects(treeId);
+            List<String> failed = objects.isEmpty() ? Collections.emptyList() : minioService.deleteFiles(objects);
+            updateJob(jobId, j -> {
+                j.setObjectsTotal(objects.size());
+                j.setObjectsDeleted(objects.size() - failed.size());
+                j.setObjectsFailed(failed.size());
+            });
+
+            for (String[] step : PURGE_STEPS) {
+                updateJob(jobId, j -> j.setStage(step[0]));
+                purgeStep(jobId, treeId, step[1]);
+            }
+
+            // Media files no other tree references anymore
+            updateJob(jobId, j -> j.setStage("Removing media files"));
+            int mediaObjects = mediaBlobService.collectGarbage();
+            updateJob(jobId, j -> {
+                j.setObjectsTotal(j.getObjectsTotal() + mediaObjects);
+                j.setObjectsDeleted(j.getObjectsDeleted() + mediaObjects);
+            });
+
+            updateJob(jobId, j -> {
+                j.setStatus(TreeDeletionStatus.COMPLETED);
+                j.setStage("Done");
+                j.setCompletedAt(LocalDateTime.now());
+            });
+            log.info("Tree {} purged by deletion job {}", treeId, jobId);
+
+        } catch (Exception e) {
+            log.error("Deletion job {} for tree {} failed", jobId, treeId, e);
+            updateJob(jobId, j -> {
+                j.setStatus(TreeDeletionStatus.FAILED);
+                j.setErrorMessage(e.getMessage());
+            });
+        }
+    }
+
+    /**
+     * Collect the stored files of a tree: the avatars of its individuals and its avatar atlases.
+     * Media files are shared by content across trees and are removed once the purge released their last reference.
+     */
+    private List<String> collectObjects(UUID treeId) throws Exception {
+        List<String> objects = new ArrayList<>();
+        for (Object[] avatar : individualRepository.findAvatarsByTreeId(treeId)) {
+            String objectKey = (String) avatar[1];
+            if (objectKey != null) {
+                objects.add(objectKey);
+                objects.addAll(imageDerivativeService.derivativeNames(objectKey, (String) avatar[5], (String) avatar[6]));
+            } else {
+                // Avatars uploaded before object keys were recorded: avatars/individuals/{id}/avatar.{extension}
+                objects.addAll(minioService.listFiles("avatars/individuals/" + avatar[0] + "/"));
+            }
+        }
+
+        objects.addAll(minioService.listFiles(AvatarAtlasService.atlasPrefix(treeId)));
+        return objects;
+    }
+
+    /**
+     * Run a DELETE statement chunk by chunk until no row is left
+     */
+    private void purgeStep(UUID jobId, UUID treeId, String sql) {
+        boolean chunked = sql.contains(":limit");
+        int deleted;
+        do {
+            deleted = transactionTemplate.execute(status -> {
+                javax.persistence.Query query = entityManager.createNativeQuery(sql).setParameter("treeId", treeId);
+                if (chunked) {
+                    query.setParameter("limit", chunkSize);
+                }
+                int count = query.executeUpdate();
+                if (count > 0) {
+                    jobRepository.findById(jobId).ifPresent(j -> j.setRowsDeleted(j.getRowsDeleted() + count));
+                }
+                return count;
+            });
+        } while (chunked && deleted >= chunkSize);
+    }
+
+    private void updateJob(UUID jobId, Consumer<TreeDeletionJob> update) {
+        transactionTemplate.executeWithoutResult(status -> jobRepository.findById(jobId).ifPresent(update));
+    }
+}
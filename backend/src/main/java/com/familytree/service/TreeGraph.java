@@ -0,0 +1,221 @@
+package com.familytree.service;
+
+import com.familytree.model.Individual;
+import com.familytree.model.Relationship;
+import com.familytree.model.RelationshipType;
+
+import java.util.*;
+
+/**
+ * In-memory view of a tree's family structure, built from a single load of its
+ * individuals and relationships. Lookups of parents, children and spouses are
+ * map reads instead of one repository query per step.
+ */
+class TreeGraph {
+
+    private final Map<UUID, Individual> individuals = new LinkedHashMap<>();
+    private final Map<UUID, List<UUID>> parents = new HashMap<>();
+    private final Map<UUID, List<UUID>> children = new HashMap<>();
+    private final Map<UUID, List<UUID>> spouses = new HashMap<>();
+
+    TreeGraph(Collection<Individual> individuals, Collection<Relationship> relationships) {
+        for (Individual individual : individuals) {
+            this.individuals.put(individual.getId(), individual);
+        }
+
+        for (Relationship rel : relationships) {
+            addEdge(rel.getIndividual1().getId(), rel.getIndividual2().getId(), rel.getType());
+        }
+    }
+
+    private TreeGraph() {
+    }
+
+    /**
+     * Build a structure-only graph (no individual entities) from relationship edge rows
+     * @param edges rows of [individual1 id, individual2 id, relationship type]
+     */
+    static TreeGraph fromEdges(List<Object[]> edges) {
+        TreeGraph graph = new TreeGraph();
+        for (Object[] edge : edges) {
+            graph.addEdge((UUID) edge[0], (UUID) edge[1], (RelationshipType) edge[2]);
+        }
+        return graph;
+    }
+
+    private void addEdge(UUID id1, UUID id2, RelationshipType type) {
+        if (isParentType(type)) {
+            // individual1 is the parent of individual2
+            children.computeIfAbsent(id1, k -> new ArrayList<>()).add(id2);
+            parents.computeIfAbsent(id2, k -> new ArrayList<>()).add(id1);
+        } else if (type == RelationshipType.SPOUSE || type == RelationshipType.PARTNER) {
+            spouses.computeIfAbsent(id1, k -> new ArrayList<>()).add(id2);
+            spouses.computeIfAbsent(id2, k -> new ArrayList<>()).add(id1);
+        }
+    }
+
+    /**
+     * Record a parent-child link (e.g. one about to be saved), so later checks see it
+     */
+    void addParentLink(UUID parentId, UUID childId) {
+        addEdge(parentId, childId, RelationshipType.PARENT_CHILD);
+    }
+
+    /**
+     * Check if a relationship type links a parent (individual1) to a child (individual2)
+     */
+    static boolean isParentType(RelationshipType type) {
+        return type == RelationshipType.PARENT_CHILD
+                || type == RelationshipType.MOTHER_CHILD
+                || type == RelationshipType.FATHER_CHILD
+                || type == RelationshipType.ADOPTED_PARENT_CHILD
+                || type == RelationshipType.STEP_PARENT_CHILD;
+    }
+
+    Individual getIndividual(UUID id) {
+        return individuals.get(id);
+    }
+
+    Collection<Individual> getIndividuals() {
+        return individuals.values();
+    }
+
+    boolean contains(UUID id) {
+        return individuals.containsKey(id);
+    }
+
+    int size() {
+        return individuals.size();
+    }
+
+    List<UUID> getParents(UUID id) {
+        return parents.getOrDefault(id, Collections.emptyList());
+    }
+
+    List<UUID> getChildren(UUID id) {
+        return children.getOrDefault(id, Collections.emptyList());
+    }
+
+    List<UUID> getSpouses(UUID id) {
+        return spouses.getOrDefault(id, Collections.emptyList());
+    }
+
+    /**
+     * Check if potentialAncestorId is reachable from id by following parent links.
+     * Each individual is visited once, so ancestors shared through several lines (pedigree
+     * collapse) are expanded once and a cycle in invalid data cannot loop.
+     */
+    boolean isAncestor(UUID id, UUID potentialAncestorId) {
+        Set<UUID> visited = new HashSet<>();
+        Deque<UUID> queue = new ArrayDeque<>();
+        visited.add(id);
+        queue.add(id);
+        while (!queue.isEmpty()) {
+            for (UUID parentId : getParents(queue.poll())) {
+                if (parentId.equals(potentialAncestorId)) {
+                    return true;
+                }
+                if (visited.add(parentId)) {
+                    queue.add(parentId);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if linking parentId as a parent of childId would close a parent-child cycle,
+     * i.e. if the child is the parent or one of the parent's ancestors
+     */
+    boolean wouldCreateCycle(UUID parentId, UUID childId) {
+        return parentId.equals(childId) || isAncestor(parentId, childId);
+    }
+
+    /**
+     * Count the generations on the longest parent-to-child line of the graph.
+     * Parents are visited before their children, so individuals on a parent-child cycle
+     * (invalid data) and their descendants are left out instead of looping.
+     */
+    int countGenerations() {
+        Map<UUID, Integer> unvisitedParents = new HashMap<>();
+        for (Map.Entry<UUID, List<UUID>> entry : parents.entrySet()) {
+            unvisitedParents.put(entry.getKey(), entry.getValue().size());
+        }
+
+        Map<UUID, Integer> depths = new HashMap<>();
+        Deque<UUID> ready = new ArrayDeque<>();
+        for (UUID id : children.keySet()) {
+            if (!parents.containsKey(id)) {
+                depths.put(id, 1);
+                ready.add(id);
+            }
+        }
+
+        int generations = 0;
+        while (!ready.isEmpty()) {
+            UUID id = ready.poll();
+            int depth = depths.get(id);
+            generations = Math.max(generations, depth);
+            for (UUID childId : getChildren(id)) {
+                depths.merge(childId, depth + 1, Math::max);
+                if (unvisitedParents.merge(childId, -1, Integer::sum) == 0) {
+                    ready.add(childId);
+                }
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * Collect the branch of a person: all ancestors and descendants, the spouses of everyone
+     * on those lines, and the descendants of those spouses.
+     *
+     * Each person is expanded at most once per direction (up, down, as spouse), so a parent first
+     * reached as the other parent's spouse still has their own ancestors collected.
+     */
+    Set<UUID> collectBranch(UUID rootId) {
+        Set<UUID> branch = new LinkedHashSet<>();
+        Set<UUID> expandedUp = new HashSet<>();
+        Set<UUID> expandedDown = new HashSet<>();
+        Set<UUID> expandedAsSpouse = new HashSet<>();
+
+        Deque<UUID> up = new ArrayDeque<>();
+        Deque<UUID> down = new ArrayDeque<>();
+        Deque<UUID> spouseQueue = new ArrayDeque<>();
+
+        branch.add(rootId);
+        up.add(rootId);
+        down.add(rootId);
+        spouseQueue.addAll(getSpouses(rootId));
+
+        while (!up.isEmpty() || !down.isEmpty() || !spouseQueue.isEmpty()) {
+            if (!up.isEmpty()) {
+                UUID id = up.poll();
+                if (expandedUp.add(id)) {
+                    for (UUID parentId : getParents(id)) {
+                        branch.add(parentId);
+                        up.add(parentId);
+                        spouseQueue.addAll(getSpouses(parentId));
+                    }
+                }
+            } else if (!down.isEmpty()) {
+                UUID id = down.poll();
+                if (expandedDown.add(id)) {
+                    for (UUID childId : getChildren(id)) {
+                        branch.add(childId);
+                        down.add(childId);
+                        spouseQueue.addAll(getSpouses(childId));
+                    }
+                }
+            } else {
+                UUID id = spouseQueue.poll();
+                branch.add(id);
+                if (expandedAsSpouse.add(id)) {
+                    // Children the spouse has (with this family or otherwise)
+                    down.add(id);
+                }
+            }
+        }
+        return branch;
+    }
+}
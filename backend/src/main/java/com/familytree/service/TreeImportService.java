@@ -0,0 +1,618 @@
+package com.familytree.service;
+
+import com.familytree.dto.archive.*;
+import com.familytree.exception.BadRequestException;
+import com.familytree.exception.ResourceNotFoundException;
+import com.familytree.exception.UnauthorizedException;
+import com.familytree.model.FamilyTree;
+import com.familytree.model.MediaBlob;
+import com.familytree.model.TreeImportJob;
+import com.familytree.model.TreeImportStatus;
+import com.familytree.model.TreeLineage;
+import com.familytree.model.User;
+import com.familytree.repository.FamilyTreeRepository;
+import com.familytree.repository.TreeImportJobRepository;
+import com.familytree.repository.TreeLineageRepository;
+import com.familytree.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Service importing tree archives (see TreeArchiveService) into new trees.
+ *
+ * The uploaded archive is streamed to storage, then loaded by a background job that reads it entry by
+ * entry and inserts records in chunks with JDBC batches. Each chunk commits together with the job's
+ * checkpoint (entry index and records loaded), so a job interrupted by a restart or a failure continues
+ * from the last committed chunk. Imported records get IDs derived from the job ID and their archived ID,
+ * which keeps references between records without holding an ID map in memory.
+ *
+ * Media files are shared by content: a file already stored on this instance is referenced instead of
+ * being imported again.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TreeImportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] ZIP_SIGNATURE = {'P', 'K', 3, 4};
+    // Fallback for avatars whose content type was not recorded
+    private static final Map<String, String> AVATAR_CONTENT_TYPES = Map.of(
+            ".png", "image/png", ".gif", "image/gif", ".webp", "image/webp", ".bmp", "image/bmp");
+
+    private static final String INSERT_INDIVIDUAL =
+            "INSERT INTO individuals (id, tree_id, given_name, middle_name, surname, suffix, gender, birth_date, " +
+            "birth_place, death_date, death_place, biography, notes, facebook_link, phone_number, " +
+            "avatar_content_type, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+    private static final String INSERT_INDIVIDUAL_LINEAGE =
+            "INSERT INTO individual_lineages (individual_id, lineage_id, tree_id) VALUES (?, ?, ?) " +
+            "ON CONFLICT (individual_id) DO NOTHING";
+    private static final String INSERT_RELATIONSHIP =
+            "INSERT INTO relationships (id, tree_id, individual1_id, individual2_id, type, start_date, end_date, " +
+            "created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+    private static final String INSERT_EVENT =
+            "INSERT INTO events (id, individual_id, type, event_date, place, description, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+    // Users are matched by email, profiles of users unknown here are dropped
+    private static final String INSERT_PROFILE =
+            "INSERT INTO user_tree_profiles (id, user_id, tree_id, individual_id, created_at) " +
+            "SELECT ?, u.id, ?, ?, ? FROM users u WHERE u.email = ? ON CONFLICT DO NOTHING";
+    private static final String INSERT_MEDIA =
+            "INSERT INTO media (id, individual_id, type, filename, storage_path, caption, file_size, mime_type, " +
+            "checksum, derivative_format, derivative_widths, uploaded_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+    private static final String UPDATE_AVATAR =
+            "UPDATE individuals SET profile_picture_url = ?, avatar_object_key = ?, avatar_hash = ?, " +
+            "avatar_size = ?, avatar_content_type = COALESCE(avatar_content_type, ?) WHERE id = ?";
+
+    private final TreeImportJobRepository jobRepository;
+    private final FamilyTreeRepository treeRepository;
+    private final TreeLineageRepository treeLineageRepository;
+    private final UserRepository userRepository;
+    private final MediaBlobService mediaBlobService;
+    private final TreeStatsService treeStatsService;
+    private final MinioService minioService;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskExecutor taskExecutor;
+
+    @Value("${tree.archive.import.max-size:5GB}")
+    private DataSize maxArchiveSize;
+
+    @Value("${tree.archive.import.chunk-size:500}")
+    private int chunkSize;
+
+    /**
+     * Store an uploaded tree archive and queue its import into a new tree.
+     * Only system administrators can import, as only they can create trees.
+     * @param body the archive, streamed to storage as it arrives
+     * @param fileName the archive file name
+     * @param userEmail the importing user, who becomes the owner of the new tree
+     * @return the import job
+     */
+    public TreeImportJobResponse startImport(InputStream body, String fileName, String userEmail) {
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+        if (!user.isAdmin()) {
+            throw new UnauthorizedException("Only system administrators can import tree archives");
+        }
+
+        TreeImportJob job = transactionTemplate.execute(status -> {
+            TreeImportJob newJob = jobRepository.save(TreeImportJob.builder()
+                    .fileName(fileName)
+                    .requestedBy(userEmail)
+                    .status(TreeImportStatus.UPLOADING)
+                    .stage("Uploading")
+                    .build());
+            newJob.setArchiveObject("imports/" + newJob.getId() + ".zip");
+            return newJob;
+        });
+        UUID jobId = job.getId();
+
+        MediaUploadStream upload = new MediaUploadStream(body, maxArchiveSize.toBytes());
+        try {
+            if (!Arrays.equals(Arrays.copyOf(upload.peek(), ZIP_SIGNATURE.length), ZIP_SIGNATURE)) {
+                throw new BadRequestException("The file is not a tree archive (ZIP)");
+            }
+            minioService.uploadStream(upload, job.getArchiveObject(), "application/zip");
+        } catch (Exception e) {
+            transactionTemplate.executeWithoutResult(status -> jobRepository.deleteById(jobId));
+            if (e instanceof BadRequestException) {
+                throw (BadRequestException) e;
+            }
+            if (upload.isLimitExceeded()) {
+                throw new BadRequestException(String.format("Archive exceeds the maximum size of %d MB",
+                        maxArchiveSize.toMegabytes()));
+            }
+            log.error("Error storing tree archive {} for user {}", fileName, userEmail, e);
+            throw new RuntimeException("Failed to store the tree archive: " + e.getMessage(), e);
+        }
+
+        updateJob(jobId, j -> {
+            j.setArchiveSize(upload.getSize());
+            j.setStatus(TreeImportStatus.PENDING);
+            j.setStage("Queued");
+        });
+        if (!submitImport(jobId)) {
+            return TreeImportJobResponse.fromJob(jobRepository.findById(jobId).orElseThrow());
+        }
+
+        log.info("Queued import job {} for archive {} ({} bytes) by user {}", jobId, fileName, upload.getSize(), userEmail);
+        return TreeImportJobResponse.fromJob(jobRepository.findById(jobId).orElseThrow());
+    }
+
+    /**
+     * Retry a failed import from its checkpoint
+     */
+    public TreeImportJobResponse retryImport(UUID jobId, String userEmail) {
+        TreeImportJob job = getOwnJob(jobId, userEmail);
+        if (job.getStatus() != TreeImportStatus.FAILED) {
+            throw new BadRequestException("Only failed imports can be retried");
+        }
+
+        updateJob(jobId, j -> {
+            j.setStatus(TreeImportStatus.PENDING);
+            j.setStage("Queued");
+        });
+        submitImport(jobId);
+        return TreeImportJobResponse.fromJob(jobRepository.findById(jobId).orElseThrow());
+    }
+
+    /**
+     * Get the status and progress of an import job
+     */
+    @Transactional(readOnly = true)
+    public TreeImportJobResponse getImportJob(UUID jobId, String userEmail) {
+        return TreeImportJobResponse.fromJob(getOwnJob(jobId, userEmail));
+    }
+
+    /**
+     * Get the import jobs of a user, most recent first
+     */
+    @Transactional(readOnly = true)
+    public Page<TreeImportJobResponse> getImportJobs(String userEmail, Pageable pageable) {
+        return jobRepository.findByRequestedByOrderByCreatedAtDesc(userEmail, pageable)
+                .map(TreeImportJobResponse::fromJob);
+    }
+
+    /**
+     * Resume imports that did not finish before the last shutdown
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        List<TreeImportJob> unfinished = jobRepository.findByStatusIn(EnumSet.of(
+                TreeImportStatus.UPLOADING, TreeImportStatus.PENDING, TreeImportStatus.RUNNING));
+        for (TreeImportJob job : unfinished) {
+            UUID jobId = job.getId();
+            if (job.getStatus() == TreeImportStatus.UPLOADING) {
+                // The upload was cut off, the archive has to be uploaded again
+                updateJob(jobId, j -> {
+                    j.setStatus(TreeImportStatus.FAILED);
+                    j.setErrorMessage("Upload interrupted");
+                });
+                continue;
+            }
+            log.info("Resuming import job {} at entry {}", jobId, job.getEntryIndex());
+            submitImport(jobId);
+        }
+    }
+
+    /**
+     * Hand an import job to the executor, failing it if the job queue is full.
+     * The checkpoint is kept, so a rejected job can be retried later
+     *
+     * @return whether the job was queued
+     */
+    private boolean submitImport(UUID jobId) {
+        try {
+            taskExecutor.execute(() -> runImport(jobId));
+            return true;
+        } catch (TaskRejectedException e) {
+            // The import never runs, so it must not stay pending
+            log.warn("Import job {} rejected: {}", jobId, e.getMessage());
+            updateJob(jobId, j -> {
+                j.setStatus(TreeImportStatus.FAILED);
+                j.setErrorMessage("Too many background jobs are queued, please try again later");
+            });
+            return false;
+        }
+    }
+
+    private TreeImportJob getOwnJob(UUID jobId, String userEmail) {
+        TreeImportJob job = jobRepository.findById(jobId)
+                .orElseThrow(() -> new ResourceNotFoundException("Tree import job not found: " + jobId));
+        boolean systemAdmin = userRepository.findByEmail(userEmail).map(User::isAdmin).orElse(false);
+        if (!systemAdmin && !job.getRequestedBy().equals(userEmail)) {
+            throw new UnauthorizedException("No permission to view this import");
+        }
+        return job;
+    }
+
+    private void runImport(UUID jobId) {
+        TreeImportJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            log.warn("Import job {} not found", jobId);
+            return;
+        }
+
+        try {
+            updateJob(jobId, j -> {
+                j.setStatus(TreeImportStatus.RUNNING);
+                j.setStage("Reading archive");
+                j.setErrorMessage(null);
+            });
+
+            ImportState state = new ImportState(job);
+            try (InputStream archive = minioService.downloadFile(job.getArchiveObject());
+                 ZipInputStream zip = new ZipInputStream(new BufferedInputStream(archive, BUFFER_SIZE),
+                         StandardCharsets.UTF_8)) {
+                ZipEntry entry;
+                for (int index = 0; (entry = zip.getNextEntry()) != null; index++) {
+                    if (index == 0) {
+                        readManifest(state, entry, zip);
+                    } else if (index >= state.entryIndex) {
+                        loadEntry(state, index, entry.getName(), zip);
+                    }
+                }
+            }
+            if (state.treeId == null) {
+                throw new IllegalStateException("The archive is empty");
+            }
+
+            updateJob(jobId, j -> {
+                j.setStatus(TreeImportStatus.COMPLETED);
+                j.setStage("Done");
+                j.setCompletedAt(LocalDateTime.now());
+            });
+            treeStatsService.markChanged(state.treeId);
+            log.info("Import job {} completed: tree {}", jobId, state.treeId);
+
+            try {
+                minioService.deleteFile(job.getArchiveObject());
+            } catch (Exception e) {
+                log.warn("Could not remove imported archive {}: {}", job.getArchiveObject(), e.getMessage());
+            }
+
+        } catch (Exception e) {
+            log.error("Import job {} failed", jobId, e);
+            updateJob(jobId, j -> {
+                j.setStatus(TreeImportStatus.FAILED);
+                j.setErrorMessage(e.getMessage());
+            });
+        }
+    }
+
+    /**
+     * Read and check the manifest, and create the tree the first time the job runs
+     */
+    private void readManifest(ImportState state, ZipEntry entry, ZipInputStream zip) throws IOException {
+        if (!TreeArchiveService.MANIFEST_ENTRY.equals(entry.getName())) {
+            throw new IllegalStateException("Not a tree archive: " + TreeArchiveService.MANIFEST_ENTRY + " is missing");
+        }
+        TreeArchiveManifest manifest = objectMapper.readValue(StreamUtils.nonClosing(zip), TreeArchiveManifest.class);
+        if (!TreeArchiveManifest.FORMAT.equals(manifest.getFormat())) {
+            throw new IllegalStateException("Not a tree archive");
+        }
+        if (manifest.getVersion() > TreeArchiveManifest.VERSION) {
+            throw new IllegalStateException("Unsupported tree archive version " + manifest.getVersion());
+        }
+        if (state.treeId != null) {
+            return;
+        }
+
+        state.treeId = transactionTemplate.execute(status -> {
+            User owner = userRepository.findByEmail(state.requestedBy)
+                    .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+            FamilyTree tree = treeRepository.save(FamilyTree.builder()
+                    .name(manifest.getName())
+                    .description(manifest.getDescription())
+                    .owner(owner)
+                    .rootIndividualId(state.importedId(manifest.getRootIndividualId()))
+                    .sourceTreeId(manifest.getSourceTreeId())
+                    .sourceIndividualId(manifest.getSourceIndividualId())
+                    .clonedAt(manifest.getClonedAt())
+                    .build());
+            if (manifest.getLineageId() != null) {
+                // The imported tree joins the clone lineage of the exported one
+                treeLineageRepository.save(TreeLineage.builder()
+                        .treeId(tree.getId())
+                        .lineageId(manifest.getLineageId())
+                        .build());
+            }
+
+            jobRepository.findById(state.jobId).ifPresent(j -> {
+                j.setTreeId(tree.getId());
+                j.setTreeName(tree.getName());
+                j.setRecordsTotal(manifest.getIndividuals() + manifest.getRelationships()
+                        + manifest.getEvents() + manifest.getMedia());
+                j.setEntryIndex(1);
+            });
+            return tree.getId();
+        });
+        state.entryIndex = 1;
+        log.info("Import job {} created tree {} from archive of tree {}", state.jobId, state.treeId, manifest.getTreeId());
+    }
+
+    /**
+     * Load one archive entry, starting after the records of the checkpoint if it is the entry in progress
+     */
+    private void loadEntry(ImportState state, int index, String name, ZipInputStream zip) throws Exception {
+        long skip = index == state.entryIndex ? state.entryRecords : 0;
+        switch (name) {
+            case TreeArchiveService.INDIVIDUALS_ENTRY:
+                updateJob(state.jobId, j -> j.setStage("Individuals"));
+                loadRecords(state, index, zip, skip, ArchivedIndividual.class, this::insertIndividuals);
+                break;
+            case TreeArchiveService.RELATIONSHIPS_ENTRY:
+                updateJob(state.jobId, j -> j.setStage("Relationships"));
+                loadRecords(state, index, zip, skip, ArchivedRelationship.class, this::insertRelationships);
+                break;
+            case TreeArchiveService.EVENTS_ENTRY:
+                updateJob(state.jobId, j -> j.setStage("Events"));
+                loadRecords(state, index, zip, skip, ArchivedEvent.class, this::insertEvents);
+                break;
+            case TreeArchiveService.PROFILES_ENTRY:
+                updateJob(state.jobId, j -> j.setStage("User profiles"));
+                loadRecords(state, index, zip, skip, ArchivedProfile.class, this::insertProfiles);
+                break;
+            case TreeArchiveService.MEDIA_ENTRY:
+                updateJob(state.jobId, j -> j.setStage("Media"));
+                loadRecords(state, index, zip, skip, ArchivedMedia.class, this::insertMedia);
+                break;
+            default:
+                if (name.startsWith(TreeArchiveService.AVATARS_DIR)) {
+                    updateJob(state.jobId, j -> j.setStage("Avatars"));
+                    loadAvatar(state, index, name.substring(TreeArchiveService.AVATARS_DIR.length()), zip);
+                } else if (name.startsWith(TreeArchiveService.FILES_DIR)) {
+                    updateJob(state.jobId, j -> j.setStage("Media files"));
+                    loadFile(state, index, name.substring(TreeArchiveService.FILES_DIR.length()), zip);
+                } else {
+                    // Entries added by later versions of the format are ignored
+                    log.debug("Import job {} skips unknown entry {}", state.jobId, name);
+                    checkpoint(state, index + 1, 0, 0, 0);
+                }
+        }
+    }
+
+    /**
+     * Load an NDJSON entry in chunks, each committed with the checkpoint
+     */
+    private <T> void loadRecords(ImportState state, int index, ZipInputStream zip, long skip, Class<T> type,
+                                 ChunkLoader<T> loader) throws IOException {
+        // The reader is not closed: that would close the archive. It stops at the end of the entry.
+        BufferedReader reader = new BufferedReader(new InputStreamReader(zip, StandardCharsets.UTF_8), BUFFER_SIZE);
+        List<T> chunk = new ArrayList<>(chunkSize);
+        long line = 0;
+        long loaded = skip;
+        String json;
+        while ((json = reader.readLine()) != null) {
+            if (line++ < skip || json.isBlank()) {
+                continue;
+            }
+            chunk.add(objectMapper.readValue(json, type));
+            if (chunk.size() >= chunkSize) {
+                loaded += chunk.size();
+                commitChunk(state, index, loaded, chunk, loader);
+                chunk.clear();
+            }
+        }
+        loaded += chunk.size();
+        commitChunk(state, index, loaded, chunk, loader);
+        checkpoint(state, index + 1, 0, 0, 0);
+    }
+
+    private <T> void commitChunk(ImportState state, int index, long loaded, List<T> chunk, ChunkLoader<T> loader) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            loader.load(state, chunk);
+            saveCheckpoint(state, index, loaded, chunk.size(), 0);
+        });
+    }
+
+    private void insertIndividuals(ImportState state, List<ArchivedIndividual> individuals) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>(individuals.size());
+        List<Object[]> lineages = new ArrayList<>();
+        for (ArchivedIndividual individual : individuals) {
+            UUID id = state.importedId(individual.getId());
+            rows.add(new Object[]{id, state.treeId, individual.getGivenName(), individual.getMiddleName(),
+                    individual.getSurname(), individual.getSuffix(),
+                    individual.getGender() != null ? individual.getGender().name() : null,
+                    individual.getBirthDate(), individual.getBirthPlace(), individual.getDeathDate(),
+                    individual.getDeathPlace(), individual.getBiography(), individual.getNotes(),
+                    individual.getFacebookLink(), individual.getPhoneNumber(), individual.getAvatarContentType(),
+                    now, now});
+            if (individual.getLineageId() != null) {
+                lineages.add(new Object[]{id, individual.getLineageId(), state.treeId});
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_INDIVIDUAL, rows);
+        if (!lineages.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_INDIVIDUAL_LINEAGE, lineages);
+        }
+    }
+
+    private void insertRelationships(ImportState state, List<ArchivedRelationship> relationships) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>(relationships.size());
+        for (ArchivedRelationship relationship : relationships) {
+            rows.add(new Object[]{state.importedId(relationship.getId()), state.treeId,
+                    state.importedId(relationship.getIndividual1Id()), state.importedId(relationship.getIndividual2Id()),
+                    relationship.getType().name(), relationship.getStartDate(), relationship.getEndDate(), now, now});
+        }
+        jdbcTemplate.batchUpdate(INSERT_RELATIONSHIP, rows);
+    }
+
+    private void insertEvents(ImportState state, List<ArchivedEvent> events) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>(events.size());
+        for (ArchivedEvent event : events) {
+            rows.add(new Object[]{state.importedId(event.getId()), state.importedId(event.getIndividualId()),
+                    event.getType().name(), event.getEventDate(), event.getPlace(), event.getDescription(), now});
+        }
+        jdbcTemplate.batchUpdate(INSERT_EVENT, rows);
+    }
+
+    private void insertProfiles(ImportState state, List<ArchivedProfile> profiles) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>(profiles.size());
+        for (ArchivedProfile profile : profiles) {
+            rows.add(new Object[]{UUID.randomUUID(), state.treeId, state.importedId(profile.getIndividualId()), now,
+                    profile.getUserEmail()});
+        }
+        jdbcTemplate.batchUpdate(INSERT_PROFILE, rows);
+    }
+
+    /**
+     * Insert media records, each referencing a file already stored with the same content or the file
+     * imported later from files/ (see MediaBlobService.referenceImported)
+     */
+    private void insertMedia(ImportState state, List<ArchivedMedia> media) {
+        List<Object[]> rows = new ArrayList<>(media.size());
+        for (ArchivedMedia record : media) {
+            MediaBlob blob = mediaBlobService.referenceImported(state.importPath(record.getFile()),
+                    record.getChecksum(), record.getFileSize(), record.getMimeType());
+            rows.add(new Object[]{state.importedId(record.getId()), state.importedId(record.getIndividualId()),
+                    record.getType().name(), record.getFilename(), blob.getStoragePath(), record.getCaption(),
+                    record.getFileSize(), record.getMimeType(), record.getChecksum(), blob.getDerivativeFormat(),
+                    blob.getDerivativeWidths(),
+                    record.getUploadedAt() != null ? record.getUploadedAt() : LocalDateTime.now()});
+        }
+        jdbcTemplate.batchUpdate(INSERT_MEDIA, rows);
+    }
+
+    /**
+     * Store the content of a media file if an imported record references it at its import path
+     * (files already stored here were referenced directly and are skipped)
+     */
+    private void loadFile(ImportState state, int index, String key, ZipInputStream zip) throws Exception {
+        String importPath = state.importPath(key);
+        if (!mediaBlobService.isImportPending(importPath)) {
+            checkpoint(state, index + 1, 0, 0, 0);
+            return;
+        }
+
+        MediaUploadStream upload = new MediaUploadStream(StreamUtils.nonClosing(zip), Long.MAX_VALUE);
+        minioService.uploadStream(upload, importPath, "application/octet-stream");
+        if (key.length() == 64 && !key.equals(upload.getChecksum())) {
+            throw new IllegalStateException("Media file " + key + " is corrupted (checksum mismatch)");
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            mediaBlobService.confirmImported(importPath, upload.getChecksum(), upload.getSize());
+            saveCheckpoint(state, index + 1, 0, 0, 1);
+        });
+    }
+
+    /**
+     * Store the avatar of an imported individual (entry avatars/{archived individual ID}{extension})
+     */
+    private void loadAvatar(ImportState state, int index, String fileName, ZipInputStream zip) throws Exception {
+        UUID individualId = state.importedId(UUID.fromString(fileName.substring(0, 36)));
+        String objectName = "avatars/individuals/" + individualId + "/avatar" + fileName.substring(36);
+
+        MediaUploadStream upload = new MediaUploadStream(StreamUtils.nonClosing(zip), Long.MAX_VALUE);
+        String contentType = AVATAR_CONTENT_TYPES.getOrDefault(fileName.substring(36), "image/jpeg");
+        minioService.uploadStream(upload, objectName, contentType);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(UPDATE_AVATAR,
+                    IndividualService.avatarUrl(state.treeId, individualId, upload.getChecksum()),
+                    objectName, upload.getChecksum(), upload.getSize(), contentType, individualId);
+            saveCheckpoint(state, index + 1, 0, 0, 1);
+        });
+    }
+
+    private void checkpoint(ImportState state, int entryIndex, long entryRecords, int records, int files) {
+        transactionTemplate.executeWithoutResult(status -> saveCheckpoint(state, entryIndex, entryRecords, records, files));
+    }
+
+    /**
+     * Record progress in the current transaction, so it commits together with the loaded data
+     */
+    private void saveCheckpoint(ImportState state, int entryIndex, long entryRecords, int records, int files) {
+        jobRepository.findById(state.jobId).ifPresent(j -> {
+            j.setEntryIndex(entryIndex);
+            j.setEntryRecords(entryRecords);
+            j.setRecordsImported(j.getRecordsImported() + records);
+            j.setFilesImported(j.getFilesImported() + files);
+        });
+        state.entryIndex = entryIndex;
+        state.entryRecords = entryRecords;
+    }
+
+    private void updateJob(UUID jobId, Consumer<TreeImportJob> update) {
+        transactionTemplate.executeWithoutResult(status -> jobRepository.findById(jobId).ifPresent(update));
+    }
+
+    @FunctionalInterface
+    private interface ChunkLoader<T> {
+        void load(ImportState state, List<T> chunk);
+    }
+
+    /**
+     * Position and identity of a running import
+     */
+    private static class ImportState {
+        final UUID jobId;
+        final String requestedBy;
+        UUID treeId;
+        int entryIndex;
+        long entryRecords;
+
+        ImportState(TreeImportJob job) {
+            this.jobId = job.getId();
+            this.requestedBy = job.getRequestedBy();
+            this.treeId = job.getTreeId();
+            this.entryIndex = job.getEntryIndex();
+            this.entryRecords = job.getEntryRecords();
+        }
+
+        /**
+         * ID of the imported copy of an archived record, the same every time the job runs
+         */
+        UUID importedId(UUID archivedId) {
+            if (archivedId == null) {
+                return null;
+            }
+            return UUID.nameUUIDFromBytes((jobId + "/" + archivedId).getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Where the import stores a media file of the archive
+         */
+        String importPath(String key) {
+            return treeId + "/imported/" + key;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.familytree.exception.ResourceNotFoundException;
 import com.familytree.exception.UnauthorizedException;
 import com.familytree.model.*;
 import com.familytree.repository.*;
+import com.familytree.service.IndividualOverlayService.SharedContent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -30,6 +31,10 @@ public class TreeMergeService {
     private final UserRepository userRepository;
     private final IndividualCloneMappingRepository cloneMappingRepository;
     private final TreePermissionRepository permissionRepository;
+    private final CloneLineageService cloneLineageService;
+    private final MediaBlobService mediaBlobService;
+    private final TreeStatsService treeStatsService;
+    private final IndividualOverlayService overlayService;
 
     // Matching score thresholds
     private static final int EXACT_NAME_SCORE = 100;
@@ -37,17 +42,29 @@ public class TreeMergeService {
     private static final int EXACT_BIRTH_DATE_SCORE = 80;
     private static final int CLOSE_BIRTH_DATE_SCORE = 40;
     private static final int BIRTH_PLACE_SCORE = 30;
-    private static final int MATCH_THRESHOLD = 100;
+    static final int MATCH_THRESHOLD = 100;
+    private static final int RELATIVE_MATCH_SCORE = 50;
+    private static final int MAX_PROPAGATION_ROUNDS = 100;
 
     /**
      * Preview a merge operation without making changes
      */
     @Transactional(readOnly = true)
     public MergePreviewResponse previewMerge(UUID targetTreeId, TreeMergeRequest request, String userEmail) {
+        return previewMerge(targetTreeId, request, userEmail, MergeProgressListener.NONE);
+    }
+
+    /**
+     * Preview a merge operation without making changes, reporting progress to the listener
+     */
+    @Transactional(readOnly = true)
+    public MergePreviewResponse previewMerge(UUID targetTreeId, TreeMergeRequest request, String userEmail,
+            MergeProgressListener progress) {
         log.info("Previewing merge from tree {} to tree {} by user {}", 
                 request.getSourceTreeId(), targetTreeId, userEmail);
 
         // 1. Validate the merge request
+        progress.onProgress(5, "Validating");
         ValidationResult validation = validateMerge(targetTreeId, request, userEmail);
         
         if (!validation.isValid()) {
@@ -57,33 +74,48 @@ public class TreeMergeService {
         FamilyTree targetTree = validation.getTargetTree();
         FamilyTree sourceTree = validation.getSourceTree();
 
-        // 2. Find matching individuals between trees
-        List<IndividualMatch> matches = findMatchingIndividuals(sourceTree, targetTree);
+        // 2. Load both trees once for all following steps
+        progress.onProgress(10, "Loading trees");
+        MergeWorkingSet workingSet = loadWorkingSet(sourceTree, targetTree);
+
+        // 3. Find matching individuals between trees
+        progress.onProgress(25, "Matching individuals");
+        List<IndividualMatch> matches = findMatchingIndividuals(workingSet);
+        progress.onProgress(70, "Comparing matched individuals");
         
-        // 3. Identify new individuals (in source but not matched to target)
+        // 4. Identify new individuals (in source but not matched to target)
         List<MergePreviewResponse.IndividualInfo> newIndividuals = 
-                findNewIndividuals(sourceTree, matches, request);
+                findNewIndividuals(workingSet, matches, request);
         
-        // 4. Identify updates (matched individuals with different data)
+        // 5. Identify updates (matched individuals with different data)
         List<MergePreviewResponse.IndividualInfo> updatedIndividuals = 
-                findUpdatedIndividuals(matches);
+                findUpdatedIndividuals(workingSet, matches);
         
-        // 5. Find new relationships
+        // 6. Find new relationships
         List<MergePreviewResponse.RelationshipInfo> newRelationships = 
                 findNewRelationships(sourceTree, targetTree, matches);
         
-        // 6. Detect conflicts
-        List<MergeConflict> conflicts = detectConflicts(matches, sourceTree, targetTree);
+        // 7. Detect conflicts
+        List<MergeConflict> conflicts = detectConflicts(workingSet, matches);
         
-        // 7. Validate data integrity
+        // 8. Validate data integrity
         List<MergePreviewResponse.ValidationError> dataErrors = 
                 validateDataIntegrity(newIndividuals, newRelationships);
+        for (Relationship link : findCircularLinks(workingSet, mapMergedIds(workingSet, matches, request))) {
+            dataErrors.add(MergePreviewResponse.ValidationError.builder()
+                    .code("CIRCULAR_RELATIONSHIP")
+                    .message("Cannot merge: " + describeLink(link) + " would create a circular relationship")
+                    .entityId(link.getId())
+                    .blocking(true)
+                    .build());
+        }
         
-        // 8. Build detailed individual previews for interactive selection
+        // 9. Build detailed individual previews for interactive selection
+        progress.onProgress(85, "Building individual previews");
         List<MergePreviewResponse.IndividualPreview> individualPreviews = 
-                buildIndividualPreviews(sourceTree, targetTree, matches, conflicts);
+                buildIndividualPreviews(workingSet, matches, conflicts);
         
-        // 9. Build response
+        // 10. Build response
         return buildPreviewResponse(targetTreeId, request, matches, newIndividuals, 
                 updatedIndividuals, newRelationships, conflicts, dataErrors, 
                 validation.getWarnings(), individualPreviews);
@@ -94,8 +126,18 @@ public class TreeMergeService {
      */
     @Transactional
     public MergeResultResponse executeMerge(UUID targetTreeId, TreeMergeRequest request, String userEmail) {
-        log.info("Executing merge from tree {} to tree {} by user {}", 
-                request.getSourceTreeId(), targetTreeId, userEmail);
+        return executeMerge(targetTreeId, request, userEmail, null);
+    }
+
+    /**
+     * Execute the merge operation, reusing matches from a stored preview when given
+     * @param precomputedMatches matches computed against the current versions of both trees, or null to recompute
+     */
+    @Transactional
+    public MergeResultResponse executeMerge(UUID targetTreeId, TreeMergeRequest request, String userEmail,
+            List<IndividualMatch> precomputedMatches) {
+        log.info("Executing merge from tree {} to tree {} by user {} (stored matches: {})", 
+                request.getSourceTreeId(), targetTreeId, userEmail, precomputedMatches != null);
 
         // 1. Validate
         ValidationResult validation = validateMerge(targetTreeId, request, userEmail);
@@ -109,17 +151,31 @@ public class TreeMergeService {
         FamilyTree targetTree = validation.getTargetTree();
         FamilyTree sourceTree = validation.getSourceTree();
 
-        // 2. Find matches
-        List<IndividualMatch> matches = findMatchingIndividuals(sourceTree, targetTree);
+        // 2. Load both trees once and find matches
+        MergeWorkingSet workingSet = loadWorkingSet(sourceTree, targetTree);
+        List<IndividualMatch> matches = precomputedMatches != null
+                ? precomputedMatches
+                : findMatchingIndividuals(workingSet);
         
+        // Copy-on-write clones read their biography and notes from the individual they were cloned from
+        Map<UUID, SharedContent> sourceContent = overlayService.findSharedContentByTreeId(sourceTree.getId());
+        Map<UUID, SharedContent> targetContent = overlayService.findSharedContentByTreeId(targetTree.getId());
+
         // 3. Detect conflicts and check they're resolved
-        List<MergeConflict> conflicts = detectConflicts(matches, sourceTree, targetTree);
+        List<MergeConflict> conflicts = detectConflicts(workingSet, matches);
         if (!conflicts.isEmpty() && request.getConflictResolution() == ConflictResolution.MANUAL) {
             if (request.getManualResolutions() == null || request.getManualResolutions().isEmpty()) {
                 throw new BadRequestException("Manual conflict resolution required but no resolutions provided");
             }
         }
 
+        // Parent-child links must not close a cycle once combined with the target's
+        List<Relationship> circularLinks = findCircularLinks(workingSet, mapMergedIds(workingSet, matches, request));
+        if (!circularLinks.isEmpty()) {
+            throw new BadRequestException("Cannot merge: " + describeLink(circularLinks.get(0))
+                    + " would create a circular relationship");
+        }
+
         // 4. Execute merge
         int individualsAdded = 0;
         int individualsUpdated = 0;
@@ -131,19 +187,19 @@ public class TreeMergeService {
         
         // Map existing matches
         for (IndividualMatch match : matches) {
-            Individual targetInd = individualRepository.findById(match.getTargetIndividualId()).orElse(null);
+            Individual targetInd = workingSet.getTargetIndividual(match.getTargetIndividualId());
             if (targetInd != null) {
                 sourceToTargetMapping.put(match.getSourceIndividualId(), targetInd);
             }
         }
 
-        // Add new individuals
-        List<Individual> sourceIndividuals = individualRepository.findByTreeId(sourceTree.getId());
+        // Add new individuals (batched insert)
+        List<Individual> newIndividuals = new ArrayList<>();
         Set<UUID> matchedSourceIds = matches.stream()
                 .map(IndividualMatch::getSourceIndividualId)
                 .collect(Collectors.toSet());
         
-        for (Individual sourceInd : sourceIndividuals) {
+        for (Individual sourceInd : workingSet.getSourceIndividuals()) {
             if (!matchedSourceIds.contains(sourceInd.getId())) {
                 // Check if should be included
                 if (request.getSelectedIndividualIds() != null && 
@@ -153,51 +209,64 @@ public class TreeMergeService {
                 }
                 
                 // Clone individual to target tree
-                Individual newInd = cloneIndividual(sourceInd, targetTree);
-                newInd = individualRepository.save(newInd);
+                Individual newInd = cloneIndividual(sourceInd, sourceContent.get(sourceInd.getId()), targetTree);
+                newIndividuals.add(newInd);
                 sourceToTargetMapping.put(sourceInd.getId(), newInd);
                 individualsAdded++;
             }
         }
+        individualRepository.saveAll(newIndividuals);
+
+        // Added and matched individuals are copies of the same people, keep the clone lineage index in step
+        Map<UUID, UUID> addedIds = new HashMap<>();
+        Map<UUID, UUID> matchedIds = new HashMap<>();
+        sourceToTargetMapping.forEach((sourceId, targetInd) ->
+                (matchedSourceIds.contains(sourceId) ? matchedIds : addedIds).put(sourceId, targetInd.getId()));
+        cloneLineageService.recordMerge(sourceTree.getId(), targetTree.getId(), addedIds, matchedIds);
+
+        // Added individuals bring their media along, as references to the same stored files
+        int mediaFilesAdded = mediaBlobService.shareMedia(addedIds);
 
         // Update matched individuals based on conflict resolution
         if (request.getConflictResolution() == ConflictResolution.THEIRS || 
                 request.getConflictResolution() == ConflictResolution.AUTO_MERGE) {
             for (IndividualMatch match : matches) {
-                if (updateFromSource(match, request.getConflictResolution())) {
+                if (updateFromSource(workingSet, match, request.getConflictResolution(), sourceContent, targetContent)) {
                     individualsUpdated++;
                 }
             }
         }
 
-        // Add relationships
-        List<Relationship> sourceRelationships = relationshipRepository.findByTreeId(sourceTree.getId());
-        for (Relationship sourceRel : sourceRelationships) {
+        // Add relationships: set difference against the target's existing relationship keys
+        Set<String> existingKeys = workingSet.getTargetRelationships().stream()
+                .map(rel -> relationshipKey(rel.getIndividual1().getId(), rel.getIndividual2().getId(), rel.getType()))
+                .collect(Collectors.toCollection(HashSet::new));
+
+        List<Relationship> newRelationships = new ArrayList<>();
+        for (Relationship sourceRel : workingSet.getSourceRelationships()) {
             Individual targetInd1 = sourceToTargetMapping.get(sourceRel.getIndividual1().getId());
             Individual targetInd2 = sourceToTargetMapping.get(sourceRel.getIndividual2().getId());
             
             if (targetInd1 != null && targetInd2 != null) {
-                // Check if relationship already exists
-                boolean exists = relationshipRepository.existsByTreeIdAndIndividualsAndType(
-                        targetTree.getId(), targetInd1.getId(), targetInd2.getId(), sourceRel.getType());
-                
-                if (!exists) {
-                    Relationship newRel = Relationship.builder()
+                // add() is false if the relationship exists or was already queued
+                if (existingKeys.add(relationshipKey(targetInd1.getId(), targetInd2.getId(), sourceRel.getType()))) {
+                    newRelationships.add(Relationship.builder()
                             .tree(targetTree)
                             .individual1(targetInd1)
                             .individual2(targetInd2)
                             .type(sourceRel.getType())
                             .startDate(sourceRel.getStartDate())
                             .endDate(sourceRel.getEndDate())
-                            .build();
-                    relationshipRepository.save(newRel);
-                    relationshipsAdded++;
+                            .build());
                 }
             }
         }
+        relationshipRepository.saveAll(newRelationships);
+        relationshipsAdded = newRelationships.size();
+        treeStatsService.markChanged(targetTreeId);
 
-        log.info("Merge completed: {} individuals added, {} updated, {} relationships added",
-                individualsAdded, individualsUpdated, relationshipsAdded);
+        log.info("Merge completed: {} individuals added, {} updated, {} relationships added, {} media files shared",
+                individualsAdded, individualsUpdated, relationshipsAdded, mediaFilesAdded);
 
         return MergeResultResponse.builder()
                 .success(true)
@@ -208,6 +277,7 @@ public class TreeMergeService {
                         .individualsAdded(individualsAdded)
                         .individualsUpdated(individualsUpdated)
                         .relationshipsAdded(relationshipsAdded)
+                        .mediaFilesAdded(mediaFilesAdded)
                         .conflictsResolved(conflictsResolved)
                         .build())
                 .message(String.format("Successfully merged %d individuals and %d relationships", 
@@ -217,6 +287,23 @@ public class TreeMergeService {
                 .build();
     }
 
+    /**
+     * Load individuals and relationships of both trees once (four queries in total)
+     */
+    private MergeWorkingSet loadWorkingSet(FamilyTree sourceTree, FamilyTree targetTree) {
+        MergeWorkingSet workingSet = new MergeWorkingSet(
+                sourceTree,
+                individualRepository.findByTreeId(sourceTree.getId()),
+                relationshipRepository.findByTreeIdWithIndividuals(sourceTree.getId()),
+                targetTree,
+                individualRepository.findByTreeId(targetTree.getId()),
+                relationshipRepository.findByTreeIdWithIndividuals(targetTree.getId()));
+
+        log.debug("Loaded merge working set: {} source and {} target individuals",
+                workingSet.getSourceGraph().size(), workingSet.getTargetGraph().size());
+        return workingSet;
+    }
+
     /**
      * Validate merge request
      */
@@ -238,7 +325,7 @@ public class TreeMergeService {
         }
 
         // Get target tree
-        FamilyTree targetTree = treeRepository.findById(targetTreeId).orElse(null);
+        FamilyTree targetTree = treeRepository.findByIdAndDeletedAtIsNull(targetTreeId).orElse(null);
         if (targetTree == null) {
             errors.add(MergePreviewResponse.ValidationError.builder()
                     .code("TARGET_TREE_NOT_FOUND")
@@ -249,7 +336,7 @@ public class TreeMergeService {
         }
 
         // Get source tree
-        FamilyTree sourceTree = treeRepository.findById(request.getSourceTreeId()).orElse(null);
+        FamilyTree sourceTree = treeRepository.findByIdAndDeletedAtIsNull(request.getSourceTreeId()).orElse(null);
         if (sourceTree == null) {
             errors.add(MergePreviewResponse.ValidationError.builder()
                     .code("SOURCE_TREE_NOT_FOUND")
@@ -314,8 +401,10 @@ public class TreeMergeService {
     /**
      * Find matching individuals between source and target trees
      */
-    private List<IndividualMatch> findMatchingIndividuals(FamilyTree sourceTree, FamilyTree targetTree) {
+    List<IndividualMatch> findMatchingIndividuals(MergeWorkingSet workingSet) {
         List<IndividualMatch> matches = new ArrayList<>();
+        FamilyTree sourceTree = workingSet.getSourceTree();
+        FamilyTree targetTree = workingSet.getTargetTree();
         
         // First, check clone mappings for exact matches
         List<IndividualCloneMapping> cloneMappings = cloneMappingRepository
@@ -328,81 +417,206 @@ public class TreeMergeService {
         Set<UUID> matchedSourceIds = new HashSet<>();
         Set<UUID> matchedTargetIds = new HashSet<>();
 
-        // Add clone mapping matches
+        // Add clone mapping matches (names come from the working set, not the lazy mapping associations)
         for (IndividualCloneMapping mapping : cloneMappings) {
-            matches.add(IndividualMatch.builder()
-                    .sourceIndividualId(mapping.getSourceIndividual().getId())
-                    .targetIndividualId(mapping.getClonedIndividual().getId())
-                    .sourceName(buildFullName(mapping.getSourceIndividual()))
-                    .targetName(buildFullName(mapping.getClonedIndividual()))
-                    .matchScore(100)
-                    .matchType(IndividualMatch.MatchType.CLONE_MAPPING)
-                    .matchReason("Clone mapping exists")
-                    .clonedMatch(true)
-                    .build());
-            matchedSourceIds.add(mapping.getSourceIndividual().getId());
-            matchedTargetIds.add(mapping.getClonedIndividual().getId());
+            addCloneMatch(workingSet, mapping.getSourceIndividual().getId(), mapping.getClonedIndividual().getId(),
+                    "Clone mapping exists", matches, matchedSourceIds, matchedTargetIds);
         }
 
         // Add reverse mappings
         for (IndividualCloneMapping mapping : reverseMappings) {
-            matches.add(IndividualMatch.builder()
-                    .sourceIndividualId(mapping.getClonedIndividual().getId())
-                    .targetIndividualId(mapping.getSourceIndividual().getId())
-                    .sourceName(buildFullName(mapping.getClonedIndividual()))
-                    .targetName(buildFullName(mapping.getSourceIndividual()))
-                    .matchScore(100)
-                    .matchType(IndividualMatch.MatchType.CLONE_MAPPING)
-                    .matchReason("Reverse clone mapping exists")
-                    .clonedMatch(true)
-                    .build());
-            matchedSourceIds.add(mapping.getClonedIndividual().getId());
-            matchedTargetIds.add(mapping.getSourceIndividual().getId());
+            addCloneMatch(workingSet, mapping.getClonedIndividual().getId(), mapping.getSourceIndividual().getId(),
+                    "Reverse clone mapping exists", matches, matchedSourceIds, matchedTargetIds);
         }
 
-        // For unmatched individuals, try fuzzy matching
-        List<Individual> sourceIndividuals = individualRepository.findByTreeId(sourceTree.getId());
-        List<Individual> targetIndividuals = individualRepository.findByTreeId(targetTree.getId());
+        TreeGraph sourceGraph = workingSet.getSourceGraph();
+        TreeGraph targetGraph = workingSet.getTargetGraph();
+
+        // Propagate clone mapping anchors to parents, spouses and children
+        int anchoredCount = matches.size();
+        propagateMatches(new ArrayList<>(matches), sourceGraph, targetGraph,
+                matches, matchedSourceIds, matchedTargetIds);
+        int propagatedCount = matches.size() - anchoredCount;
+
+        // For the unanchored residue, try fuzzy matching against blocking-key candidates only
+        List<Individual> unmatchedSources = sourceGraph.getIndividuals().stream()
+                .filter(ind -> !matchedSourceIds.contains(ind.getId()))
+                .collect(Collectors.toList());
+        MergeCandidateIndex index = new MergeCandidateIndex(targetGraph.getIndividuals().stream()
+                .filter(ind -> !matchedTargetIds.contains(ind.getId()))
+                .collect(Collectors.toList()));
+
+        // Score in parallel; assignment stays sequential so each target is matched at most once
+        List<List<IndividualMatch>> rankedCandidates = unmatchedSources.parallelStream()
+                .map(source -> rankCandidates(source, index.candidatesFor(source)))
+                .collect(Collectors.toList());
+
+        List<IndividualMatch> confidentMatches = new ArrayList<>();
+        for (List<IndividualMatch> candidates : rankedCandidates) {
+            for (IndividualMatch candidate : candidates) {
+                if (matchedTargetIds.contains(candidate.getTargetIndividualId())) continue;
+
+                matches.add(candidate);
+                matchedSourceIds.add(candidate.getSourceIndividualId());
+                matchedTargetIds.add(candidate.getTargetIndividualId());
+                if (candidate.getMatchType() == IndividualMatch.MatchType.HIGH_CONFIDENCE) {
+                    confidentMatches.add(candidate);
+                }
+                break;
+            }
+        }
 
-        for (Individual source : sourceIndividuals) {
-            if (matchedSourceIds.contains(source.getId())) continue;
+        // High confidence attribute matches anchor a second propagation pass
+        int beforeSecondPass = matches.size();
+        propagateMatches(confidentMatches, sourceGraph, targetGraph,
+                matches, matchedSourceIds, matchedTargetIds);
+        propagatedCount += matches.size() - beforeSecondPass;
+
+        log.info("Matched {} individuals ({} clone mappings, {} through relatives), scored {} unanchored source individuals",
+                matches.size(), anchoredCount, propagatedCount, unmatchedSources.size());
+
+        return matches;
+    }
+
+    private void addCloneMatch(MergeWorkingSet workingSet, UUID sourceId, UUID targetId, String reason,
+            List<IndividualMatch> matches, Set<UUID> matchedSourceIds, Set<UUID> matchedTargetIds) {
+        Individual source = workingSet.getSourceIndividual(sourceId);
+        Individual target = workingSet.getTargetIndividual(targetId);
+        if (source == null || target == null) return;
+
+        matches.add(IndividualMatch.builder()
+                .sourceIndividualId(sourceId)
+                .targetIndividualId(targetId)
+                .sourceName(buildFullName(source))
+                .targetName(buildFullName(target))
+                .matchScore(100)
+                .matchType(IndividualMatch.MatchType.CLONE_MAPPING)
+                .matchReason(reason)
+                .clonedMatch(true)
+                .build());
+        matchedSourceIds.add(sourceId);
+        matchedTargetIds.add(targetId);
+    }
+
+    /**
+     * Propagate matches from anchor pairs to their relatives.
+     * Each round looks at the parents, spouses and children of the pairs matched in the previous round,
+     * so the work is bounded by the number of relationships. Proposals are scored in parallel and accepted
+     * best first, so every individual is matched at most once.
+     */
+    private void propagateMatches(List<IndividualMatch> anchors, TreeGraph sourceGraph, TreeGraph targetGraph,
+            List<IndividualMatch> matches, Set<UUID> matchedSourceIds, Set<UUID> matchedTargetIds) {
+        List<IndividualMatch> frontier = anchors;
+        int round = 0;
+
+        while (!frontier.isEmpty() && round < MAX_PROPAGATION_ROUNDS) {
+            round++;
+
+            List<IndividualMatch> proposals = frontier.parallelStream()
+                    .flatMap(anchor -> proposeRelativeMatches(anchor, sourceGraph, targetGraph,
+                            matchedSourceIds, matchedTargetIds).stream())
+                    .sorted(Comparator.comparingInt(IndividualMatch::getMatchScore).reversed())
+                    .collect(Collectors.toList());
+
+            List<IndividualMatch> accepted = new ArrayList<>();
+            for (IndividualMatch proposal : proposals) {
+                if (matchedSourceIds.contains(proposal.getSourceIndividualId())
+                        || matchedTargetIds.contains(proposal.getTargetIndividualId())) continue;
+
+                accepted.add(proposal);
+                matchedSourceIds.add(proposal.getSourceIndividualId());
+                matchedTargetIds.add(proposal.getTargetIndividualId());
+            }
 
-            IndividualMatch bestMatch = null;
-            int bestScore = 0;
+            matches.addAll(accepted);
+            frontier = accepted;
+        }
+    }
 
-            for (Individual target : targetIndividuals) {
-                if (matchedTargetIds.contains(target.getId())) continue;
+    /**
+     * Propose matches among the unmatched relatives of an anchor pair
+     */
+    private List<IndividualMatch> proposeRelativeMatches(IndividualMatch anchor, TreeGraph sourceGraph,
+            TreeGraph targetGraph, Set<UUID> matchedSourceIds, Set<UUID> matchedTargetIds) {
+        UUID sourceId = anchor.getSourceIndividualId();
+        UUID targetId = anchor.getTargetIndividualId();
+        List<IndividualMatch> proposals = new ArrayList<>();
+
+        proposeAmong(sourceGraph.getParents(sourceId), targetGraph.getParents(targetId),
+                "Parent of matched " + anchor.getTargetName(),
+                sourceGraph, targetGraph, matchedSourceIds, matchedTargetIds, proposals);
+        proposeAmong(sourceGraph.getSpouses(sourceId), targetGraph.getSpouses(targetId),
+                "Spouse of matched " + anchor.getTargetName(),
+                sourceGraph, targetGraph, matchedSourceIds, matchedTargetIds, proposals);
+        proposeAmong(sourceGraph.getChildren(sourceId), targetGraph.getChildren(targetId),
+                "Child of matched " + anchor.getTargetName(),
+                sourceGraph, targetGraph, matchedSourceIds, matchedTargetIds, proposals);
+
+        return proposals;
+    }
 
-                int score = calculateMatchScore(source, target);
-                if (score >= MATCH_THRESHOLD && score > bestScore) {
-                    bestScore = score;
-                    bestMatch = IndividualMatch.builder()
+    private void proposeAmong(List<UUID> sourceRelatives, List<UUID> targetRelatives, String reason,
+            TreeGraph sourceGraph, TreeGraph targetGraph, Set<UUID> matchedSourceIds, Set<UUID> matchedTargetIds,
+            List<IndividualMatch> proposals) {
+        for (UUID sourceRelativeId : sourceRelatives) {
+            Individual source = sourceGraph.getIndividual(sourceRelativeId);
+            if (source == null || matchedSourceIds.contains(sourceRelativeId)) continue;
+
+            for (UUID targetRelativeId : targetRelatives) {
+                Individual target = targetGraph.getIndividual(targetRelativeId);
+                if (target == null || matchedTargetIds.contains(targetRelativeId)) continue;
+
+                // A shared matched relative only adds confidence; names still have to be similar, and since
+                // siblings and spouses often share a surname and middle name, the given name or a date or place
+                // has to agree as well
+                int baseScore = calculateMatchScore(source, target);
+                if (baseScore == 0 || !namesSimilar(source, target) || !relativeCorroborated(source, target)) continue;
+
+                int score = baseScore + RELATIVE_MATCH_SCORE;
+                if (score >= MATCH_THRESHOLD) {
+                    proposals.add(IndividualMatch.builder()
                             .sourceIndividualId(source.getId())
                             .targetIndividualId(target.getId())
                             .sourceName(buildFullName(source))
                             .targetName(buildFullName(target))
                             .matchScore(score)
                             .matchType(getMatchType(score))
-                            .matchReason(getMatchReason(source, target))
+                            .matchReason(reason)
                             .clonedMatch(false)
-                            .build();
+                            .build());
                 }
             }
+        }
+    }
 
-            if (bestMatch != null) {
-                matches.add(bestMatch);
-                matchedSourceIds.add(source.getId());
-                matchedTargetIds.add(bestMatch.getTargetIndividualId());
+    /**
+     * Score candidates for a source individual, best first (ties keep target order)
+     */
+    private List<IndividualMatch> rankCandidates(Individual source, List<Individual> candidates) {
+        List<IndividualMatch> ranked = new ArrayList<>();
+        for (Individual target : candidates) {
+            int score = calculateMatchScore(source, target);
+            if (score >= MATCH_THRESHOLD) {
+                ranked.add(IndividualMatch.builder()
+                        .sourceIndividualId(source.getId())
+                        .targetIndividualId(target.getId())
+                        .sourceName(buildFullName(source))
+                        .targetName(buildFullName(target))
+                        .matchScore(score)
+                        .matchType(getMatchType(score))
+                        .matchReason(getMatchReason(source, target))
+                        .clonedMatch(false)
+                        .build());
             }
         }
-
-        return matches;
+        ranked.sort(Comparator.comparingInt(IndividualMatch::getMatchScore).reversed());
+        return ranked;
     }
 
     /**
-     * Calculate match score between two individuals
+     * Calculate match score between two individuals (see MergeCandidateIndex for the pairs it can match)
      */
-    private int calculateMatchScore(Individual source, Individual target) {
+    static int calculateMatchScore(Individual source, Individual target) {
         int score = 0;
 
         // Name matching
@@ -439,12 +653,42 @@ public class TreeMergeService {
         return score;
     }
 
+    /**
+     * Check if two individuals have equal or fuzzy-matching names
+     */
+    private boolean namesSimilar(Individual source, Individual target) {
+        String sourceName = buildFullName(source).toLowerCase().trim();
+        String targetName = buildFullName(target).toLowerCase().trim();
+        if (sourceName.isEmpty() || targetName.isEmpty()) return false;
+        return sourceName.equals(targetName) || fuzzyNameMatch(sourceName, targetName);
+    }
+
+    /**
+     * Check if a relative of a matched pair agrees on more than a similar name: the same given name
+     * (ignoring case, accents and spacing), birth years at most one year apart, or the same birth place
+     */
+    private static boolean relativeCorroborated(Individual source, Individual target) {
+        String sourceGiven = MergeCandidateIndex.normalize(source.getGivenName());
+        if (!sourceGiven.isEmpty() && sourceGiven.equals(MergeCandidateIndex.normalize(target.getGivenName()))) {
+            return true;
+        }
+        if (source.getBirthDate() != null && target.getBirthDate() != null
+                && Math.abs(source.getBirthDate().getYear() - target.getBirthDate().getYear()) <= 1) {
+            return true;
+        }
+        return source.getBirthPlace() != null && target.getBirthPlace() != null
+                && !source.getBirthPlace().trim().isEmpty()
+                && source.getBirthPlace().equalsIgnoreCase(target.getBirthPlace());
+    }
+
     /**
      * Simple fuzzy name matching
      */
-    private boolean fuzzyNameMatch(String name1, String name2) {
-        // Check if names are similar (e.g., one contains the other, or Levenshtein distance is small)
-        if (name1.contains(name2) || name2.contains(name1)) {
+    private static boolean fuzzyNameMatch(String name1, String name2) {
+        // Check if names are similar (e.g., one contains the other as whole words)
+        String padded1 = " " + name1 + " ";
+        String padded2 = " " + name2 + " ";
+        if (padded1.contains(padded2) || padded2.contains(padded1)) {
             return true;
         }
         
@@ -459,19 +703,19 @@ public class TreeMergeService {
             }
         }
         
-        return matches >= Math.min(parts1.length, parts2.length) / 2;
+        // At least half of the shorter name's words (one shared word of two three-word names is not enough)
+        return matches * 2 >= Math.min(parts1.length, parts2.length);
     }
 
     /**
      * Detect conflicts between matched individuals
      */
-    private List<MergeConflict> detectConflicts(List<IndividualMatch> matches, 
-            FamilyTree sourceTree, FamilyTree targetTree) {
+    private List<MergeConflict> detectConflicts(MergeWorkingSet workingSet, List<IndividualMatch> matches) {
         List<MergeConflict> conflicts = new ArrayList<>();
 
         for (IndividualMatch match : matches) {
-            Individual source = individualRepository.findById(match.getSourceIndividualId()).orElse(null);
-            Individual target = individualRepository.findById(match.getTargetIndividualId()).orElse(null);
+            Individual source = workingSet.getSourceIndividual(match.getSourceIndividualId());
+            Individual target = workingSet.getTargetIndividual(match.getTargetIndividualId());
             
             if (source == null || target == null) continue;
 
@@ -518,13 +762,13 @@ public class TreeMergeService {
     }
 
     // Helper methods
-    private List<MergePreviewResponse.IndividualInfo> findNewIndividuals(FamilyTree sourceTree, 
+    private List<MergePreviewResponse.IndividualInfo> findNewIndividuals(MergeWorkingSet workingSet, 
             List<IndividualMatch> matches, TreeMergeRequest request) {
         Set<UUID> matchedSourceIds = matches.stream()
                 .map(IndividualMatch::getSourceIndividualId)
                 .collect(Collectors.toSet());
         
-        return individualRepository.findByTreeId(sourceTree.getId()).stream()
+        return workingSet.getSourceIndividuals().stream()
                 .filter(ind -> !matchedSourceIds.contains(ind.getId()))
                 .filter(ind -> request.getSelectedIndividualIds() == null || 
                         request.getSelectedIndividualIds().isEmpty() ||
@@ -533,11 +777,12 @@ public class TreeMergeService {
                 .collect(Collectors.toList());
     }
 
-    private List<MergePreviewResponse.IndividualInfo> findUpdatedIndividuals(List<IndividualMatch> matches) {
+    private List<MergePreviewResponse.IndividualInfo> findUpdatedIndividuals(MergeWorkingSet workingSet,
+            List<IndividualMatch> matches) {
         return matches.stream()
                 .filter(m -> !m.isClonedMatch() || m.getMatchScore() < 100)
                 .map(match -> {
-                    Individual target = individualRepository.findById(match.getTargetIndividualId()).orElse(null);
+                    Individual target = workingSet.getTargetIndividual(match.getTargetIndividualId());
                     if (target == null) return null;
                     return MergePreviewResponse.IndividualInfo.builder()
                             .id(target.getId())
@@ -557,6 +802,58 @@ public class TreeMergeService {
         return new ArrayList<>();
     }
 
+    /**
+     * Map the source individuals taking part in a merge to their IDs in the target tree: matched individuals
+     * to their match, new (selected) individuals to their own ID as a stand-in until they are copied
+     */
+    private Map<UUID, UUID> mapMergedIds(MergeWorkingSet workingSet, List<IndividualMatch> matches,
+            TreeMergeRequest request) {
+        Map<UUID, UUID> mergedIds = new HashMap<>();
+        for (Individual sourceInd : workingSet.getSourceIndividuals()) {
+            if (request.getSelectedIndividualIds() == null ||
+                    request.getSelectedIndividualIds().isEmpty() ||
+                    request.getSelectedIndividualIds().contains(sourceInd.getId())) {
+                mergedIds.put(sourceInd.getId(), sourceInd.getId());
+            }
+        }
+        for (IndividualMatch match : matches) {
+            if (workingSet.getTargetIndividual(match.getTargetIndividualId()) != null) {
+                mergedIds.put(match.getSourceIndividualId(), match.getTargetIndividualId());
+            }
+        }
+        return mergedIds;
+    }
+
+    /**
+     * Find the source parent-child links that would close a cycle in the target tree once merged.
+     * Each link is checked against the target's links plus the source links accepted before it,
+     * with one walk up the ancestors (same check as creating a relationship).
+     */
+    private List<Relationship> findCircularLinks(MergeWorkingSet workingSet, Map<UUID, UUID> mergedIds) {
+        TreeGraph merged = new TreeGraph(Collections.emptyList(), workingSet.getTargetRelationships());
+        List<Relationship> circularLinks = new ArrayList<>();
+        for (Relationship sourceRel : workingSet.getSourceRelationships()) {
+            if (!TreeGraph.isParentType(sourceRel.getType())) {
+                continue;
+            }
+            UUID parentId = mergedIds.get(sourceRel.getIndividual1().getId());
+            UUID childId = mergedIds.get(sourceRel.getIndividual2().getId());
+            if (parentId == null || childId == null) {
+                continue;
+            }
+            if (merged.wouldCreateCycle(parentId, childId)) {
+                circularLinks.add(sourceRel);
+            } else {
+                merged.addParentLink(parentId, childId);
+            }
+        }
+        return circularLinks;
+    }
+
+    private String describeLink(Relationship link) {
+        return buildFullName(link.getIndividual1()) + " → " + buildFullName(link.getIndividual2());
+    }
+
     private List<MergePreviewResponse.ValidationError> validateDataIntegrity(
             List<MergePreviewResponse.IndividualInfo> newIndividuals,
             List<MergePreviewResponse.RelationshipInfo> newRelationships) {
@@ -621,8 +918,7 @@ public class TreeMergeService {
      * Build detailed individual previews for interactive selection UI
      */
     private List<MergePreviewResponse.IndividualPreview> buildIndividualPreviews(
-            FamilyTree sourceTree, FamilyTree targetTree,
-            List<IndividualMatch> matches, List<MergeConflict> allConflicts) {
+            MergeWorkingSet workingSet, List<IndividualMatch> matches, List<MergeConflict> allConflicts) {
         
         List<MergePreviewResponse.IndividualPreview> previews = new ArrayList<>();
         
@@ -634,21 +930,18 @@ public class TreeMergeService {
         Map<UUID, List<MergeConflict>> conflictsBySourceId = allConflicts.stream()
                 .collect(Collectors.groupingBy(MergeConflict::getSourceIndividualId));
         
-        // Get all source individuals
-        List<Individual> sourceIndividuals = individualRepository.findByTreeId(sourceTree.getId());
-        
-        // Get all source relationships for grouping
-        List<Relationship> sourceRelationships = relationshipRepository.findByTreeId(sourceTree.getId());
-        
-        // Get all target relationships for checking existence
-        List<Relationship> targetRelationships = relationshipRepository.findByTreeId(targetTree.getId());
+        // Source relationships for grouping, target relationships for checking existence
+        List<Relationship> sourceRelationships = workingSet.getSourceRelationships();
+        Set<String> targetRelationshipKeys = workingSet.getTargetRelationships().stream()
+                .map(rel -> rel.getType() + ":" + rel.getIndividual1().getId() + ":" + rel.getIndividual2().getId())
+                .collect(Collectors.toSet());
         
-        for (Individual source : sourceIndividuals) {
+        for (Individual source : workingSet.getSourceIndividuals()) {
             IndividualMatch match = matchesBySourceId.get(source.getId());
             Individual target = null;
             
             if (match != null) {
-                target = individualRepository.findById(match.getTargetIndividualId()).orElse(null);
+                target = workingSet.getTargetIndividual(match.getTargetIndividualId());
             }
             
             // Build conflicts for this individual
@@ -669,7 +962,7 @@ public class TreeMergeService {
                     Individual relatedPerson = rel.getIndividual2();
                     boolean existsInTarget = checkRelationshipExistsInTarget(
                             match, matchesBySourceId.get(relatedPerson.getId()), 
-                            rel.getType(), targetRelationships);
+                            rel.getType(), targetRelationshipKeys);
                     
                     relPreviews.add(MergePreviewResponse.RelationshipPreview.builder()
                             .sourceRelationshipId(rel.getId())
@@ -684,7 +977,7 @@ public class TreeMergeService {
                     Individual relatedPerson = rel.getIndividual1();
                     boolean existsInTarget = checkRelationshipExistsInTarget(
                             matchesBySourceId.get(relatedPerson.getId()), match,
-                            rel.getType(), targetRelationships);
+                            rel.getType(), targetRelationshipKeys);
                     
                     relPreviews.add(MergePreviewResponse.RelationshipPreview.builder()
                             .sourceRelationshipId(rel.getId())
@@ -733,16 +1026,22 @@ public class TreeMergeService {
      * Check if a relationship already exists in target tree
      */
     private boolean checkRelationshipExistsInTarget(IndividualMatch match1, IndividualMatch match2,
-            RelationshipType type, List<Relationship> targetRelationships) {
+            RelationshipType type, Set<String> targetRelationshipKeys) {
         if (match1 == null || match2 == null) return false;
         
         UUID targetId1 = match1.getTargetIndividualId();
         UUID targetId2 = match2.getTargetIndividualId();
         
-        return targetRelationships.stream().anyMatch(rel ->
-                rel.getType() == type &&
-                rel.getIndividual1().getId().equals(targetId1) &&
-                rel.getIndividual2().getId().equals(targetId2));
+        return targetRelationshipKeys.contains(type + ":" + targetId1 + ":" + targetId2);
+    }
+
+    /**
+     * Key of a relationship regardless of direction, matching existsByTreeIdAndIndividualsAndType
+     */
+    private static String relationshipKey(UUID id1, UUID id2, RelationshipType type) {
+        return id1.compareTo(id2) <= 0
+                ? type + ":" + id1 + ":" + id2
+                : type + ":" + id2 + ":" + id1;
     }
 
     private MergePreviewResponse buildErrorResponse(UUID targetTreeId, TreeMergeRequest request,
@@ -759,7 +1058,7 @@ public class TreeMergeService {
                 .build();
     }
 
-    private Individual cloneIndividual(Individual source, FamilyTree targetTree) {
+    private Individual cloneIndividual(Individual source, SharedContent sharedContent, FamilyTree targetTree) {
         return Individual.builder()
                 .tree(targetTree)
                 .givenName(source.getGivenName())
@@ -771,28 +1070,36 @@ public class TreeMergeService {
                 .birthPlace(source.getBirthPlace())
                 .deathDate(source.getDeathDate())
                 .deathPlace(source.getDeathPlace())
-                .biography(source.getBiography())
-                .notes(source.getNotes())
+                .biography(sharedContent != null ? sharedContent.getBiography() : source.getBiography())
+                .notes(sharedContent != null ? sharedContent.getNotes() : source.getNotes())
                 .facebookLink(source.getFacebookLink())
                 .phoneNumber(source.getPhoneNumber())
                 .build();
     }
 
-    private boolean updateFromSource(IndividualMatch match, ConflictResolution resolution) {
-        Individual source = individualRepository.findById(match.getSourceIndividualId()).orElse(null);
-        Individual target = individualRepository.findById(match.getTargetIndividualId()).orElse(null);
+    private boolean updateFromSource(MergeWorkingSet workingSet, IndividualMatch match, ConflictResolution resolution,
+            Map<UUID, SharedContent> sourceContent, Map<UUID, SharedContent> targetContent) {
+        Individual source = workingSet.getSourceIndividual(match.getSourceIndividualId());
+        Individual target = workingSet.getTargetIndividual(match.getTargetIndividualId());
         
         if (source == null || target == null) return false;
+
+        SharedContent sourceShared = sourceContent.get(source.getId());
+        String sourceBiography = sourceShared != null ? sourceShared.getBiography() : source.getBiography();
+        String sourceNotes = sourceShared != null ? sourceShared.getNotes() : source.getNotes();
+        SharedContent targetShared = targetContent.get(target.getId());
+        String biography = targetShared != null ? targetShared.getBiography() : target.getBiography();
+        String notes = targetShared != null ? targetShared.getNotes() : target.getNotes();
         
         boolean updated = false;
         
         // Update empty fields from source
-        if (target.getBiography() == null && source.getBiography() != null) {
-            target.setBiography(source.getBiography());
+        if (biography == null && sourceBiography != null) {
+            biography = sourceBiography;
             updated = true;
         }
-        if (target.getNotes() == null && source.getNotes() != null) {
-            target.setNotes(source.getNotes());
+        if (notes == null && sourceNotes != null) {
+            notes = sourceNotes;
             updated = true;
         }
         
@@ -800,11 +1107,18 @@ public class TreeMergeService {
         if (resolution == ConflictResolution.THEIRS) {
             if (source.getBirthPlace() != null) target.setBirthPlace(source.getBirthPlace());
             if (source.getDeathPlace() != null) target.setDeathPlace(source.getDeathPlace());
-            if (source.getBiography() != null) target.setBiography(source.getBiography());
+            if (sourceBiography != null) biography = sourceBiography;
             updated = true;
         }
         
         if (updated) {
+            // The target gets its own content, and its copy-on-write clones keep the current one
+            overlayService.materialize(target);
+            if (!Objects.equals(biography, target.getBiography()) || !Objects.equals(notes, target.getNotes())) {
+                overlayService.materializeClones(target);
+            }
+            target.setBiography(biography);
+            target.setNotes(notes);
             individualRepository.save(target);
         }
         
@@ -841,7 +1155,7 @@ public class TreeMergeService {
         return false;
     }
 
-    private String buildFullName(Individual individual) {
+    private static String buildFullName(Individual individual) {
         StringBuilder name = new StringBuilder();
         if (individual.getSurname() != null) name.append(individual.getSurname());
         if (individual.getGivenName() != null) {
@@ -0,0 +1,400 @@
+package com.familytree.service;
+
+import com.familytree.model.Gender;
+import com.familytree.model.QualityIssueType;
+import com.familytree.model.RelationshipType;
+import com.familytree.model.TreeQualityFinding;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Data-quality checks over one snapshot of a tree (individual rows and relationship edges).
+ *
+ * Every individual gets a signature covering its own fields and its relationships, so a later scan
+ * can compare signatures and recheck only the changed individuals and their direct relatives.
+ * Checks anchored on a person, a parent link or a duplicate pair run for the individuals in scope;
+ * parent-child cycles are always searched in the whole tree, which is a linear pass.
+ */
+class TreeQualityScanner {
+
+    private static final int MAX_AGE = 120;
+    private static final int MIN_PARENT_AGE = 12;
+
+    // A child can be born up to about ten months after the father's death
+    private static final int FATHER_DEATH_GRACE_MONTHS = 10;
+
+    private final UUID treeId;
+    private final String treeVersion;
+    private final LocalDate today;
+    private final LocalDateTime detectedAt = LocalDateTime.now();
+
+    private final int n;
+    private final UUID[] ids;
+    private final String[] givenNames;
+    private final String[] surnames;
+    private final LocalDate[] birthDates;
+    private final LocalDate[] deathDates;
+    private final Gender[] genders;
+    private final Map<UUID, Integer> indexById;
+
+    // Every relationship as neighbour lists, and parent links (parent, child, type)
+    private final List<Set<Integer>> neighbours;
+    private final List<int[]> parentLinks = new ArrayList<>();
+    private final long[] signatures;
+
+    TreeQualityScanner(UUID treeId, String treeVersion, List<Object[]> individualRows, List<Object[]> edgeRows,
+                       LocalDate today) {
+        this.treeId = treeId;
+        this.treeVersion = treeVersion;
+        this.today = today;
+
+        n = individualRows.size();
+        ids = new UUID[n];
+        givenNames = new String[n];
+        surnames = new String[n];
+        birthDates = new LocalDate[n];
+        deathDates = new LocalDate[n];
+        genders = new Gender[n];
+        indexById = new HashMap<>(n * 2);
+        signatures = new long[n];
+        neighbours = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Object[] row = individualRows.get(i);
+            ids[i] = (UUID) row[0];
+            givenNames[i] = (String) row[1];
+            surnames[i] = (String) row[2];
+            birthDates[i] = (LocalDate) row[3];
+            deathDates[i] = (LocalDate) row[4];
+            genders[i] = (Gender) row[5];
+            indexById.put(ids[i], i);
+            neighbours.add(new HashSet<>());
+            signatures[i] = mix(Objects.hash(givenNames[i], surnames[i], birthDates[i], deathDates[i], genders[i]));
+        }
+
+        for (Object[] edge : edgeRows) {
+            Integer a = indexById.get((UUID) edge[0]);
+            Integer b = indexById.get((UUID) edge[1]);
+            if (a == null || b == null) {
+                continue;
+            }
+            RelationshipType type = (RelationshipType) edge[2];
+            neighbours.get(a).add(b);
+            neighbours.get(b).add(a);
+            if (TreeGraph.isParentType(type)) {
+                parentLinks.add(new int[]{a, b, type.ordinal()});
+            }
+            // Order-independent sum, so the same relationships always give the same signature
+            signatures[a] += mix(ids[b].getMostSignificantBits() ^ ids[b].getLeastSignificantBits() * 31 + type.ordinal() * 2);
+            signatures[b] += mix(ids[a].getMostSignificantBits() ^ ids[a].getLeastSignificantBits() * 31 + type.ordinal() * 2 + 1);
+        }
+    }
+
+    int size() {
+        return n;
+    }
+
+    UUID getId(int i) {
+        return ids[i];
+    }
+
+    /**
+     * Get the signature of every individual, to compare with on the next scan
+     */
+    Map<UUID, Long> getSignatures() {
+        Map<UUID, Long> byId = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            byId.put(ids[i], signatures[i]);
+        }
+        return byId;
+    }
+
+    /**
+     * Scope covering every individual
+     */
+    boolean[] fullScope() {
+        boolean[] scope = new boolean[n];
+        Arrays.fill(scope, true);
+        return scope;
+    }
+
+    /**
+     * Scope covering the individuals that are new or changed since the previous signatures,
+     * and their direct relatives (whose checks involve them)
+     */
+    boolean[] changedScope(Map<UUID, Long> previousSignatures) {
+        boolean[] scope = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            Long previous = previousSignatures.get(ids[i]);
+            if (previous == null || previous != signatures[i]) {
+                scope[i] = true;
+                for (int neighbour : neighbours.get(i)) {
+                    scope[neighbour] = true;
+                }
+            }
+        }
+        return scope;
+    }
+
+    /**
+     * Run the checks. Returns every finding involving an individual in scope, and all cycle findings.
+     */
+    List<TreeQualityFinding> scan(boolean[] scope) {
+        List<TreeQualityFinding> findings = new ArrayList<>();
+        findCycles(findings);
+        checkAges(scope, findings);
+        checkParentLinks(scope, findings);
+        findDuplicates(scope, findings);
+        return findings;
+    }
+
+    /**
+     * Individuals on a parent-child cycle: after removing everyone reachable in topological order
+     * from the top (parents first) and from the bottom (children first), only cycles and the links
+     * between them remain.
+     */
+    private void findCycles(List<TreeQualityFinding> findings) {
+        int[] unvisitedParents = new int[n];
+        int[] unvisitedChildren = new int[n];
+        List<List<Integer>> children = new ArrayList<>(n);
+        List<List<Integer>> parents = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            children.add(new ArrayList<>());
+            parents.add(new ArrayList<>());
+        }
+        for (int[] link : parentLinks) {
+            children.get(link[0]).add(link[1]);
+            parents.get(link[1]).add(link[0]);
+            unvisitedParents[link[1]]++;
+            unvisitedChildren[link[0]]++;
+        }
+
+        boolean[] removed = new boolean[n];
+        peel(unvisitedParents, children, removed);
+        peel(unvisitedChildren, parents, removed);
+
+        for (int i = 0; i < n; i++) {
+            if (!removed[i]) {
+                findings.add(finding(QualityIssueType.PARENT_CHILD_CYCLE, i, -1,
+                        "Is recorded as their own ancestor through a parent-child cycle"));
+            }
+        }
+    }
+
+    /**
+     * Remove individuals whose remaining in-degree is zero, following the given direction
+     */
+    private void peel(int[] inDegree, List<List<Integer>> next, boolean[] removed) {
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            if (!removed[i] && inDegree[i] == 0) {
+                ready.add(i);
+            }
+        }
+        while (!ready.isEmpty()) {
+            int i = ready.poll();
+            removed[i] = true;
+            for (int j : next.get(i)) {
+                if (!removed[j] && --inDegree[j] == 0) {
+                    ready.add(j);
+                }
+            }
+        }
+    }
+
+    private void checkAges(boolean[] scope, List<TreeQualityFinding> findings) {
+        for (int i = 0; i < n; i++) {
+            if (!scope[i]) {
+                continue;
+            }
+            LocalDate birth = birthDates[i];
+            LocalDate death = deathDates[i];
+            if (birth != null && birth.isAfter(today)) {
+                findings.add(finding(QualityIssueType.IMPOSSIBLE_AGE, i, -1, "Birth date " + birth + " is in the future"));
+            }
+            if (death != null && death.isAfter(today)) {
+                findings.add(finding(QualityIssueType.IMPOSSIBLE_AGE, i, -1, "Death date " + death + " is in the future"));
+            }
+            if (birth != null && death != null) {
+                if (death.isBefore(birth)) {
+                    findings.add(finding(QualityIssueType.IMPOSSIBLE_AGE, i, -1,
+                            "Died (" + death + ") before being born (" + birth + ")"));
+                } else if (ChronoUnit.YEARS.between(birth, death) > MAX_AGE) {
+                    findings.add(finding(QualityIssueType.IMPOSSIBLE_AGE, i, -1,
+                            "Lived " + ChronoUnit.YEARS.between(birth, death) + " years"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Birth order and number of biological parents. Adoptive and step parents are not checked.
+     */
+    private void checkParentLinks(boolean[] scope, List<TreeQualityFinding> findings) {
+        Set<Long> checkedPairs = new HashSet<>();
+        Map<Integer, Set<Integer>> fathers = new HashMap<>();
+        Map<Integer, Set<Integer>> mothers = new HashMap<>();
+
+        for (int[] link : parentLinks) {
+            int parent = link[0];
+            int child = link[1];
+            RelationshipType type = RelationshipType.values()[link[2]];
+            if (type != RelationshipType.PARENT_CHILD && type != RelationshipType.FATHER_CHILD
+                    && type != RelationshipType.MOTHER_CHILD) {
+                continue;
+            }
+
+            boolean father = type == RelationshipType.FATHER_CHILD
+                    || (type == RelationshipType.PARENT_CHILD && genders[parent] == Gender.MALE);
+            boolean mother = type == RelationshipType.MOTHER_CHILD
+                    || (type == RelationshipType.PARENT_CHILD && genders[parent] == Gender.FEMALE);
+            if (father) {
+                fathers.computeIfAbsent(child, k -> new LinkedHashSet<>()).add(parent);
+            }
+            if (mother) {
+                mothers.computeIfAbsent(child, k -> new LinkedHashSet<>()).add(parent);
+            }
+
+            // The same pair can be linked twice (e.g. PARENT_CHILD and FATHER_CHILD)
+            if (!(scope[parent] || scope[child]) || !checkedPairs.add(((long) parent << 32) | child)) {
+                continue;
+            }
+            LocalDate childBirth = birthDates[child];
+            if (childBirth == null) {
+                continue;
+            }
+            LocalDate parentBirth = birthDates[parent];
+            if (parentBirth != null) {
+                if (!childBirth.isAfter(parentBirth)) {
+                    findings.add(finding(QualityIssueType.CHILD_BORN_BEFORE_PARENT, child, parent,
+                            "Born " + childBirth + ", not after their parent (born " + parentBirth + ")"));
+                } else if (ChronoUnit.YEARS.between(parentBirth, childBirth) < MIN_PARENT_AGE) {
+                    findings.add(finding(QualityIssueType.IMPOSSIBLE_AGE, child, parent,
+                            "Parent was " + ChronoUnit.YEARS.between(parentBirth, childBirth) + " years old at the birth"));
+                }
+            }
+            LocalDate parentDeath = deathDates[parent];
+            if (parentDeath != null) {
+                LocalDate latestBirth = mother ? parentDeath : parentDeath.plusMonths(FATHER_DEATH_GRACE_MONTHS);
+                if (childBirth.isAfter(latestBirth)) {
+                    findings.add(finding(QualityIssueType.CHILD_BORN_AFTER_PARENT_DEATH, child, parent,
+                            "Born " + childBirth + ", after their parent's death (" + parentDeath + ")"));
+                }
+            }
+        }
+
+        addMultipleParents(scope, fathers, QualityIssueType.MULTIPLE_BIOLOGICAL_FATHERS, "biological fathers", findings);
+        addMultipleParents(scope, mothers, QualityIssueType.MULTIPLE_BIOLOGICAL_MOTHERS, "biological mothers", findings);
+    }
+
+    private void addMultipleParents(boolean[] scope, Map<Integer, Set<Integer>> parentsByChild, QualityIssueType type,
+                                    String label, List<TreeQualityFinding> findings) {
+        for (Map.Entry<Integer, Set<Integer>> entry : parentsByChild.entrySet()) {
+            if (entry.getValue().size() < 2) {
+                continue;
+            }
+            // The finding names the child and the first parent, either being in scope means it is replaced
+            int first = entry.getValue().iterator().next();
+            if (!scope[entry.getKey()] && !scope[first]) {
+                continue;
+            }
+            StringJoiner names = new StringJoiner(", ");
+            for (int parent : entry.getValue()) {
+                names.add(displayName(parent));
+            }
+            findings.add(finding(type, entry.getKey(), first,
+                    "Has " + entry.getValue().size() + " " + label + ": " + names));
+        }
+    }
+
+    /**
+     * Unrelated individuals with the same normalized full name, compatible genders and birth years
+     * at most one year apart (or, without birth dates, the same death date)
+     */
+    private void findDuplicates(boolean[] scope, List<TreeQualityFinding> findings) {
+        Map<String, List<Integer>> byName = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            String surname = MergeCandidateIndex.normalize(surnames[i]);
+            String given = MergeCandidateIndex.normalize(givenNames[i]);
+            if (!surname.isEmpty() && !given.isEmpty()) {
+                byName.computeIfAbsent(surname + "|" + given, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        for (List<Integer> block : byName.values()) {
+            if (block.size() < 2 || block.stream().noneMatch(i -> scope[i])) {
+                continue;
+            }
+            // Sorted by birth year, so each individual is only compared within a one-year window
+            block.sort(Comparator.comparing((Integer i) -> birthDates[i] == null ? Integer.MAX_VALUE : birthDates[i].getYear()));
+            for (int x = 0; x < block.size(); x++) {
+                int a = block.get(x);
+                for (int y = x + 1; y < block.size(); y++) {
+                    int b = block.get(y);
+                    if (birthDates[a] != null && birthDates[b] != null
+                            && birthDates[b].getYear() - birthDates[a].getYear() > 1) {
+                        break;
+                    }
+                    if ((scope[a] || scope[b]) && likelySame(a, b)) {
+                        int first = ids[a].compareTo(ids[b]) < 0 ? a : b;
+                        int second = first == a ? b : a;
+                        findings.add(finding(QualityIssueType.POSSIBLE_DUPLICATE, first, second,
+                                "Same name and dates as another individual who is not related to them"));
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean likelySame(int a, int b) {
+        if (neighbours.get(a).contains(b)) {
+            return false;
+        }
+        if ((genders[a] == Gender.MALE && genders[b] == Gender.FEMALE)
+                || (genders[a] == Gender.FEMALE && genders[b] == Gender.MALE)) {
+            return false;
+        }
+        if (birthDates[a] != null && birthDates[b] != null) {
+            return true;
+        }
+        return birthDates[a] == null && birthDates[b] == null
+                && deathDates[a] != null && deathDates[a].equals(deathDates[b]);
+    }
+
+    private TreeQualityFinding finding(QualityIssueType type, int individual, int related, String message) {
+        return TreeQualityFinding.builder()
+                .treeId(treeId)
+                .type(type)
+                .individualId(ids[individual])
+                .individualName(displayName(individual))
+                .relatedIndividualId(related >= 0 ? ids[related] : null)
+                .relatedIndividualName(related >= 0 ? displayName(related) : null)
+                .message(message)
+                .treeVersion(treeVersion)
+                .detectedAt(detectedAt)
+                .build();
+    }
+
+    private String displayName(int i) {
+        // Surname first, as everywhere else in the application
+        StringBuilder name = new StringBuilder();
+        if (surnames[i] != null) name.append(surnames[i].trim());
+        if (givenNames[i] != null) {
+            if (name.length() > 0) name.append(" ");
+            name.append(givenNames[i].trim());
+        }
+        return name.toString();
+    }
+
+    /**
+     * Spread bits of a value over a long (SplitMix64 finalizer)
+     */
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
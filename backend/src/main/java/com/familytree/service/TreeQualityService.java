@@ -0,0 +1,294 @@
+package com.familytree.service;
+
+import com.familytree.dto.quality.TreeQualityFindingResponse;
+import com.familytree.dto.quality.TreeQualityReportResponse;
+import com.familytree.exception.ResourceNotFoundException;
+import com.familytree.exception.UnauthorizedException;
+import com.familytree.model.QualityIssueType;
+import com.familytree.model.TreeQualityFinding;
+import com.familytree.model.TreeQualityScan;
+import com.familytree.model.TreeQualityScanStatus;
+import com.familytree.repository.FamilyTreeRepository;
+import com.familytree.repository.IndividualRepository;
+import com.familytree.repository.RelationshipRepository;
+import com.familytree.repository.TreeQualityFindingRepository;
+import com.familytree.repository.TreeQualityScanRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Service running the data-quality scan of family trees in the background (see TreeQualityScanner).
+ *
+ * A scan is queued whenever a tree changes (see TreeStatsService.markChanged) and when editors open
+ * the findings of a tree whose scan is out of date. Findings are stored with the tree version they
+ * were found in. The node signatures of each tree's last scan are kept in memory, so the next scan
+ * only rechecks the changed individuals and their relatives; after a restart the first scan of a
+ * tree is a full one.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TreeQualityService {
+
+    // Individual IDs per DELETE statement, well below the bind parameter limit
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final FamilyTreeRepository treeRepository;
+    private final IndividualRepository individualRepository;
+    private final RelationshipRepository relationshipRepository;
+    private final TreeQualityFindingRepository findingRepository;
+    private final TreeQualityScanRepository scanRepository;
+    private final PermissionService permissionService;
+    private final TreeVersionService treeVersionService;
+    private final PlatformTransactionManager transactionManager;
+    private final TransactionTemplate transactionTemplate;
+
+    @Qualifier("treeQualityExecutor")
+    private final TaskExecutor treeQualityExecutor;
+
+    @Value("${tree.quality.signature-cache.max-entries:16}")
+    private int maxSignatureEntries;
+
+    // Trees with a scan queued
+    private final Set<UUID> pendingScans = ConcurrentHashMap.newKeySet();
+
+    // Node signatures of the last completed scan per tree, most recently used last
+    private final LinkedHashMap<UUID, ScanState> lastScans = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Queue a scan of a tree on the single tree quality thread (see AsyncConfig); a tree already queued is scanned once
+     */
+    public void scheduleScan(UUID treeId) {
+        if (pendingScans.add(treeId)) {
+            try {
+                treeQualityExecutor.execute(() -> runScan(treeId));
+            } catch (TaskRejectedException e) {
+                // Queued again with the next change of the tree, or when its findings are opened
+                pendingScans.remove(treeId);
+                log.warn("Skipped data-quality scan of tree {}: {}", treeId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Get the data-quality findings of a tree (tree editors only).
+     * If they do not describe the current tree version, a scan is queued and the stored findings are returned.
+     * @param type only findings of this type, or null for all
+     */
+    @Transactional(readOnly = true)
+    public TreeQualityReportResponse getReport(UUID treeId, QualityIssueType type, String userEmail) {
+        checkEditor(treeId, userEmail);
+
+        String version = treeVersionService.getVersion(treeId);
+        TreeQualityScan scan = scanRepository.findById(treeId).orElse(null);
+        boolean upToDate = scan != null && scan.getStatus() == TreeQualityScanStatus.COMPLETED
+                && version.equals(scan.getTreeVersion());
+        if (!upToDate) {
+            scheduleScan(treeId);
+        }
+
+        List<TreeQualityFinding> findings = type != null
+                ? findingRepository.findByTreeIdAndTypeOrderByIndividualNameAsc(treeId, type)
+                : findingRepository.findByTreeIdOrderByTypeAscIndividualNameAsc(treeId);
+
+        return TreeQualityReportResponse.builder()
+                .treeId(treeId)
+                .currentVersion(version)
+                .scannedVersion(scan != null ? scan.getTreeVersion() : null)
+                .upToDate(upToDate)
+                .status(pendingScans.contains(treeId) ? TreeQualityScanStatus.PENDING
+                        : scan != null ? scan.getStatus() : null)
+                .incremental(scan != null && scan.isIncremental())
+                .individualsScanned(scan != null ? scan.getIndividualsScanned() : 0)
+                .scannedAt(scan != null ? scan.getScannedAt() : null)
+                .errorMessage(scan != null ? scan.getErrorMessage() : null)
+                .findings(findings.stream().map(TreeQualityFindingResponse::fromFinding).collect(Collectors.toList()))
+                .build();
+    }
+
+    /**
+     * Queue a full rescan of a tree (tree editors only)
+     */
+    public void requestFullScan(UUID treeId, String userEmail) {
+        transactionTemplate.executeWithoutResult(status -> checkEditor(treeId, userEmail));
+        synchronized (lastScans) {
+            lastScans.remove(treeId);
+        }
+        // No longer completed, so the scan runs even if the tree has not changed
+        updateScan(treeId, s -> s.setStatus(TreeQualityScanStatus.PENDING));
+        scheduleScan(treeId);
+        log.info("Full data-quality scan of tree {} requested by {}", treeId, userEmail);
+    }
+
+    private void checkEditor(UUID treeId, String userEmail) {
+        if (!treeRepository.existsByIdAndDeletedAtIsNull(treeId)) {
+            throw new ResourceNotFoundException("Tree not found with ID: " + treeId);
+        }
+        if (!permissionService.hasEditPermission(treeId, userEmail)) {
+            throw new UnauthorizedException("Only tree editors can view data-quality findings");
+        }
+    }
+
+    private void runScan(UUID treeId) {
+        pendingScans.remove(treeId);
+        try {
+            scan(treeId);
+        } catch (Exception e) {
+            log.error("Data-quality scan of tree {} failed", treeId, e);
+            try {
+                updateScan(treeId, s -> {
+                    s.setStatus(TreeQualityScanStatus.FAILED);
+                    s.setErrorMessage(e.getMessage());
+                });
+            } catch (Exception updateError) {
+                log.warn("Could not record the failed scan of tree {}: {}", treeId, updateError.getMessage());
+            }
+        }
+    }
+
+    private void scan(UUID treeId) {
+        long start = System.currentTimeMillis();
+
+        // Consistent snapshot: the version is read first, so the data is never older than the version it is stored with
+        TransactionTemplate snapshotTemplate = new TransactionTemplate(transactionManager);
+        snapshotTemplate.setReadOnly(true);
+        snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        Snapshot snapshot = snapshotTemplate.execute(status -> {
+            if (!treeRepository.existsByIdAndDeletedAtIsNull(treeId)) {
+                return null;
+            }
+            return new Snapshot(treeVersionService.getVersion(treeId),
+                    individualRepository.findSnapshotRowsByTreeId(treeId),
+                    relationshipRepository.findEdgesByTreeId(treeId),
+                    scanRepository.findById(treeId).orElse(null));
+        });
+        if (snapshot == null) {
+            // Deleted meanwhile; the purge removes its findings
+            return;
+        }
+
+        boolean completed = snapshot.scan != null && snapshot.scan.getStatus() == TreeQualityScanStatus.COMPLETED;
+        if (completed && snapshot.version.equals(snapshot.scan.getTreeVersion())) {
+            return;
+        }
+
+        // Incremental only if the stored findings describe the version the kept signatures were taken from
+        ScanState previous;
+        synchronized (lastScans) {
+            previous = lastScans.get(treeId);
+        }
+        boolean incremental = completed && previous != null && previous.version.equals(snapshot.scan.getTreeVersion());
+
+        updateScan(treeId, s -> s.setStatus(TreeQualityScanStatus.RUNNING));
+
+        TreeQualityScanner scanner = new TreeQualityScanner(treeId, snapshot.version, snapshot.individuals,
+                snapshot.edges, LocalDate.now());
+        boolean[] scope = incremental ? scanner.changedScope(previous.signatures) : scanner.fullScope();
+        List<TreeQualityFinding> findings = scanner.scan(scope);
+        Map<UUID, Long> signatures = scanner.getSignatures();
+
+        // Findings to replace: those of every individual in scope and of individuals removed since the last scan
+        List<UUID> replacedIds = new ArrayList<>();
+        for (int i = 0; i < scanner.size(); i++) {
+            if (scope[i]) {
+                replacedIds.add(scanner.getId(i));
+            }
+        }
+        int scanned = replacedIds.size();
+        if (incremental) {
+            for (UUID id : previous.signatures.keySet()) {
+                if (!signatures.containsKey(id)) {
+                    replacedIds.add(id);
+                }
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (incremental) {
+                for (int from = 0; from < replacedIds.size(); from += DELETE_BATCH_SIZE) {
+                    findingRepository.deleteByTreeIdAndIndividualIds(treeId,
+                            replacedIds.subList(from, Math.min(from + DELETE_BATCH_SIZE, replacedIds.size())));
+                }
+                // Cycles are always searched in the whole tree
+                findingRepository.deleteByTreeIdAndType(treeId, QualityIssueType.PARENT_CHILD_CYCLE);
+            } else {
+                findingRepository.deleteByTreeId(treeId);
+            }
+            findingRepository.saveAll(findings);
+
+            TreeQualityScan scan = scanRepository.findById(treeId)
+                    .orElseGet(() -> TreeQualityScan.builder().treeId(treeId).build());
+            scan.setStatus(TreeQualityScanStatus.COMPLETED);
+            scan.setTreeVersion(snapshot.version);
+            scan.setIncremental(incremental);
+            scan.setIndividualsScanned(scanned);
+            scan.setFindingsCount((int) findingRepository.countByTreeId(treeId));
+            scan.setDurationMs(System.currentTimeMillis() - start);
+            scan.setErrorMessage(null);
+            scan.setScannedAt(LocalDateTime.now());
+            scanRepository.save(scan);
+        });
+
+        synchronized (lastScans) {
+            lastScans.put(treeId, new ScanState(snapshot.version, signatures));
+            Iterator<UUID> eldest = lastScans.keySet().iterator();
+            while (lastScans.size() > maxSignatureEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        log.info("Data-quality scan of tree {} ({}): {} of {} individuals checked, {} findings in {} ms",
+                treeId, incremental ? "incremental" : "full", scanned, scanner.size(), findings.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    private void updateScan(UUID treeId, Consumer<TreeQualityScan> update) {
+        transactionTemplate.executeWithoutResult(status -> {
+            TreeQualityScan scan = scanRepository.findById(treeId)
+                    .orElseGet(() -> TreeQualityScan.builder().treeId(treeId).build());
+            update.accept(scan);
+            scanRepository.save(scan);
+        });
+    }
+
+    private static class Snapshot {
+        final String version;
+        final List<Object[]> individuals;
+        final List<Object[]> edges;
+        final TreeQualityScan scan;
+
+        Snapshot(String version, List<Object[]> individuals, List<Object[]> edges, TreeQualityScan scan) {
+            this.version = version;
+            this.individuals = individuals;
+            this.edges = edges;
+            this.scan = scan;
+        }
+    }
+
+    private static class ScanState {
+        final String version;
+        final Map<UUID, Long> signatures;
+
+        ScanState(String version, Map<UUID, Long> signatures) {
+            this.version = version;
+            this.signatures = signatures;
+        }
+    }
+}
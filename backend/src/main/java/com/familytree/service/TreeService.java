@@ -6,12 +6,9 @@ import com.familytree.dto.tree.UpdateTreeRequest;
 import com.familytree.exception.ResourceNotFoundException;
 import com.familytree.exception.UnauthorizedException;
 import com.familytree.model.FamilyTree;
-import com.familytree.model.Individual;
-import com.familytree.model.Media;
+import com.familytree.model.TreeStats;
 import com.familytree.model.User;
 import com.familytree.repository.FamilyTreeRepository;
-import com.familytree.repository.IndividualCloneMappingRepository;
-import com.familytree.repository.MediaRepository;
 import com.familytree.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -20,8 +17,8 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
-import java.util.UUID;
+import java.time.LocalDateTime;
+import java.util.*;
 
 /**
  * Service for managing family trees
@@ -37,11 +34,8 @@ public class TreeService {
     private final com.familytree.repository.IndividualRepository individualRepository;
     private final com.familytree.repository.RelationshipRepository relationshipRepository;
     private final com.familytree.repository.UserTreeProfileRepository userTreeProfileRepository;
-    private final com.familytree.repository.TreePermissionRepository treePermissionRepository;
-    private final com.familytree.repository.TreeInvitationRepository treeInvitationRepository;
-    private final MediaRepository mediaRepository;
-    private final IndividualCloneMappingRepository cloneMappingRepository;
-    private final MinioService minioService;
+    private final TreeDeletionService treeDeletionService;
+    private final TreeStatsService treeStatsService;
 
     /**
      * Create a new family tree
@@ -65,6 +59,7 @@ public class TreeService {
                 .build();
 
         FamilyTree savedTree = treeRepository.save(tree);
+        treeStatsService.markChanged(savedTree.getId());
         log.info("Tree created with ID: {}", savedTree.getId());
 
         return convertToResponse(savedTree);
@@ -77,7 +72,7 @@ public class TreeService {
     public TreeResponse getTree(UUID treeId, String userEmail) {
         log.info("Fetching tree {} for user '{}'", treeId, userEmail);
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Check authorization
@@ -99,15 +94,31 @@ public class TreeService {
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
 
-        Page<FamilyTree> trees;
+        // One query loads the page with owners, statistics and root names; one more loads the admins
+        Page<Object[]> rows;
         if (user.isAdmin()) {
             log.info("User '{}' is admin, returning all trees", userEmail);
-            trees = treeRepository.findAllTrees(pageable);
+            rows = treeRepository.findAllTreesWithStats(pageable);
         } else {
-            trees = treeRepository.findTreesAccessibleByUser(user.getId(), pageable);
+            rows = treeRepository.findTreesAccessibleByUserWithStats(user.getId(), pageable);
         }
 
-        return trees.map(this::convertToResponse);
+        Map<UUID, List<User>> adminsByTree = new HashMap<>();
+        if (rows.hasContent()) {
+            List<UUID> treeIds = new ArrayList<>();
+            for (Object[] row : rows.getContent()) {
+                treeIds.add(((FamilyTree) row[0]).getId());
+            }
+            for (Object[] admin : treeRepository.findAdminsByTreeIds(treeIds)) {
+                adminsByTree.computeIfAbsent((UUID) admin[0], k -> new ArrayList<>()).add((User) admin[1]);
+            }
+        }
+
+        return rows.map(row -> {
+            FamilyTree tree = (FamilyTree) row[0];
+            return convertToResponse(tree, (TreeStats) row[1], formatName((String) row[2], (String) row[3]),
+                    adminsByTree.getOrDefault(tree.getId(), Collections.emptyList()));
+        });
     }
 
     /**
@@ -116,7 +127,7 @@ public class TreeService {
     public TreeResponse updateTree(UUID treeId, UpdateTreeRequest request, String userEmail) {
         log.info("Updating tree {} for user '{}'", treeId, userEmail);
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Check authorization - owner or admin can update
@@ -134,12 +145,13 @@ public class TreeService {
     }
 
     /**
-     * Delete a tree and all associated data (media files, relationships, individuals)
+     * Delete a tree. The tree is marked deleted, which hides it immediately; its media files,
+     * avatars and rows are purged by a background job.
      */
     public void deleteTree(UUID treeId, String userEmail) {
         log.info("Deleting tree {} for user '{}'", treeId, userEmail);
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Check authorization - owner or admin can delete
@@ -147,90 +159,11 @@ public class TreeService {
             throw new UnauthorizedException("Only the owner or admin can delete this tree");
         }
 
-        // 1. Delete clone mappings (both as source and cloned tree)
-        cloneMappingRepository.deleteBySourceTreeId(treeId);
-        cloneMappingRepository.deleteByClonedTreeId(treeId);
-        log.info("Deleted clone mappings for tree {}", treeId);
-
-        // 2. Delete user tree profiles (user-to-individual links)
-        userTreeProfileRepository.deleteByTreeId(treeId);
-        log.info("Deleted user tree profiles for tree {}", treeId);
-
-        // 3. Delete tree permissions
-        treePermissionRepository.deleteByTreeId(treeId);
-        log.info("Deleted tree permissions for tree {}", treeId);
-
-        // 4. Delete tree invitations
-        treeInvitationRepository.deleteByTreeId(treeId);
-        log.info("Deleted tree invitations for tree {}", treeId);
-
-        // 5. Delete media files from MinIO and database
-        deleteMediaFiles(treeId);
-
-        // 6. Delete avatar files from MinIO
-        deleteAvatarFiles(treeId);
-
-        // 7. Delete relationships (must be before individuals due to FK constraints)
-        relationshipRepository.deleteByTreeId(treeId);
-        log.info("Deleted relationships for tree {}", treeId);
-
-        // 8. Delete individuals
-        individualRepository.deleteByTreeId(treeId);
-        log.info("Deleted individuals for tree {}", treeId);
+        tree.setDeletedAt(LocalDateTime.now());
+        treeRepository.save(tree);
 
-        // 9. Delete the tree itself
-        treeRepository.delete(tree);
-        log.info("Tree {} deleted successfully", treeId);
-    }
-
-    /**
-     * Delete all media files (from MinIO and database) for a tree
-     */
-    private void deleteMediaFiles(UUID treeId) {
-        List<Media> mediaList = mediaRepository.findAllByTreeId(treeId);
-        log.info("Deleting {} media files for tree {}", mediaList.size(), treeId);
-
-        for (Media media : mediaList) {
-            try {
-                // Delete original file
-                minioService.deleteFile(media.getStoragePath());
-
-                // Delete thumbnail if it's an image
-                if (media.getMimeType() != null && media.getMimeType().startsWith("image/")) {
-                    String thumbnailPath = minioService.generateThumbnailName(media.getStoragePath());
-                    if (minioService.fileExists(thumbnailPath)) {
-                        minioService.deleteFile(thumbnailPath);
-                    }
-                }
-
-                // Delete from database
-                mediaRepository.delete(media);
-            } catch (Exception e) {
-                log.warn("Failed to delete media file {}: {}", media.getStoragePath(), e.getMessage());
-                // Continue with other files
-            }
-        }
-    }
-
-    /**
-     * Delete avatar files from MinIO for all individuals in a tree
-     */
-    private void deleteAvatarFiles(UUID treeId) {
-        List<Individual> individuals = individualRepository.findByTreeId(treeId);
-
-        for (Individual individual : individuals) {
-            if (individual.getProfilePictureUrl() != null) {
-                try {
-                    // Avatar is stored at: avatars/individuals/{id}/avatar.{extension}
-                    String avatarBasePath = "avatars/individuals/" + individual.getId() + "/";
-                    minioService.deleteDirectory(avatarBasePath);
-                } catch (Exception e) {
-                    log.warn("Failed to delete avatar for individual {}: {}", individual.getId(), e.getMessage());
-                    // Continue with other avatars
-                }
-            }
-        }
-        log.info("Deleted avatar files for tree {}", treeId);
+        treeDeletionService.scheduleDeletion(tree, userEmail);
+        log.info("Tree {} marked deleted, purge scheduled", treeId);
     }
 
     /**
@@ -273,7 +206,7 @@ public class TreeService {
         // If this is a cloned tree, check if user has access to the source tree
         // This allows relatives of the cloned person to view the cloned tree
         if (tree.getSourceTreeId() != null) {
-            FamilyTree sourceTree = treeRepository.findById(tree.getSourceTreeId()).orElse(null);
+            FamilyTree sourceTree = treeRepository.findByIdAndDeletedAtIsNull(tree.getSourceTreeId()).orElse(null);
             if (sourceTree != null) {
                 // Check if user has profile in source tree (they are a family member)
                 if (userTreeProfileRepository.existsByUserIdAndTreeId(user.getId(), sourceTree.getId())) {
@@ -316,7 +249,7 @@ public class TreeService {
     public TreeResponse addTreeAdmin(UUID treeId, UUID adminUserId, String requestingUserEmail) {
         log.info("Adding tree admin for tree {} user {} by {}", treeId, adminUserId, requestingUserEmail);
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Only owner can add tree admin
@@ -352,7 +285,7 @@ public class TreeService {
     public TreeResponse removeTreeAdmin(UUID treeId, UUID adminUserId, String requestingUserEmail) {
         log.info("Removing tree admin {} from tree {} by {}", adminUserId, treeId, requestingUserEmail);
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Only owner can remove tree admin
@@ -399,39 +332,34 @@ public class TreeService {
      * Convert FamilyTree entity to TreeResponse DTO
      */
     private TreeResponse convertToResponse(FamilyTree tree) {
-        // Use count queries to avoid loading collections
-        long individualsCount = individualRepository.countByTreeId(tree.getId());
-        long relationshipsCount = relationshipRepository.countByTreeId(tree.getId());
-
         // Get root individual name if exists
         String rootIndividualName = null;
         if (tree.getRootIndividualId() != null) {
             rootIndividualName = individualRepository.findById(tree.getRootIndividualId())
-                    .map(ind -> {
-                        StringBuilder name = new StringBuilder();
-                        if (ind.getGivenName() != null) name.append(ind.getGivenName());
-                        if (ind.getSurname() != null) {
-                            if (name.length() > 0) name.insert(0, " ");
-                            name.insert(0, ind.getSurname());
-                        }
-                        return name.toString();
-                    })
+                    .map(ind -> formatName(ind.getSurname(), ind.getGivenName()))
                     .orElse(null);
         }
 
+        return convertToResponse(tree, treeStatsService.findStats(tree.getId()).orElse(null), rootIndividualName,
+                tree.getAdmins() != null ? tree.getAdmins() : Collections.emptyList());
+    }
+
+    /**
+     * Convert FamilyTree entity to TreeResponse DTO from already loaded statistics, root name and admins
+     */
+    private TreeResponse convertToResponse(FamilyTree tree, TreeStats stats, String rootIndividualName,
+                                           Collection<User> admins) {
         // Build admins list
-        List<TreeResponse.AdminInfo> adminInfoList = new java.util.ArrayList<>();
-        if (tree.getAdmins() != null) {
-            for (User admin : tree.getAdmins()) {
-                adminInfoList.add(TreeResponse.AdminInfo.builder()
-                        .id(admin.getId())
-                        .name(admin.getName())
-                        .email(admin.getEmail())
-                        .build());
-            }
+        List<TreeResponse.AdminInfo> adminInfoList = new ArrayList<>();
+        for (User admin : admins) {
+            adminInfoList.add(TreeResponse.AdminInfo.builder()
+                    .id(admin.getId())
+                    .name(admin.getName())
+                    .email(admin.getEmail())
+                    .build());
         }
 
-        return TreeResponse.builder()
+        TreeResponse.TreeResponseBuilder response = TreeResponse.builder()
                 .id(tree.getId())
                 .name(tree.getName())
                 .description(tree.getDescription())
@@ -439,12 +367,42 @@ public class TreeService {
                 .ownerName(tree.getOwner().getName())
                 .ownerEmail(tree.getOwner().getEmail())
                 .admins(adminInfoList)
-                .individualsCount((int) individualsCount)
-                .relationshipsCount((int) relationshipsCount)
                 .rootIndividualId(tree.getRootIndividualId())
                 .rootIndividualName(rootIndividualName)
                 .createdAt(tree.getCreatedAt())
-                .updatedAt(tree.getUpdatedAt())
-                .build();
+                .updatedAt(tree.getUpdatedAt());
+
+        if (stats != null) {
+            response.individualsCount(stats.getIndividualsCount())
+                    .relationshipsCount(stats.getRelationshipsCount())
+                    .livingCount(stats.getLivingCount())
+                    .deceasedCount(stats.getDeceasedCount())
+                    .generations(stats.getGenerations())
+                    .mediaCount(stats.getMediaCount())
+                    .mediaBytes(stats.getMediaBytes())
+                    .topSurnames(treeStatsService.getTopSurnames(stats))
+                    .lastActivityAt(stats.getLastActivityAt());
+        } else {
+            // Statistics not computed yet (tree just created or not yet reached by the startup backfill)
+            response.individualsCount((int) individualRepository.countByTreeId(tree.getId()))
+                    .relationshipsCount((int) relationshipRepository.countByTreeId(tree.getId()));
+        }
+        return response.build();
+    }
+
+    /**
+     * Format an individual's display name (surname first)
+     */
+    private static String formatName(String surname, String givenName) {
+        if (surname == null && givenName == null) {
+            return null;
+        }
+        StringBuilder name = new StringBuilder();
+        if (givenName != null) name.append(givenName);
+        if (surname != null) {
+            if (name.length() > 0) name.insert(0, " ");
+            name.insert(0, surname);
+        }
+        return name.toString();
     }
 }
@@ -0,0 +1,207 @@
+package com.familytree.service;
+
+import com.familytree.dto.tree.TreeResponse;
+import com.familytree.model.TreeStats;
+import com.familytree.repository.FamilyTreeRepository;
+import com.familytree.repository.IndividualRepository;
+import com.familytree.repository.MediaRepository;
+import com.familytree.repository.RelationshipRepository;
+import com.familytree.repository.TreeStatsRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service maintaining the materialized statistics of family trees (see TreeStats).
+ * Write paths mark a tree changed; once their transaction commits, the tree's statistics are
+ * recomputed with a few aggregate queries and one edge scan on the single tree statistics thread (see AsyncConfig).
+ * Changes arriving while a refresh is queued share that refresh, so bulk edits and imports
+ * cost one recomputation instead of one per write. Each change also queues a data-quality scan
+ * of the tree (see TreeQualityService).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TreeStatsService {
+
+    private static final int TOP_SURNAMES = 10;
+
+    private final TreeStatsRepository treeStatsRepository;
+    private final FamilyTreeRepository treeRepository;
+    private final IndividualRepository individualRepository;
+    private final RelationshipRepository relationshipRepository;
+    private final MediaRepository mediaRepository;
+    private final TreeQualityService treeQualityService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Qualifier("treeStatsExecutor")
+    private final TaskExecutor treeStatsExecutor;
+
+    // Trees waiting for a refresh, with the time of their latest change
+    private final Map<UUID, LocalDateTime> pendingRefreshes = new ConcurrentHashMap<>();
+
+    /**
+     * Record a change to a tree's individuals, relationships or media.
+     * The statistics are refreshed and the data-quality scan runs in the background after the current transaction commits.
+     */
+    public void markChanged(UUID treeId) {
+        LocalDateTime changedAt = LocalDateTime.now();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    scheduleRefresh(treeId, changedAt);
+                    treeQualityService.scheduleScan(treeId);
+                }
+            });
+        } else {
+            scheduleRefresh(treeId, changedAt);
+            treeQualityService.scheduleScan(treeId);
+        }
+    }
+
+    /**
+     * Get the statistics of a tree
+     * @return the statistics, or empty if they have not been computed yet
+     */
+    public Optional<TreeStats> findStats(UUID treeId) {
+        return treeStatsRepository.findById(treeId);
+    }
+
+    /**
+     * Read the most common surnames stored with the statistics of a tree
+     */
+    public List<TreeResponse.SurnameCount> getTopSurnames(TreeStats stats) {
+        if (stats.getTopSurnamesJson() == null) {
+            return new ArrayList<>();
+        }
+        try {
+            return objectMapper.readValue(stats.getTopSurnamesJson(), new TypeReference<List<TreeResponse.SurnameCount>>() {});
+        } catch (JsonProcessingException e) {
+            log.warn("Could not read stored surnames of tree {}: {}", stats.getTreeId(), e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Compute the statistics of trees that have none yet (trees created before statistics were kept)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void computeMissingStats() {
+        List<Object[]> trees = treeStatsRepository.findTreesWithoutStats();
+        for (Object[] tree : trees) {
+            scheduleRefresh((UUID) tree[0], (LocalDateTime) tree[1]);
+        }
+        if (!trees.isEmpty()) {
+            log.info("Scheduled statistics computation for {} trees", trees.size());
+        }
+    }
+
+    private void scheduleRefresh(UUID treeId, LocalDateTime changedAt) {
+        // Only the first change queues a refresh; later ones just move the activity time forward
+        if (pendingRefreshes.put(treeId, changedAt) == null) {
+            try {
+                treeStatsExecutor.execute(() -> runRefresh(treeId));
+            } catch (TaskRejectedException e) {
+                // Refreshed with the next change of the tree
+                pendingRefreshes.remove(treeId);
+                log.warn("Skipped statistics refresh of tree {}: {}", treeId, e.getMessage());
+            }
+        }
+    }
+
+    private void runRefresh(UUID treeId) {
+        LocalDateTime changedAt = pendingRefreshes.remove(treeId);
+        try {
+            transactionTemplate.executeWithoutResult(status -> refresh(treeId, changedAt));
+        } catch (Exception e) {
+            log.warn("Could not refresh statistics of tree {}: {}", treeId, e.getMessage());
+        }
+    }
+
+    private void refresh(UUID treeId, LocalDateTime changedAt) {
+        if (!treeRepository.existsByIdAndDeletedAtIsNull(treeId)) {
+            // Deleted meanwhile; the purge removes its statistics
+            return;
+        }
+
+        Object[] individuals = firstRow(individualRepository.findStatsByTreeId(treeId));
+        Object[] relationships = firstRow(relationshipRepository.findChangeMarker(treeId));
+        Object[] media = firstRow(mediaRepository.findStatsByTreeId(treeId));
+
+        int individualsCount = toInt(individuals[0]);
+        int livingCount = toInt(individuals[1]);
+
+        // Individuals without any parent or child link still make one generation
+        int generations = TreeGraph.fromEdges(relationshipRepository.findEdgesByTreeId(treeId)).countGenerations();
+        if (generations == 0 && individualsCount > 0) {
+            generations = 1;
+        }
+
+        List<TreeResponse.SurnameCount> topSurnames = new ArrayList<>();
+        for (Object[] row : individualRepository.countSurnamesByTreeId(treeId, PageRequest.of(0, TOP_SURNAMES))) {
+            topSurnames.add(new TreeResponse.SurnameCount((String) row[0], ((Number) row[1]).longValue()));
+        }
+
+        TreeStats stats = treeStatsRepository.findById(treeId)
+                .orElseGet(() -> TreeStats.builder().treeId(treeId).build());
+        stats.setIndividualsCount(individualsCount);
+        stats.setRelationshipsCount(toInt(relationships[0]));
+        stats.setLivingCount(livingCount);
+        stats.setDeceasedCount(individualsCount - livingCount);
+        stats.setGenerations(generations);
+        stats.setMediaCount(toInt(media[0]));
+        stats.setMediaBytes(media[1] != null ? ((Number) media[1]).longValue() : 0);
+        stats.setTopSurnamesJson(toJson(topSurnames));
+        // Deletions leave no timestamp behind, so the recorded change time counts as well
+        stats.setLastActivityAt(latest(stats.getLastActivityAt(), changedAt, (LocalDateTime) individuals[2],
+                (LocalDateTime) relationships[1], (LocalDateTime) relationships[2], (LocalDateTime) media[2]));
+        stats.setComputedAt(LocalDateTime.now());
+        treeStatsRepository.save(stats);
+
+        log.debug("Refreshed statistics of tree {}: {} individuals, {} generations", treeId, individualsCount, generations);
+    }
+
+    private Object[] firstRow(List<Object[]> rows) {
+        return rows.isEmpty() ? new Object[]{0L, null, null} : rows.get(0);
+    }
+
+    private static int toInt(Object value) {
+        return value != null ? ((Number) value).intValue() : 0;
+    }
+
+    private static LocalDateTime latest(LocalDateTime... times) {
+        LocalDateTime latest = null;
+        for (LocalDateTime time : times) {
+            if (time != null && (latest == null || time.isAfter(latest))) {
+                latest = time;
+            }
+        }
+        return latest;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize tree statistics", e);
+        }
+    }
+}
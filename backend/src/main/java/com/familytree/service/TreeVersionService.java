@@ -0,0 +1,45 @@
+package com.familytree.service;
+
+import com.familytree.repository.IndividualRepository;
+import com.familytree.repository.RelationshipRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Service for computing a content version of a family tree.
+ * The version changes whenever an individual or relationship of the tree is added, edited or removed,
+ * so it can be used to validate snapshots and caches derived from the tree.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional(readOnly = true)
+public class TreeVersionService {
+
+    private final IndividualRepository individualRepository;
+    private final RelationshipRepository relationshipRepository;
+
+    /**
+     * Get the current version token of a tree
+     */
+    public String getVersion(UUID treeId) {
+        Object[] individuals = firstRow(individualRepository.findChangeMarker(treeId));
+        Object[] relationships = firstRow(relationshipRepository.findChangeMarker(treeId));
+
+        String marker = treeId
+                + "|" + individuals[0] + "|" + individuals[1]
+                + "|" + relationships[0] + "|" + relationships[1] + "|" + relationships[2];
+
+        return UUID.nameUUIDFromBytes(marker.getBytes(StandardCharsets.UTF_8)).toString().replace("-", "");
+    }
+
+    private Object[] firstRow(List<Object[]> rows) {
+        return rows.isEmpty() ? new Object[]{0L, null, null} : rows.get(0);
+    }
+}
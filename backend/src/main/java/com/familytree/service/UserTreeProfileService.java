@@ -43,7 +43,7 @@ public class UserTreeProfileService {
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Check authorization - user must have access to the tree
@@ -87,7 +87,7 @@ public class UserTreeProfileService {
     public UserTreeProfileResponse getUserProfile(UUID treeId, String userEmail) {
         log.info("Getting user profile for '{}' in tree {}", userEmail, treeId);
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Check authorization
@@ -108,7 +108,7 @@ public class UserTreeProfileService {
     public UserTreeProfileResponse getUserProfileOrNull(UUID treeId, String userEmail) {
         log.info("Getting user profile (optional) for '{}' in tree {}", userEmail, treeId);
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Check authorization
@@ -130,7 +130,7 @@ public class UserTreeProfileService {
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
 
-        FamilyTree tree = treeRepository.findById(treeId)
+        FamilyTree tree = treeRepository.findByIdAndDeletedAtIsNull(treeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Tree not found with ID: " + treeId));
 
         // Check authorization
@@ -175,7 +175,7 @@ public class UserTreeProfileService {
 
         // If this is a cloned tree, check if user has access to the source tree
         if (tree.getSourceTreeId() != null) {
-            FamilyTree sourceTree = treeRepository.findById(tree.getSourceTreeId()).orElse(null);
+            FamilyTree sourceTree = treeRepository.findByIdAndDeletedAtIsNull(tree.getSourceTreeId()).orElse(null);
             if (sourceTree != null) {
                 if (userTreeProfileRepository.existsByUserIdAndTreeId(user.getId(), sourceTree.getId())) {
                     return true;
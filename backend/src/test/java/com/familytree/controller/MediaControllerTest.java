@@ -0,0 +1,214 @@
+package com.familytree.controller;
+
+import com.familytree.model.Media;
+import com.familytree.service.MediaArchiveService;
+import com.familytree.service.MediaService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MediaControllerTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    private final Authentication authentication = new TestingAuthenticationToken("user@example.com", null);
+
+    private MediaService mediaService;
+    private MediaController controller;
+    private Media media;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() {
+        mediaService = mock(MediaService.class);
+        controller = new MediaController(mediaService, mock(MediaArchiveService.class));
+
+        media = Media.builder()
+                .id(UUID.randomUUID())
+                .filename("notes.txt")
+                .storagePath("media/notes.txt")
+                .mimeType("text/plain")
+                .fileSize((long) CONTENT.length)
+                .uploadedAt(LocalDateTime.of(2024, 1, 1, 12, 0))
+                .build();
+        when(mediaService.getMediaEntity(eq(media.getId()), anyString())).thenReturn(media);
+        when(mediaService.getMediaSize(media)).thenReturn((long) CONTENT.length);
+        when(mediaService.downloadMedia(eq(media), anyLong(), anyLong())).thenAnswer(invocation -> {
+            int offset = (int) (long) invocation.getArgument(1);
+            long length = invocation.getArgument(2);
+            int end = length < 0 ? CONTENT.length : (int) (offset + length);
+            return new ByteArrayInputStream(Arrays.copyOfRange(CONTENT, offset, end));
+        });
+
+        request = new MockHttpServletRequest("GET", "/api/media/" + media.getId() + "/stream");
+        response = new MockHttpServletResponse();
+    }
+
+    private ResponseEntity<InputStreamResource> stream(String range, String ifRange) {
+        return controller.streamMedia(media.getId(), null, range, ifRange,
+                new ServletWebRequest(request, response), authentication);
+    }
+
+    private static String body(ResponseEntity<InputStreamResource> entity) throws IOException {
+        return new String(entity.getBody().getInputStream().readAllBytes(), StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    void servesWholeFileWithoutRange() throws IOException {
+        ResponseEntity<InputStreamResource> entity = stream(null, null);
+
+        assertEquals(HttpStatus.OK, entity.getStatusCode());
+        assertEquals("bytes", entity.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(CONTENT.length, entity.getHeaders().getContentLength());
+        assertEquals("0123456789", body(entity));
+    }
+
+    @Test
+    void servesSingleRange() throws IOException {
+        ResponseEntity<InputStreamResource> entity = stream("bytes=2-5", null);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, entity.getStatusCode());
+        assertEquals("bytes 2-5/10", entity.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, entity.getHeaders().getContentLength());
+        assertEquals("2345", body(entity));
+        verify(mediaService).downloadMedia(media, 2, 4);
+    }
+
+    @Test
+    void servesOpenEndedAndSuffixRanges() throws IOException {
+        ResponseEntity<InputStreamResource> openEnded = stream("bytes=7-", null);
+        assertEquals("bytes 7-9/10", openEnded.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals("789", body(openEnded));
+
+        ResponseEntity<InputStreamResource> suffix = stream("bytes=-3", null);
+        assertEquals("bytes 7-9/10", suffix.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals("789", body(suffix));
+
+        // Ranges past the end are cut off at the last byte
+        ResponseEntity<InputStreamResource> pastEnd = stream("bytes=8-100", null);
+        assertEquals("bytes 8-9/10", pastEnd.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals("89", body(pastEnd));
+    }
+
+    @Test
+    void rejectsUnsatisfiableRange() {
+        ResponseEntity<InputStreamResource> entity = stream("bytes=20-30", null);
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, entity.getStatusCode());
+        assertEquals("bytes */10", entity.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        verify(mediaService, never()).downloadMedia(any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void rejectsRangesRequestingMoreThanTheFile() {
+        // Overlapping ranges would otherwise send the file several times over
+        ResponseEntity<InputStreamResource> entity = stream("bytes=0-,0-,0-", null);
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, entity.getStatusCode());
+        verify(mediaService, never()).downloadMedia(any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void rejectsRangesOfEmptyFile() {
+        when(mediaService.getMediaSize(media)).thenReturn(0L);
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, stream("bytes=-5", null).getStatusCode());
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, stream("bytes=0-", null).getStatusCode());
+    }
+
+    @Test
+    void ignoresMalformedRange() throws IOException {
+        ResponseEntity<InputStreamResource> entity = stream("bytes=abc", null);
+
+        assertEquals(HttpStatus.OK, entity.getStatusCode());
+        assertEquals("0123456789", body(entity));
+    }
+
+    @Test
+    void honoursIfRangeOnlyForCurrentETag() throws IOException {
+        ResponseEntity<InputStreamResource> stale = stream("bytes=0-1", "\"other-version\"");
+        assertEquals(HttpStatus.OK, stale.getStatusCode());
+        assertEquals("0123456789", body(stale));
+
+        String eTag = response.getHeader(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+        response = new MockHttpServletResponse();
+        ResponseEntity<InputStreamResource> current = stream("bytes=0-1", eTag);
+        assertEquals(HttpStatus.PARTIAL_CONTENT, current.getStatusCode());
+        assertEquals("01", body(current));
+    }
+
+    @Test
+    void answersNotModifiedForCurrentETag() {
+        stream(null, null);
+        String eTag = response.getHeader(HttpHeaders.ETAG);
+
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        response = new MockHttpServletResponse();
+        assertNull(stream(null, null));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+        verify(mediaService, times(1)).downloadMedia(any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void servesMultipleRangesAsMultipartByteranges() throws IOException {
+        ResponseEntity<InputStreamResource> entity = stream("bytes=0-1,5-6,-2", null);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, entity.getStatusCode());
+        MediaType contentType = entity.getHeaders().getContentType();
+        assertNotNull(contentType);
+        assertEquals("multipart/byteranges", contentType.getType() + "/" + contentType.getSubtype());
+        String boundary = contentType.getParameter("boundary");
+        assertNotNull(boundary);
+
+        String body = body(entity);
+        assertEquals(entity.getHeaders().getContentLength(), body.length());
+        assertTrue(body.endsWith("\r\n--" + boundary + "--\r\n"));
+
+        // Each part: CRLF, headers, blank line, the bytes of the range
+        String[] parts = body.substring(0, body.length() - ("\r\n--" + boundary + "--\r\n").length())
+                .split("\r\n--" + boundary + "\r\n", -1);
+        assertEquals("", parts[0]);
+        List<String> contentRanges = new ArrayList<>();
+        List<String> data = new ArrayList<>();
+        for (int i = 1; i < parts.length; i++) {
+            int headerEnd = parts[i].indexOf("\r\n\r\n");
+            Map<String, String> partHeaders = new HashMap<>();
+            for (String line : parts[i].substring(0, headerEnd).split("\r\n")) {
+                int colon = line.indexOf(':');
+                partHeaders.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+            assertEquals("text/plain", partHeaders.get(HttpHeaders.CONTENT_TYPE));
+            contentRanges.add(partHeaders.get(HttpHeaders.CONTENT_RANGE));
+            data.add(parts[i].substring(headerEnd + 4));
+        }
+
+        assertEquals(Arrays.asList("bytes 0-1/10", "bytes 5-6/10", "bytes 8-9/10"), contentRanges);
+        assertEquals(Arrays.asList("01", "56", "89"), data);
+        // Only the requested ranges are read from storage
+        verify(mediaService).downloadMedia(media, 0, 2);
+        verify(mediaService).downloadMedia(media, 5, 2);
+        verify(mediaService).downloadMedia(media, 8, 2);
+        verify(mediaService, never()).downloadMedia(media, 0, -1);
+    }
+}
@@ -0,0 +1,304 @@
+package com.familytree.service;
+
+import com.familytree.dto.gedcom.GedcomImportMode;
+import com.familytree.dto.gedcom.GedcomImportResult;
+import com.familytree.dto.gedcom.GedcomRecordChange;
+import com.familytree.model.FamilyTree;
+import com.familytree.model.GedcomXrefMapping;
+import com.familytree.model.Individual;
+import com.familytree.model.Relationship;
+import com.familytree.model.RelationshipType;
+import com.familytree.repository.FamilyTreeRepository;
+import com.familytree.repository.GedcomXrefMappingRepository;
+import com.familytree.repository.IndividualRepository;
+import com.familytree.repository.RelationshipRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class GedcomServiceTest {
+
+    private final UUID userId = UUID.randomUUID();
+    private final FamilyTree tree = FamilyTree.builder().id(UUID.randomUUID()).name("Họ Trần").build();
+
+    // Rows of the tree, kept by the repository mocks below
+    private final List<Individual> individuals = new ArrayList<>();
+    private final List<Relationship> relationships = new ArrayList<>();
+    private final Map<String, GedcomXrefMapping> mappings = new LinkedHashMap<>();
+
+    private IndividualRepository individualRepository;
+    private RelationshipRepository relationshipRepository;
+    private GedcomXrefMappingRepository xrefMappingRepository;
+    private IndividualService individualService;
+    private GedcomService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        FamilyTreeRepository treeRepository = mock(FamilyTreeRepository.class);
+        individualRepository = mock(IndividualRepository.class);
+        relationshipRepository = mock(RelationshipRepository.class);
+        xrefMappingRepository = mock(GedcomXrefMappingRepository.class);
+        individualService = mock(IndividualService.class);
+        PermissionService permissionService = mock(PermissionService.class);
+
+        when(treeRepository.findByIdAndDeletedAtIsNull(tree.getId())).thenReturn(Optional.of(tree));
+        when(permissionService.canModifyTree(userId, tree.getId())).thenReturn(true);
+
+        when(individualRepository.countByTreeId(tree.getId())).thenAnswer(invocation -> (long) individuals.size());
+        when(individualRepository.saveAll(anyIterable())).thenAnswer(invocation -> {
+            for (Individual individual : (Iterable<Individual>) invocation.getArgument(0)) {
+                if (individual.getId() == null) {
+                    individual.setId(UUID.randomUUID());
+                    individuals.add(individual);
+                }
+            }
+            return null;
+        });
+        when(relationshipRepository.findByTreeIdWithIndividuals(tree.getId()))
+                .thenAnswer(invocation -> new ArrayList<>(relationships));
+        when(relationshipRepository.saveAll(anyIterable())).thenAnswer(invocation -> {
+            for (Relationship rel : (Iterable<Relationship>) invocation.getArgument(0)) {
+                if (rel.getId() == null) {
+                    rel.setId(UUID.randomUUID());
+                    relationships.add(rel);
+                }
+            }
+            return null;
+        });
+        doAnswer(invocation -> {
+            for (Relationship rel : (Iterable<Relationship>) invocation.getArgument(0)) {
+                relationships.remove(rel);
+            }
+            return null;
+        }).when(relationshipRepository).deleteAll(anyIterable());
+
+        when(xrefMappingRepository.existsByTreeId(tree.getId())).thenAnswer(invocation -> !mappings.isEmpty());
+        when(xrefMappingRepository.findByTreeIdWithIndividual(tree.getId()))
+                .thenAnswer(invocation -> new ArrayList<>(mappings.values()));
+        when(xrefMappingRepository.saveAll(anyIterable())).thenAnswer(invocation -> {
+            for (GedcomXrefMapping mapping : (Iterable<GedcomXrefMapping>) invocation.getArgument(0)) {
+                mappings.put(mapping.getXref(), mapping);
+            }
+            return null;
+        });
+        doAnswer(invocation -> {
+            Individual removed = invocation.getArgument(0);
+            individuals.remove(removed);
+            relationships.removeIf(rel -> rel.getIndividual1() == removed || rel.getIndividual2() == removed);
+            mappings.values().removeIf(mapping -> mapping.getIndividual() == removed);
+            return null;
+        }).when(individualService).removeIndividual(any());
+
+        service = new GedcomService(treeRepository, individualRepository, relationshipRepository, permissionService,
+                xrefMappingRepository, individualService, mock(TreeStatsService.class));
+    }
+
+    private static String gedcom(String... records) {
+        StringBuilder text = new StringBuilder("0 HEAD\n1 SOUR TEST\n1 GEDC\n2 VERS 5.5.1\n2 FORM LINEAGE-LINKED\n1 CHAR UTF-8\n");
+        for (String record : records) {
+            text.append(record);
+        }
+        return text.append("0 TRLR\n").toString();
+    }
+
+    private static String person(String xref, String givenName, String surname, String sex, String birthDate) {
+        String record = "0 " + xref + " INDI\n1 NAME " + givenName + " /" + surname + "/\n2 GIVN " + givenName
+                + "\n2 SURN " + surname + "\n1 SEX " + sex + "\n";
+        if (birthDate != null) {
+            record += "1 BIRT\n2 DATE " + birthDate + "\n";
+        }
+        return record;
+    }
+
+    private static String family(String xref, String husband, String wife, String marriageDate, String... children) {
+        StringBuilder record = new StringBuilder("0 " + xref + " FAM\n1 HUSB " + husband + "\n1 WIFE " + wife + "\n");
+        for (String child : children) {
+            record.append("1 CHIL ").append(child).append("\n");
+        }
+        if (marriageDate != null) {
+            record.append("1 MARR\n2 DATE ").append(marriageDate).append("\n");
+        }
+        return record.toString();
+    }
+
+    /**
+     * A couple and their son, as in the first file a clan secretary sends
+     */
+    private static String firstFile() {
+        return gedcom(
+                person("@I1@", "Văn An", "Trần", "M", "1 JAN 1940"),
+                person("@I2@", "Thị Hoa", "Lê", "F", "2 FEB 1942"),
+                person("@I3@", "Văn Minh", "Trần", "M", "3 MAR 1965"),
+                family("@F1@", "@I1@", "@I2@", "10 OCT 1963", "@I3@"));
+    }
+
+    private GedcomImportResult importFile(String content, GedcomImportMode mode, boolean dryRun) {
+        MockMultipartFile file = new MockMultipartFile("file", "tree.ged", "text/plain",
+                content.getBytes(StandardCharsets.UTF_8));
+        GedcomImportResult result = service.importGedcom(file, tree.getId(), userId, mode, dryRun);
+        assertTrue(result.isSuccess(), () -> "Import failed: " + result.getErrors());
+        return result;
+    }
+
+    private Individual individual(String xref) {
+        return mappings.get(xref).getIndividual();
+    }
+
+    private Relationship spouseLink() {
+        List<Relationship> spouses = relationships.stream().filter(rel -> rel.getType() == RelationshipType.SPOUSE)
+                .collect(Collectors.toList());
+        assertEquals(1, spouses.size());
+        return spouses.get(0);
+    }
+
+    private static Set<GedcomRecordChange.ChangeType> changeTypes(GedcomImportResult result, String xref) {
+        return result.getChanges().stream().filter(change -> xref.equals(change.getXref()))
+                .map(GedcomRecordChange::getChangeType).collect(Collectors.toSet());
+    }
+
+    @Test
+    void unchangedFileChangesNothing() {
+        importFile(firstFile(), GedcomImportMode.APPEND, false);
+        Individual father = individual("@I1@");
+        clearInvocations(individualRepository, relationshipRepository, individualService);
+
+        GedcomImportResult result = importFile(firstFile(), GedcomImportMode.DIFF, false);
+
+        assertEquals(3, result.getIndividualsUnchanged());
+        assertEquals(0, result.getIndividualsImported() + result.getIndividualsUpdated() + result.getIndividualsDeleted());
+        assertEquals(0, result.getRelationshipsImported() + result.getRelationshipsUpdated() + result.getRelationshipsDeleted());
+        assertTrue(result.getChanges().isEmpty());
+        assertEquals(3, individuals.size());
+        assertEquals(3, relationships.size());
+        assertSame(father, individual("@I1@"));
+    }
+
+    @Test
+    void appliesInsertsUpdatesAndDeletes() {
+        importFile(firstFile(), GedcomImportMode.APPEND, false);
+        Individual father = individual("@I1@");
+        Individual son = individual("@I3@");
+        UUID fatherId = father.getId();
+
+        // The son's birth date is corrected, the mother's record is gone and a daughter is added
+        GedcomImportResult result = importFile(gedcom(
+                person("@I1@", "Văn An", "Trần", "M", "1 JAN 1940"),
+                person("@I3@", "Văn Minh", "Trần", "M", "4 MAR 1965"),
+                person("@I4@", "Thị Lan", "Trần", "F", "5 MAY 1968"),
+                "0 @F1@ FAM\n1 HUSB @I1@\n1 CHIL @I3@\n1 CHIL @I4@\n"), GedcomImportMode.DIFF, false);
+
+        assertEquals(1, result.getIndividualsImported());
+        assertEquals(1, result.getIndividualsUpdated());
+        assertEquals(1, result.getIndividualsDeleted());
+        assertEquals(1, result.getIndividualsUnchanged());
+        assertEquals(1, result.getRelationshipsImported());
+        assertEquals(Collections.singleton(GedcomRecordChange.ChangeType.INSERTED), changeTypes(result, "@I4@"));
+        assertEquals(Collections.singleton(GedcomRecordChange.ChangeType.UPDATED), changeTypes(result, "@I3@"));
+        assertEquals(Collections.singleton(GedcomRecordChange.ChangeType.DELETED), changeTypes(result, "@I2@"));
+
+        // Existing rows are updated in place, keeping their ids
+        assertSame(son, individual("@I3@"));
+        assertEquals(LocalDate.of(1965, 3, 4), son.getBirthDate());
+        assertEquals(fatherId, individual("@I1@").getId());
+        verify(individualService).removeIndividual(argThat(individual -> "Hoa".equals(individual.getGivenName())));
+
+        Individual daughter = individual("@I4@");
+        assertEquals(3, individuals.size());
+        assertTrue(relationships.stream().anyMatch(rel -> rel.getIndividual1() == father && rel.getIndividual2() == daughter
+                && rel.getType() == RelationshipType.PARENT_CHILD));
+        assertEquals(2, relationships.size());
+    }
+
+    @Test
+    void appliesChangedMarriageDate() {
+        importFile(firstFile(), GedcomImportMode.APPEND, false);
+        Relationship marriage = spouseLink();
+        assertEquals(LocalDate.of(1963, 10, 10), marriage.getStartDate());
+
+        GedcomImportResult result = importFile(gedcom(
+                person("@I1@", "Văn An", "Trần", "M", "1 JAN 1940"),
+                person("@I2@", "Thị Hoa", "Lê", "F", "2 FEB 1942"),
+                person("@I3@", "Văn Minh", "Trần", "M", "3 MAR 1965"),
+                family("@F1@", "@I1@", "@I2@", "12 DEC 1962", "@I3@") + "1 DIV\n2 DATE 1 JUN 1990\n"),
+                GedcomImportMode.DIFF, false);
+
+        assertEquals(3, result.getIndividualsUnchanged());
+        assertEquals(1, result.getRelationshipsUpdated());
+        assertEquals(0, result.getRelationshipsImported());
+        assertEquals(0, result.getRelationshipsDeleted());
+        assertSame(marriage, spouseLink());
+        assertEquals(LocalDate.of(1962, 12, 12), marriage.getStartDate());
+        assertEquals(LocalDate.of(1990, 6, 1), marriage.getEndDate());
+        assertEquals(3, relationships.size());
+    }
+
+    @Test
+    void dryRunReportsChangesWithoutWriting() {
+        importFile(firstFile(), GedcomImportMode.APPEND, false);
+        Relationship marriage = spouseLink();
+        Individual son = individual("@I3@");
+        clearInvocations(individualRepository, relationshipRepository, xrefMappingRepository, individualService);
+
+        GedcomImportResult result = importFile(gedcom(
+                person("@I1@", "Văn An", "Trần", "M", "1 JAN 1940"),
+                person("@I2@", "Thị Hoa", "Lê", "F", "2 FEB 1942"),
+                person("@I3@", "Văn Minh", "Trần", "M", "4 MAR 1965"),
+                person("@I4@", "Thị Lan", "Trần", "F", "5 MAY 1968"),
+                family("@F1@", "@I1@", "@I2@", "12 DEC 1962", "@I3@", "@I4@")), GedcomImportMode.DIFF, true);
+
+        assertTrue(result.isDryRun());
+        assertEquals(1, result.getIndividualsImported());
+        assertEquals(1, result.getIndividualsUpdated());
+        assertEquals(2, result.getIndividualsUnchanged());
+        assertEquals(2, result.getRelationshipsImported());
+        assertEquals(1, result.getRelationshipsUpdated());
+        assertEquals(2, result.getChanges().size());
+
+        verify(individualRepository, never()).saveAll(any());
+        verify(relationshipRepository, never()).saveAll(any());
+        verify(relationshipRepository, never()).deleteAll(any());
+        verify(xrefMappingRepository, never()).saveAll(any());
+        verify(individualService, never()).removeIndividual(any());
+        assertEquals(LocalDate.of(1965, 3, 3), son.getBirthDate());
+        assertEquals(LocalDate.of(1963, 10, 10), marriage.getStartDate());
+        assertEquals(3, individuals.size());
+        assertEquals(3, mappings.size());
+    }
+
+    @Test
+    void refusesDiffWithoutXrefMappings() {
+        // Individuals entered in the app, never imported
+        individuals.add(Individual.builder().id(UUID.randomUUID()).tree(tree).givenName("An").surname("Trần").build());
+
+        MockMultipartFile file = new MockMultipartFile("file", "tree.ged", "text/plain",
+                firstFile().getBytes(StandardCharsets.UTF_8));
+        GedcomImportResult result = service.importGedcom(file, tree.getId(), userId, GedcomImportMode.DIFF, false);
+
+        assertFalse(result.isSuccess());
+        assertEquals(1, result.getErrors().size());
+        verify(individualRepository, never()).saveAll(any());
+        verify(relationshipRepository, never()).saveAll(any());
+        assertEquals(1, individuals.size());
+    }
+
+    @Test
+    void diffIntoEmptyTreeInsertsEverything() {
+        GedcomImportResult result = importFile(firstFile(), GedcomImportMode.DIFF, false);
+
+        assertEquals(3, result.getIndividualsImported());
+        assertEquals(3, result.getRelationshipsImported());
+        assertEquals(3, individuals.size());
+        assertEquals(3, mappings.size());
+        assertEquals(LocalDate.of(1963, 10, 10), spouseLink().getStartDate());
+    }
+}
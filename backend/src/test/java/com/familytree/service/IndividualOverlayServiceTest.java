@@ -0,0 +1,133 @@
+package com.familytree.service;
+
+import com.familytree.model.Individual;
+import com.familytree.model.IndividualOverlay;
+import com.familytree.repository.IndividualOverlayRepository;
+import com.familytree.repository.IndividualRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IndividualOverlayServiceTest {
+
+    private final UUID cloneTreeId = UUID.randomUUID();
+    private final Map<UUID, Individual> individuals = new HashMap<>();
+    private final Map<UUID, IndividualOverlay> overlays = new HashMap<>();
+
+    private IndividualOverlayService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        IndividualRepository individualRepository = mock(IndividualRepository.class);
+        when(individualRepository.findById(any()))
+                .thenAnswer(inv -> Optional.ofNullable(individuals.get(inv.<UUID>getArgument(0))));
+        when(individualRepository.findAllById(any())).thenAnswer(inv -> {
+            List<Individual> found = new ArrayList<>();
+            for (UUID id : inv.<Iterable<UUID>>getArgument(0)) {
+                found.add(individuals.get(id));
+            }
+            return found;
+        });
+
+        IndividualOverlayRepository overlayRepository = mock(IndividualOverlayRepository.class);
+        when(overlayRepository.findById(any()))
+                .thenAnswer(inv -> Optional.ofNullable(overlays.get(inv.<UUID>getArgument(0))));
+        when(overlayRepository.findBySourceIndividualId(any())).thenAnswer(inv -> overlays.values().stream()
+                .filter(o -> o.getSourceIndividualId().equals(inv.getArgument(0)))
+                .collect(Collectors.toList()));
+        when(overlayRepository.findSharedContent(any())).thenAnswer(inv -> {
+            IndividualOverlay overlay = overlays.get(inv.<UUID>getArgument(0));
+            if (overlay == null) {
+                return Collections.emptyList();
+            }
+            Individual source = individuals.get(overlay.getSourceIndividualId());
+            return Collections.singletonList(new Object[]{source.getBiography(), source.getNotes()});
+        });
+        doAnswer(inv -> overlays.remove(inv.<IndividualOverlay>getArgument(0).getIndividualId()))
+                .when(overlayRepository).delete(any());
+        doAnswer(inv -> {
+            inv.<Iterable<IndividualOverlay>>getArgument(0).forEach(o -> overlays.remove(o.getIndividualId()));
+            return null;
+        }).when(overlayRepository).deleteAll(any(Iterable.class));
+
+        service = new IndividualOverlayService(overlayRepository, individualRepository);
+    }
+
+    private Individual person(String biography, String notes) {
+        Individual individual = Individual.builder().id(UUID.randomUUID()).givenName("An")
+                .biography(biography).notes(notes).build();
+        individuals.put(individual.getId(), individual);
+        return individual;
+    }
+
+    private Individual cloneOf(Individual source) {
+        Individual clone = person(null, null);
+        overlays.put(clone.getId(), IndividualOverlay.builder().individualId(clone.getId())
+                .sourceIndividualId(source.getId()).treeId(cloneTreeId).build());
+        return clone;
+    }
+
+    @Test
+    void overlaidIndividualsReadTheSourceContent() {
+        Individual source = person("Biography", "Notes");
+        Individual clone = cloneOf(source);
+
+        IndividualOverlayService.SharedContent shared = service.findSharedContent(clone.getId());
+        assertEquals("Biography", shared.getBiography());
+        assertEquals("Notes", shared.getNotes());
+        assertNull(service.findSharedContent(source.getId()));
+    }
+
+    @Test
+    void editedCloneIsMaterializedAndNoLongerFollowsTheSource() {
+        Individual source = person("Biography", "Notes");
+        Individual clone = cloneOf(source);
+        Individual otherClone = cloneOf(source);
+
+        service.materialize(clone);
+        assertEquals("Biography", clone.getBiography());
+        assertEquals("Notes", clone.getNotes());
+        assertNull(service.findSharedContent(clone.getId()));
+
+        // Only the edited clone got its own row content
+        source.setBiography("Edited");
+        assertEquals("Biography", clone.getBiography());
+        assertEquals("Edited", service.findSharedContent(otherClone.getId()).getBiography());
+    }
+
+    @Test
+    void clonesKeepTheContentOfAnEditedSource() {
+        Individual source = person("Biography", null);
+        Individual clone = cloneOf(source);
+        Individual unrelated = cloneOf(person("Other", null));
+
+        service.materializeClones(source);
+        source.setBiography("Edited");
+
+        assertEquals("Biography", clone.getBiography());
+        assertNull(service.findSharedContent(clone.getId()));
+        assertEquals("Other", service.findSharedContent(unrelated.getId()).getBiography());
+    }
+
+    @Test
+    void removingAnIndividualReleasesItsOverlayAndMaterializesItsClones() {
+        Individual source = person(null, "Notes");
+        Individual clone = cloneOf(source);
+        Individual removedClone = cloneOf(source);
+
+        service.removeIndividual(removedClone);
+        assertFalse(overlays.containsKey(removedClone.getId()));
+        assertTrue(overlays.containsKey(clone.getId()));
+
+        service.removeIndividual(source);
+        assertTrue(overlays.isEmpty());
+        assertEquals("Notes", clone.getNotes());
+    }
+}
@@ -0,0 +1,101 @@
+package com.familytree.service;
+
+import com.familytree.model.Gender;
+import com.familytree.model.Individual;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergeCandidateIndexTest {
+
+    // Small pools, so random individuals often agree on names, dates and places in every combination
+    private static final String[] SURNAMES = {"Nguyễn", "nguyen", "Trần", "Phạm", "Phạm Thị", "", null};
+    private static final String[] GIVEN_NAMES = {"Văn An", "van an", "An", "Hoa", "Thị  Hoa", "Minh", "", null};
+    private static final String[] PLACES = {"Hà Nội", "hà nội", "Ha Noi", "Huế", "HUẾ", "", " ", null};
+    private static final Gender[] GENDERS = {Gender.MALE, Gender.FEMALE, null};
+
+    private final Random random = new Random(42);
+
+    private <T> T pick(T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private Individual randomIndividual() {
+        LocalDate birthDate = random.nextInt(5) == 0 ? null
+                : LocalDate.of(1900 + random.nextInt(4), 1 + random.nextInt(2), 1 + random.nextInt(2));
+        return Individual.builder()
+                .id(UUID.randomUUID())
+                .surname(pick(SURNAMES))
+                .givenName(pick(GIVEN_NAMES))
+                .birthDate(birthDate)
+                .birthPlace(pick(PLACES))
+                .gender(pick(GENDERS))
+                .build();
+    }
+
+    @Test
+    void candidatesIncludeEveryTargetReachingTheMatchThreshold() {
+        List<Individual> targets = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            targets.add(randomIndividual());
+        }
+        MergeCandidateIndex index = new MergeCandidateIndex(targets);
+
+        int matches = 0;
+        for (int i = 0; i < 400; i++) {
+            Individual source = randomIndividual();
+            Set<Individual> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+            candidates.addAll(index.candidatesFor(source));
+
+            for (Individual target : targets) {
+                int score = TreeMergeService.calculateMatchScore(source, target);
+                if (score >= TreeMergeService.MATCH_THRESHOLD) {
+                    matches++;
+                    assertTrue(candidates.contains(target), () -> "Missed candidate scoring " + score + ": "
+                            + describe(source) + " / " + describe(target));
+                }
+            }
+        }
+        // The data must actually exercise the threshold
+        assertTrue(matches > 1000, "Only " + matches + " matching pairs generated");
+    }
+
+    @Test
+    void candidatesPrunePairsSharingNoKey() {
+        Individual target = Individual.builder().id(UUID.randomUUID()).surname("Trần").givenName("Minh")
+                .birthDate(LocalDate.of(1950, 3, 1)).birthPlace("Huế").build();
+        Individual source = Individual.builder().id(UUID.randomUUID()).surname("Phạm").givenName("Hoa")
+                .birthDate(LocalDate.of(1970, 5, 2)).birthPlace("Hà Nội").build();
+
+        MergeCandidateIndex index = new MergeCandidateIndex(Collections.singletonList(target));
+        assertTrue(index.candidatesFor(source).isEmpty());
+    }
+
+    @Test
+    void candidatesKeepTargetOrder() {
+        LocalDate birthDate = LocalDate.of(1950, 3, 1);
+        List<Individual> targets = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            targets.add(Individual.builder().id(UUID.randomUUID()).surname("Trần").givenName("Minh " + i)
+                    .birthDate(birthDate).build());
+        }
+        Individual source = Individual.builder().id(UUID.randomUUID()).birthDate(birthDate).build();
+
+        assertEquals(targets, new MergeCandidateIndex(targets).candidatesFor(source));
+    }
+
+    @Test
+    void normalizeStripsDiacriticsCaseAndExtraSpaces() {
+        assertEquals("nguyen thi hoa", MergeCandidateIndex.normalize("  Nguyễn   Thị Hoa "));
+        assertEquals("dang", MergeCandidateIndex.normalize("Đặng"));
+        assertEquals("", MergeCandidateIndex.normalize(null));
+    }
+
+    private static String describe(Individual individual) {
+        return "[" + individual.getSurname() + "|" + individual.getGivenName() + "|" + individual.getBirthDate()
+                + "|" + individual.getBirthPlace() + "|" + individual.getGender() + "]";
+    }
+}
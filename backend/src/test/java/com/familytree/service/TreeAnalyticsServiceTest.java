@@ -0,0 +1,242 @@
+package com.familytree.service;
+
+import com.familytree.dto.tree.TreeAnalyticsResponse;
+import com.familytree.model.Gender;
+import com.familytree.model.RelationshipType;
+import com.familytree.repository.FamilyTreeRepository;
+import com.familytree.repository.IndividualRepository;
+import com.familytree.repository.RelationshipRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TreeAnalyticsServiceTest {
+
+    private static final String USER = "user@example.com";
+
+    private final UUID treeId = UUID.randomUUID();
+    private final List<Object[]> individuals = new ArrayList<>();
+    private final List<Object[]> edges = new ArrayList<>();
+
+    private IndividualRepository individualRepository;
+    private RelationshipRepository relationshipRepository;
+    private TreeVersionService treeVersionService;
+    private TreeAnalyticsService service;
+
+    @BeforeEach
+    void setUp() {
+        FamilyTreeRepository treeRepository = mock(FamilyTreeRepository.class);
+        individualRepository = mock(IndividualRepository.class);
+        relationshipRepository = mock(RelationshipRepository.class);
+        PermissionService permissionService = mock(PermissionService.class);
+        treeVersionService = mock(TreeVersionService.class);
+
+        when(treeRepository.existsByIdAndDeletedAtIsNull(treeId)).thenReturn(true);
+        when(permissionService.hasViewPermission(treeId, USER)).thenReturn(true);
+        when(treeVersionService.getVersion(treeId)).thenReturn("v1");
+        when(individualRepository.findSnapshotRowsByTreeId(treeId)).thenReturn(individuals);
+        when(relationshipRepository.findEdgesByTreeId(treeId)).thenReturn(edges);
+
+        service = new TreeAnalyticsService(treeRepository, individualRepository, relationshipRepository,
+                permissionService, treeVersionService);
+        ReflectionTestUtils.setField(service, "maxCacheEntries", 4);
+    }
+
+    private UUID person(String surname, String givenName, LocalDate birthDate, LocalDate deathDate) {
+        UUID id = UUID.randomUUID();
+        individuals.add(new Object[]{id, givenName, surname, birthDate, deathDate, Gender.UNKNOWN});
+        return id;
+    }
+
+    private UUID person(String name) {
+        return person("Nguyễn", name, null, null);
+    }
+
+    private void parent(UUID parentId, UUID childId) {
+        edges.add(new Object[]{parentId, childId, RelationshipType.PARENT_CHILD});
+    }
+
+    private void spouse(UUID id1, UUID id2) {
+        edges.add(new Object[]{id1, id2, RelationshipType.SPOUSE});
+    }
+
+    private TreeAnalyticsResponse analytics() {
+        return service.getAnalytics(treeId, USER);
+    }
+
+    private static List<Integer> generationCounts(TreeAnalyticsResponse analytics) {
+        return analytics.getGenerations().stream()
+                .map(TreeAnalyticsResponse.GenerationStats::getCount)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> names(List<TreeAnalyticsResponse.PersonRef> people) {
+        return people.stream().map(TreeAnalyticsResponse.PersonRef::getName).collect(Collectors.toList());
+    }
+
+    @Test
+    void countsConnectedComponentsAndIsolatedIndividuals() {
+        UUID a = person("A");
+        UUID b = person("B");
+        UUID c = person("C");
+        UUID d = person("D");
+        UUID e = person("E");
+        person("Alone");
+        parent(a, b);
+        spouse(a, c);
+        spouse(d, e);
+        // Links to individuals outside the tree and self links are ignored
+        parent(UUID.randomUUID(), d);
+        spouse(e, e);
+
+        TreeAnalyticsResponse analytics = analytics();
+        assertEquals(6, analytics.getIndividualsCount());
+        assertEquals(3, analytics.getComponentsCount());
+        assertEquals(Arrays.asList(3, 2, 1), analytics.getLargestComponentSizes());
+        assertEquals(1, analytics.getIsolatedCount());
+        assertEquals(Collections.singletonList("Nguyễn Alone"), names(analytics.getIsolatedIndividuals()));
+    }
+
+    @Test
+    void unionFindMergesLongChainsInAnyOrder() {
+        List<UUID> chain = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            chain.add(person("P" + i));
+        }
+        // Link the chain from both ends towards the middle, so roots are re-pointed repeatedly
+        for (int i = 0; i < 25; i++) {
+            spouse(chain.get(i), chain.get(i + 1));
+            spouse(chain.get(49 - i), chain.get(48 - i));
+        }
+
+        TreeAnalyticsResponse analytics = analytics();
+        assertEquals(1, analytics.getComponentsCount());
+        assertEquals(Collections.singletonList(50), analytics.getLargestComponentSizes());
+    }
+
+    @Test
+    void placesChildrenOneGenerationBelowTheirLowestParent() {
+        // Cousins marry: their child is placed below the deeper parent, and counted once
+        UUID founder = person("Founder");
+        UUID son = person("Son");
+        UUID daughter = person("Daughter");
+        UUID grandson = person("Grandson");
+        UUID granddaughter = person("Granddaughter");
+        UUID inLaw = person("InLaw");
+        UUID great = person("Great");
+        parent(founder, son);
+        parent(founder, daughter);
+        parent(son, grandson);
+        parent(daughter, granddaughter);
+        parent(grandson, great);
+        parent(granddaughter, great);
+        // An in-law without parents starts at the first generation
+        parent(inLaw, great);
+
+        TreeAnalyticsResponse analytics = analytics();
+        assertEquals(Arrays.asList(2, 2, 2, 1), generationCounts(analytics));
+        assertEquals(0, analytics.getIndividualsWithoutGeneration());
+
+        TreeAnalyticsResponse.Lineage longest = analytics.getLongestLineages().get(0);
+        assertEquals(4, longest.getGenerations());
+        assertEquals("Nguyễn Founder", longest.getIndividuals().get(0).getName());
+        assertEquals("Nguyễn Great", longest.getIndividuals().get(3).getName());
+    }
+
+    @Test
+    void leavesParentChildCyclesAndTheirDescendantsWithoutGeneration() {
+        UUID root = person("Root");
+        UUID child = person("Child");
+        UUID a = person("A");
+        UUID b = person("B");
+        UUID belowCycle = person("BelowCycle");
+        parent(root, child);
+        parent(a, b);
+        parent(b, a);
+        parent(b, belowCycle);
+
+        TreeAnalyticsResponse analytics = analytics();
+        assertEquals(Arrays.asList(1, 1), generationCounts(analytics));
+        assertEquals(3, analytics.getIndividualsWithoutGeneration());
+    }
+
+    @Test
+    void averagesLifespansPerGeneration() {
+        UUID parent = person("Trần", "Cha", LocalDate.of(1900, 1, 1), LocalDate.of(1970, 1, 1));
+        UUID child1 = person("Trần", "Con", LocalDate.of(1930, 6, 1), LocalDate.of(1990, 6, 1));
+        UUID child2 = person("Trần", "Út", LocalDate.of(1935, 1, 1), LocalDate.of(2015, 1, 1));
+        // Implausible spans are left out
+        UUID child3 = person("Trần", "Sai", LocalDate.of(1940, 1, 1), LocalDate.of(1930, 1, 1));
+        parent(parent, child1);
+        parent(parent, child2);
+        parent(parent, child3);
+
+        TreeAnalyticsResponse analytics = analytics();
+        TreeAnalyticsResponse.GenerationStats first = analytics.getGenerations().get(0);
+        TreeAnalyticsResponse.GenerationStats second = analytics.getGenerations().get(1);
+        assertEquals(70.0, first.getAverageLifespan());
+        assertEquals(2, second.getLifespanSamples());
+        assertEquals(70.0, second.getAverageLifespan());
+
+        // The birth date still counts towards its decade
+        assertEquals(Arrays.asList(1900, 1930, 1940), analytics.getBirthDecades().stream()
+                .map(TreeAnalyticsResponse.DecadeCount::getDecade).collect(Collectors.toList()));
+        assertEquals(2, analytics.getBirthDecades().get(1).getCount());
+    }
+
+    @Test
+    void groupsChildrenByBothParents() {
+        UUID father = person("Father");
+        UUID mother = person("Mother");
+        UUID secondWife = person("SecondWife");
+        for (int i = 0; i < 3; i++) {
+            UUID child = person("Child" + i);
+            parent(father, child);
+            parent(mother, child);
+        }
+        UUID halfSibling = person("HalfSibling");
+        parent(father, halfSibling);
+        parent(secondWife, halfSibling);
+
+        TreeAnalyticsResponse.Family largest = analytics().getLargestFamilies().get(0);
+        assertEquals(3, largest.getChildrenCount());
+        assertEquals(new HashSet<>(Arrays.asList("Nguyễn Father", "Nguyễn Mother")), new HashSet<>(names(largest.getParents())));
+        assertEquals(2, analytics().getLargestFamilies().size());
+    }
+
+    @Test
+    void countsTrimmedNamesAndSkipsBlankOnes() {
+        person("Lê", " Hoa ", null, null);
+        person("Lê", "Hoa", null, null);
+        person("  ", "Minh", null, null);
+        person(null, "", null, null);
+
+        TreeAnalyticsResponse analytics = analytics();
+        assertEquals("Hoa", analytics.getTopGivenNames().get(0).getName());
+        assertEquals(2, analytics.getTopGivenNames().get(0).getCount());
+        assertEquals(1, analytics.getTopSurnames().size());
+        assertEquals(2, analytics.getTopSurnames().get(0).getCount());
+    }
+
+    @Test
+    void reusesCachedAnalyticsUntilTheTreeVersionChanges() {
+        person("A");
+
+        TreeAnalyticsResponse first = analytics();
+        assertSame(first, analytics());
+        verify(individualRepository, times(1)).findSnapshotRowsByTreeId(any());
+
+        when(treeVersionService.getVersion(treeId)).thenReturn("v2");
+        TreeAnalyticsResponse second = analytics();
+        assertNotSame(first, second);
+        assertEquals("v2", second.getTreeVersion());
+    }
+}
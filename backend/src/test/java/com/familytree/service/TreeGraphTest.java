@@ -0,0 +1,182 @@
+package com.familytree.service;
+
+import com.familytree.model.RelationshipType;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TreeGraphTest {
+
+    private final List<Object[]> edges = new ArrayList<>();
+
+    private UUID person() {
+        return UUID.randomUUID();
+    }
+
+    private void parent(UUID parentId, UUID childId) {
+        edges.add(new Object[]{parentId, childId, RelationshipType.PARENT_CHILD});
+    }
+
+    private void spouse(UUID id1, UUID id2) {
+        edges.add(new Object[]{id1, id2, RelationshipType.SPOUSE});
+    }
+
+    private TreeGraph graph() {
+        return TreeGraph.fromEdges(edges);
+    }
+
+    @Test
+    void isAncestorFollowsParentLinksOnly() {
+        UUID grandparent = person();
+        UUID parent = person();
+        UUID child = person();
+        UUID spouse = person();
+        parent(grandparent, parent);
+        parent(parent, child);
+        spouse(parent, spouse);
+
+        TreeGraph graph = graph();
+        assertTrue(graph.isAncestor(child, grandparent));
+        assertTrue(graph.isAncestor(child, parent));
+        assertFalse(graph.isAncestor(grandparent, child));
+        assertFalse(graph.isAncestor(child, spouse));
+        assertFalse(graph.isAncestor(child, child));
+    }
+
+    @Test
+    void isAncestorHandlesPedigreeCollapse() {
+        // Cousins marry: their child reaches the shared great-grandparents through both parents
+        UUID greatGrandfather = person();
+        UUID greatGrandmother = person();
+        UUID grandparent1 = person();
+        UUID grandparent2 = person();
+        UUID father = person();
+        UUID mother = person();
+        UUID child = person();
+        parent(greatGrandfather, grandparent1);
+        parent(greatGrandmother, grandparent1);
+        parent(greatGrandfather, grandparent2);
+        parent(greatGrandmother, grandparent2);
+        parent(grandparent1, father);
+        parent(grandparent2, mother);
+        parent(father, child);
+        parent(mother, child);
+
+        TreeGraph graph = graph();
+        assertTrue(graph.isAncestor(child, greatGrandfather));
+        assertTrue(graph.isAncestor(child, greatGrandmother));
+        assertFalse(graph.isAncestor(father, mother));
+        assertEquals(4, graph.countGenerations());
+    }
+
+    @Test
+    void isAncestorTerminatesOnCycles() {
+        UUID a = person();
+        UUID b = person();
+        UUID c = person();
+        UUID outsider = person();
+        parent(a, b);
+        parent(b, c);
+        parent(c, a);
+
+        TreeGraph graph = graph();
+        assertTrue(graph.isAncestor(a, c));
+        assertTrue(graph.isAncestor(a, a));
+        assertFalse(graph.isAncestor(a, outsider));
+    }
+
+    @Test
+    void wouldCreateCycleDetectsSelfAndAncestorLinks() {
+        UUID grandparent = person();
+        UUID parent = person();
+        UUID child = person();
+        UUID unrelated = person();
+        parent(grandparent, parent);
+        parent(parent, child);
+
+        TreeGraph graph = graph();
+        assertTrue(graph.wouldCreateCycle(child, child));
+        assertTrue(graph.wouldCreateCycle(child, grandparent));
+        assertTrue(graph.wouldCreateCycle(child, parent));
+        assertFalse(graph.wouldCreateCycle(grandparent, unrelated));
+        assertFalse(graph.wouldCreateCycle(unrelated, grandparent));
+        // Already linked the right way round
+        assertFalse(graph.wouldCreateCycle(grandparent, child));
+    }
+
+    @Test
+    void wouldCreateCycleSeesAddedLinks() {
+        UUID a = person();
+        UUID b = person();
+        UUID c = person();
+        parent(a, b);
+
+        TreeGraph graph = graph();
+        assertFalse(graph.wouldCreateCycle(c, a));
+        graph.addParentLink(b, c);
+        assertTrue(graph.wouldCreateCycle(c, a));
+    }
+
+    @Test
+    void countGenerationsUsesLongestLine() {
+        UUID root = person();
+        UUID shortLine = person();
+        UUID longLine1 = person();
+        UUID longLine2 = person();
+        UUID longLine3 = person();
+        parent(root, shortLine);
+        parent(root, longLine1);
+        parent(longLine1, longLine2);
+        parent(longLine2, longLine3);
+        // A later generation also reachable through a shorter route
+        parent(shortLine, longLine3);
+
+        assertEquals(4, graph().countGenerations());
+    }
+
+    @Test
+    void countGenerationsIsZeroWithoutParentLinks() {
+        spouse(person(), person());
+        assertEquals(0, graph().countGenerations());
+    }
+
+    @Test
+    void countGenerationsLeavesOutCycles() {
+        UUID root = person();
+        UUID child = person();
+        UUID a = person();
+        UUID b = person();
+        UUID belowCycle = person();
+        parent(root, child);
+        parent(a, b);
+        parent(b, a);
+        parent(b, belowCycle);
+
+        assertEquals(2, graph().countGenerations());
+    }
+
+    @Test
+    void collectBranchIncludesLinesSpousesAndTheirDescendants() {
+        UUID grandparent = person();
+        UUID parent = person();
+        UUID root = person();
+        UUID rootSpouse = person();
+        UUID stepChild = person();
+        UUID uncle = person();
+        UUID stranger = person();
+        parent(grandparent, parent);
+        parent(grandparent, uncle);
+        parent(parent, root);
+        spouse(root, rootSpouse);
+        parent(rootSpouse, stepChild);
+        spouse(stranger, person());
+
+        Set<UUID> branch = graph().collectBranch(root);
+        assertTrue(branch.containsAll(Arrays.asList(grandparent, parent, root, rootSpouse, stepChild)));
+        // Siblings of ancestors are not on the root's lines
+        assertFalse(branch.contains(uncle));
+        assertFalse(branch.contains(stranger));
+    }
+}
@@ -0,0 +1,229 @@
+package com.familytree.service;
+
+import com.familytree.dto.merge.IndividualMatch;
+import com.familytree.model.*;
+import com.familytree.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TreeMergeServiceTest {
+
+    private final FamilyTree sourceTree = FamilyTree.builder().id(UUID.randomUUID()).name("Source").build();
+    private final FamilyTree targetTree = FamilyTree.builder().id(UUID.randomUUID()).name("Target").build();
+    private final List<Individual> sourceIndividuals = new ArrayList<>();
+    private final List<Individual> targetIndividuals = new ArrayList<>();
+    private final List<Relationship> sourceRelationships = new ArrayList<>();
+    private final List<Relationship> targetRelationships = new ArrayList<>();
+    private final List<IndividualCloneMapping> cloneMappings = new ArrayList<>();
+
+    private TreeMergeService service;
+
+    @BeforeEach
+    void setUp() {
+        IndividualCloneMappingRepository cloneMappingRepository = mock(IndividualCloneMappingRepository.class);
+        when(cloneMappingRepository.findBySourceTreeIdAndClonedTreeId(sourceTree.getId(), targetTree.getId()))
+                .thenReturn(cloneMappings);
+
+        service = new TreeMergeService(mock(FamilyTreeRepository.class), mock(IndividualRepository.class),
+                mock(RelationshipRepository.class), mock(UserRepository.class), cloneMappingRepository,
+                mock(TreePermissionRepository.class), mock(CloneLineageService.class), mock(MediaBlobService.class),
+                mock(TreeStatsService.class), mock(IndividualOverlayService.class));
+    }
+
+    private Individual person(FamilyTree tree, String surname, String givenName, LocalDate birthDate, Gender gender) {
+        Individual individual = Individual.builder().id(UUID.randomUUID()).tree(tree)
+                .surname(surname).givenName(givenName).birthDate(birthDate).gender(gender).build();
+        (tree == sourceTree ? sourceIndividuals : targetIndividuals).add(individual);
+        return individual;
+    }
+
+    private Individual source(String surname, String givenName) {
+        return person(sourceTree, surname, givenName, null, null);
+    }
+
+    private Individual target(String surname, String givenName) {
+        return person(targetTree, surname, givenName, null, null);
+    }
+
+    private void link(Individual individual1, Individual individual2, RelationshipType type) {
+        FamilyTree tree = individual1.getTree();
+        (tree == sourceTree ? sourceRelationships : targetRelationships).add(Relationship.builder()
+                .id(UUID.randomUUID()).tree(tree).individual1(individual1).individual2(individual2).type(type).build());
+    }
+
+    private void cloneOf(Individual source, Individual target) {
+        cloneMappings.add(IndividualCloneMapping.builder().sourceIndividual(source).clonedIndividual(target)
+                .sourceTree(sourceTree).clonedTree(targetTree).build());
+    }
+
+    /**
+     * Matches as source id -> target id
+     */
+    private Map<UUID, UUID> match() {
+        MergeWorkingSet workingSet = new MergeWorkingSet(sourceTree, sourceIndividuals, sourceRelationships,
+                targetTree, targetIndividuals, targetRelationships);
+        List<IndividualMatch> matches = service.findMatchingIndividuals(workingSet);
+
+        Map<UUID, UUID> byId = matches.stream().collect(Collectors.toMap(IndividualMatch::getSourceIndividualId,
+                IndividualMatch::getTargetIndividualId));
+        assertEquals(matches.size(), new HashSet<>(byId.values()).size(), "A target individual was matched twice");
+        return byId;
+    }
+
+    /**
+     * A family whose surnames are written without accents in the target tree,
+     * so only the child's name is an exact match
+     */
+    private Individual[][] family() {
+        Individual[] sources = {source("Trần", "Văn Bình"), source("Trần", "Văn An"), source("Lê", "Thị Hoa"),
+                source("Trần", "Minh")};
+        Individual[] targets = {target("Tran", "Văn Bình"), target("Tran", "Văn An"), target("Le", "Thị Hoa"),
+                target("Trần", "Minh")};
+        for (Individual[] tree : new Individual[][]{sources, targets}) {
+            link(tree[0], tree[1], RelationshipType.FATHER_CHILD);
+            link(tree[1], tree[2], RelationshipType.SPOUSE);
+            link(tree[1], tree[3], RelationshipType.FATHER_CHILD);
+        }
+        return new Individual[][]{sources, targets};
+    }
+
+    @Test
+    void propagatesCloneMappingsToParentsSpousesAndChildren() {
+        Individual[][] family = family();
+        cloneOf(family[0][1], family[1][1]);
+
+        Map<UUID, UUID> matches = match();
+        assertEquals(4, matches.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(family[1][i].getId(), matches.get(family[0][i].getId()));
+        }
+    }
+
+    @Test
+    void weakAttributeMatchesDoNotAnchorPropagation() {
+        Individual[][] family = family();
+
+        // Only the child's exact name reaches the threshold, which is not enough to vouch for relatives
+        Map<UUID, UUID> matches = match();
+        assertEquals(Collections.singletonMap(family[0][3].getId(), family[1][3].getId()), matches);
+    }
+
+    @Test
+    void propagatesFromHighConfidenceAttributeMatches() {
+        Individual[][] family = family();
+        LocalDate birthDate = LocalDate.of(1950, 4, 2);
+        family[0][1].setBirthDate(birthDate);
+        family[1][1].setBirthDate(birthDate);
+        family[1][1].setSurname("Trần");
+
+        Map<UUID, UUID> matches = match();
+        assertEquals(4, matches.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(family[1][i].getId(), matches.get(family[0][i].getId()));
+        }
+    }
+
+    @Test
+    void relativesNeedSimilarNamesAndCompatibleGenders() {
+        Individual sourceParent = source("Trần", "An");
+        Individual targetParent = target("Trần", "An");
+        cloneOf(sourceParent, targetParent);
+
+        link(sourceParent, person(sourceTree, "Trần", "Minh", null, Gender.FEMALE), RelationshipType.PARENT_CHILD);
+        link(targetParent, person(targetTree, "Trần", "Minh", null, Gender.MALE), RelationshipType.PARENT_CHILD);
+        link(sourceParent, source("Lê", "Hoa"), RelationshipType.SPOUSE);
+        link(targetParent, target("Phạm", "Lan"), RelationshipType.SPOUSE);
+
+        assertEquals(Collections.singletonMap(sourceParent.getId(), targetParent.getId()), match());
+    }
+
+    @Test
+    void matchesEachRelativeOnceBestScoreFirst() {
+        Individual sourceParent = source("Trần", "An");
+        Individual targetParent = target("Trần", "An");
+        cloneOf(sourceParent, targetParent);
+
+        Individual looseMatch = source("Trần", "Văn Minh");
+        Individual exactMatch = source("Trần", "Minh");
+        Individual targetChild = target("Trần", "Minh");
+        link(sourceParent, looseMatch, RelationshipType.PARENT_CHILD);
+        link(sourceParent, exactMatch, RelationshipType.PARENT_CHILD);
+        link(targetParent, targetChild, RelationshipType.PARENT_CHILD);
+
+        Map<UUID, UUID> matches = match();
+        assertEquals(2, matches.size());
+        assertEquals(targetChild.getId(), matches.get(exactMatch.getId()));
+        assertFalse(matches.containsKey(looseMatch.getId()));
+    }
+
+    @Test
+    void siblingsSharingSurnameAndMiddleNameAreNotCrossMatched() {
+        Individual sourceFather = source("Trần", "Văn An");
+        Individual targetFather = target("Trần", "Văn An");
+        cloneOf(sourceFather, targetFather);
+
+        // The target tree is missing one son and one daughter, and has others the source is missing
+        Individual son = person(sourceTree, "Trần", "Văn Minh", null, Gender.MALE);
+        Individual missingSon = person(sourceTree, "Trần", "Văn Hùng", null, Gender.MALE);
+        Individual daughter = person(sourceTree, "Nguyễn", "Thị Lan", null, Gender.FEMALE);
+        Individual targetSon = person(targetTree, "Trần", "Văn Minh", null, Gender.MALE);
+        Individual otherSon = person(targetTree, "Trần", "Văn Tuấn", null, Gender.MALE);
+        Individual otherDaughter = person(targetTree, "Nguyễn", "Thị Hoa", null, Gender.FEMALE);
+        for (Individual child : Arrays.asList(son, missingSon, daughter)) {
+            link(sourceFather, child, RelationshipType.FATHER_CHILD);
+        }
+        for (Individual child : Arrays.asList(targetSon, otherSon, otherDaughter)) {
+            link(targetFather, child, RelationshipType.FATHER_CHILD);
+        }
+
+        Map<UUID, UUID> matches = match();
+        assertEquals(2, matches.size());
+        assertEquals(targetSon.getId(), matches.get(son.getId()));
+        assertFalse(matches.containsKey(missingSon.getId()));
+        assertFalse(matches.containsKey(daughter.getId()));
+    }
+
+    @Test
+    void relativesWithDifferentGivenNamesNeedACorroboratingDate() {
+        Individual sourceParent = source("Trần", "An");
+        Individual targetParent = target("Trần", "An");
+        cloneOf(sourceParent, targetParent);
+
+        // The same person under a nickname in one tree, born in the same year
+        Individual sourceChild = person(sourceTree, "Trần", "Văn Minh", LocalDate.of(1970, 1, 1), Gender.MALE);
+        Individual targetChild = person(targetTree, "Trần", "Văn Tí", LocalDate.of(1970, 6, 1), Gender.MALE);
+        link(sourceParent, sourceChild, RelationshipType.PARENT_CHILD);
+        link(targetParent, targetChild, RelationshipType.PARENT_CHILD);
+
+        assertEquals(targetChild.getId(), match().get(sourceChild.getId()));
+    }
+
+    @Test
+    void propagatesAlongLongLines() {
+        List<Individual> sourceLine = new ArrayList<>();
+        List<Individual> targetLine = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            sourceLine.add(source("Trần", "Văn Đời " + i));
+            targetLine.add(target("Tran", "Văn Đời " + i));
+            if (i > 0) {
+                link(sourceLine.get(i - 1), sourceLine.get(i), RelationshipType.FATHER_CHILD);
+                link(targetLine.get(i - 1), targetLine.get(i), RelationshipType.FATHER_CHILD);
+            }
+        }
+        // Anchored at the youngest generation, matched one generation further up per round
+        cloneOf(sourceLine.get(29), targetLine.get(29));
+
+        Map<UUID, UUID> matches = match();
+        assertEquals(30, matches.size());
+        for (int i = 0; i < 30; i++) {
+            assertEquals(targetLine.get(i).getId(), matches.get(sourceLine.get(i).getId()));
+        }
+    }
+}
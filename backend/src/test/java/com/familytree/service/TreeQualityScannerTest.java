@@ -0,0 +1,264 @@
+package com.familytree.service;
+
+import com.familytree.model.Gender;
+import com.familytree.model.QualityIssueType;
+import com.familytree.model.RelationshipType;
+import com.familytree.model.TreeQualityFinding;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TreeQualityScannerTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 6, 1);
+    private static final String[] SURNAMES = {"Nguyễn", "nguyen", "Trần"};
+    private static final String[] GIVEN_NAMES = {"Văn An", "van an", "Hoa"};
+    private static final Gender[] GENDERS = {Gender.MALE, Gender.FEMALE, Gender.UNKNOWN};
+    private static final RelationshipType[] TYPES = {RelationshipType.PARENT_CHILD, RelationshipType.FATHER_CHILD,
+            RelationshipType.MOTHER_CHILD, RelationshipType.SPOUSE, RelationshipType.ADOPTED_PARENT_CHILD};
+
+    private final UUID treeId = UUID.randomUUID();
+    private final Random random = new Random(7);
+
+    private static Object[] row(UUID id, String givenName, String surname, LocalDate birthDate, LocalDate deathDate,
+                                Gender gender) {
+        return new Object[]{id, givenName, surname, birthDate, deathDate, gender};
+    }
+
+    private static Object[] edge(UUID id1, UUID id2, RelationshipType type) {
+        return new Object[]{id1, id2, type};
+    }
+
+    private TreeQualityScanner scanner(List<Object[]> individuals, List<Object[]> edges) {
+        return new TreeQualityScanner(treeId, "v", individuals, edges, TODAY);
+    }
+
+    private static List<QualityIssueType> types(List<TreeQualityFinding> findings) {
+        return findings.stream().map(TreeQualityFinding::getType).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    void signaturesIgnoreEdgeOrder() {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        UUID c = UUID.randomUUID();
+        List<Object[]> individuals = Arrays.asList(row(a, "An", "Trần", null, null, Gender.MALE),
+                row(b, "Hoa", "Trần", null, null, Gender.FEMALE), row(c, "Minh", "Trần", null, null, null));
+        List<Object[]> edges = Arrays.asList(edge(a, c, RelationshipType.FATHER_CHILD),
+                edge(b, c, RelationshipType.MOTHER_CHILD), edge(a, b, RelationshipType.SPOUSE));
+        List<Object[]> reversed = new ArrayList<>(edges);
+        Collections.reverse(reversed);
+
+        assertEquals(scanner(individuals, edges).getSignatures(), scanner(individuals, reversed).getSignatures());
+    }
+
+    @Test
+    void signaturesTellRelationshipDirectionAndType() {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        List<Object[]> individuals = Arrays.asList(row(a, "An", "Trần", null, null, null),
+                row(b, "An", "Trần", null, null, null));
+
+        Map<UUID, Long> aParentOfB = scanner(individuals, Collections.singletonList(edge(a, b, RelationshipType.PARENT_CHILD))).getSignatures();
+        Map<UUID, Long> bParentOfA = scanner(individuals, Collections.singletonList(edge(b, a, RelationshipType.PARENT_CHILD))).getSignatures();
+        Map<UUID, Long> spouses = scanner(individuals, Collections.singletonList(edge(a, b, RelationshipType.SPOUSE))).getSignatures();
+        Map<UUID, Long> unrelated = scanner(individuals, Collections.emptyList()).getSignatures();
+
+        assertNotEquals(aParentOfB.get(a), bParentOfA.get(a));
+        assertNotEquals(aParentOfB.get(a), spouses.get(a));
+        assertNotEquals(aParentOfB.get(a), unrelated.get(a));
+        assertEquals(unrelated.get(a), unrelated.get(b));
+    }
+
+    @Test
+    void changedScopeCoversChangedIndividualsAndTheirRelatives() {
+        UUID grandparent = UUID.randomUUID();
+        UUID parent = UUID.randomUUID();
+        UUID child = UUID.randomUUID();
+        UUID grandchild = UUID.randomUUID();
+        List<Object[]> edges = Arrays.asList(edge(grandparent, parent, RelationshipType.PARENT_CHILD),
+                edge(parent, child, RelationshipType.PARENT_CHILD), edge(child, grandchild, RelationshipType.PARENT_CHILD));
+        List<Object[]> before = Arrays.asList(row(grandparent, "A", "Trần", null, null, null),
+                row(parent, "B", "Trần", null, null, null), row(child, "C", "Trần", null, null, null),
+                row(grandchild, "D", "Trần", null, null, null));
+        List<Object[]> after = new ArrayList<>(before);
+        after.set(1, row(parent, "B", "Trần", LocalDate.of(1950, 1, 1), null, null));
+
+        TreeQualityScanner scanner = scanner(after, edges);
+        boolean[] scope = scanner.changedScope(scanner(before, edges).getSignatures());
+        assertArrayEquals(new boolean[]{true, true, true, false}, scope);
+
+        // Nothing changed: nothing to recheck; unknown individuals: everything
+        assertArrayEquals(new boolean[4], scanner.changedScope(scanner.getSignatures()));
+        assertArrayEquals(scanner.fullScope(), scanner.changedScope(Collections.emptyMap()));
+    }
+
+    @Test
+    void findsCyclesAndDateProblems() {
+        UUID father = UUID.randomUUID();
+        UUID child = UUID.randomUUID();
+        UUID posthumous = UUID.randomUUID();
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        UUID belowCycle = UUID.randomUUID();
+        List<Object[]> individuals = Arrays.asList(
+                row(father, "Cha", "Trần", LocalDate.of(1950, 1, 1), LocalDate.of(1980, 1, 1), Gender.MALE),
+                row(child, "Con", "Trần", LocalDate.of(1945, 1, 1), null, null),
+                // Born within ten months of the father's death
+                row(posthumous, "Út", "Trần", LocalDate.of(1980, 9, 1), null, null),
+                row(a, "A", "Lê", null, null, null),
+                row(b, "B", "Lê", null, LocalDate.of(2030, 1, 1), null),
+                row(belowCycle, "C", "Lê", null, null, null));
+        List<Object[]> edges = Arrays.asList(edge(father, child, RelationshipType.PARENT_CHILD),
+                edge(father, posthumous, RelationshipType.FATHER_CHILD),
+                edge(a, b, RelationshipType.PARENT_CHILD), edge(b, a, RelationshipType.PARENT_CHILD),
+                edge(b, belowCycle, RelationshipType.PARENT_CHILD));
+
+        TreeQualityScanner scanner = scanner(individuals, edges);
+        List<TreeQualityFinding> findings = scanner.scan(scanner.fullScope());
+
+        assertEquals(Arrays.asList(QualityIssueType.PARENT_CHILD_CYCLE, QualityIssueType.PARENT_CHILD_CYCLE,
+                QualityIssueType.CHILD_BORN_BEFORE_PARENT, QualityIssueType.IMPOSSIBLE_AGE), types(findings));
+        Set<UUID> onCycle = findings.stream().filter(f -> f.getType() == QualityIssueType.PARENT_CHILD_CYCLE)
+                .map(TreeQualityFinding::getIndividualId).collect(Collectors.toSet());
+        assertEquals(new HashSet<>(Arrays.asList(a, b)), onCycle);
+    }
+
+    @Test
+    void findsMultipleBiologicalParentsButNotAdoptiveOnes() {
+        UUID child = UUID.randomUUID();
+        UUID father1 = UUID.randomUUID();
+        UUID father2 = UUID.randomUUID();
+        UUID adoptive = UUID.randomUUID();
+        List<Object[]> individuals = Arrays.asList(row(child, "Con", "Trần", null, null, null),
+                row(father1, "Một", "Trần", null, null, Gender.MALE), row(father2, "Hai", "Trần", null, null, Gender.MALE),
+                row(adoptive, "Nuôi", "Lê", null, null, Gender.MALE));
+        List<Object[]> edges = Arrays.asList(edge(father1, child, RelationshipType.FATHER_CHILD),
+                // The same father linked twice is still one father
+                edge(father1, child, RelationshipType.PARENT_CHILD),
+                edge(father2, child, RelationshipType.PARENT_CHILD),
+                edge(adoptive, child, RelationshipType.ADOPTED_PARENT_CHILD));
+
+        TreeQualityScanner scanner = scanner(individuals, edges);
+        List<TreeQualityFinding> findings = scanner.scan(scanner.fullScope());
+
+        assertEquals(1, findings.size());
+        assertEquals(QualityIssueType.MULTIPLE_BIOLOGICAL_FATHERS, findings.get(0).getType());
+        assertEquals("Has 2 biological fathers: Trần Một, Trần Hai", findings.get(0).getMessage());
+    }
+
+    @Test
+    void findsUnrelatedDuplicatesOnly() {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        UUID spouse = UUID.randomUUID();
+        UUID otherGender = UUID.randomUUID();
+        UUID farApart = UUID.randomUUID();
+        List<Object[]> individuals = Arrays.asList(
+                row(a, "Văn An", "Nguyễn", LocalDate.of(1950, 1, 1), null, Gender.MALE),
+                row(b, "van  an", "NGUYEN", LocalDate.of(1951, 12, 1), null, null),
+                row(spouse, "Văn An", "Nguyễn", LocalDate.of(1950, 5, 1), null, Gender.MALE),
+                row(otherGender, "Văn An", "Nguyễn", LocalDate.of(1950, 1, 1), null, Gender.FEMALE),
+                row(farApart, "Văn An", "Nguyễn", LocalDate.of(1953, 1, 1), null, Gender.MALE));
+        // Related individuals are not duplicates of each other
+        List<Object[]> edges = Arrays.asList(edge(a, spouse, RelationshipType.SPOUSE),
+                edge(b, spouse, RelationshipType.SIBLING));
+
+        TreeQualityScanner scanner = scanner(individuals, edges);
+        Set<Set<UUID>> pairs = scanner.scan(scanner.fullScope()).stream()
+                .map(f -> new HashSet<>(Arrays.asList(f.getIndividualId(), f.getRelatedIndividualId())))
+                .collect(Collectors.toSet());
+
+        assertEquals(new HashSet<>(Arrays.asList(new HashSet<>(Arrays.asList(a, b)),
+                new HashSet<>(Arrays.asList(b, otherGender)))), pairs);
+    }
+
+    @Test
+    void incrementalScansMatchFullScans() {
+        List<Object[]> individuals = new ArrayList<>();
+        List<Object[]> edges = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            individuals.add(randomIndividual(UUID.randomUUID()));
+        }
+        for (int i = 0; i < 80; i++) {
+            edges.add(randomEdge(individuals));
+        }
+
+        TreeQualityScanner previous = scanner(individuals, edges);
+        List<TreeQualityFinding> stored = new ArrayList<>(previous.scan(previous.fullScope()));
+
+        for (int round = 0; round < 50; round++) {
+            edit(individuals, edges);
+            TreeQualityScanner scanner = scanner(individuals, edges);
+            Map<UUID, Long> previousSignatures = previous.getSignatures();
+            boolean[] scope = scanner.changedScope(previousSignatures);
+
+            // Replace findings the way TreeQualityService does
+            Set<UUID> replaced = new HashSet<>(previousSignatures.keySet());
+            replaced.removeAll(scanner.getSignatures().keySet());
+            for (int i = 0; i < scanner.size(); i++) {
+                if (scope[i]) {
+                    replaced.add(scanner.getId(i));
+                }
+            }
+            stored.removeIf(f -> f.getType() == QualityIssueType.PARENT_CHILD_CYCLE
+                    || replaced.contains(f.getIndividualId()) || replaced.contains(f.getRelatedIndividualId()));
+            stored.addAll(scanner.scan(scope));
+
+            List<String> expected = describe(scanner.scan(scanner.fullScope()));
+            assertEquals(expected, describe(stored), "Round " + round);
+            previous = scanner;
+        }
+        // The data must actually produce findings of several kinds
+        assertTrue(stored.stream().map(TreeQualityFinding::getType).distinct().count() >= 4, () -> describe(stored).toString());
+    }
+
+    private Object[] randomIndividual(UUID id) {
+        LocalDate birthDate = random.nextInt(4) == 0 ? null : LocalDate.of(1900 + random.nextInt(60), 1 + random.nextInt(12), 1);
+        LocalDate deathDate = random.nextInt(2) == 0 ? null : LocalDate.of(1930 + random.nextInt(100), 1 + random.nextInt(12), 1);
+        return row(id, GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)], SURNAMES[random.nextInt(SURNAMES.length)],
+                birthDate, deathDate, GENDERS[random.nextInt(GENDERS.length)]);
+    }
+
+    private Object[] randomEdge(List<Object[]> individuals) {
+        UUID id1 = (UUID) individuals.get(random.nextInt(individuals.size()))[0];
+        UUID id2 = (UUID) individuals.get(random.nextInt(individuals.size()))[0];
+        return edge(id1, id2, TYPES[random.nextInt(TYPES.length)]);
+    }
+
+    private void edit(List<Object[]> individuals, List<Object[]> edges) {
+        switch (random.nextInt(5)) {
+            case 0:
+                int changed = random.nextInt(individuals.size());
+                individuals.set(changed, randomIndividual((UUID) individuals.get(changed)[0]));
+                break;
+            case 1:
+                individuals.add(randomIndividual(UUID.randomUUID()));
+                edges.add(edge((UUID) individuals.get(random.nextInt(individuals.size()))[0],
+                        (UUID) individuals.get(individuals.size() - 1)[0], RelationshipType.PARENT_CHILD));
+                break;
+            case 2:
+                Object[] removed = individuals.remove(random.nextInt(individuals.size()));
+                edges.removeIf(e -> e[0].equals(removed[0]) || e[1].equals(removed[0]));
+                break;
+            case 3:
+                edges.add(randomEdge(individuals));
+                break;
+            default:
+                if (!edges.isEmpty()) {
+                    edges.remove(random.nextInt(edges.size()));
+                }
+        }
+    }
+
+    private static List<String> describe(List<TreeQualityFinding> findings) {
+        return findings.stream()
+                .map(f -> f.getType() + " " + f.getIndividualId() + " " + f.getRelatedIndividualId() + " " + f.getMessage())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+}
@@ -577,7 +577,8 @@ export class AncestorTreeComponent implements OnInit, OnDestroy {
     if (individual.profilePictureUrl.startsWith('http')) {
       return individual.profilePictureUrl;
     }
-    return `${environment.baseUrl}${individual.profilePictureUrl}`;
+    // Request a copy sized for the 70px node (at 2x)
+    return `${environment.baseUrl}${individual.profilePictureUrl}?w=140`;
   }
 
   private getInitials(individual: AncestorNode): string {
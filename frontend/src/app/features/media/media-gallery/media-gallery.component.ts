@@ -100,6 +100,11 @@ export class MediaGalleryComponent implements OnInit, OnChanges {
   loadThumbnails(): void {
     this.mediaList.forEach(media => {
       if (this.isImage(media) && media.thumbnailUrl) {
+        // Presigned storage URLs (absolute) can be used directly, API URLs need the auth header
+        if (/^https?:\/\//.test(media.thumbnailUrl)) {
+          this.thumbnailUrls[media.id] = media.thumbnailUrl;
+          return;
+        }
         this.mediaService.getThumbnailBlobUrl(media.id).subscribe({
           next: (blobUrl) => {
             this.thumbnailUrls[media.id] = blobUrl;
@@ -49,7 +49,7 @@ export class MediaUploaderComponent {
   dragOver = false;
 
   // File validation
-  maxFileSize = 5 * 1024 * 1024; // 5MB
+  maxFileSize = 500 * 1024 * 1024; // 500MB
   allowedTypes = [
     'image/jpeg',
     'image/jpg',
@@ -60,7 +60,16 @@ export class MediaUploaderComponent {
     'application/pdf',
     'application/msword',
     'application/vnd.openxmlformats-officedocument.wordprocessingml.document',
-    'text/plain'
+    'text/plain',
+    'video/mp4',
+    'video/quicktime',
+    'video/webm',
+    'audio/mpeg',
+    'audio/mp4',
+    'audio/x-m4a',
+    'audio/wav',
+    'audio/x-wav',
+    'audio/ogg'
   ];
 
   constructor(
@@ -141,7 +150,7 @@ export class MediaUploaderComponent {
    */
   private validateFile(file: File): { valid: boolean; error?: string } {
     if (file.size > this.maxFileSize) {
-      let errorMsg = `File "${file.name}" exceeds maximum size of 5MB`;
+      let errorMsg = `File "${file.name}" exceeds maximum size of 500MB`;
       this.translate.get('media.fileTooLarge').subscribe(msg => {
         errorMsg = `${file.name}: ${msg}`;
       });
@@ -20,6 +20,7 @@ export interface Media {
   caption?: string;
   fileSize: number;
   mimeType: string;
+  checksum?: string;
   downloadUrl: string;
   thumbnailUrl?: string;
   uploadedAt: Date;
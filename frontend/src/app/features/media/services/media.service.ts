@@ -1,5 +1,5 @@
 import { Injectable } from '@angular/core';
-import { HttpClient, HttpEvent, HttpEventType, HttpRequest } from '@angular/common/http';
+import { HttpClient, HttpEvent, HttpEventType, HttpHeaders, HttpParams, HttpRequest } from '@angular/common/http';
 import { Observable } from 'rxjs';
 import { map } from 'rxjs/operators';
 import { environment } from '../../../../environments/environment';
@@ -14,21 +14,23 @@ export class MediaService {
   constructor(private http: HttpClient) {}
 
   /**
-   * Upload media for an individual
+   * Upload media for an individual.
+   * The file is sent as the raw request body, which the backend streams straight to storage.
    */
   uploadMedia(individualId: string, file: File, caption?: string): Observable<{ progress: number; media?: Media }> {
-    const formData = new FormData();
-    formData.append('file', file);
+    let params = new HttpParams().set('filename', file.name);
     if (caption) {
-      formData.append('caption', caption);
+      params = params.set('caption', caption);
     }
 
     const req = new HttpRequest(
-      'POST',
-      `${this.apiUrl}/individuals/${individualId}/media`,
-      formData,
+      'PUT',
+      `${this.apiUrl}/individuals/${individualId}/media/stream`,
+      file,
       {
-        reportProgress: true
+        reportProgress: true,
+        params,
+        headers: new HttpHeaders({ 'Content-Type': file.type || 'application/octet-stream' })
       }
     );
 
@@ -112,6 +114,30 @@ export class MediaService {
     );
   }
 
+  /**
+   * Download all media of a tree as a ZIP archive (one folder per individual, with a manifest.csv).
+   * With rootIndividualId, only the branch around that individual is included.
+   */
+  downloadTreeMediaArchive(treeId: string, treeName: string, rootIndividualId?: string): Observable<Blob> {
+    let params = new HttpParams();
+    if (rootIndividualId) {
+      params = params.set('rootIndividualId', rootIndividualId);
+    }
+
+    return this.http.get(`${this.apiUrl}/trees/${treeId}/media/archive`, { params, responseType: 'blob' }).pipe(
+      map(blob => {
+        // Trigger download
+        const url = window.URL.createObjectURL(blob);
+        const link = document.createElement('a');
+        link.href = url;
+        link.download = `${treeName} - media.zip`;
+        link.click();
+        window.URL.revokeObjectURL(url);
+        return blob;
+      })
+    );
+  }
+
   /**
    * Download media file
    */
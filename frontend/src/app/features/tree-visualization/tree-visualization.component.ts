@@ -13,15 +13,18 @@ import { MatDividerModule } from '@angular/material/divider';
 import { MatDialog, MatDialogModule } from '@angular/material/dialog';
 import { TranslateModule, TranslateService } from '@ngx-translate/core';
 import * as d3 from 'd3';
+import { forkJoin, of } from 'rxjs';
+import { catchError } from 'rxjs/operators';
 import { IndividualService } from '../individual/services/individual.service';
 import { RelationshipService } from '../relationship/services/relationship.service';
 import { UserTreeProfileService } from '../user-profile/services/user-tree-profile.service';
 import { TreeService } from '../tree/services/tree.service';
 import { GedcomService } from '../gedcom/services/gedcom.service';
+import { MediaService } from '../media/services/media.service';
 import { GedcomImportComponent, GedcomImportData } from '../gedcom/gedcom-import/gedcom-import.component';
 import { Individual } from '../individual/models/individual.model';
 import { Relationship } from '../relationship/models/relationship.model';
-import { Tree, TreeCloneInfo, RelatedTree, IndividualCloneInfo, TreeLocation } from '../tree/models/tree.model';
+import { Tree, TreeCloneInfo, RelatedTree, IndividualCloneInfo, TreeLocation, AvatarAtlas } from '../tree/models/tree.model';
 import { LanguageService } from '../../core/services/language.service';
 import { environment } from '../../../environments/environment';
 
@@ -82,6 +85,10 @@ export class TreeVisualizationComponent implements OnInit, OnDestroy {
   // Current tree data
   currentTree: Tree | null = null;
 
+  // Avatars packed into a few images, so the tree renders without one request per avatar
+  avatarAtlas: AvatarAtlas | null = null;
+  private readonly avatarTileSize = 140; // 70px node image at 2x
+
   private svg: any;
   private g: any;
   private zoom: any;
@@ -96,6 +103,7 @@ export class TreeVisualizationComponent implements OnInit, OnDestroy {
     private userTreeProfileService: UserTreeProfileService,
     private treeService: TreeService,
     private gedcomService: GedcomService,
+    private mediaService: MediaService,
     private dialog: MatDialog,
     private snackBar: MatSnackBar,
     private translate: TranslateService,
@@ -269,10 +277,14 @@ export class TreeVisualizationComponent implements OnInit, OnDestroy {
       next: (response) => {
         this.individuals = response.content;
 
-        // Load relationships
-        this.relationshipService.getRelationshipsByTree(this.treeId).subscribe({
-          next: (relationships) => {
+        // Load relationships and the avatar atlas (avatars fall back to single images if it fails)
+        forkJoin({
+          relationships: this.relationshipService.getRelationshipsByTree(this.treeId),
+          avatarAtlas: this.treeService.getAvatarAtlas(this.treeId, this.avatarTileSize).pipe(catchError(() => of(null)))
+        }).subscribe({
+          next: ({ relationships, avatarAtlas }) => {
             this.relationships = relationships;
+            this.avatarAtlas = avatarAtlas;
 
             // Populate available perspectives with all individuals who have any relationships
             // (not just spouses - include anyone connected to the tree)
@@ -1166,13 +1178,7 @@ export class TreeVisualizationComponent implements OnInit, OnDestroy {
 
           if (spouseAvatarUrl) {
             // Show full rectangular image without circular clip
-            spouseNode.append('image')
-              .attr('xlink:href', spouseAvatarUrl)
-              .attr('x', -35)
-              .attr('y', -52)
-              .attr('width', 70)
-              .attr('height', 70)
-              .attr('preserveAspectRatio', 'xMidYMid slice');
+            this.appendAvatarImage(spouseNode, spouse, spouseAvatarUrl);
 
             // Add border around image
             spouseNode.append('rect')
@@ -1338,13 +1344,7 @@ export class TreeVisualizationComponent implements OnInit, OnDestroy {
 
       if (avatarUrl) {
         // Show full rectangular image without circular clip
-        node.append('image')
-          .attr('xlink:href', avatarUrl)
-          .attr('x', -35)
-          .attr('y', -52)
-          .attr('width', 70)
-          .attr('height', 70)
-          .attr('preserveAspectRatio', 'xMidYMid slice');
+        this.appendAvatarImage(node, individual, avatarUrl);
 
         // Add border around image
         node.append('rect')
@@ -1491,8 +1491,40 @@ export class TreeVisualizationComponent implements OnInit, OnDestroy {
     if (individual.profilePictureUrl.startsWith('http')) {
       return individual.profilePictureUrl;
     }
-    // Otherwise, prepend API base URL
-    return `${environment.baseUrl}${individual.profilePictureUrl}`;
+    // Otherwise, prepend API base URL and request a copy sized for the 70px node (at 2x)
+    return `${environment.baseUrl}${individual.profilePictureUrl}?w=140`;
+  }
+
+  /**
+   * Append the 70px avatar image of a node: the individual's tile of the avatar atlas if it has one
+   * (a nested svg whose viewBox crops the shared sheet image), otherwise the single avatar image
+   */
+  private appendAvatarImage(node: any, individual: Individual, avatarUrl: string): void {
+    const tile = this.avatarAtlas?.tiles[individual.id];
+    if (!tile) {
+      node.append('image')
+        .attr('xlink:href', avatarUrl)
+        .attr('x', -35)
+        .attr('y', -52)
+        .attr('width', 70)
+        .attr('height', 70)
+        .attr('preserveAspectRatio', 'xMidYMid slice');
+      return;
+    }
+
+    const sheet = this.avatarAtlas!.sheets[tile.sheet];
+    const sheetUrl = sheet.url.startsWith('http') ? sheet.url : `${environment.baseUrl}${sheet.url}`;
+    const tileSize = this.avatarAtlas!.tileSize;
+    node.append('svg')
+      .attr('x', -35)
+      .attr('y', -52)
+      .attr('width', 70)
+      .attr('height', 70)
+      .attr('viewBox', `${tile.x} ${tile.y} ${tileSize} ${tileSize}`)
+      .append('image')
+      .attr('xlink:href', sheetUrl)
+      .attr('width', sheet.width)
+      .attr('height', sheet.height);
   }
 
   onNodeClick(individual: Individual): void {
@@ -1972,13 +2004,7 @@ export class TreeVisualizationComponent implements OnInit, OnDestroy {
         .attr('filter', 'drop-shadow(0px 2px 4px rgba(0,0,0,0.1))');
 
       if (avatarUrl) {
-        node.append('image')
-          .attr('xlink:href', avatarUrl)
-          .attr('x', -35)
-          .attr('y', -52)
-          .attr('width', 70)
-          .attr('height', 70)
-          .attr('preserveAspectRatio', 'xMidYMid slice');
+        this.appendAvatarImage(node, individual, avatarUrl);
 
         node.append('rect')
           .attr('x', -35)
@@ -2383,13 +2409,7 @@ export class TreeVisualizationComponent implements OnInit, OnDestroy {
         .attr('filter', 'drop-shadow(0px 2px 4px rgba(0,0,0,0.1))');
 
       if (avatarUrl) {
-        node.append('image')
-          .attr('xlink:href', avatarUrl)
-          .attr('x', -35)
-          .attr('y', -52)
-          .attr('width', 70)
-          .attr('height', 70)
-          .attr('preserveAspectRatio', 'xMidYMid slice');
+        this.appendAvatarImage(node, individual, avatarUrl);
 
         node.append('rect')
           .attr('x', -35)
@@ -2610,4 +2630,27 @@ export class TreeVisualizationComponent implements OnInit, OnDestroy {
       }
     });
   }
+
+  /**
+   * Download all media of the tree as a ZIP archive
+   */
+  downloadMediaArchive(): void {
+    const treeName = this.currentTree?.name || 'family-tree';
+
+    this.snackBar.open(
+      this.translate.instant('media.archivePreparing'),
+      this.translate.instant('common.close'),
+      { duration: 3000 }
+    );
+    this.mediaService.downloadTreeMediaArchive(this.treeId, treeName).subscribe({
+      error: (error) => {
+        console.error('Media archive download failed:', error);
+        this.snackBar.open(
+          this.translate.instant('media.archiveError'),
+          this.translate.instant('common.close'),
+          { duration: 5000 }
+        );
+      }
+    });
+  }
 }
@@ -9,12 +9,25 @@ export interface Tree {
   admins: AdminInfo[];
   individualsCount: number;
   relationshipsCount: number;
+  // Statistics maintained by the server in the background
+  livingCount: number;
+  deceasedCount: number;
+  generations: number;
+  mediaCount: number;
+  mediaBytes: number;
+  topSurnames: SurnameCount[];
+  lastActivityAt?: string;
   rootIndividualId?: string;
   rootIndividualName?: string;
   createdAt: string;
   updatedAt: string;
 }
 
+export interface SurnameCount {
+  surname: string;
+  count: number;
+}
+
 export interface AdminInfo {
   id: string;
   name: string;
@@ -139,3 +152,98 @@ export interface RelatedTree {
   isSourceTree: boolean;
   clonedAt: string;
 }
+
+export interface AvatarAtlas {
+  treeVersion: string;
+  atlasId: string | null;
+  tileSize: number;
+  sheets: AvatarAtlasSheet[];
+  // Individual ID to tile; individuals without a tile are loaded through their profilePictureUrl
+  tiles: { [individualId: string]: AvatarAtlasTile };
+}
+
+export interface AvatarAtlasSheet {
+  url: string;
+  width: number;
+  height: number;
+}
+
+export interface AvatarAtlasTile {
+  sheet: number;
+  x: number;
+  y: number;
+}
+
+export interface TreeAnalytics {
+  treeId: string;
+  treeVersion: string;
+  individualsCount: number;
+  relationshipsCount: number;
+  generations: GenerationStats[];
+  // Individuals on a parent-child cycle have no generation
+  individualsWithoutGeneration: number;
+  birthDecades: { decade: number; count: number }[];
+  topGivenNames: NameCount[];
+  topSurnames: NameCount[];
+  largestFamilies: { parents: PersonRef[]; childrenCount: number }[];
+  // Earliest ancestor first
+  longestLineages: { generations: number; individuals: PersonRef[] }[];
+  isolatedCount: number;
+  isolatedIndividuals: PersonRef[];
+  componentsCount: number;
+  largestComponentSizes: number[];
+  computedAt: string;
+}
+
+export interface GenerationStats {
+  generation: number;
+  count: number;
+  averageLifespan: number | null;
+  lifespanSamples: number;
+}
+
+export interface NameCount {
+  name: string;
+  count: number;
+}
+
+export interface PersonRef {
+  id: string;
+  name: string | null;
+}
+
+export type QualityIssueType =
+  | 'PARENT_CHILD_CYCLE'
+  | 'CHILD_BORN_BEFORE_PARENT'
+  | 'CHILD_BORN_AFTER_PARENT_DEATH'
+  | 'MULTIPLE_BIOLOGICAL_FATHERS'
+  | 'MULTIPLE_BIOLOGICAL_MOTHERS'
+  | 'IMPOSSIBLE_AGE'
+  | 'POSSIBLE_DUPLICATE';
+
+export interface TreeQualityFinding {
+  id: string;
+  type: QualityIssueType;
+  individualId: string;
+  individualName: string | null;
+  // The parent, or the possible duplicate
+  relatedIndividualId: string | null;
+  relatedIndividualName: string | null;
+  message: string;
+  treeVersion: string;
+  detectedAt: string;
+}
+
+export interface TreeQualityReport {
+  treeId: string;
+  currentVersion: string;
+  scannedVersion: string | null;
+  // If false, a scan has been queued
+  upToDate: boolean;
+  status: 'PENDING' | 'RUNNING' | 'COMPLETED' | 'FAILED' | null;
+  incremental: boolean;
+  individualsScanned: number;
+  scannedAt: string | null;
+  errorMessage: string | null;
+  findings: TreeQualityFinding[];
+}
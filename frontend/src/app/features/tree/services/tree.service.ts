@@ -2,7 +2,7 @@ import { Injectable } from '@angular/core';
 import { HttpClient, HttpParams } from '@angular/common/http';
 import { Observable } from 'rxjs';
 import { environment } from '../../../../environments/environment';
-import { Tree, CreateTreeRequest, UpdateTreeRequest, TreePage, CreateTreeFromIndividualRequest, CreateTreeFromIndividualResponse, IndividualCloneInfo, TreeCloneInfo } from '../models/tree.model';
+import { Tree, CreateTreeRequest, UpdateTreeRequest, TreePage, CreateTreeFromIndividualRequest, CreateTreeFromIndividualResponse, IndividualCloneInfo, TreeCloneInfo, AvatarAtlas, TreeAnalytics, TreeQualityReport, QualityIssueType } from '../models/tree.model';
 
 @Injectable({
   providedIn: 'root'
@@ -96,4 +96,37 @@ export class TreeService {
   removeTreeAdmin(treeId: string, adminUserId: string): Observable<Tree> {
     return this.http.delete<Tree>(`${this.apiUrl}/${treeId}/admins/${adminUserId}`);
   }
+
+  /**
+   * Get the avatars of a tree packed into a few sheet images, with the tile position of every individual
+   */
+  getAvatarAtlas(treeId: string, tileSize: number): Observable<AvatarAtlas> {
+    const params = new HttpParams().set('size', tileSize.toString());
+    return this.http.get<AvatarAtlas>(`${this.apiUrl}/${treeId}/avatar-atlas`, { params });
+  }
+
+  /**
+   * Get the analytics of a tree (computed on the server, cached until the tree changes)
+   */
+  getTreeAnalytics(treeId: string): Observable<TreeAnalytics> {
+    return this.http.get<TreeAnalytics>(`${this.apiUrl}/${treeId}/analytics`);
+  }
+
+  /**
+   * Get the data-quality findings of a tree (tree editors only)
+   */
+  getQualityReport(treeId: string, type?: QualityIssueType): Observable<TreeQualityReport> {
+    let params = new HttpParams();
+    if (type) {
+      params = params.set('type', type);
+    }
+    return this.http.get<TreeQualityReport>(`${this.apiUrl}/${treeId}/quality`, { params });
+  }
+
+  /**
+   * Queue a full data-quality rescan of a tree
+   */
+  requestQualityScan(treeId: string): Observable<void> {
+    return this.http.post<void>(`${this.apiUrl}/${treeId}/quality/scan`, {});
+  }
 }